@@ -484,6 +484,30 @@ public final class ConfigConverters {
 								SocketSettings::withImplReadBufferSize,
 								config.get(ofMemSize(), "implReadBufferSize",
 										defaultValue.hasReadBufferSize() ? defaultValue.getImplReadBufferSize() : null)))
+						.andThen(applyIfNotNull(
+								SocketSettings::withImplDirectReadBuffers,
+								config.get(ofBoolean(), "implDirectReadBuffers",
+										defaultValue.hasImplDirectReadBuffers() ? defaultValue.getImplDirectReadBuffers() : null)))
+						.andThen(applyIfNotNull(
+								SocketSettings::withImplMaxWriteBufs,
+								config.get(ofInteger(), "implMaxWriteBufs",
+										defaultValue.hasImplMaxWriteBufs() ? defaultValue.getImplMaxWriteBufs() : null)))
+						.andThen(applyIfNotNull(
+								SocketSettings::withImplMaxWriteSize,
+								config.get(ofMemSize(), "implMaxWriteSize",
+										defaultValue.hasImplMaxWriteSize() ? defaultValue.getImplMaxWriteSize() : null)))
+						.andThen(applyIfNotNull(
+								SocketSettings::withImplAdaptiveReadBuffers,
+								config.get(ofBoolean(), "implAdaptiveReadBuffers",
+										defaultValue.hasImplAdaptiveReadBuffers() ? defaultValue.getImplAdaptiveReadBuffers() : null)))
+						.andThen(applyIfNotNull(
+								SocketSettings::withImplMinReadBufferSize,
+								config.get(ofMemSize(), "implMinReadBufferSize",
+										defaultValue.hasImplMinReadBufferSize() ? defaultValue.getImplMinReadBufferSize() : null)))
+						.andThen(applyIfNotNull(
+								SocketSettings::withImplMaxReadBufferSize,
+								config.get(ofMemSize(), "implMaxReadBufferSize",
+										defaultValue.hasImplMaxReadBufferSize() ? defaultValue.getImplMaxReadBufferSize() : null)))
 						.apply(SocketSettings.create());
 			}
 		};
@@ -23,6 +23,7 @@ import io.datakernel.stream.processor.StreamSorterStorage;
 
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import static java.util.Collections.singletonList;
@@ -34,6 +35,11 @@ import static java.util.Collections.singletonList;
  * @param <T> data items type
  */
 public final class NodeSort<K, T> implements Node {
+	/**
+	 * Environment key of an {@link Executor} which runs are sorted on, instead of the eventloop thread, if present
+	 */
+	public static final String SORT_EXECUTOR = "NodeSort.sortExecutor";
+
 	private final Function<T, K> keyFunction;
 	private final Comparator<K> keyComparator;
 	private final boolean deduplicate;
@@ -66,6 +72,10 @@ public final class NodeSort<K, T> implements Node {
 		StreamSorter<K, T> streamSorter = StreamSorter.create(
 				taskContext.environment().getInstance(StreamSorterStorage.class),
 				keyFunction, keyComparator, deduplicate, itemsInMemorySize);
+		Executor sortExecutor = (Executor) taskContext.environment().get(SORT_EXECUTOR);
+		if (sortExecutor != null) {
+			streamSorter.withSortExecutor(sortExecutor);
+		}
 		taskContext.bindChannel(input, streamSorter.getInput());
 		taskContext.export(output, streamSorter.getOutput());
 	}
@@ -134,6 +134,9 @@ public final class LocalFsClient implements FsClient, EventloopService {
 	private final Executor executor;
 
 	private MemSize readerBufferSize = MemSize.kilobytes(256);
+	private boolean readerDirectBuffers = false;
+	private MemSize writerBufferSize = ChannelFileWriter.DEFAULT_WRITE_BUFFER_SIZE;
+	private boolean forceOnUpload = false;
 	private boolean lazyOverrides = true;
 	@Nullable
 	private Long defaultRevision = DEFAULT_REVISION;
@@ -205,6 +208,35 @@ public final class LocalFsClient implements FsClient, EventloopService {
 		readerBufferSize = size;
 		return this;
 	}
+
+	/**
+	 * Sets whether files are read to direct {@link ByteBuf ByteBufs}.
+	 * Use it when downloads are written to sockets, rather than parsed.
+	 *
+	 * @see ChannelFileReader#withDirectBuffers
+	 */
+	public LocalFsClient withReaderDirectBuffers(boolean readerDirectBuffers) {
+		this.readerDirectBuffers = readerDirectBuffers;
+		return this;
+	}
+
+	/**
+	 * Sets the number of bytes of an upload which may be accepted ahead of writes to the filesystem.
+	 *
+	 * @see ChannelFileWriter#withWriteBufferSize
+	 */
+	public LocalFsClient withWriterBufferSize(MemSize size) {
+		writerBufferSize = size;
+		return this;
+	}
+
+	/**
+	 * Sets whether uploaded files are forced to the storage device before upload completes.
+	 */
+	public LocalFsClient withForceOnUpload(boolean forceOnUpload) {
+		this.forceOnUpload = forceOnUpload;
+		return this;
+	}
 	// endregion
 
 	private Promise<ChannelConsumer<ByteBuf>> doUpload(Path path, long size, long offset) throws StacklessException, IOException {
@@ -214,8 +246,13 @@ public final class LocalFsClient implements FsClient, EventloopService {
 		long skip = lazyOverrides ? size - offset : 0;
 
 		FileChannel channel = FileChannel.open(path, set(CREATE, WRITE));
-		return Promise.of(ChannelFileWriter.create(executor, channel)
-				.withOffset(offset + skip)
+		ChannelFileWriter writer = ChannelFileWriter.create(executor, channel)
+				.withWriteBufferSize(writerBufferSize)
+				.withOffset(offset + skip);
+		if (forceOnUpload) {
+			writer.withForceOnClose(false);
+		}
+		return Promise.of(writer
 				.transformWith(ChannelByteRanger.drop(skip)));
 	}
 
@@ -279,6 +316,7 @@ public final class LocalFsClient implements FsClient, EventloopService {
 				.then(info -> ChannelFileReader.open(executor, info.getFilePath()))
 				.map(consumer -> consumer
 						.withBufferSize(readerBufferSize)
+						.withDirectBuffers(readerDirectBuffers)
 						.withOffset(offset)
 						.withLength(length == -1 ? Long.MAX_VALUE : length)
 						// call withAcknowledgement in eventloop thread
@@ -392,6 +430,7 @@ public final class LocalFsClient implements FsClient, EventloopService {
 		try {
 			LocalFsClient client = new LocalFsClient(eventloop, resolve(folder), executor);
 			client.readerBufferSize = readerBufferSize;
+			client.readerDirectBuffers = readerDirectBuffers;
 			client.lazyOverrides = lazyOverrides;
 			client.defaultRevision = defaultRevision;
 			client.tombstoneTtl = tombstoneTtl;
@@ -17,6 +17,7 @@
 package io.datakernel.remotefs;
 
 import io.datakernel.async.Promise;
+import io.datakernel.bytebuf.ByteBuf;
 import io.datakernel.csp.ChannelSupplier;
 import io.datakernel.csp.RecyclingChannelConsumer;
 import io.datakernel.csp.binary.ByteBufSerializer;
@@ -75,8 +76,12 @@ public final class RemoteFsServer extends AbstractServer<RemoteFsServer> {
 		addHandlers();
 	}
 
+	/**
+	 * Creates a server over a local storage, whose files are sent to sockets from direct {@link ByteBuf ByteBufs}
+	 */
 	public static RemoteFsServer create(Eventloop eventloop, Executor executor, Path storage) {
-		return new RemoteFsServer(eventloop, LocalFsClient.create(eventloop, executor, storage));
+		return new RemoteFsServer(eventloop, LocalFsClient.create(eventloop, executor, storage)
+				.withReaderDirectBuffers(true));
 	}
 
 	public static RemoteFsServer create(Eventloop eventloop, FsClient client) {
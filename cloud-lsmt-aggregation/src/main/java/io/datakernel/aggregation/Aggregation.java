@@ -88,6 +88,8 @@ public class Aggregation implements IAggregation, Initializable<Aggregation>, Ev
 	private int chunkSize = DEFAULT_CHUNK_SIZE;
 	private int reducerBufferSize = DEFAULT_REDUCER_BUFFER_SIZE;
 	private int sorterItemsInMemory = DEFAULT_SORTER_ITEMS_IN_MEMORY;
+	@Nullable
+	private Executor sorterExecutor;
 	private Duration maxIncrementalReloadPeriod = DEFAULT_MAX_INCREMENTAL_RELOAD_PERIOD;
 	private boolean ignoreChunkReadingExceptions = false;
 	private int maxChunksToConsolidate = DEFAULT_MAX_CHUNKS_TO_CONSOLIDATE;
@@ -145,6 +147,14 @@ public class Aggregation implements IAggregation, Initializable<Aggregation>, Ev
 		return this;
 	}
 
+	/**
+	 * Sets an executor which runs of the sorter are sorted on, instead of the eventloop thread
+	 */
+	public Aggregation withSorterExecutor(Executor sorterExecutor) {
+		this.sorterExecutor = sorterExecutor;
+		return this;
+	}
+
 	public Aggregation withMaxIncrementalReloadPeriod(Duration maxIncrementalReloadPeriod) {
 		this.maxIncrementalReloadPeriod = maxIncrementalReloadPeriod;
 		return this;
@@ -295,10 +305,13 @@ public class Aggregation implements IAggregation, Initializable<Aggregation>, Ev
 		BinarySerializer<T> binarySerializer = createBinarySerializer(structure, resultClass,
 				getKeys(), measures, classLoader);
 		Path sortDir = (temporarySortDir != null) ? temporarySortDir : createSortDir();
-		StreamSupplier<T> stream = unsortedStream
-				.transformWith(StreamSorter.create(
-						StreamSorterStorageImpl.create(executor, binarySerializer, sortDir),
-						Function.identity(), keyComparator, false, sorterItemsInMemory));
+		StreamSorter<T, T> sorter = StreamSorter.create(
+				StreamSorterStorageImpl.create(executor, binarySerializer, sortDir),
+				Function.identity(), keyComparator, false, sorterItemsInMemory);
+		if (sorterExecutor != null) {
+			sorter.withSortExecutor(sorterExecutor);
+		}
+		StreamSupplier<T> stream = unsortedStream.transformWith(sorter);
 
 		stream.getEndOfStream()
 				.whenComplete(($, e) -> {
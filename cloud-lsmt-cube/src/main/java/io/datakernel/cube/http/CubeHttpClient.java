@@ -104,11 +104,10 @@ public final class CubeHttpClient implements ICube {
 				.then(response -> response.loadBody()
 						.then(body -> {
 							try {
-								String httpResponse = body.getString(UTF_8);
 								if (response.getCode() != 200) {
-									return Promise.ofException(HttpException.ofCode(400, "Cube HTTP query failed. Response code: " + response.getCode() + " Body: " + httpResponse));
+									return Promise.ofException(HttpException.ofCode(400, "Cube HTTP query failed. Response code: " + response.getCode() + " Body: " + body.getString(UTF_8)));
 								}
-								QueryResult result = fromJson(getQueryResultCodec(), httpResponse);
+								QueryResult result = fromJson(getQueryResultCodec(), body);
 								return Promise.of(result);
 							} catch (ParseException e) {
 								return Promise.ofException(HttpException.ofCode(400, "Cube HTTP query failed. Invalid data received", e));
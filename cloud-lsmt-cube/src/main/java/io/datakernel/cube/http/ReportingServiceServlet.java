@@ -19,6 +19,7 @@ package io.datakernel.cube.http;
 import io.datakernel.aggregation.AggregationPredicate;
 import io.datakernel.aggregation.QueryException;
 import io.datakernel.async.Promise;
+import io.datakernel.bytebuf.ByteBuf;
 import io.datakernel.codec.StructuredCodec;
 import io.datakernel.codec.registry.CodecFactory;
 import io.datakernel.cube.CubeQuery;
@@ -39,7 +40,7 @@ import java.util.regex.Pattern;
 
 import static io.datakernel.bytebuf.ByteBufStrings.wrapUtf8;
 import static io.datakernel.codec.json.JsonUtils.fromJson;
-import static io.datakernel.codec.json.JsonUtils.toJson;
+import static io.datakernel.codec.json.JsonUtils.toJsonBuf;
 import static io.datakernel.cube.http.Utils.*;
 import static io.datakernel.http.HttpHeaderValue.ofContentType;
 import static io.datakernel.http.HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN;
@@ -99,7 +100,7 @@ public final class ReportingServiceServlet extends AsyncServletWithStats {
 			return cube.query(cubeQuery)
 					.map(queryResult -> {
 						Stopwatch resultProcessingStopwatch = Stopwatch.createStarted();
-						String json = toJson(getQueryResultCodec(), queryResult);
+						ByteBuf json = toJsonBuf(getQueryResultCodec(), queryResult);
 						HttpResponse httpResponse = createResponse(json);
 						logger.info("Processed request {} ({}) [totalTime={}, jsonConstruction={}]", httpRequest,
 								cubeQuery, totalTimeStopwatch, resultProcessingStopwatch);
@@ -114,10 +115,10 @@ public final class ReportingServiceServlet extends AsyncServletWithStats {
 		}
 	}
 
-	private static HttpResponse createResponse(String body) {
+	private static HttpResponse createResponse(ByteBuf body) {
 		HttpResponse response = HttpResponse.ok200();
 		response.addHeader(CONTENT_TYPE, ofContentType(ContentType.of(MediaTypes.JSON, StandardCharsets.UTF_8)));
-		response.setBody(wrapUtf8(body));
+		response.setBody(body);
 		response.addHeader(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
 		return response;
 	}
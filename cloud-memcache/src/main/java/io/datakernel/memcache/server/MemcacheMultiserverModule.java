@@ -0,0 +1,94 @@
+package io.datakernel.memcache.server;
+
+import io.datakernel.async.Promise;
+import io.datakernel.config.Config;
+import io.datakernel.di.annotation.Provides;
+import io.datakernel.di.module.AbstractModule;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.eventloop.PrimaryServer;
+import io.datakernel.memcache.protocol.MemcacheRpcMessage.Slice;
+import io.datakernel.memcache.server.ShardedRingBuffer.Shard;
+import io.datakernel.rpc.server.RpcServer;
+import io.datakernel.worker.Worker;
+import io.datakernel.worker.WorkerId;
+import io.datakernel.worker.WorkerPool;
+import io.datakernel.worker.WorkerPools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static io.datakernel.config.ConfigConverters.*;
+import static io.datakernel.memcache.protocol.MemcacheRpcMessage.*;
+import static io.datakernel.memcache.server.MemcacheServerModule.createRingBuffer;
+import static io.datakernel.memcache.server.MemcacheServerModule.withSettings;
+import static io.datakernel.rpc.server.RpcServer.DEFAULT_SERVER_SOCKET_SETTINGS;
+
+/**
+ * A multi-core variant of {@link MemcacheServerModule}.
+ * <p>
+ * Connections are accepted by a {@link PrimaryServer} and distributed between worker {@link RpcServer RpcServers},
+ * each of which runs in its own eventloop and owns a partition of a {@link ShardedRingBuffer}.
+ * Sizes of ring buffers are configured per worker, mapped ring buffers of workers are kept in subdirectories
+ * of {@code memcache.path}, so the number of workers should be kept between restarts for the cache to be warm.
+ * <p>
+ * It should be combined with {@code WorkerPoolModule}.
+ */
+public class MemcacheMultiserverModule extends AbstractModule {
+	private MemcacheMultiserverModule() {}
+
+	public static MemcacheMultiserverModule create() {
+		return new MemcacheMultiserverModule();
+	}
+
+	@Provides
+	Eventloop primaryEventloop() {
+		return Eventloop.create();
+	}
+
+	@Provides
+	@Worker
+	Eventloop workerEventloop() {
+		return Eventloop.create();
+	}
+
+	@Provides
+	WorkerPool workerPool(WorkerPools workerPools, Config config) {
+		return workerPools.createPool(config.get(ofInteger(), "memcache.workers", Runtime.getRuntime().availableProcessors()));
+	}
+
+	@Provides
+	@Worker
+	RingBuffer ringBuffer(Config config, @WorkerId int workerId) throws IOException {
+		Path path = config.get(ofPath(), "memcache.path", null);
+		return createRingBuffer(config, path != null ? path.resolve("worker-" + workerId) : null);
+	}
+
+	@Provides
+	ShardedRingBuffer shardedRingBuffer(WorkerPool workerPool) {
+		return ShardedRingBuffer.create(
+				workerPool.getInstances(Eventloop.class).getList(),
+				workerPool.getInstances(RingBuffer.class).getList());
+	}
+
+	@Provides
+	@Worker
+	RpcServer workerServer(Eventloop eventloop, @WorkerId int workerId, ShardedRingBuffer storage, Config config) {
+		Shard shard = storage.getShard(workerId);
+		return withSettings(RpcServer.create(eventloop), config)
+				.withHandler(GetRequest.class, GetResponse.class,
+						request -> shard.get(request.getKey()).map(GetResponse::new))
+				.withHandler(PutRequest.class, PutResponse.class,
+						request -> {
+							Slice slice = request.getData();
+							shard.put(request.getKey(), slice.array(), slice.offset(), slice.length());
+							return Promise.of(PutResponse.INSTANCE);
+						});
+	}
+
+	@Provides
+	PrimaryServer primaryServer(Eventloop primaryEventloop, WorkerPool.Instances<RpcServer> workerServers, Config config) {
+		return PrimaryServer.create(primaryEventloop, workerServers.getList())
+				.withServerSocketSettings(config.get(ofServerSocketSettings(), "server.serverSocketSettings", DEFAULT_SERVER_SOCKET_SETTINGS))
+				.withListenAddresses(config.get(ofList(ofInetSocketAddress()), "server.listenAddresses"));
+	}
+}
@@ -11,6 +11,10 @@ import io.datakernel.memcache.protocol.SerializerGenSlice;
 import io.datakernel.rpc.server.RpcServer;
 import io.datakernel.serializer.SerializerBuilder;
 import io.datakernel.serializer.asm.SerializerGenBuilderConst;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 import static io.datakernel.config.ConfigConverters.*;
 import static io.datakernel.memcache.protocol.MemcacheRpcMessage.*;
@@ -31,16 +35,14 @@ public class MemcacheServerModule extends AbstractModule {
 	}
 
 	@Provides
-	RingBuffer ringBuffer(Config config) {
-		return RingBuffer.create(
-				config.get(ofInteger(), "memcache.buffers"),
-				config.get(ofMemSize(), "memcache.bufferCapacity").toInt());
+	RingBuffer ringBuffer(Config config) throws IOException {
+		return createRingBuffer(config, config.get(ofPath(), "memcache.path", null));
 	}
 
 	@Provides
 	@Export
 	RpcServer server(Eventloop eventloop, Config config, RingBuffer storage) {
-		return RpcServer.create(eventloop)
+		return withSettings(RpcServer.create(eventloop), config)
 				.withHandler(GetRequest.class, GetResponse.class,
 						request -> Promise.of(new GetResponse(storage.get(request.getKey()))))
 				.withHandler(PutRequest.class, PutResponse.class,
@@ -49,6 +51,27 @@ public class MemcacheServerModule extends AbstractModule {
 							storage.put(request.getKey(), slice.array(), slice.offset(), slice.length());
 							return Promise.of(PutResponse.INSTANCE);
 						})
+				.withListenAddresses(config.get(ofList(ofInetSocketAddress()), "server.listenAddresses"));
+	}
+
+	/**
+	 * Creates a ring buffer, which is mapped to files of a given directory, if it is specified,
+	 * otherwise it is kept either on heap or off-heap, depending on {@code memcache.offHeap} setting
+	 */
+	static RingBuffer createRingBuffer(Config config, @Nullable Path path) throws IOException {
+		int buffers = config.get(ofInteger(), "memcache.buffers");
+		int bufferCapacity = config.get(ofMemSize(), "memcache.bufferCapacity").toInt();
+		if (path != null) {
+			return RingBuffer.createMapped(path, buffers, bufferCapacity);
+		}
+		if (config.get(ofBoolean(), "memcache.offHeap", false)) {
+			return RingBuffer.createOffHeap(buffers, bufferCapacity);
+		}
+		return RingBuffer.create(buffers, bufferCapacity);
+	}
+
+	static RpcServer withSettings(RpcServer server, Config config) {
+		return server
 				.withSerializerBuilder(SerializerBuilder.create(ClassLoader.getSystemClassLoader())
 						.withSerializer(Slice.class, new SerializerGenBuilderConst(new SerializerGenSlice())))
 				.withMessageTypes(MESSAGE_TYPES)
@@ -57,7 +80,6 @@ public class MemcacheServerModule extends AbstractModule {
 						config.get(ofMemSize(), "protocol.packetSizeMax", kilobytes(64)),
 						config.get(ofBoolean(), "protocol.compression", false))
 				.withServerSocketSettings(config.get(ofServerSocketSettings(), "server.serverSocketSettings", DEFAULT_SERVER_SOCKET_SETTINGS))
-				.withSocketSettings(config.get(ofSocketSettings(), "server.socketSettings", DEFAULT_SOCKET_SETTINGS))
-				.withListenAddresses(config.get(ofList(ofInetSocketAddress()), "server.listenAddresses"));
+				.withSocketSettings(config.get(ofSocketSettings(), "server.socketSettings", DEFAULT_SOCKET_SETTINGS));
 	}
 }
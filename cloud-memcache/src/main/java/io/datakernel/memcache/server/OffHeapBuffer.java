@@ -0,0 +1,319 @@
+package io.datakernel.memcache.server;
+
+import io.datakernel.memcache.protocol.MemcacheRpcMessage.Slice;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link RingBuffer} segment, which keeps both data and its index outside of the heap.
+ * <p>
+ * Data is stored in a direct or a memory-mapped buffer as a log of records,
+ * each consisting of key length, data length, key and data.
+ * The header of a buffer holds its generation, timestamp and position,
+ * so that a mapped buffer may be reopened after restart, with its index rebuilt from the records.
+ * <p>
+ * The index is an open addressing hash table in a direct buffer, where each slot holds
+ * a hash of a key and an offset of its latest record.
+ */
+final class OffHeapBuffer implements RingBuffer.Buffer {
+	private static final int GENERATION_OFFSET = 0;
+	private static final int TIMESTAMP_OFFSET = 8;
+	private static final int POSITION_OFFSET = 16;
+	static final int HEADER_SIZE = 20;
+	static final int RECORD_HEADER_SIZE = 8;
+
+	private static final int INITIAL_INDEX_SLOTS = 1024;
+	private static final int SLOT_SIZE = 8;
+
+	private ByteBuffer buffer;
+	private final boolean mapped;
+	private final int capacity;
+
+	private ByteBuffer index;
+	private int indexMask;
+	private int items;
+
+	private long generation;
+	private int position;
+	private long timestamp;
+
+	private OffHeapBuffer(ByteBuffer buffer, boolean mapped) {
+		this.buffer = buffer;
+		this.mapped = mapped;
+		this.capacity = buffer.capacity() - HEADER_SIZE;
+		allocateIndex(INITIAL_INDEX_SLOTS);
+	}
+
+	static OffHeapBuffer allocate(int capacity) {
+		OffHeapBuffer buffer = new OffHeapBuffer(ByteBuffer.allocateDirect(HEADER_SIZE + capacity), false);
+		buffer.clear(0);
+		return buffer;
+	}
+
+	/**
+	 * Maps given file as a buffer of given capacity. If the file contains a buffer of the same capacity,
+	 * its data is kept and reindexed, otherwise the buffer is cleared.
+	 */
+	static OffHeapBuffer map(Path file, int capacity) throws IOException {
+		MappedByteBuffer mapped;
+		boolean existing;
+		try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+			existing = channel.size() == HEADER_SIZE + capacity;
+			mapped = channel.map(READ_WRITE, 0, HEADER_SIZE + capacity);
+		}
+		OffHeapBuffer buffer = new OffHeapBuffer(mapped, true);
+		if (!existing || !buffer.restore()) {
+			buffer.clear(0);
+		}
+		return buffer;
+	}
+
+	private boolean restore() {
+		generation = buffer.getLong(GENERATION_OFFSET);
+		timestamp = buffer.getLong(TIMESTAMP_OFFSET);
+		int position = buffer.getInt(POSITION_OFFSET);
+		if (generation < 0 || position < 0 || position > capacity) {
+			return false;
+		}
+		int offset = 0;
+		while (offset < position) {
+			int keyLength = buffer.getInt(HEADER_SIZE + offset);
+			int dataLength = buffer.getInt(HEADER_SIZE + offset + 4);
+			int recordSize = RECORD_HEADER_SIZE + keyLength + dataLength;
+			if (keyLength < 0 || dataLength < 0 || recordSize > position - offset) {
+				return false;
+			}
+			index(hashOfRecord(offset, keyLength), offset);
+			offset += recordSize;
+		}
+		this.position = position;
+		return true;
+	}
+
+	@Override
+	public void clear(long generation) {
+		for (int i = 0; i < index.capacity(); i += SLOT_SIZE) {
+			index.putLong(i, 0L);
+		}
+		items = 0;
+		this.generation = generation;
+		position = 0;
+		timestamp = currentTimeMillis();
+		buffer.putLong(GENERATION_OFFSET, generation);
+		buffer.putLong(TIMESTAMP_OFFSET, timestamp);
+		buffer.putInt(POSITION_OFFSET, 0);
+	}
+
+	@Override
+	public boolean fits(byte[] key, int length) {
+		return RECORD_HEADER_SIZE + key.length + length <= capacity - position;
+	}
+
+	@Override
+	public Slice get(byte[] key) {
+		int hash = hashOf(key);
+		for (int slot = hash & indexMask; ; slot = (slot + 1) & indexMask) {
+			int offset = index.getInt(slot * SLOT_SIZE + 4) - 1;
+			if (offset < 0) {
+				return null;
+			}
+			if (index.getInt(slot * SLOT_SIZE) == hash && keyEquals(offset, key)) {
+				int dataLength = buffer.getInt(HEADER_SIZE + offset + 4);
+				byte[] data = new byte[dataLength];
+				ByteBuffer duplicate = buffer.duplicate();
+				duplicate.position(HEADER_SIZE + offset + RECORD_HEADER_SIZE + key.length);
+				duplicate.get(data);
+				return new Slice(data);
+			}
+		}
+	}
+
+	@Override
+	public void put(byte[] key, byte[] data, int offset, int length) {
+		assert fits(key, length);
+		int recordOffset = position;
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(HEADER_SIZE + recordOffset);
+		duplicate.putInt(key.length);
+		duplicate.putInt(length);
+		duplicate.put(key);
+		duplicate.put(data, offset, length);
+		position += RECORD_HEADER_SIZE + key.length + length;
+		buffer.putInt(POSITION_OFFSET, position);
+		index(hashOf(key), recordOffset);
+	}
+
+	private void index(int hash, int recordOffset) {
+		int slot = find(hash, recordOffset);
+		if (index.getInt(slot * SLOT_SIZE + 4) == 0) {
+			if (++items > (indexMask + 1) / 2) {
+				allocateIndex((indexMask + 1) * 2);
+				slot = find(hash, recordOffset);
+			}
+		}
+		index.putInt(slot * SLOT_SIZE, hash);
+		index.putInt(slot * SLOT_SIZE + 4, recordOffset + 1);
+	}
+
+	/**
+	 * Returns a slot of a record with the same key, or an empty slot
+	 */
+	private int find(int hash, int recordOffset) {
+		int keyLength = buffer.getInt(HEADER_SIZE + recordOffset);
+		for (int slot = hash & indexMask; ; slot = (slot + 1) & indexMask) {
+			int offset = index.getInt(slot * SLOT_SIZE + 4) - 1;
+			if (offset < 0) {
+				return slot;
+			}
+			if (index.getInt(slot * SLOT_SIZE) == hash && keysEqual(offset, recordOffset, keyLength)) {
+				return slot;
+			}
+		}
+	}
+
+	private void allocateIndex(int slots) {
+		ByteBuffer oldIndex = index;
+		index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+		indexMask = slots - 1;
+		if (oldIndex == null) {
+			return;
+		}
+		for (int i = 0; i < oldIndex.capacity(); i += SLOT_SIZE) {
+			int offset = oldIndex.getInt(i + 4);
+			if (offset != 0) {
+				int hash = oldIndex.getInt(i);
+				int slot = hash & indexMask;
+				while (index.getInt(slot * SLOT_SIZE + 4) != 0) {
+					slot = (slot + 1) & indexMask;
+				}
+				index.putInt(slot * SLOT_SIZE, hash);
+				index.putInt(slot * SLOT_SIZE + 4, offset);
+			}
+		}
+	}
+
+	private boolean keyEquals(int recordOffset, byte[] key) {
+		int pos = HEADER_SIZE + recordOffset;
+		if (buffer.getInt(pos) != key.length) {
+			return false;
+		}
+		pos += RECORD_HEADER_SIZE;
+		for (int i = 0; i < key.length; i++) {
+			if (buffer.get(pos + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean keysEqual(int recordOffset1, int recordOffset2, int keyLength) {
+		if (buffer.getInt(HEADER_SIZE + recordOffset1) != keyLength) {
+			return false;
+		}
+		int pos1 = HEADER_SIZE + recordOffset1 + RECORD_HEADER_SIZE;
+		int pos2 = HEADER_SIZE + recordOffset2 + RECORD_HEADER_SIZE;
+		for (int i = 0; i < keyLength; i++) {
+			if (buffer.get(pos1 + i) != buffer.get(pos2 + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int hashOfRecord(int recordOffset, int keyLength) {
+		int pos = HEADER_SIZE + recordOffset + RECORD_HEADER_SIZE;
+		int result = 0;
+		for (int i = 0; i < keyLength; i++) {
+			result = 92821 * result + buffer.get(pos + i);
+		}
+		return mix(result);
+	}
+
+	private static int hashOf(byte[] key) {
+		int result = 0;
+		for (byte element : key) {
+			result = 92821 * result + element;
+		}
+		return mix(result);
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	@Override
+	public void flush() {
+		// direct buffers are instances of MappedByteBuffer too, but they can not be forced
+		if (mapped) {
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+
+	/**
+	 * Unmaps or frees the buffer and its index right away, rather than once they are garbage collected
+	 */
+	@Override
+	public void close() {
+		free(buffer);
+		free(index);
+		// fails any further access, rather than touching released memory
+		buffer = null;
+		index = null;
+	}
+
+	private static void free(ByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+		} catch (NoSuchMethodException e) {
+			// Java 8
+			try {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			} catch (ReflectiveOperationException | RuntimeException ignored) {
+			}
+		} catch (ReflectiveOperationException | RuntimeException ignored) {
+			// the buffer is released once it is garbage collected
+		}
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+	@Override
+	public int position() {
+		return position;
+	}
+
+	@Override
+	public long getGeneration() {
+		return generation;
+	}
+
+	@Override
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public int items() {
+		return items;
+	}
+}
@@ -6,6 +6,10 @@ import com.carrotsearch.hppc.ObjectLongHashMap;
 import io.datakernel.jmx.EventStats;
 import io.datakernel.memcache.protocol.MemcacheRpcMessage.Slice;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Arrays;
 
@@ -17,13 +21,43 @@ import static java.lang.System.currentTimeMillis;
  * The implementation to handle the big amount of date
  * It works like cache, when you use it you shouldn`t rely on result.
  * Because it can be rewritten by new date, if the written date was oversize
+ * <p>
+ * Buffers may be kept on heap, off-heap, or in memory-mapped files, see {@link #create},
+ * {@link #createOffHeap} and {@link #createMapped}
  */
-public final class RingBuffer implements RingBufferMBean {
+public final class RingBuffer implements RingBufferMBean, Closeable {
+
+	/**
+	 * A single segment of a ring buffer
+	 */
+	interface Buffer {
+		void clear(long generation);
+
+		boolean fits(byte[] key, int length);
+
+		Slice get(byte[] key);
+
+		void put(byte[] key, byte[] data, int offset, int length);
+
+		void flush();
+
+		void close();
+
+		int capacity();
+
+		int position();
+
+		long getGeneration();
+
+		long getTimestamp();
+
+		int items();
+	}
 
 	/**
 	 * The main class for the caching the byte-arrays
 	 */
-	private static class Buffer {
+	private static class HeapBuffer implements Buffer {
 		private final byte[] array;
 		private final IntLongHashMap indexInt = new IntLongHashMap();
 		private final LongLongHashMap indexLong = new LongLongHashMap();
@@ -46,12 +80,13 @@ public final class RingBuffer implements RingBufferMBean {
 		private int position = 0;
 		private long timestamp;
 
-		Buffer(int capacity) {
+		HeapBuffer(int capacity) {
 			this.array = new byte[capacity];
 			this.timestamp = currentTimeMillis();
 		}
 
-		void clear() {
+		@Override
+		public void clear(long generation) {
 			indexInt.clear();
 			indexLong.clear();
 			indexBytes.clear();
@@ -59,11 +94,26 @@ public final class RingBuffer implements RingBufferMBean {
 			timestamp = currentTimeMillis();
 		}
 
-		int capacity() {
+		@Override
+		public boolean fits(byte[] key, int length) {
+			return length <= remaining();
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public int capacity() {
 			return array.length;
 		}
 
-		int position() {
+		@Override
+		public int position() {
 			return position;
 		}
 
@@ -85,7 +135,8 @@ public final class RingBuffer implements RingBufferMBean {
 					(((long) bytes[7] & 0xff)));
 		}
 
-		Slice get(byte[] key) {
+		@Override
+		public Slice get(byte[] key) {
 			long segment;
 			if (key.length == 4) {
 				segment = indexInt.getOrDefault(intValueOf(key), -1L);
@@ -101,7 +152,8 @@ public final class RingBuffer implements RingBufferMBean {
 			return new Slice(array, offset, size);
 		}
 
-		void put(byte[] key, byte[] data, int offset, int length) {
+		@Override
+		public void put(byte[] key, byte[] data, int offset, int length) {
 			assert length <= remaining();
 			long segment = ((long) length << 32) | position;
 			if (key.length == 4) {
@@ -119,17 +171,25 @@ public final class RingBuffer implements RingBufferMBean {
 			return array.length - position;
 		}
 
-		long getTimestamp() {
+		@Override
+		public long getGeneration() {
+			return 0;
+		}
+
+		@Override
+		public long getTimestamp() {
 			return timestamp;
 		}
 
-		int items() {
+		@Override
+		public int items() {
 			return indexInt.size() + indexLong.size() + indexBytes.size();
 		}
 	}
 
 	private final Buffer[] ringBuffers;
 	private int currentBuffer = 0;
+	private long generation;
 
 	// JMX
 	private static final Duration SMOOTHING_WINDOW = Duration.ofMinutes(1);
@@ -141,13 +201,46 @@ public final class RingBuffer implements RingBufferMBean {
 	public static RingBuffer create(int amountBuffers, long bufferCapacity) {
 		Buffer[] ringBuffers = new Buffer[amountBuffers];
 		for (int i = 0; i < amountBuffers; i++) {
-			ringBuffers[i] = new Buffer((int) bufferCapacity);
+			ringBuffers[i] = new HeapBuffer((int) bufferCapacity);
+		}
+		return new RingBuffer(ringBuffers);
+	}
+
+	/**
+	 * Creates a ring buffer, which keeps its data and indexes in direct memory, outside of the heap
+	 */
+	public static RingBuffer createOffHeap(int amountBuffers, long bufferCapacity) {
+		Buffer[] ringBuffers = new Buffer[amountBuffers];
+		for (int i = 0; i < amountBuffers; i++) {
+			ringBuffers[i] = OffHeapBuffer.allocate((int) bufferCapacity);
+		}
+		return new RingBuffer(ringBuffers);
+	}
+
+	/**
+	 * Creates a ring buffer, which keeps its data in memory-mapped files of given directory.
+	 * <p>
+	 * If the directory already contains the files of a ring buffer with the same number and capacity
+	 * of buffers, the cached data is kept, and its indexes are rebuilt. So the cache survives restarts
+	 * of a process, as long as its files are not deleted.
+	 */
+	public static RingBuffer createMapped(Path directory, int amountBuffers, long bufferCapacity) throws IOException {
+		Files.createDirectories(directory);
+		Buffer[] ringBuffers = new Buffer[amountBuffers];
+		for (int i = 0; i < amountBuffers; i++) {
+			ringBuffers[i] = OffHeapBuffer.map(directory.resolve("buffer-" + i), (int) bufferCapacity);
 		}
 		return new RingBuffer(ringBuffers);
 	}
 
 	private RingBuffer(Buffer[] ringBuffers) {
 		this.ringBuffers = ringBuffers;
+		for (int i = 0; i < ringBuffers.length; i++) {
+			if (ringBuffers[i].getGeneration() > generation) {
+				generation = ringBuffers[i].getGeneration();
+				currentBuffer = i;
+			}
+		}
 	}
 
 	/**
@@ -188,16 +281,37 @@ public final class RingBuffer implements RingBufferMBean {
 	 */
 	public void put(byte[] key, byte[] data, int offset, int length) {
 		statsPuts.recordEvent();
-		if (ringBuffers[currentBuffer].remaining() < length) {
+		if (!ringBuffers[currentBuffer].fits(key, length)) {
 			if (currentBuffer == ringBuffers.length - 1) {
 				countCycles++;
 			}
 			currentBuffer = (currentBuffer + 1) % ringBuffers.length;
-			ringBuffers[currentBuffer].clear();
+			ringBuffers[currentBuffer].clear(++generation);
 		}
 		ringBuffers[currentBuffer].put(key, data, offset, length);
 	}
 
+	/**
+	 * Flushes memory-mapped buffers to their files
+	 */
+	public void flush() {
+		for (Buffer ringBuffer : ringBuffers) {
+			ringBuffer.flush();
+		}
+	}
+
+	/**
+	 * Flushes memory-mapped buffers to their files and releases off-heap memory of the buffers,
+	 * the ring buffer should not be used afterwards
+	 */
+	@Override
+	public void close() {
+		for (Buffer ringBuffer : ringBuffers) {
+			ringBuffer.flush();
+			ringBuffer.close();
+		}
+	}
+
 	private long getLifetimeMillis() {
 		return currentTimeMillis() - ringBuffers[(currentBuffer + 1) % ringBuffers.length].getTimestamp();
 	}
@@ -277,7 +391,7 @@ public final class RingBuffer implements RingBufferMBean {
 	public long getSize() {
 		long size = 0;
 		for (Buffer ringBuffer : ringBuffers) {
-			size += ringBuffer.position;
+			size += ringBuffer.position();
 		}
 		return size;
 	}
@@ -0,0 +1,140 @@
+package io.datakernel.memcache.server;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.SettablePromise;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.memcache.protocol.MemcacheRpcMessage.Slice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.datakernel.util.Preconditions.checkArgument;
+
+/**
+ * A cache which is partitioned by hash of keys between several {@link RingBuffer RingBuffers},
+ * each of which is owned by its own worker {@link Eventloop}.
+ * <p>
+ * Workers access the cache through their {@link Shard shards}. Requests for keys of another shard
+ * are forwarded to the eventloop of that shard, and responses are passed back, so that ring buffers
+ * are never accessed concurrently and no locks are needed. Forwarded tasks, which are collected
+ * during a single eventloop tick, are handed off with a single {@link Eventloop#executeAll} call.
+ */
+public final class ShardedRingBuffer {
+	private final Shard[] shards;
+
+	private ShardedRingBuffer(List<Eventloop> eventloops, List<RingBuffer> ringBuffers) {
+		this.shards = new Shard[eventloops.size()];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard(i, eventloops.get(i), ringBuffers.get(i));
+		}
+	}
+
+	public static ShardedRingBuffer create(List<Eventloop> eventloops, List<RingBuffer> ringBuffers) {
+		checkArgument(!eventloops.isEmpty() && eventloops.size() == ringBuffers.size(),
+				"There should be one ring buffer per eventloop");
+		return new ShardedRingBuffer(eventloops, ringBuffers);
+	}
+
+	public int getShardsCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Returns a shard which should be accessed from the eventloop of worker with given index
+	 */
+	public Shard getShard(int index) {
+		return shards[index];
+	}
+
+	/**
+	 * Returns an index of a shard which owns given key
+	 */
+	public int shardOf(byte[] key) {
+		int hash = Arrays.hashCode(key);
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % shards.length;
+	}
+
+	public final class Shard {
+		private final int index;
+		private final Eventloop eventloop;
+		private final RingBuffer ringBuffer;
+
+		private final List<Runnable>[] outgoing;
+		private boolean flushPosted;
+
+		@SuppressWarnings("unchecked")
+		private Shard(int index, Eventloop eventloop, RingBuffer ringBuffer) {
+			this.index = index;
+			this.eventloop = eventloop;
+			this.ringBuffer = ringBuffer;
+			this.outgoing = new List[shards.length];
+			for (int i = 0; i < outgoing.length; i++) {
+				outgoing[i] = new ArrayList<>();
+			}
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public RingBuffer getRingBuffer() {
+			return ringBuffer;
+		}
+
+		public Promise<Slice> get(byte[] key) {
+			int owner = shardOf(key);
+			if (owner == index) {
+				return Promise.of(ringBuffer.get(key));
+			}
+			SettablePromise<Slice> result = new SettablePromise<>();
+			Shard ownerShard = shards[owner];
+			send(owner, () -> {
+				Slice slice = ownerShard.ringBuffer.get(key);
+				// the slice refers to the ring buffer of the owner, which may be overwritten after this task
+				Slice copy = slice != null ? copyOf(slice) : null;
+				ownerShard.send(index, () -> result.set(copy));
+			});
+			return result;
+		}
+
+		/**
+		 * Puts data into a cache. Data of keys which are owned by other shards is copied,
+		 * and put asynchronously, though still before any subsequent {@link #get} of this shard.
+		 */
+		public void put(byte[] key, byte[] data, int offset, int length) {
+			int owner = shardOf(key);
+			if (owner == index) {
+				ringBuffer.put(key, data, offset, length);
+				return;
+			}
+			byte[] copy = Arrays.copyOfRange(data, offset, offset + length);
+			RingBuffer ownerRingBuffer = shards[owner].ringBuffer;
+			send(owner, () -> ownerRingBuffer.put(key, copy));
+		}
+
+		private void send(int shard, Runnable task) {
+			outgoing[shard].add(task);
+			if (!flushPosted) {
+				flushPosted = true;
+				eventloop.postLater(this::flush);
+			}
+		}
+
+		private void flush() {
+			flushPosted = false;
+			for (int i = 0; i < outgoing.length; i++) {
+				List<Runnable> tasks = outgoing[i];
+				if (!tasks.isEmpty()) {
+					shards[i].eventloop.executeAll(tasks);
+					tasks.clear();
+				}
+			}
+		}
+	}
+
+	private static Slice copyOf(Slice slice) {
+		return new Slice(Arrays.copyOfRange(slice.array(), slice.offset(), slice.offset() + slice.length()));
+	}
+}
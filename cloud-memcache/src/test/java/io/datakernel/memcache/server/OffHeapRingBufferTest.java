@@ -0,0 +1,111 @@
+package io.datakernel.memcache.server;
+
+import io.datakernel.memcache.protocol.MemcacheRpcMessage.Slice;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OffHeapRingBufferTest {
+	@Rule
+	public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	@Test
+	public void testPutAndGet() {
+		RingBuffer ringBuffer = RingBuffer.createOffHeap(4, 1024 * 1024);
+		for (int i = 0; i < 10_000; i++) {
+			ringBuffer.put(key(i), value(i));
+		}
+		for (int i = 0; i < 10_000; i++) {
+			assertArrayEquals(value(i), toArray(ringBuffer.get(key(i))));
+		}
+		assertNull(ringBuffer.get(key(10_000)));
+		assertEquals(10_000, ringBuffer.getItems());
+		ringBuffer.close();
+	}
+
+	@Test
+	public void testReplaceKey() {
+		RingBuffer ringBuffer = RingBuffer.createOffHeap(2, 1024);
+		byte[] key = "key".getBytes();
+		ringBuffer.put(key, "first".getBytes());
+		ringBuffer.put(key, "second".getBytes());
+
+		assertArrayEquals("second".getBytes(), toArray(ringBuffer.get(key)));
+		assertEquals(1, ringBuffer.getItems());
+	}
+
+	@Test
+	public void testEviction() {
+		int bufferCapacity = 100;
+		RingBuffer ringBuffer = RingBuffer.createOffHeap(2, bufferCapacity);
+		byte[] item = new byte[bufferCapacity - OffHeapBuffer.RECORD_HEADER_SIZE - key(0).length];
+		for (int i = 0; i < 3; i++) {
+			ringBuffer.put(key(i), item);
+		}
+
+		assertNull(ringBuffer.get(key(0)));
+		assertNotNull(ringBuffer.get(key(1)));
+		assertNotNull(ringBuffer.get(key(2)));
+		assertEquals(1, ringBuffer.getFullCycles());
+	}
+
+	@Test
+	public void testWarmStart() throws Exception {
+		Path path = tmpFolder.newFolder().toPath();
+		int bufferCapacity = 64 * 1024;
+
+		RingBuffer ringBuffer = RingBuffer.createMapped(path, 3, bufferCapacity);
+		// fills the ring more than once, so that the current buffer is not the first one
+		for (int i = 0; i < 20_000; i++) {
+			ringBuffer.put(key(i), value(i));
+		}
+		ringBuffer.put(key(0), "latest".getBytes());
+		long size = ringBuffer.getSize();
+		int items = ringBuffer.getItems();
+		ringBuffer.close();
+
+		RingBuffer restored = RingBuffer.createMapped(path, 3, bufferCapacity);
+		assertEquals(size, restored.getSize());
+		assertEquals(items, restored.getItems());
+		assertArrayEquals("latest".getBytes(), toArray(restored.get(key(0))));
+		assertArrayEquals(value(19_999), toArray(restored.get(key(19_999))));
+		assertNull(restored.get(key(1)));
+
+		restored.put(key(20_000), value(20_000));
+		assertArrayEquals(value(20_000), toArray(restored.get(key(20_000))));
+		assertArrayEquals(value(19_999), toArray(restored.get(key(19_999))));
+		restored.close();
+	}
+
+	@Test
+	public void testChangedCapacityClearsBuffers() throws Exception {
+		Path path = tmpFolder.newFolder().toPath();
+
+		RingBuffer ringBuffer = RingBuffer.createMapped(path, 2, 1024);
+		ringBuffer.put(key(1), value(1));
+		ringBuffer.close();
+
+		RingBuffer restored = RingBuffer.createMapped(path, 2, 2048);
+		assertNull(restored.get(key(1)));
+		assertEquals(0, restored.getItems());
+		restored.close();
+	}
+
+	private static byte[] key(int i) {
+		return new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i, (byte) (i % 7)};
+	}
+
+	private static byte[] value(int i) {
+		return ("value" + i).getBytes();
+	}
+
+	private static byte[] toArray(Slice slice) {
+		assertNotNull(slice);
+		return Arrays.copyOfRange(slice.array(), slice.offset(), slice.offset() + slice.length());
+	}
+}
@@ -0,0 +1,108 @@
+package io.datakernel.memcache.server;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.memcache.protocol.MemcacheRpcMessage.Slice;
+import io.datakernel.memcache.server.ShardedRingBuffer.Shard;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShardedRingBufferTest {
+	private static final int SHARDS = 4;
+	private static final int KEYS = 1000;
+
+	private final List<Eventloop> eventloops = new ArrayList<>();
+	private final List<RingBuffer> ringBuffers = new ArrayList<>();
+	private final List<Thread> threads = new ArrayList<>();
+	private ShardedRingBuffer storage;
+
+	@Before
+	public void setUp() {
+		for (int i = 0; i < SHARDS; i++) {
+			Eventloop eventloop = Eventloop.create();
+			eventloop.keepAlive(true);
+			eventloops.add(eventloop);
+			ringBuffers.add(RingBuffer.create(2, 64 * 1024));
+			Thread thread = new Thread(eventloop);
+			thread.start();
+			threads.add(thread);
+		}
+		storage = ShardedRingBuffer.create(eventloops, ringBuffers);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		for (Eventloop eventloop : eventloops) {
+			eventloop.execute(() -> eventloop.keepAlive(false));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	@Test
+	public void testPutAndGetFromOtherShards() throws Exception {
+		eventloops.get(0).submit(() -> {
+			Shard shard = storage.getShard(0);
+			for (int i = 0; i < KEYS; i++) {
+				byte[] value = value(i);
+				shard.put(key(i), value, 0, value.length);
+			}
+		}).get();
+
+		// gets of the first shard follow its puts, so the puts are complete before other shards are checked
+		for (int s = 0; s < SHARDS; s++) {
+			Shard shard = storage.getShard(s);
+			List<Slice> slices = eventloops.get(s).submit(() -> {
+				List<Promise<Slice>> promises = new ArrayList<>();
+				for (int i = 0; i < KEYS; i++) {
+					promises.add(shard.get(key(i)));
+				}
+				return Promises.toList(promises);
+			}).get();
+
+			for (int i = 0; i < KEYS; i++) {
+				Slice slice = slices.get(i);
+				assertArrayEquals(value(i), Arrays.copyOfRange(slice.array(), slice.offset(), slice.offset() + slice.length()));
+			}
+		}
+
+		for (int s = 0; s < SHARDS; s++) {
+			assertTrue(ringBuffers.get(s).getItems() > 0);
+		}
+		assertEquals(KEYS, ringBuffers.stream().mapToInt(RingBuffer::getItems).sum());
+	}
+
+	@Test
+	public void testMissingKey() throws Exception {
+		for (int s = 0; s < SHARDS; s++) {
+			Shard shard = storage.getShard(s);
+			List<Slice> slices = eventloops.get(s).submit(() -> {
+				List<Promise<Slice>> promises = new ArrayList<>();
+				for (int i = 0; i < SHARDS * 4; i++) {
+					promises.add(shard.get(key(i)));
+				}
+				return Promises.toList(promises);
+			}).get();
+			for (Slice slice : slices) {
+				assertNull(slice);
+			}
+		}
+	}
+
+	private static byte[] key(int i) {
+		return new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+	}
+
+	private static byte[] value(int i) {
+		return ("value" + i).getBytes();
+	}
+}
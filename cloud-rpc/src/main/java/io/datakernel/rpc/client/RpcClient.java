@@ -31,12 +31,14 @@ import io.datakernel.jmx.JmxAttribute;
 import io.datakernel.jmx.JmxOperation;
 import io.datakernel.jmx.JmxReducers.JmxReducerSum;
 import io.datakernel.net.SocketSettings;
+import io.datakernel.rpc.client.jmx.RpcBatchStats;
 import io.datakernel.rpc.client.jmx.RpcConnectStats;
 import io.datakernel.rpc.client.jmx.RpcRequestStats;
 import io.datakernel.rpc.client.sender.RpcSender;
 import io.datakernel.rpc.client.sender.RpcStrategies;
 import io.datakernel.rpc.client.sender.RpcStrategy;
 import io.datakernel.rpc.protocol.RpcMessage;
+import io.datakernel.rpc.protocol.RpcRawData;
 import io.datakernel.rpc.protocol.RpcStream;
 import io.datakernel.rpc.server.RpcServer;
 import io.datakernel.serializer.BinarySerializer;
@@ -55,6 +57,7 @@ import java.util.concurrent.Executor;
 
 import static io.datakernel.eventloop.AsyncSslSocket.wrapClientSocket;
 import static io.datakernel.util.Preconditions.*;
+import static java.util.Collections.emptyList;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -98,6 +101,7 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 	private MemSize maxPacketSize = MAX_PACKET_SIZE;
 	private boolean compression = false;
 	private Duration autoFlushInterval = Duration.ZERO;
+	private boolean rawMessages = false;
 
 	private List<Class<?>> messageTypes;
 	private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT.toMillis();
@@ -117,7 +121,17 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 
 	private boolean running;
 
-	private final RpcClientConnectionPool pool = address -> connections.get(address);
+	private final RpcClientConnectionPool pool = new RpcClientConnectionPool() {
+		@Override
+		public RpcSender get(@NotNull InetSocketAddress address) {
+			return connections.get(address);
+		}
+
+		@Override
+		public RpcBatchStats ensureBatchStats(@NotNull Class<?> requestType) {
+			return ensureBatchStatsPerClass(requestType);
+		}
+	};
 
 	// jmx
 	static final Duration SMOOTHING_WINDOW = Duration.ofMinutes(1);
@@ -126,6 +140,7 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 	private final RpcConnectStats generalConnectsStats = new RpcConnectStats();
 	private final Map<Class<?>, RpcRequestStats> requestStatsPerClass = new HashMap<>();
 	private final Map<InetSocketAddress, RpcConnectStats> connectsStatsPerAddress = new HashMap<>();
+	private final Map<Class<?>, RpcBatchStats> batchStatsPerClass = new HashMap<>();
 	private final ExceptionStats lastProtocolError = ExceptionStats.create();
 
 	private final JmxInspector statsSocket = new JmxInspector();
@@ -229,6 +244,21 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 		return this;
 	}
 
+	/**
+	 * Makes the client receive responses of message types as {@link RpcRawData},
+	 * without deserializing them, and send {@code RpcRawData} requests as is.
+	 * Other requests are serialized as usual.
+	 * <p>
+	 * It is intended for proxies, see {@link RpcServer#withRawMessages()}.
+	 * A receiver of an {@code RpcRawData} response should recycle it.
+	 *
+	 * @return the RPC client in raw mode
+	 */
+	public RpcClient withRawMessages() {
+		this.rawMessages = true;
+		return this;
+	}
+
 	/**
 	 * Waits for a specified time before connecting.
 	 *
@@ -282,14 +312,15 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 	@Override
 	public Promise<Void> start() {
 		checkState(eventloop.inEventloopThread(), "Not in eventloop thread");
-		checkNotNull(messageTypes, "Message types must be specified");
+		checkState(messageTypes != null || rawMessages, "Message types must be specified");
 		checkState(!running, "Already running");
 
 		return Promise.ofCallback(cb -> {
 			running = true;
 			startCallback = cb;
 
-			serializer = serializerBuilder.withSubclasses(RpcMessage.MESSAGE_TYPES, messageTypes).build(RpcMessage.class);
+			serializer = serializerBuilder.withSubclasses(RpcMessage.MESSAGE_TYPES, messageTypes != null ? messageTypes : emptyList())
+					.build(RpcMessage.class);
 
 			if (forceStart) {
 				startCallback.set(null);
@@ -356,7 +387,7 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 							asyncTcpSocketImpl :
 							wrapClientSocket(asyncTcpSocketImpl, sslContext, sslExecutor);
 					RpcStream stream = new RpcStream(socket, serializer, defaultPacketSize, maxPacketSize,
-							autoFlushInterval, compression, false); // , statsSerializer, statsDeserializer, statsCompressor, statsDecompressor);
+							autoFlushInterval, compression, false, rawMessages); // , statsSerializer, statsDeserializer, statsCompressor, statsDecompressor);
 					RpcClientConnection connection = new RpcClientConnection(eventloop, this, address, stream);
 					stream.setListener(connection);
 
@@ -564,6 +595,11 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 		return connectsStatsPerAddress;
 	}
 
+	@JmxAttribute(description = "stats of batches sent by batching strategies, distributed by request class")
+	public Map<Class<?>, RpcBatchStats> getBatchStatsPerClass() {
+		return batchStatsPerClass;
+	}
+
 	@JmxAttribute(description = "request stats for current connections (when connection is closed stats are removed)")
 	public Map<InetSocketAddress, RpcClientConnection> getRequestStatsPerConnection() {
 		return connections;
@@ -620,4 +656,11 @@ public final class RpcClient implements IRpcClient, EventloopService, Initializa
 		}
 		return requestStatsPerClass.get(requestClass);
 	}
+
+	RpcBatchStats ensureBatchStatsPerClass(Class<?> requestClass) {
+		if (!batchStatsPerClass.containsKey(requestClass)) {
+			batchStatsPerClass.put(requestClass, RpcBatchStats.create(SMOOTHING_WINDOW));
+		}
+		return batchStatsPerClass.get(requestClass);
+	}
 }
@@ -16,6 +16,8 @@
 
 package io.datakernel.rpc.client;
 
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.LongObjectHashMap;
 import io.datakernel.async.Callback;
 import io.datakernel.eventloop.Eventloop;
 import io.datakernel.exception.AsyncTimeoutException;
@@ -34,10 +36,9 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static io.datakernel.rpc.client.IRpcClient.RPC_OVERLOAD_EXCEPTION;
@@ -47,6 +48,7 @@ import static org.slf4j.LoggerFactory.getLogger;
 public final class RpcClientConnection implements RpcStream.Listener, RpcSender, JmxRefreshable {
 	private static final Logger logger = getLogger(RpcClientConnection.class);
 	private static final int BUCKET_CAPACITY = ApplicationSettings.getInt(RpcClientConnection.class, "bucketCapacity", 16);
+	private static final long EXPIRATION_RESOLUTION = ApplicationSettings.getDuration(RpcClientConnection.class, "expirationResolution", Duration.ofMillis(10)).toMillis();
 
 	private StreamDataAcceptor<RpcMessage> downstreamDataAcceptor;
 	private boolean overloaded = false;
@@ -57,15 +59,24 @@ public final class RpcClientConnection implements RpcStream.Listener, RpcSender,
 	private final RpcClient rpcClient;
 	private final RpcStream stream;
 	private final InetSocketAddress address;
-	private final Map<Integer, Callback<?>> activeRequests = new HashMap<>();
-	private final Map<Long, ExpirationList> expirationLists = new HashMap<>();
-
-	private static final class ExpirationList {
+	private final IntObjectHashMap<Callback<?>> activeRequests = new IntObjectHashMap<>();
+
+	/**
+	 * Cookies of requests with timeouts, grouped into slots of {@link #EXPIRATION_RESOLUTION} ms,
+	 * so that a request may expire up to one slot later than its timeout.
+	 * Expired lists are reused for subsequent slots.
+	 */
+	private final LongObjectHashMap<ExpirationList> expirationLists = new LongObjectHashMap<>();
+	private final ArrayDeque<ExpirationList> freeExpirationLists = new ArrayDeque<>();
+
+	private final class ExpirationList implements Runnable {
+		private long timestamp;
 		private int size;
-		private int[] cookies;
+		private int[] cookies = new int[BUCKET_CAPACITY];
 
-		ExpirationList(int[] cookies) {
-			this.cookies = cookies;
+		@Override
+		public void run() {
+			expire(this);
 		}
 	}
 
@@ -110,33 +121,7 @@ public final class RpcClientConnection implements RpcStream.Listener, RpcSender,
 			}
 
 			if (timeout != Integer.MAX_VALUE) {
-				ExpirationList list = expirationLists.computeIfAbsent(eventloop.currentTimeMillis() + timeout, t -> {
-					ExpirationList l = new ExpirationList(new int[BUCKET_CAPACITY]);
-					eventloop.scheduleBackground(t, () -> {
-						expirationLists.remove(t);
-
-						for (int i = 0; i < l.size; i++) {
-							Callback<?> expiredCb = activeRequests.remove(l.cookies[i]);
-							if (expiredCb != null) {
-								// jmx
-								connectionStats.getExpiredRequests().recordEvent();
-								rpcClient.getGeneralRequestsStats().getExpiredRequests().recordEvent();
-
-								expiredCb.accept(null, RPC_TIMEOUT_EXCEPTION);
-							}
-						}
-
-						if (serverClosing && activeRequests.size() == 0) {
-							shutdown();
-						}
-					});
-					return l;
-				});
-
-				if (list.size >= list.cookies.length) {
-					list.cookies = Arrays.copyOf(list.cookies, list.cookies.length * 2);
-				}
-				list.cookies[list.size++] = cookie;
+				addExpiration(cookie, eventloop.currentTimeMillis() + timeout);
 			}
 
 			activeRequests.put(cookie, cb);
@@ -171,6 +156,42 @@ public final class RpcClientConnection implements RpcStream.Listener, RpcSender,
 		}
 	}
 
+	private void addExpiration(int cookie, long timestamp) {
+		long slotTimestamp = (timestamp + EXPIRATION_RESOLUTION - 1) / EXPIRATION_RESOLUTION * EXPIRATION_RESOLUTION;
+		ExpirationList list = expirationLists.get(slotTimestamp);
+		if (list == null) {
+			list = freeExpirationLists.isEmpty() ? new ExpirationList() : freeExpirationLists.pop();
+			list.timestamp = slotTimestamp;
+			expirationLists.put(slotTimestamp, list);
+			eventloop.scheduleBackground(slotTimestamp, list);
+		}
+		if (list.size == list.cookies.length) {
+			list.cookies = Arrays.copyOf(list.cookies, list.cookies.length * 2);
+		}
+		list.cookies[list.size++] = cookie;
+	}
+
+	private void expire(ExpirationList list) {
+		expirationLists.remove(list.timestamp);
+
+		for (int i = 0; i < list.size; i++) {
+			Callback<?> expiredCb = activeRequests.remove(list.cookies[i]);
+			if (expiredCb != null) {
+				// jmx
+				connectionStats.getExpiredRequests().recordEvent();
+				rpcClient.getGeneralRequestsStats().getExpiredRequests().recordEvent();
+
+				expiredCb.accept(null, RPC_TIMEOUT_EXCEPTION);
+			}
+		}
+		list.size = 0;
+		freeExpirationLists.push(list);
+
+		if (serverClosing && activeRequests.isEmpty()) {
+			shutdown();
+		}
+	}
+
 	private <I, O> Callback<O> doJmxMonitoring(I request, int timeout, @NotNull Callback<O> cb) {
 		RpcRequestStats requestStatsPerClass = rpcClient.ensureRequestStatsPerClass(request.getClass());
 		requestStatsPerClass.getTotalRequests().recordEvent();
@@ -195,10 +216,15 @@ public final class RpcClientConnection implements RpcStream.Listener, RpcSender,
 		} else {
 			@SuppressWarnings("unchecked")
 			Callback<Object> cb = (Callback<Object>) activeRequests.remove(message.getCookie());
-			if (cb == null) return;
+			if (cb == null) {
+				if (message.getData() instanceof RpcRawData) {
+					((RpcRawData) message.getData()).recycle();
+				}
+				return;
+			}
 
 			cb.accept(message.getData(), null);
-			if (serverClosing && activeRequests.size() == 0) {
+			if (serverClosing && activeRequests.isEmpty()) {
 				shutdown();
 			}
 		}
@@ -222,7 +248,7 @@ public final class RpcClientConnection implements RpcStream.Listener, RpcSender,
 		if (controlMessage == RpcControlMessage.CLOSE) {
 			rpcClient.removeConnection(address);
 			serverClosing = true;
-			if (activeRequests.size() == 0) {
+			if (activeRequests.isEmpty()) {
 				shutdown();
 			}
 		} else {
@@ -268,9 +294,10 @@ public final class RpcClientConnection implements RpcStream.Listener, RpcSender,
 		rpcClient.removeConnection(address);
 
 		while (!activeRequests.isEmpty()) {
-			for (Integer cookie : new HashSet<>(activeRequests.keySet())) {
-				Callback<?> cb = activeRequests.remove(cookie);
-				cb.accept(null, CONNECTION_CLOSED);
+			Object[] callbacks = activeRequests.values().toArray();
+			activeRequests.clear();
+			for (Object cb : callbacks) {
+				((Callback<?>) cb).accept(null, CONNECTION_CLOSED);
 			}
 		}
 	}
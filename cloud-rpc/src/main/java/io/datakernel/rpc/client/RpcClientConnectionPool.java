@@ -16,6 +16,7 @@
 
 package io.datakernel.rpc.client;
 
+import io.datakernel.rpc.client.jmx.RpcBatchStats;
 import io.datakernel.rpc.client.sender.RpcSender;
 import org.jetbrains.annotations.NotNull;
 
@@ -30,4 +31,12 @@ public interface RpcClientConnectionPool {
 	 * @return connection for specified address or null if there is no such connection
 	 */
 	RpcSender get(@NotNull InetSocketAddress address);
+
+	/**
+	 * Returns stats which batches of requests of specified type are recorded to
+	 *
+	 * @param requestType type of batched requests
+	 * @return stats of batches of requests of specified type
+	 */
+	RpcBatchStats ensureBatchStats(@NotNull Class<?> requestType);
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc.client.jmx;
+
+import io.datakernel.jmx.EventStats;
+import io.datakernel.jmx.JmxAttribute;
+import io.datakernel.jmx.JmxRefreshable;
+import io.datakernel.jmx.ValueStats;
+
+import java.time.Duration;
+
+import static io.datakernel.jmx.ValueStats.POWERS_OF_TWO;
+
+public final class RpcBatchStats implements JmxRefreshable {
+	private final EventStats batches;
+	private final ValueStats batchSize;
+	private final ValueStats batchDelay;
+
+	private RpcBatchStats(Duration smoothingWindow) {
+		batches = EventStats.create(smoothingWindow);
+		batchSize = ValueStats.create(smoothingWindow).withHistogram(POWERS_OF_TWO);
+		batchDelay = ValueStats.create(smoothingWindow).withHistogram(POWERS_OF_TWO).withUnit("milliseconds");
+	}
+
+	public static RpcBatchStats create(Duration smoothingWindow) {
+		return new RpcBatchStats(smoothingWindow);
+	}
+
+	public void recordBatch(int size, int delay) {
+		batches.recordEvent();
+		batchSize.recordValue(size);
+		batchDelay.recordValue(delay);
+	}
+
+	@Override
+	public void refresh(long timestamp) {
+		batches.refresh(timestamp);
+		batchSize.refresh(timestamp);
+		batchDelay.refresh(timestamp);
+	}
+
+	@JmxAttribute(extraSubAttributes = "totalCount")
+	public EventStats getBatches() {
+		return batches;
+	}
+
+	@JmxAttribute(description = "number of requests in a batch", extraSubAttributes = "histogram")
+	public ValueStats getBatchSize() {
+		return batchSize;
+	}
+
+	@JmxAttribute(
+			description = "latency added to the first request of a batch, which waits for other requests (in milliseconds)",
+			extraSubAttributes = "histogram"
+	)
+	public ValueStats getBatchDelay() {
+		return batchDelay;
+	}
+}
@@ -120,5 +120,8 @@ public final class RpcStrategies {
 	public static RpcStrategyRandomSampling randomSampling() {
 		return RpcStrategyRandomSampling.create();
 	}
-}
 
+	public static RpcStrategyBatching batching(Class<?> requestType, RpcStrategy strategy) {
+		return RpcStrategyBatching.create(requestType, strategy);
+	}
+}
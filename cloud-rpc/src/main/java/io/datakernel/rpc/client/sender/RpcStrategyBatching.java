@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc.client.sender;
+
+import io.datakernel.async.Callback;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.eventloop.ScheduledRunnable;
+import io.datakernel.rpc.client.RpcClient;
+import io.datakernel.rpc.client.RpcClientConnectionPool;
+import io.datakernel.rpc.client.jmx.RpcBatchStats;
+import io.datakernel.rpc.protocol.RpcBatchRequest;
+import io.datakernel.rpc.protocol.RpcBatchResponse;
+import io.datakernel.rpc.protocol.RpcRemoteException;
+import io.datakernel.util.ApplicationSettings;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static io.datakernel.eventloop.Eventloop.getCurrentEventloop;
+import static io.datakernel.rpc.client.IRpcClient.RPC_TIMEOUT_EXCEPTION;
+import static io.datakernel.util.Preconditions.checkArgument;
+import static io.datakernel.util.Preconditions.checkNotNull;
+
+/**
+ * A strategy which coalesces requests of a given type into {@link RpcBatchRequest RpcBatchRequests},
+ * and passes other requests to its sub-strategy as is.
+ * <p>
+ * A batch is sent once it contains {@code maxBatchSize} requests, or when the batch window has passed
+ * since its first request. With zero batch window, requests which are sent during a single eventloop
+ * tick are coalesced. A batch is sent with the latest timeout of its requests,
+ * while each of the requests still fails by its own timeout.
+ * <p>
+ * It should be applied to strategies of individual servers (e.g. within sharding), so that requests
+ * are routed before being batched. Both {@code RpcBatchRequest} and
+ * {@link RpcBatchResponse} should be included into message types of an RPC client and its servers.
+ * <p>
+ * Stats of batches are published by the RPC client, see {@link RpcClient#getBatchStatsPerClass()}.
+ */
+public final class RpcStrategyBatching implements RpcStrategy {
+	public static final int DEFAULT_MAX_BATCH_SIZE = ApplicationSettings.getInt(RpcStrategyBatching.class, "maxBatchSize", 64);
+	public static final Duration DEFAULT_BATCH_WINDOW = ApplicationSettings.getDuration(RpcStrategyBatching.class, "batchWindow", Duration.ZERO);
+
+	private final RpcStrategy strategy;
+	private final Class<?> requestType;
+	private final int maxBatchSize;
+	private final long batchWindowMillis;
+
+	private RpcStrategyBatching(RpcStrategy strategy, Class<?> requestType, int maxBatchSize, long batchWindowMillis) {
+		this.strategy = strategy;
+		this.requestType = requestType;
+		this.maxBatchSize = maxBatchSize;
+		this.batchWindowMillis = batchWindowMillis;
+	}
+
+	public static RpcStrategyBatching create(Class<?> requestType, RpcStrategy strategy) {
+		return new RpcStrategyBatching(checkNotNull(strategy), checkNotNull(requestType),
+				DEFAULT_MAX_BATCH_SIZE, DEFAULT_BATCH_WINDOW.toMillis());
+	}
+
+	public RpcStrategyBatching withMaxBatchSize(int maxBatchSize) {
+		checkArgument(maxBatchSize > 0, "Max batch size should be positive");
+		return new RpcStrategyBatching(strategy, requestType, maxBatchSize, batchWindowMillis);
+	}
+
+	public RpcStrategyBatching withBatchWindow(Duration batchWindow) {
+		checkArgument(!batchWindow.isNegative(), "Batch window should not be negative");
+		return new RpcStrategyBatching(strategy, requestType, maxBatchSize, batchWindow.toMillis());
+	}
+
+	@Override
+	public Set<InetSocketAddress> getAddresses() {
+		return strategy.getAddresses();
+	}
+
+	@Nullable
+	@Override
+	public RpcSender createSender(RpcClientConnectionPool pool) {
+		RpcSender sender = strategy.createSender(pool);
+		if (sender == null) {
+			return null;
+		}
+		return new Sender(getCurrentEventloop(), sender, requestType, maxBatchSize, batchWindowMillis,
+				pool.ensureBatchStats(requestType));
+	}
+
+	static final class Sender implements RpcSender {
+		private final Eventloop eventloop;
+		private final RpcSender sender;
+		private final Class<?> requestType;
+		private final int maxBatchSize;
+		private final long batchWindowMillis;
+		private final RpcBatchStats stats;
+
+		private List<Item> items = new ArrayList<>();
+		private long firstTimestamp;
+		private int batch;
+
+		Sender(Eventloop eventloop, RpcSender sender, Class<?> requestType, int maxBatchSize, long batchWindowMillis,
+				RpcBatchStats stats) {
+			this.eventloop = eventloop;
+			this.sender = sender;
+			this.requestType = requestType;
+			this.maxBatchSize = maxBatchSize;
+			this.batchWindowMillis = batchWindowMillis;
+			this.stats = stats;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <I, O> void sendRequest(I request, int timeout, Callback<O> cb) {
+			if (request.getClass() != requestType) {
+				sender.sendRequest(request, timeout, cb);
+				return;
+			}
+
+			if (items.isEmpty()) {
+				firstTimestamp = eventloop.currentTimeMillis();
+				scheduleFlush();
+			}
+			long deadline = timeout != Integer.MAX_VALUE ? eventloop.currentTimeMillis() + timeout : Long.MAX_VALUE;
+			items.add(new Item(request, (Callback<Object>) cb, deadline));
+
+			if (items.size() >= maxBatchSize) {
+				flush();
+			}
+		}
+
+		private void scheduleFlush() {
+			int batch = this.batch;
+			Runnable flush = () -> {
+				if (this.batch == batch) {
+					flush();
+				}
+			};
+			if (batchWindowMillis == 0) {
+				eventloop.postLater(flush);
+			} else {
+				eventloop.delayBackground(batchWindowMillis, flush);
+			}
+		}
+
+		private void flush() {
+			List<Item> items = this.items;
+			this.items = new ArrayList<>();
+			batch++;
+
+			long now = eventloop.currentTimeMillis();
+			stats.recordBatch(items.size(), (int) (now - firstTimestamp));
+
+			List<Item> batchItems = new ArrayList<>(items.size());
+			long deadline = 0;
+			for (Item item : items) {
+				if (item.deadline > now) {
+					batchItems.add(item);
+					deadline = Math.max(deadline, item.deadline);
+				} else {
+					item.cb.accept(null, RPC_TIMEOUT_EXCEPTION);
+				}
+			}
+			if (batchItems.isEmpty()) {
+				return;
+			}
+			int timeout = deadline == Long.MAX_VALUE ? Integer.MAX_VALUE : (int) (deadline - now);
+
+			if (batchItems.size() == 1) {
+				Item item = batchItems.get(0);
+				sender.sendRequest(item.request, timeout, item.cb);
+				return;
+			}
+
+			// the batch waits for the latest deadline, so the requests with earlier ones expire on their own
+			List<Object> requests = new ArrayList<>(batchItems.size());
+			for (Item item : batchItems) {
+				requests.add(item.request);
+				if (item.deadline != deadline) {
+					item.expiration = eventloop.schedule(item.deadline, () -> item.complete(null, RPC_TIMEOUT_EXCEPTION));
+				}
+			}
+
+			sender.sendRequest(new RpcBatchRequest(requests), timeout, (Callback<RpcBatchResponse>) (batchResponse, e) -> {
+				if (e == null && batchResponse.getResponses().size() != batchItems.size()) {
+					e = new RpcRemoteException("Batch response size mismatch: " +
+							batchResponse.getResponses().size() + " != " + batchItems.size());
+				}
+				if (e == null) {
+					List<Object> responses = batchResponse.getResponses();
+					for (int i = 0; i < batchItems.size(); i++) {
+						Object response = responses.get(i);
+						if (response instanceof RpcRemoteException) {
+							batchItems.get(i).complete(null, (RpcRemoteException) response);
+						} else {
+							batchItems.get(i).complete(response, null);
+						}
+					}
+				} else {
+					for (Item item : batchItems) {
+						item.complete(null, e);
+					}
+				}
+			});
+		}
+	}
+
+	private static final class Item {
+		final Object request;
+		final Callback<Object> cb;
+		final long deadline;
+		@Nullable
+		ScheduledRunnable expiration;
+		boolean complete;
+
+		Item(Object request, Callback<Object> cb, long deadline) {
+			this.request = request;
+			this.cb = cb;
+			this.deadline = deadline;
+		}
+
+		void complete(@Nullable Object result, @Nullable Throwable e) {
+			if (complete) return;
+			complete = true;
+			if (expiration != null) {
+				expiration.cancel();
+			}
+			cb.accept(result, e);
+		}
+	}
+}
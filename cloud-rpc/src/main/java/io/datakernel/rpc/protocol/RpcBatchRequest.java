@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc.protocol;
+
+import io.datakernel.serializer.annotations.Deserialize;
+import io.datakernel.serializer.annotations.Serialize;
+import io.datakernel.serializer.annotations.SerializeSubclasses;
+
+import java.util.List;
+
+/**
+ * A number of requests, which are sent as a single message.
+ * It is handled by an RPC server with handlers of individual requests,
+ * and is responded with an {@link RpcBatchResponse}.
+ * <p>
+ * Both {@code RpcBatchRequest} and {@code RpcBatchResponse} should be included into
+ * message types of an RPC client and server.
+ *
+ * @see io.datakernel.rpc.client.sender.RpcStrategyBatching
+ */
+public final class RpcBatchRequest {
+	private final List<Object> requests;
+
+	public RpcBatchRequest(@Deserialize("requests") List<Object> requests) {
+		this.requests = requests;
+	}
+
+	@Serialize(order = 0)
+	@SerializeSubclasses(path = 0, value = {}, extraSubclassesId = RpcMessage.MESSAGE_TYPES)
+	public List<Object> getRequests() {
+		return requests;
+	}
+
+	@Override
+	public String toString() {
+		return "RpcBatchRequest{requests=" + requests.size() + '}';
+	}
+}
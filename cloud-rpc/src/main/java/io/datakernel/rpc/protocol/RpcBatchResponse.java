@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc.protocol;
+
+import io.datakernel.serializer.annotations.Deserialize;
+import io.datakernel.serializer.annotations.Serialize;
+import io.datakernel.serializer.annotations.SerializeNullable;
+import io.datakernel.serializer.annotations.SerializeSubclasses;
+
+import java.util.List;
+
+/**
+ * Responses to the requests of an {@link RpcBatchRequest}, in the same order.
+ * A request which has failed is responded with an {@link RpcRemoteException}.
+ */
+public final class RpcBatchResponse {
+	private final List<Object> responses;
+
+	public RpcBatchResponse(@Deserialize("responses") List<Object> responses) {
+		this.responses = responses;
+	}
+
+	@Serialize(order = 0)
+	@SerializeNullable(path = 0)
+	@SerializeSubclasses(path = 0, value = RpcRemoteException.class, extraSubclassesId = RpcMessage.MESSAGE_TYPES)
+	public List<Object> getResponses() {
+		return responses;
+	}
+
+	@Override
+	public String toString() {
+		return "RpcBatchResponse{responses=" + responses.size() + '}';
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc.protocol;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.util.Recyclable;
+
+/**
+ * Serialized data of an {@link RpcMessage}, which is received by an RPC client or server in raw mode.
+ * <p>
+ * It is a slice of a received frame, starting with the type header of the data. When sent
+ * to another RPC stream in raw mode, it is copied to the output as is, so that requests and
+ * responses may be routed by the proxies without being deserialized and serialized again.
+ * Both ends of a proxied connection should use the same list of message types.
+ * <p>
+ * A receiver of {@code RpcRawData} owns it and should {@link #recycle()} it.
+ */
+public final class RpcRawData implements Recyclable {
+	/**
+	 * Type headers of data less than this value stand for null data,
+	 * {@link RpcControlMessage} and {@link RpcRemoteException}
+	 */
+	static final int FIRST_MESSAGE_TYPE = 2;
+
+	private final ByteBuf buf;
+	private final int pos;
+	private final int type;
+
+	RpcRawData(ByteBuf buf, int pos) {
+		this.buf = buf;
+		this.pos = pos;
+		this.type = (buf.array()[pos] & 0xFF) - FIRST_MESSAGE_TYPE;
+	}
+
+	static boolean isRawType(byte type) {
+		return type != -1 && type != 0 && type != 1;
+	}
+
+	/**
+	 * Returns an index of data class in the list of message types
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the size of serialized data, excluding its type header
+	 */
+	public int getDataSize() {
+		return buf.tail() - pos - 1;
+	}
+
+	public byte getByte(int offset) {
+		return buf.array()[pos + 1 + offset];
+	}
+
+	/**
+	 * Returns an int, serialized at given offset of data, which may be used as a routing key,
+	 * such as the first {@code int} field of a request
+	 */
+	public int getInt(int offset) {
+		byte[] array = buf.array();
+		int index = pos + 1 + offset;
+		return (array[index] & 0xFF) << 24
+				| (array[index + 1] & 0xFF) << 16
+				| (array[index + 2] & 0xFF) << 8
+				| (array[index + 3] & 0xFF);
+	}
+
+	public long getLong(int offset) {
+		return (long) getInt(offset) << 32 | getInt(offset + 4) & 0xFFFFFFFFL;
+	}
+
+	int encode(byte[] array, int pos) {
+		int size = buf.tail() - this.pos;
+		System.arraycopy(buf.array(), this.pos, array, pos, size);
+		return pos + size;
+	}
+
+	@Override
+	public void recycle() {
+		buf.recycle();
+	}
+
+	@Override
+	public String toString() {
+		return "RpcRawData{type=" + type + ", size=" + getDataSize() + '}';
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.rpc.protocol;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.csp.ChannelInput;
+import io.datakernel.csp.ChannelSupplier;
+import io.datakernel.csp.process.WithChannelToStream;
+import io.datakernel.exception.TruncatedDataException;
+import io.datakernel.serializer.BinarySerializer;
+import io.datakernel.stream.AbstractStreamSupplier;
+
+import static io.datakernel.csp.process.ChannelDeserializer.peekDataSize;
+import static io.datakernel.csp.process.ChannelDeserializer.peekHeaderSize;
+import static java.lang.String.format;
+
+/**
+ * A deserializer of {@link RpcMessage RpcMessages} for RPC streams in raw mode.
+ * <p>
+ * Only the cookie and the type header of a message are read, data of message types
+ * is passed on as {@link RpcRawData}, which is a slice of received bytes.
+ * Control messages, remote exceptions and null data are deserialized as usual.
+ */
+final class RpcRawDeserializer extends AbstractStreamSupplier<RpcMessage> implements WithChannelToStream<RpcRawDeserializer, ByteBuf, RpcMessage> {
+	private ChannelSupplier<ByteBuf> input;
+	private final BinarySerializer<RpcMessage> serializer;
+
+	private final ByteBufQueue queue = new ByteBufQueue();
+
+	RpcRawDeserializer(BinarySerializer<RpcMessage> serializer) {
+		this.serializer = serializer;
+	}
+
+	@Override
+	public ChannelInput<ByteBuf> getInput() {
+		return input -> {
+			this.input = input;
+			return getAcknowledgement();
+		};
+	}
+
+	@Override
+	protected void produce(AsyncProduceController async) {
+		async.begin();
+		while (isReceiverReady() && queue.hasRemaining()) {
+			int headerSize = peekHeaderSize(queue);
+			if (headerSize == 0)
+				break;
+			int dataSize = peekDataSize(queue, headerSize);
+
+			if (!queue.hasRemainingBytes(headerSize + dataSize))
+				break;
+
+			queue.skip(headerSize);
+			ByteBuf buf = queue.takeExactSize(dataSize);
+			byte[] array = buf.array();
+			int head = buf.head();
+			if (RpcRawData.isRawType(array[head + 4])) {
+				int cookie = (array[head] & 0xFF) << 24
+						| (array[head + 1] & 0xFF) << 16
+						| (array[head + 2] & 0xFF) << 8
+						| (array[head + 3] & 0xFF);
+				send(RpcMessage.of(cookie, new RpcRawData(buf, head + 4)));
+			} else {
+				RpcMessage message = serializer.decode(array, head);
+				buf.recycle();
+				send(message);
+			}
+		}
+
+		if (isReceiverReady()) {
+			input.get()
+					.whenResult(buf -> {
+						if (buf != null) {
+							queue.add(buf);
+							async.resume();
+						} else {
+							if (queue.isEmpty()) {
+								sendEndOfStream();
+							} else {
+								close(new TruncatedDataException(RpcRawDeserializer.class, format("Truncated serialized data stream, %s : %s", this, queue)));
+							}
+						}
+					})
+					.whenException(this::close);
+		} else {
+			async.end();
+		}
+	}
+
+	@Override
+	protected void onError(Throwable e) {
+		queue.recycle();
+		input.close(e);
+	}
+}
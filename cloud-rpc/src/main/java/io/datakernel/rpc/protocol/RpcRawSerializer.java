@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.rpc.protocol;
+
+import io.datakernel.serializer.BinarySerializer;
+import io.datakernel.serializer.util.BinaryInput;
+import io.datakernel.serializer.util.BinaryOutput;
+import io.datakernel.serializer.util.BinaryOutputUtils;
+
+/**
+ * A serializer of {@link RpcMessage RpcMessages} for RPC streams in raw mode,
+ * which copies {@link RpcRawData} to the output as is
+ */
+final class RpcRawSerializer implements BinarySerializer<RpcMessage> {
+	private final BinarySerializer<RpcMessage> serializer;
+
+	RpcRawSerializer(BinarySerializer<RpcMessage> serializer) {
+		this.serializer = serializer;
+	}
+
+	@Override
+	public int encode(byte[] array, int pos, RpcMessage item) {
+		Object data = item.getData();
+		if (data instanceof RpcRawData) {
+			pos = BinaryOutputUtils.writeInt(array, pos, item.getCookie());
+			return ((RpcRawData) data).encode(array, pos);
+		}
+		return serializer.encode(array, pos, item);
+	}
+
+	@Override
+	public void encode(BinaryOutput out, RpcMessage item) {
+		out.pos(encode(out.array(), out.pos(), item));
+	}
+
+	@Override
+	public RpcMessage decode(byte[] array, int pos) {
+		return serializer.decode(array, pos);
+	}
+
+	@Override
+	public RpcMessage decode(BinaryInput in) {
+		return serializer.decode(in);
+	}
+}
@@ -17,12 +17,14 @@
 package io.datakernel.rpc.protocol;
 
 import io.datakernel.async.Promise;
+import io.datakernel.bytebuf.ByteBuf;
 import io.datakernel.csp.ChannelConsumer;
 import io.datakernel.csp.ChannelSupplier;
 import io.datakernel.csp.process.ChannelDeserializer;
 import io.datakernel.csp.process.ChannelLZ4Compressor;
 import io.datakernel.csp.process.ChannelLZ4Decompressor;
 import io.datakernel.csp.process.ChannelSerializer;
+import io.datakernel.csp.process.WithChannelToStream;
 import io.datakernel.eventloop.AsyncTcpSocket;
 import io.datakernel.exception.CloseException;
 import io.datakernel.serializer.BinarySerializer;
@@ -61,6 +63,17 @@ public final class RpcStream {
 			BinarySerializer<RpcMessage> messageSerializer,
 			MemSize initialBufferSize, MemSize maxMessageSize,
 			Duration autoFlushInterval, boolean compression, boolean server) {
+		this(socket, messageSerializer, initialBufferSize, maxMessageSize, autoFlushInterval, compression, server, false);
+	}
+
+	/**
+	 * @param raw whether data of message types is passed on as {@link RpcRawData}
+	 *            instead of being deserialized
+	 */
+	public RpcStream(AsyncTcpSocket socket,
+			BinarySerializer<RpcMessage> messageSerializer,
+			MemSize initialBufferSize, MemSize maxMessageSize,
+			Duration autoFlushInterval, boolean compression, boolean server, boolean raw) {
 		this.server = server;
 		this.socket = socket;
 		if (this.server) {
@@ -119,12 +132,14 @@ public final class RpcStream {
 			}
 		};
 
-		ChannelSerializer<RpcMessage> serializer = ChannelSerializer.create(messageSerializer)
+		ChannelSerializer<RpcMessage> serializer = ChannelSerializer.create(raw ? new RpcRawSerializer(messageSerializer) : messageSerializer)
 				.withInitialBufferSize(initialBufferSize)
 				.withMaxMessageSize(maxMessageSize)
 				.withAutoFlushInterval(autoFlushInterval)
 				.withSkipSerializationErrors();
-		ChannelDeserializer<RpcMessage> deserializer = ChannelDeserializer.create(messageSerializer);
+		WithChannelToStream<?, ByteBuf, RpcMessage> deserializer = raw ?
+				new RpcRawDeserializer(messageSerializer) :
+				ChannelDeserializer.create(messageSerializer);
 
 		if (compression) {
 			ChannelLZ4Decompressor decompressor = ChannelLZ4Decompressor.create();
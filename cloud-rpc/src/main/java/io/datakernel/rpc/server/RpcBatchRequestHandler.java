@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc.server;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
+import io.datakernel.exception.ParseException;
+import io.datakernel.rpc.protocol.RpcBatchRequest;
+import io.datakernel.rpc.protocol.RpcBatchResponse;
+import io.datakernel.rpc.protocol.RpcRemoteException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handles each request of an {@link RpcBatchRequest} with a handler of its class,
+ * and responds with an {@link RpcBatchResponse}, in which failed requests are replaced by their exceptions.
+ */
+final class RpcBatchRequestHandler implements RpcRequestHandler<RpcBatchRequest, RpcBatchResponse> {
+	private final Map<Class<?>, RpcRequestHandler<?, ?>> handlers;
+
+	RpcBatchRequestHandler(Map<Class<?>, RpcRequestHandler<?, ?>> handlers) {
+		this.handlers = handlers;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Promise<RpcBatchResponse> run(RpcBatchRequest batchRequest) {
+		List<Object> requests = batchRequest.getRequests();
+		List<Promise<Object>> responses = new ArrayList<>(requests.size());
+		for (Object request : requests) {
+			RpcRequestHandler<Object, Object> handler = (RpcRequestHandler<Object, Object>) handlers.get(request.getClass());
+			Promise<Object> response = handler != null ?
+					handler.run(request) :
+					Promise.ofException(new ParseException(RpcBatchRequestHandler.class, "Failed to process request " + request));
+			responses.add(response
+					.mapEx((result, e) -> e == null ? result :
+							e instanceof RpcRemoteException ? e : new RpcRemoteException(e)));
+		}
+		return Promises.toList(responses).map(RpcBatchResponse::new);
+	}
+}
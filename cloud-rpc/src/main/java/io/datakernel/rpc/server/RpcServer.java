@@ -26,7 +26,9 @@ import io.datakernel.jmx.JmxReducers.JmxReducerSum;
 import io.datakernel.net.ServerSocketSettings;
 import io.datakernel.net.SocketSettings;
 import io.datakernel.rpc.client.RpcClient;
+import io.datakernel.rpc.protocol.RpcBatchRequest;
 import io.datakernel.rpc.protocol.RpcMessage;
+import io.datakernel.rpc.protocol.RpcRawData;
 import io.datakernel.rpc.protocol.RpcStream;
 import io.datakernel.serializer.BinarySerializer;
 import io.datakernel.serializer.SerializerBuilder;
@@ -38,6 +40,7 @@ import java.util.*;
 
 import static io.datakernel.util.Preconditions.*;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 
 /**
  * An RPC server that works asynchronously. This server uses fast serializers
@@ -78,6 +81,7 @@ public final class RpcServer extends AbstractServer<RpcServer> {
 	private MemSize maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
 	private boolean compression = false;
 	private Duration autoFlushInterval = Duration.ZERO;
+	private boolean rawMessages = false;
 
 	private Map<Class<?>, RpcRequestHandler<?, ?>> handlers = new LinkedHashMap<>();
 	private ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
@@ -110,6 +114,7 @@ public final class RpcServer extends AbstractServer<RpcServer> {
 	// region builders
 	private RpcServer(Eventloop eventloop) {
 		super(eventloop);
+		handlers.put(RpcBatchRequest.class, new RpcBatchRequestHandler(handlers));
 	}
 
 	public static RpcServer create(Eventloop eventloop) {
@@ -165,6 +170,22 @@ public final class RpcServer extends AbstractServer<RpcServer> {
 		return this;
 	}
 
+	/**
+	 * Makes the server receive requests of message types as {@link RpcRawData},
+	 * without deserializing them. Requests are handled by a handler for {@code RpcRawData} class,
+	 * which may return either {@code RpcRawData} or any other response.
+	 * <p>
+	 * It is intended for proxies, which route requests to other RPC servers with an
+	 * {@link RpcClient} in raw mode, and relay the responses back. Message types may be omitted,
+	 * otherwise they should match message types of both clients and upstream servers.
+	 *
+	 * @return server instance, which receives requests in raw mode
+	 */
+	public RpcServer withRawMessages() {
+		this.rawMessages = true;
+		return this;
+	}
+
 	/**
 	 * Adds a handler for a specified request-response pair.
 	 *
@@ -186,7 +207,7 @@ public final class RpcServer extends AbstractServer<RpcServer> {
 	@Override
 	protected void serve(AsyncTcpSocket socket, InetAddress remoteAddress) {
 		RpcStream stream = new RpcStream(socket, serializer, initialBufferSize, maxMessageSize,
-				autoFlushInterval, compression, true); // , statsSerializer, statsDeserializer, statsCompressor, statsDecompressor);
+				autoFlushInterval, compression, true, rawMessages); // , statsSerializer, statsDeserializer, statsCompressor, statsDecompressor);
 		RpcServerConnection connection = new RpcServerConnection(this, remoteAddress, handlers, stream);
 		stream.setListener(connection);
 		add(connection);
@@ -198,8 +219,9 @@ public final class RpcServer extends AbstractServer<RpcServer> {
 
 	@Override
 	protected void onListen() {
-		checkState(messageTypes != null, "Message types must be specified");
-		serializer = serializerBuilder.withSubclasses(RpcMessage.MESSAGE_TYPES, messageTypes).build(RpcMessage.class);
+		checkState(messageTypes != null || rawMessages, "Message types must be specified");
+		serializer = serializerBuilder.withSubclasses(RpcMessage.MESSAGE_TYPES, messageTypes != null ? messageTypes : emptyList())
+				.build(RpcMessage.class);
 	}
 
 	@Override
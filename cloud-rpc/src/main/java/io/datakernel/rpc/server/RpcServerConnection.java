@@ -21,6 +21,7 @@ import io.datakernel.exception.ParseException;
 import io.datakernel.jmx.*;
 import io.datakernel.rpc.protocol.RpcControlMessage;
 import io.datakernel.rpc.protocol.RpcMessage;
+import io.datakernel.rpc.protocol.RpcRawData;
 import io.datakernel.rpc.protocol.RpcRemoteException;
 import io.datakernel.rpc.protocol.RpcStream;
 import io.datakernel.stream.StreamDataAcceptor;
@@ -84,8 +85,15 @@ public final class RpcServerConnection implements RpcStream.Listener, JmxRefresh
 						requestHandlingTime.recordValue(value);
 						rpcServer.getRequestHandlingTime().recordValue(value);
 					}
+					// only raw data is owned by the connection, user messages are left to their handlers
+					if (messageData instanceof RpcRawData) {
+						((RpcRawData) messageData).recycle();
+					}
 					if (e == null) {
 						downstreamDataAcceptor.accept(RpcMessage.of(cookie, result));
+						if (result instanceof RpcRawData) {
+							((RpcRawData) result).recycle();
+						}
 
 						successfulRequests.recordEvent();
 						rpcServer.getSuccessfulRequests().recordEvent();
@@ -95,7 +103,8 @@ public final class RpcServerConnection implements RpcStream.Listener, JmxRefresh
 							stream.sendEndOfStream();
 						}
 					} else {
-						downstreamDataAcceptor.accept(RpcMessage.of(cookie, new RpcRemoteException(e)));
+						downstreamDataAcceptor.accept(RpcMessage.of(cookie,
+								e instanceof RpcRemoteException ? (RpcRemoteException) e : new RpcRemoteException(e)));
 
 						lastRequestHandlingException.recordException(e, messageData);
 						rpcServer.getLastRequestHandlingException().recordException(e, messageData);
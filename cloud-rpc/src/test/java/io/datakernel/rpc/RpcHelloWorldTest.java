@@ -17,6 +17,7 @@
 package io.datakernel.rpc;
 
 import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
 import io.datakernel.eventloop.Eventloop;
 import io.datakernel.rpc.client.RpcClient;
 import io.datakernel.rpc.protocol.RpcRemoteException;
@@ -36,12 +37,12 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static io.datakernel.rpc.client.IRpcClient.RPC_TIMEOUT_EXCEPTION;
 import static io.datakernel.rpc.client.sender.RpcStrategies.server;
 import static io.datakernel.test.TestUtils.assertComplete;
 import static io.datakernel.test.TestUtils.getFreePort;
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 public final class RpcHelloWorldTest {
 
@@ -78,6 +79,9 @@ public final class RpcHelloWorldTest {
 
 	private static RpcRequestHandler<HelloRequest, HelloResponse> helloServiceRequestHandler(HelloService helloService) {
 		return request -> {
+			if (request.name.equals("sleep")) {
+				return Promises.delay(SLEEP, new HelloResponse("Woke up"));
+			}
 			String result;
 			try {
 				result = helloService.hello(request.name);
@@ -133,7 +137,7 @@ public final class RpcHelloWorldTest {
 		}
 	}
 
-	private static final int PORT = getFreePort(), TIMEOUT = 1500;
+	private static final int PORT = getFreePort(), TIMEOUT = 1500, SLEEP = 500;
 	private RpcServer server;
 
 	@Before
@@ -221,6 +225,37 @@ public final class RpcHelloWorldTest {
 		}
 	}
 
+	@Test
+	public void testTimeout() throws Exception {
+		int timeout = 50;
+
+		try (BlockingHelloClient client = new BlockingHelloClient(Eventloop.getCurrentEventloop())) {
+			CountDownLatch latch = new CountDownLatch(2);
+			AtomicInteger timeouts = new AtomicInteger();
+			long start = System.currentTimeMillis();
+			long[] elapsed = new long[1];
+			client.eventloop.execute(() -> {
+				client.rpcClient.<HelloRequest, HelloResponse>sendRequest(new HelloRequest("sleep"), timeout)
+						.whenComplete(($, e) -> {
+							if (e == RPC_TIMEOUT_EXCEPTION) timeouts.incrementAndGet();
+							elapsed[0] = System.currentTimeMillis() - start;
+							latch.countDown();
+						});
+				client.rpcClient.<HelloRequest, HelloResponse>sendRequest(new HelloRequest("World"), TIMEOUT)
+						.whenComplete(($, e) -> latch.countDown())
+						.whenComplete(assertComplete(response -> assertEquals("Hello, World!", response.message)));
+			});
+			latch.await();
+
+			assertEquals(1, timeouts.get());
+			assertTrue(elapsed[0] >= timeout);
+			assertTrue(elapsed[0] < SLEEP);
+			assertEquals("Hello, John!", client.hello("John"));
+		} finally {
+			server.closeFuture().get();
+		}
+	}
+
 	@Test
 	@Ignore("this is not a test but a benchmark, takes a lot of time")
 	public void testRejectedRequests() throws Exception {
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.rpc.client.RpcClient;
+import io.datakernel.rpc.hash.ShardingFunction;
+import io.datakernel.rpc.protocol.RpcRawData;
+import io.datakernel.rpc.protocol.RpcRemoteException;
+import io.datakernel.rpc.server.RpcServer;
+import io.datakernel.serializer.annotations.Deserialize;
+import io.datakernel.serializer.annotations.Serialize;
+import io.datakernel.test.rules.ByteBufRule;
+import io.datakernel.test.rules.EventloopRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static io.datakernel.rpc.client.sender.RpcStrategies.server;
+import static io.datakernel.rpc.client.sender.RpcStrategies.sharding;
+import static io.datakernel.test.TestUtils.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public final class RpcRawProxyTest {
+	private static final int TIMEOUT = 1500;
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final EventloopRule eventloopRule = new EventloopRule();
+
+	public static class KeyRequest {
+		@Serialize(order = 0)
+		public final int key;
+
+		@Serialize(order = 1)
+		public final String name;
+
+		public KeyRequest(@Deserialize("key") int key, @Deserialize("name") String name) {
+			this.key = key;
+			this.name = name;
+		}
+	}
+
+	public static class KeyResponse {
+		@Serialize(order = 0)
+		public final String message;
+
+		public KeyResponse(@Deserialize("message") String message) {
+			this.message = message;
+		}
+	}
+
+	private final int[] upstreamPorts = {getFreePort(), getFreePort()};
+	private final int proxyPort = getFreePort();
+
+	private Eventloop eventloop;
+	private List<RpcServer> upstreams;
+	private RpcClient proxyClient;
+	private RpcServer proxy;
+	private RpcClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		eventloop = Eventloop.getCurrentEventloop();
+		upstreams = new ArrayList<>();
+		for (int i = 0; i < upstreamPorts.length; i++) {
+			int shard = i;
+			RpcServer upstream = RpcServer.create(eventloop)
+					.withMessageTypes(KeyRequest.class, KeyResponse.class)
+					.withHandler(KeyRequest.class, KeyResponse.class, request -> request.name.equals("--") ?
+							Promise.ofException(new Exception("Illegal name")) :
+							Promise.of(new KeyResponse("Hello, " + request.name + " from " + shard)))
+					.withListenPort(upstreamPorts[i]);
+			upstream.listen();
+			upstreams.add(upstream);
+		}
+
+		ShardingFunction<RpcRawData> shardingFunction = request -> request.getInt(0) % upstreamPorts.length;
+		proxyClient = RpcClient.create(eventloop)
+				.withRawMessages()
+				.withStrategy(sharding(shardingFunction,
+						server(new InetSocketAddress("127.0.0.1", upstreamPorts[0])),
+						server(new InetSocketAddress("127.0.0.1", upstreamPorts[1]))));
+		proxy = RpcServer.create(eventloop)
+				.withRawMessages()
+				.withHandler(RpcRawData.class, RpcRawData.class, request -> proxyClient.sendRequest(request, TIMEOUT))
+				.withListenPort(proxyPort);
+		proxy.listen();
+
+		client = RpcClient.create(eventloop)
+				.withMessageTypes(KeyRequest.class, KeyResponse.class)
+				.withStrategy(server(new InetSocketAddress("127.0.0.1", proxyPort)));
+
+		new Thread(eventloop).start();
+		proxyClient.startFuture().get();
+		client.startFuture().get();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.stopFuture().get();
+		proxy.closeFuture().get();
+		proxyClient.stopFuture().get();
+		for (RpcServer upstream : upstreams) {
+			upstream.closeFuture().get();
+		}
+	}
+
+	@Test
+	public void testRouting() throws Exception {
+		List<KeyResponse> responses = eventloop.submit(() -> {
+			List<Promise<KeyResponse>> promises = new ArrayList<>();
+			for (int key = 0; key < 10; key++) {
+				promises.add(client.sendRequest(new KeyRequest(key, "World" + key), TIMEOUT));
+			}
+			return Promises.toList(promises);
+		}).get();
+
+		for (int key = 0; key < 10; key++) {
+			assertEquals("Hello, World" + key + " from " + key % 2, responses.get(key).message);
+		}
+	}
+
+	@Test
+	public void testRemoteException() throws Exception {
+		try {
+			eventloop.submit(() -> client.sendRequest(new KeyRequest(1, "--"), TIMEOUT)).get();
+			fail("Exception expected");
+		} catch (ExecutionException e) {
+			assertEquals(RpcRemoteException.class, e.getCause().getClass());
+			assertEquals("java.lang.Exception: Illegal name", e.getCause().getMessage());
+		}
+	}
+}
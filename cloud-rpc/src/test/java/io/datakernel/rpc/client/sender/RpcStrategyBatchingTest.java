@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.rpc.client.sender;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.rpc.client.RpcClient;
+import io.datakernel.rpc.client.jmx.RpcBatchStats;
+import io.datakernel.rpc.protocol.RpcBatchRequest;
+import io.datakernel.rpc.protocol.RpcBatchResponse;
+import io.datakernel.rpc.protocol.RpcRemoteException;
+import io.datakernel.rpc.server.RpcServer;
+import io.datakernel.serializer.annotations.Deserialize;
+import io.datakernel.serializer.annotations.Serialize;
+import io.datakernel.test.rules.ByteBufRule;
+import io.datakernel.test.rules.EventloopRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.datakernel.rpc.client.IRpcClient.RPC_TIMEOUT_EXCEPTION;
+import static io.datakernel.rpc.client.sender.RpcStrategies.batching;
+import static io.datakernel.rpc.client.sender.RpcStrategies.server;
+import static io.datakernel.test.TestUtils.getFreePort;
+import static org.junit.Assert.*;
+
+public final class RpcStrategyBatchingTest {
+	private static final int PORT = getFreePort();
+	private static final int TIMEOUT = 1500;
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final EventloopRule eventloopRule = new EventloopRule();
+
+	public static class GetRequest {
+		@Serialize(order = 0)
+		public final String key;
+
+		public GetRequest(@Deserialize("key") String key) {
+			this.key = key;
+		}
+	}
+
+	public static class PutRequest {
+		@Serialize(order = 0)
+		public final String key;
+
+		public PutRequest(@Deserialize("key") String key) {
+			this.key = key;
+		}
+	}
+
+	public static class Response {
+		@Serialize(order = 0)
+		public final String value;
+
+		public Response(@Deserialize("value") String value) {
+			this.value = value;
+		}
+	}
+
+	private Eventloop eventloop;
+	private RpcServer server;
+	private RpcClient client;
+	private RpcStrategyBatching strategy;
+
+	@Before
+	public void setUp() throws Exception {
+		eventloop = Eventloop.getCurrentEventloop();
+		server = RpcServer.create(eventloop)
+				.withMessageTypes(GetRequest.class, PutRequest.class, Response.class, RpcBatchRequest.class, RpcBatchResponse.class)
+				.withHandler(GetRequest.class, Response.class, request -> request.key.equals("--") ?
+						Promise.ofException(new Exception("Illegal key")) :
+						Promises.delay(request.key.startsWith("slow") ? 300 : 0, new Response("value of " + request.key)))
+				.withHandler(PutRequest.class, Response.class, request -> Promise.of(new Response("put " + request.key)))
+				.withListenPort(PORT);
+		server.listen();
+
+		strategy = batching(GetRequest.class, server(new InetSocketAddress("127.0.0.1", PORT)))
+				.withMaxBatchSize(4);
+		client = RpcClient.create(eventloop)
+				.withMessageTypes(GetRequest.class, PutRequest.class, Response.class, RpcBatchRequest.class, RpcBatchResponse.class)
+				.withStrategy(strategy);
+
+		new Thread(eventloop).start();
+		client.startFuture().get();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.stopFuture().get();
+		server.closeFuture().get();
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		List<Response> responses = eventloop.submit(() -> {
+			List<Promise<Response>> promises = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				promises.add(client.sendRequest(new GetRequest("key" + i), TIMEOUT));
+			}
+			return Promises.toList(promises);
+		}).get();
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals("value of key" + i, responses.get(i).value);
+		}
+		RpcBatchStats stats = client.getBatchStatsPerClass().get(GetRequest.class);
+		stats.refresh(System.currentTimeMillis());
+		assertEquals(3, stats.getBatches().getTotalCount());
+		assertEquals(4, stats.getBatchSize().getAbsoluteMax(), 0.0);
+	}
+
+	@Test
+	public void testFailedRequestInBatch() throws Exception {
+		List<Object> results = eventloop.submit(() -> Promises.toList(
+				client.sendRequest(new GetRequest("a"), TIMEOUT).mapEx((response, e) -> e == null ? response : e),
+				client.sendRequest(new GetRequest("--"), TIMEOUT).mapEx((response, e) -> e == null ? response : e),
+				client.sendRequest(new PutRequest("b"), TIMEOUT).mapEx((response, e) -> e == null ? response : e)))
+				.get();
+
+		assertEquals("value of a", ((Response) results.get(0)).value);
+		assertTrue(results.get(1) instanceof RpcRemoteException);
+		assertEquals("java.lang.Exception: Illegal key", ((RpcRemoteException) results.get(1)).getMessage());
+		assertEquals("put b", ((Response) results.get(2)).value);
+		RpcBatchStats stats = client.getBatchStatsPerClass().get(GetRequest.class);
+		stats.refresh(System.currentTimeMillis());
+		assertEquals(1, stats.getBatches().getTotalCount());
+		assertEquals(2, stats.getBatchSize().getAbsoluteMax(), 0.0);
+	}
+
+	@Test
+	public void testRequestTimeoutsInBatch() throws Exception {
+		List<Object> results = eventloop.submit(() -> Promises.toList(
+				client.sendRequest(new GetRequest("slow a"), 100).mapEx((response, e) -> e == null ? response : e),
+				client.sendRequest(new GetRequest("slow b"), TIMEOUT).mapEx((response, e) -> e == null ? response : e)))
+				.get();
+
+		assertSame(RPC_TIMEOUT_EXCEPTION, results.get(0));
+		assertEquals("value of slow b", ((Response) results.get(1)).value);
+		RpcBatchStats stats = client.getBatchStatsPerClass().get(GetRequest.class);
+		stats.refresh(System.currentTimeMillis());
+		assertEquals(1, stats.getBatches().getTotalCount());
+	}
+}
@@ -17,15 +17,18 @@
 package io.datakernel.rpc.client.sender.helper;
 
 import io.datakernel.rpc.client.RpcClientConnectionPool;
+import io.datakernel.rpc.client.jmx.RpcBatchStats;
 import io.datakernel.rpc.client.sender.RpcSender;
 import org.jetbrains.annotations.NotNull;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
 public class RpcClientConnectionPoolStub implements RpcClientConnectionPool {
 	private final Map<InetSocketAddress, RpcSender> connections = new HashMap<>();
+	private final Map<Class<?>, RpcBatchStats> batchStats = new HashMap<>();
 
 	public void put(InetSocketAddress address, RpcSender connection) {
 		connections.put(address, connection);
@@ -39,4 +42,9 @@ public class RpcClientConnectionPoolStub implements RpcClientConnectionPool {
 	public RpcSender get(@NotNull InetSocketAddress address) {
 		return connections.get(address);
 	}
+
+	@Override
+	public RpcBatchStats ensureBatchStats(@NotNull Class<?> requestType) {
+		return batchStats.computeIfAbsent(requestType, $ -> RpcBatchStats.create(Duration.ofMinutes(1)));
+	}
 }
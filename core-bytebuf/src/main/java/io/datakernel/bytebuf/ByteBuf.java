@@ -91,7 +91,11 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 		}
 	}
 
-	/** Stores bytes of this {@code ByteBuf}. */
+	/**
+	 * Stores bytes of this {@code ByteBuf}.
+	 * <p>
+	 * For direct {@code ByteBufs} it is an empty array, see {@link #array()}.
+	 */
 	@NotNull
 	protected final byte[] array;
 
@@ -135,6 +139,22 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 		this.tail = tail;
 	}
 
+	/**
+	 * Creates a {@code ByteBuf} whose bytes are not stored in {@link #array}.
+	 *
+	 * @param array placeholder array, as bytes are stored elsewhere
+	 * @param head value of {@link #head} of {@code ByteBuf}
+	 * @param tail value of {@link #tail} of {@code ByteBuf}
+	 * @param limit length of an underlying storage
+	 */
+	ByteBuf(@NotNull byte[] array, int head, int tail, int limit) {
+		assert head >= 0 && head <= tail && tail <= limit
+				: "Wrong ByteBuf boundaries - readPos: " + head + ", writePos: " + tail + ", limit: " + limit;
+		this.array = array;
+		this.head = head;
+		this.tail = tail;
+	}
+
 	/**
 	 * Creates an empty {@code ByteBuf} with array of size 0,
 	 * {@link #tail} and {@link #head} both equal to 0.
@@ -188,6 +208,22 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 		return new ByteBuf(bytes, head, tail);
 	}
 
+	/**
+	 * Wraps remaining bytes of a direct buffer, such as a memory-mapped region of a file,
+	 * into a direct {@code ByteBuf} that is ready for reading.
+	 * <p>
+	 * The {@code ByteBuf} is not pooled, so the buffer is released by garbage collector.
+	 *
+	 * @param buffer direct buffer to be wrapped into {@code ByteBuf}
+	 * @return direct {@code ByteBuf} over the memory of the buffer
+	 * @see #isDirect()
+	 */
+	@NotNull
+	@Contract("_ -> new")
+	public static ByteBuf wrapDirect(@NotNull ByteBuffer buffer) {
+		return ByteBufDirect.wrap(buffer);
+	}
+
 	// slicing
 	/**
 	 * Creates a slice of this {@code ByteBuf} if it is not recycled.
@@ -355,8 +391,12 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 
 	/**
 	 * Returns byte array {@link #array}.
+	 * <p>
+	 * A direct {@code ByteBuf} has no array and throws {@link UnsupportedOperationException},
+	 * use {@link ByteBufPool#ensureHeap(ByteBuf)} to get a heap {@code ByteBuf} first.
 	 *
 	 * @return {@link #array}
+	 * @see #isDirect()
 	 */
 	@NotNull
 	@Contract(pure = true)
@@ -374,6 +414,20 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 		return array.length;
 	}
 
+	/**
+	 * Checks if bytes of this {@code ByteBuf} are stored in direct (off-heap) memory.
+	 * <p>
+	 * Direct {@code ByteBufs} are passed to socket and file channels without intermediate
+	 * copying, but they have no {@link #array()}.
+	 *
+	 * @return {@code true} if this {@code ByteBuf} is direct, otherwise {@code false}
+	 * @see ByteBufPool#allocateDirect(int)
+	 */
+	@Contract(pure = true)
+	public boolean isDirect() {
+		return false;
+	}
+
 	/**
 	 * Returns {@link #head} if this {@code ByteBuf} is not recycled.
 	 *
@@ -417,7 +471,7 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 	 */
 	public void tail(int pos) {
 		assert !isRecycled() : "Attempt to use recycled bytebuf";
-		assert pos >= head && pos <= array.length;
+		assert pos >= head && pos <= limit();
 		tail = pos;
 	}
 
@@ -447,7 +501,7 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 	public void moveTail(int delta) {
 		assert !isRecycled() : "Attempt to use recycled bytebuf";
 		assert tail + delta >= head;
-		assert tail + delta <= array.length;
+		assert tail + delta <= limit();
 		tail += delta;
 	}
 
@@ -589,9 +643,9 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 	 */
 	public int drainTo(@NotNull ByteBuf buf, int length) {
 		assert !buf.isRecycled();
-		assert buf.tail + length <= buf.array.length;
-		drainTo(buf.array, buf.tail, length);
-		buf.tail += length;
+		assert head + length <= tail;
+		buf.put(array, head, length);
+		head += length;
 		return length;
 	}
 
@@ -630,10 +684,22 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 	 * @param buf the ByteBuf which will be put to the {@code ByteBuf}
 	 */
 	public void put(@NotNull ByteBuf buf) {
-		put(buf.array, buf.head, buf.tail - buf.head);
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		int length = buf.tail - buf.head;
+		assert tail + length <= array.length;
+		buf.copyTo(buf.head, array, tail, length);
+		tail += length;
 		buf.head = buf.tail;
 	}
 
+	/**
+	 * Copies bytes of this {@code ByteBuf} to a given byte array
+	 * without changing {@link #head} and {@link #tail}.
+	 */
+	void copyTo(int index, @NotNull byte[] dest, int offset, int length) {
+		System.arraycopy(array, index, dest, offset, length);
+	}
+
 
 	/**
 	 * Puts given byte array to the {@link #array} at the {@link #tail}
@@ -747,7 +813,10 @@ public class ByteBuf implements Recyclable, Sliceable<ByteBuf>, AutoCloseable {
 	 */
 	@Contract(pure = true)
 	public boolean isContentEqual(@NotNull ByteBuf other) {
-		return isContentEqual(other.array, other.head, other.readRemaining());
+		if (other.isDirect()) {
+			return other.isContentEqual(array, head, readRemaining());
+		}
+		return isContentEqual(other.array(), other.head, other.readRemaining());
 	}
 
 	/**
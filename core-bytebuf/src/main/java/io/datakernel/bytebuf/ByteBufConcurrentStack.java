@@ -29,6 +29,46 @@ final class ByteBufConcurrentStack {
 		return oldHead;
 	}
 
+	/**
+	 * Pushes a chain of {@link ByteBuf ByteBufs} linked by their {@code next} fields
+	 * with a single CAS operation
+	 *
+	 * @param first first {@code ByteBuf} of the chain, becomes a new head of this stack
+	 * @param last  last {@code ByteBuf} of the chain
+	 */
+	public void pushAll(ByteBuf first, ByteBuf last) {
+		ByteBuf oldHead;
+		do {
+			oldHead = head.get();
+			last.next = oldHead;
+		} while (!head.compareAndSet(oldHead, first));
+	}
+
+	/**
+	 * Pops up to {@code maxCount} {@link ByteBuf ByteBufs} with a single CAS operation
+	 *
+	 * @return first {@code ByteBuf} of a popped chain, whose last element has {@code next} set to {@code null},
+	 * or {@code null} if this stack is empty
+	 */
+	public ByteBuf popAll(int maxCount) {
+		ByteBuf oldHead;
+		ByteBuf last;
+		do {
+			oldHead = head.get();
+			if (oldHead == null) {
+				return null;
+			}
+			last = oldHead;
+			for (int i = 1; i < maxCount; i++) {
+				ByteBuf next = last.next;
+				if (next == null) break;
+				last = next;
+			}
+		} while (!head.compareAndSet(oldHead, last.next));
+		last.next = null;
+		return oldHead;
+	}
+
 	public ByteBuf peek() {
 		return head.get();
 	}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.bytebuf;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static java.lang.Math.min;
+
+/**
+ * A {@link ByteBuf} whose bytes are stored in a direct {@link ByteBuffer}.
+ * <p>
+ * Direct ByteBufs are meant for I/O: {@link #toReadByteBuffer()} and {@link #toWriteByteBuffer()}
+ * return views of direct memory, so socket and file channels use them without copying through
+ * a temporary direct buffer. All other operations work with direct memory as well.
+ * <p>
+ * A direct ByteBuf has no backing array, so {@link #array()} throws {@link UnsupportedOperationException}.
+ * The code which needs an array should take a heap copy explicitly with {@link ByteBufPool#ensureHeap(ByteBuf)}.
+ * <p>
+ * Slices of a direct ByteBuf share its direct memory.
+ */
+final class ByteBufDirect extends ByteBuf {
+	private static final byte[] NO_ARRAY = new byte[0];
+
+	/**
+	 * A view of direct memory of this ByteBuf, its position and limit are used for bulk operations.
+	 */
+	@NotNull
+	private final ByteBuffer buffer;
+
+	/**
+	 * A ByteBuf which owns direct memory, {@code null} if this ByteBuf is not a slice.
+	 */
+	@Nullable
+	private final ByteBufDirect root;
+
+	ByteBufDirect(@NotNull ByteBuffer buffer) {
+		super(NO_ARRAY, 0, 0, buffer.capacity());
+		assert buffer.isDirect();
+		this.buffer = buffer;
+		this.root = null;
+	}
+
+	private ByteBufDirect(@NotNull ByteBuffer buffer, int head, int tail) {
+		super(NO_ARRAY, head, tail, buffer.capacity());
+		this.buffer = buffer;
+		this.root = null;
+	}
+
+	/**
+	 * Creates a ByteBuf which is not returned to the pool, so that memory which does not belong to the pool can be wrapped
+	 */
+	static ByteBufDirect wrap(@NotNull ByteBuffer buffer) {
+		assert buffer.isDirect();
+		ByteBuffer view = buffer.duplicate();
+		view.clear();
+		return new ByteBufDirect(view, buffer.position(), buffer.limit());
+	}
+
+	private ByteBufDirect(@NotNull ByteBufDirect root, int head, int tail) {
+		super(NO_ARRAY, head, tail, root.buffer.capacity());
+		this.buffer = root.buffer.duplicate();
+		this.root = root;
+	}
+
+	@Override
+	@Contract(pure = true)
+	public boolean isDirect() {
+		return true;
+	}
+
+	boolean isSlice() {
+		return root != null;
+	}
+
+	// region slicing and recycling
+	@NotNull
+	@Override
+	public ByteBuf slice(int offset, int length) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		ByteBufDirect root = this.root != null ? this.root : this;
+		if (root.isRecycleNeeded()) {
+			root.refs++;
+		}
+		return new ByteBufDirect(root, offset, offset + length);
+	}
+
+	@Override
+	public void recycle() {
+		if (root == null) {
+			super.recycle();
+		} else if (root.isRecycleNeeded()) {
+			root.recycle();
+		}
+	}
+
+	@Override
+	public void addRef() {
+		if (root == null) {
+			super.addRef();
+		} else {
+			root.addRef();
+		}
+	}
+
+	@Override
+	@Contract(pure = true)
+	protected boolean isRecycled() {
+		return root == null ? super.isRecycled() : root.isRecycled();
+	}
+
+	@Override
+	@Contract(pure = true)
+	protected boolean isRecycleNeeded() {
+		return root == null ? super.isRecycleNeeded() : root.isRecycleNeeded();
+	}
+	// endregion
+
+	// region byte buffers
+	@Override
+	public ByteBuffer toReadByteBuffer() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		ByteBuffer byteBuffer = buffer.duplicate();
+		byteBuffer.limit(tail());
+		byteBuffer.position(head());
+		return byteBuffer;
+	}
+
+	@Override
+	public ByteBuffer toWriteByteBuffer() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		ByteBuffer byteBuffer = buffer.duplicate();
+		byteBuffer.clear();
+		byteBuffer.position(tail());
+		return byteBuffer;
+	}
+
+	@Override
+	public void ofReadByteBuffer(ByteBuffer byteBuffer) {
+		assert byteBuffer.isDirect();
+		assert byteBuffer.limit() == tail();
+		head(byteBuffer.position());
+	}
+
+	@Override
+	public void ofWriteByteBuffer(ByteBuffer byteBuffer) {
+		assert byteBuffer.isDirect();
+		assert byteBuffer.limit() == buffer.capacity();
+		tail(byteBuffer.position());
+	}
+	// endregion
+
+	// region bulk operations
+	@NotNull
+	@Override
+	public byte[] array() {
+		throw new UnsupportedOperationException("Direct ByteBuf is not backed by an array");
+	}
+
+	@Override
+	@Contract(pure = true)
+	public int limit() {
+		return buffer.capacity();
+	}
+
+	@Override
+	@Contract(pure = true)
+	public int writeRemaining() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		return buffer.capacity() - tail();
+	}
+
+	@Override
+	@Contract(pure = true)
+	public boolean canWrite() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		return tail() != buffer.capacity();
+	}
+
+	@Override
+	void copyTo(int index, @NotNull byte[] dest, int offset, int length) {
+		buffer.clear();
+		buffer.position(index);
+		buffer.get(dest, offset, length);
+	}
+
+	@Override
+	public int drainTo(@NotNull byte[] array, int offset, int length) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		assert length >= 0 && (offset + length) <= array.length;
+		assert head() + length <= tail();
+		copyTo(head(), array, offset, length);
+		moveHead(length);
+		return length;
+	}
+
+	@Override
+	public int drainTo(@NotNull ByteBuf buf, int length) {
+		assert !buf.isRecycled();
+		assert head() + length <= tail();
+		if (buf.isDirect()) {
+			ByteBuffer src = toReadByteBuffer();
+			src.limit(src.position() + length);
+			ByteBuffer dest = buf.toWriteByteBuffer();
+			dest.put(src);
+			buf.ofWriteByteBuffer(dest);
+		} else {
+			assert buf.tail() + length <= buf.limit();
+			copyTo(head(), buf.array(), buf.tail(), length);
+			buf.moveTail(length);
+		}
+		moveHead(length);
+		return length;
+	}
+
+	@Override
+	public void put(@NotNull ByteBuf buf) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		buf.drainTo(this, buf.readRemaining());
+	}
+
+	@Override
+	public void put(@NotNull byte[] bytes, int offset, int length) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		assert tail() + length <= buffer.capacity();
+		assert offset + length <= bytes.length;
+		buffer.clear();
+		buffer.position(tail());
+		buffer.put(bytes, offset, length);
+		moveTail(length);
+	}
+
+	@Override
+	public void write(@NotNull byte[] b, int off, int len) {
+		put(b, off, len);
+	}
+
+	@Override
+	@Contract(pure = true)
+	public boolean isContentEqual(@NotNull byte[] array, int offset, int length) {
+		if (readRemaining() != length) return false;
+		int head = head();
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(head + i) != array[offset + i]) return false;
+		}
+		return true;
+	}
+
+	@Override
+	@Contract(pure = true)
+	public boolean isContentEqual(@NotNull ByteBuf other) {
+		return other.isDirect() ?
+				toReadByteBuffer().equals(other.toReadByteBuffer()) :
+				isContentEqual(other.array(), other.head(), other.readRemaining());
+	}
+
+	@NotNull
+	@Override
+	@Contract(pure = true)
+	public byte[] getArray() {
+		byte[] bytes = new byte[readRemaining()];
+		copyTo(head(), bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	@Override
+	@Contract(pure = true)
+	public String getString(@NotNull Charset charset) {
+		return new String(getArray(), charset);
+	}
+	// endregion
+
+	// region single byte operations
+	@Override
+	public byte get() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		assert head() < tail();
+		byte result = buffer.get(head());
+		moveHead(1);
+		return result;
+	}
+
+	@Override
+	@Contract(pure = true)
+	public byte at(int index) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		return buffer.get(index);
+	}
+
+	@Override
+	@Contract(pure = true)
+	public byte peek() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		return buffer.get(head());
+	}
+
+	@Override
+	@Contract(pure = true)
+	public byte peek(int offset) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		assert (head() + offset) < tail();
+		return buffer.get(head() + offset);
+	}
+
+	@Override
+	public void set(int index, byte b) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		buffer.put(index, b);
+	}
+
+	@Override
+	public int find(byte b) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		for (int i = head(); i < tail(); i++) {
+			if (buffer.get(i) == b) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public int find(@NotNull byte[] bytes, int off, int len) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		L:
+		for (int pos = head(); pos <= tail() - len; pos++) {
+			for (int i = 0; i < len; i++) {
+				if (buffer.get(pos + i) != bytes[off + i]) {
+					continue L;
+				}
+			}
+			return pos;
+		}
+		return -1;
+	}
+	// endregion
+
+	// region serialization input
+	@Override
+	public byte readByte() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		byte result = buffer.get(head());
+		moveHead(1);
+		return result;
+	}
+
+	@Override
+	public char readChar() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		char result = buffer.getChar(head());
+		moveHead(2);
+		return result;
+	}
+
+	@Override
+	public int readInt() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		int result = buffer.getInt(head());
+		moveHead(4);
+		return result;
+	}
+
+	@Override
+	public int readVarInt() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		int head = head();
+		int result = 0;
+		for (int offset = 0; offset < 32; offset += 7) {
+			byte b = buffer.get(head++);
+			result |= (b & 0x7F) << offset;
+			if (b >= 0) {
+				head(head);
+				return result;
+			}
+		}
+		throw new IllegalStateException("Read varint was too long");
+	}
+
+	@Override
+	public long readLong() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		long result = buffer.getLong(head());
+		moveHead(8);
+		return result;
+	}
+
+	@Override
+	public short readShort() {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		short result = buffer.getShort(head());
+		moveHead(2);
+		return result;
+	}
+	// endregion
+
+	// region serialization output
+	@Override
+	public void writeByte(byte v) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		buffer.put(tail(), v);
+		moveTail(1);
+	}
+
+	@Override
+	public void writeChar(char v) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		buffer.putChar(tail(), v);
+		moveTail(2);
+	}
+
+	@Override
+	public void writeInt(int v) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		buffer.putInt(tail(), v);
+		moveTail(4);
+	}
+
+	@Override
+	public void writeLong(long v) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		buffer.putLong(tail(), v);
+		moveTail(8);
+	}
+
+	@Override
+	public void writeShort(short v) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		buffer.putShort(tail(), v);
+		moveTail(2);
+	}
+
+	@Override
+	public void writeVarInt(int v) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		int tail = tail();
+		while ((v & ~0x7F) != 0) {
+			buffer.put(tail++, (byte) (v | 0x80));
+			v >>>= 7;
+		}
+		buffer.put(tail++, (byte) v);
+		tail(tail);
+	}
+
+	@Override
+	public void writeVarLong(long v) {
+		assert !isRecycled() : "Attempt to use recycled bytebuf";
+		int tail = tail();
+		while ((v & ~0x7FL) != 0) {
+			buffer.put(tail++, (byte) (v | 0x80));
+			v >>>= 7;
+		}
+		buffer.put(tail++, (byte) v);
+		tail(tail);
+	}
+	// endregion
+
+	@Override
+	@Contract(pure = true)
+	public String toString() {
+		char[] chars = new char[min(readRemaining(), 256)];
+		int head = head();
+		for (int i = 0; i < chars.length; i++) {
+			byte b = buffer.get(head + i);
+			chars[i] = (b == '\n') ? (char) 9166 : (b >= ' ') ? (char) b : (char) 65533;
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.bytebuf;
+
+/**
+ * A thread-confined bounded cache of recycled {@link ByteBuf ByteBufs}
+ * which sits in front of the shared slabs of {@link ByteBufPool}.
+ * <p>
+ * Each slab of a magazine is a singly linked list of at most {@code capacity}
+ * ByteBufs. Allocations and recycles are served locally without any
+ * synchronization, and only when a local slab gets empty or full,
+ * a batch of {@code capacity / 2} ByteBufs is moved from or to
+ * the appropriate shared {@link ByteBufConcurrentStack} with a single CAS.
+ * <p>
+ * Instances of this class must only be accessed by their owner thread,
+ * statistics counters may be read from other threads and are approximate.
+ */
+final class ByteBufMagazine {
+	private final ByteBufConcurrentStack[] shared;
+	private final int capacity;
+	private final int batchSize;
+
+	private final ByteBuf[] heads;
+	private final int[] counts;
+
+	long hits;
+	long misses;
+	long spills;
+	long refills;
+
+	ByteBufMagazine(ByteBufConcurrentStack[] shared, int capacity) {
+		assert capacity > 0;
+		this.shared = shared;
+		this.capacity = capacity;
+		this.batchSize = Math.max(1, capacity / 2);
+		this.heads = new ByteBuf[shared.length];
+		this.counts = new int[shared.length];
+	}
+
+	/**
+	 * Pops a recycled ByteBuf of a given slab, refilling this magazine from shared slab if needed
+	 *
+	 * @return a recycled ByteBuf or {@code null} if both local and shared slabs are empty
+	 */
+	ByteBuf pop(int index) {
+		ByteBuf head = heads[index];
+		if (head != null) {
+			hits++;
+		} else {
+			head = shared[index].popAll(batchSize);
+			if (head == null) {
+				misses++;
+				return null;
+			}
+			refills++;
+			int count = 0;
+			for (ByteBuf buf = head; buf != null; buf = buf.next) {
+				count++;
+			}
+			counts[index] = count;
+		}
+		heads[index] = head.next;
+		counts[index]--;
+		head.next = null;
+		return head;
+	}
+
+	/**
+	 * Pushes a recycled ByteBuf to a given slab, spilling a batch
+	 * of ByteBufs to the shared slab if local slab is full
+	 */
+	void push(int index, ByteBuf buf) {
+		if (counts[index] == capacity) {
+			spill(index, batchSize);
+		}
+		buf.next = heads[index];
+		heads[index] = buf;
+		counts[index]++;
+	}
+
+	/**
+	 * Returns all of locally cached ByteBufs to the shared slabs
+	 */
+	void flush() {
+		for (int i = 0; i < heads.length; i++) {
+			if (counts[i] != 0) {
+				spill(i, counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Forgets all of locally cached ByteBufs
+	 */
+	void clear() {
+		for (int i = 0; i < heads.length; i++) {
+			heads[i] = null;
+			counts[i] = 0;
+		}
+		hits = misses = spills = refills = 0;
+	}
+
+	private void spill(int index, int count) {
+		ByteBuf first = heads[index];
+		ByteBuf last = first;
+		for (int i = 1; i < count; i++) {
+			last = last.next;
+		}
+		heads[index] = last.next;
+		counts[index] -= count;
+		shared[index].pushAll(first, last);
+		spills++;
+	}
+
+	ByteBuf peek(int index) {
+		return heads[index];
+	}
+
+	int size(int index) {
+		return counts[index];
+	}
+
+	int size() {
+		int result = 0;
+		for (int count : counts) {
+			result += count;
+		}
+		return result;
+	}
+
+	long sizeBytes() {
+		long result = 0;
+		for (int i = 0; i < counts.length - 1; i++) {
+			result += (1L << i) * counts[i];
+		}
+		return result;
+	}
+}
@@ -21,9 +21,11 @@ import io.datakernel.util.ApplicationSettings;
 import io.datakernel.util.MemSize;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
 
 import static java.lang.Integer.numberOfLeadingZeros;
 import static java.lang.Math.max;
@@ -31,6 +33,7 @@ import static java.lang.System.currentTimeMillis;
 import static java.lang.Thread.currentThread;
 import static java.util.Arrays.asList;
 import static java.util.Arrays.stream;
+import static java.util.Collections.newSetFromMap;
 import static java.util.Comparator.comparingLong;
 import static java.util.stream.Collectors.toList;
 
@@ -76,6 +79,23 @@ public final class ByteBufPool {
 	  */
 	private static final boolean STATS = ApplicationSettings.getBoolean(ByteBufPool.class, "stats", false);
 
+	 /**
+	  * Defines the capacity of each slab of a thread-local {@link ByteBufMagazine}
+	  * which caches recycled ByteBufs in front of the shared slabs.
+	  * By default set at 0, which means that thread-local magazines are disabled
+	  * and every {@link #allocate(int)} and {@link #recycle(ByteBuf)} operation
+	  * works with the shared slabs directly.
+	  */
+	private static final int MAGAZINE_SIZE = ApplicationSettings.getInt(ByteBufPool.class, "magazineSize", 0);
+
+	 /**
+	  * Defines the maximum size of ByteBufs which are cached in thread-local magazines.
+	  * Larger ByteBufs always go to the shared slabs. By default set at 256Kb.
+	  */
+	private static final int MAGAZINE_MAX_SIZE = ApplicationSettings.getMemSize(ByteBufPool.class, "magazineMaxSize", MemSize.kilobytes(256)).toInt();
+	private static final boolean MAGAZINES = MAGAZINE_SIZE != 0;
+	private static final int MAGAZINE_MAX_SLAB = 32 - numberOfLeadingZeros(MAGAZINE_MAX_SIZE - 1);
+
 	 /**
 	  * {@code ByteBufConcurrentStack} allows to work with slabs and their ByteBufs.
 	  * Basically, it is a singly linked list with basic stack operations:
@@ -86,6 +106,12 @@ public final class ByteBufPool {
 	  * Moreover, such approach allows to work with slabs concurrently safely.
 	  */
 	static final ByteBufConcurrentStack[] slabs;
+
+	 /**
+	  * Slabs of direct ByteBufs, which are allocated with {@link #allocateDirect(int)}.
+	  * Direct ByteBufs are never cached in thread-local magazines.
+	  */
+	static final ByteBufConcurrentStack[] directSlabs;
 	static final AtomicInteger[] created;
 	static final AtomicInteger[] reused;
 
@@ -128,12 +154,23 @@ public final class ByteBufPool {
 
 	private static final WeakHashMap<ByteBuf, Entry> registry = new WeakHashMap<>();
 
+	private static final Set<ByteBufMagazine> magazines = newSetFromMap(new WeakHashMap<>());
+	private static final ThreadLocal<ByteBufMagazine> magazine = ThreadLocal.withInitial(() -> {
+		ByteBufMagazine magazine = new ByteBufMagazine(ByteBufPool.slabs, MAGAZINE_SIZE);
+		synchronized (magazines) {
+			magazines.add(magazine);
+		}
+		return magazine;
+	});
+
 	static {
 		slabs = new ByteBufConcurrentStack[NUMBER_OF_SLABS];
+		directSlabs = new ByteBufConcurrentStack[NUMBER_OF_SLABS];
 		created = new AtomicInteger[NUMBER_OF_SLABS];
 		reused = new AtomicInteger[NUMBER_OF_SLABS];
 		for (int i = 0; i < NUMBER_OF_SLABS; i++) {
 			slabs[i] = new ByteBufConcurrentStack();
+			directSlabs[i] = new ByteBufConcurrentStack();
 			created[i] = new AtomicInteger();
 			reused[i] = new AtomicInteger();
 		}
@@ -163,8 +200,9 @@ public final class ByteBufPool {
 			}
 		}
 		int index = 32 - numberOfLeadingZeros(size - 1); // index==32 for size==0
-		ByteBufConcurrentStack stack = slabs[index];
-		ByteBuf buf = stack.pop();
+		ByteBuf buf = MAGAZINES && index <= MAGAZINE_MAX_SLAB ?
+				magazine.get().pop(index) :
+				slabs[index].pop();
 		if (buf != null) {
 			buf.reset();
 			if (STATS) recordReuse(index);
@@ -178,6 +216,64 @@ public final class ByteBufPool {
 		return buf;
 	}
 
+	/**
+	 * Allocates direct byte buffer from the pool with size of
+	 * <code>ceil(log<sub>2</sub>(size))<sup>2</sup></code>
+	 * (rounds up to the nearest power of 2) bytes.
+	 * <p>
+	 * Bytes of a direct ByteBuf are stored off-heap, so that socket and file
+	 * channels read to and write from it without intermediate copying.
+	 * A direct ByteBuf has no backing array, see {@link #ensureHeap(ByteBuf)}.
+	 *
+	 * @param size returned byte buffer size is guaranteed to be bigger or equal to requested size
+	 * @return direct byte buffer from this pool
+	 * @see ByteBuf#isDirect()
+	 */
+	@NotNull
+	public static ByteBuf allocateDirect(int size) {
+		if (MIN_MAX_CHECKS) {
+			if ((MIN_SIZE != 0 && size < MIN_SIZE) || (MAX_SIZE != 0 && size >= MAX_SIZE)) {
+				// not willing to register in pool
+				return new ByteBufDirect(ByteBuffer.allocateDirect(size));
+			}
+		}
+		int index = 32 - numberOfLeadingZeros(size - 1); // index==32 for size==0
+		ByteBuf buf = directSlabs[index].pop();
+		if (buf != null) {
+			buf.reset();
+			if (STATS) recordReuse(index);
+			if (REGISTRY) register(buf);
+		} else {
+			buf = new ByteBufDirect(ByteBuffer.allocateDirect(1 << index));
+			buf.refs++;
+			if (STATS) recordNew(index);
+			if (REGISTRY) register(buf);
+		}
+		return buf;
+	}
+
+	@NotNull
+	public static ByteBuf allocateDirect(@NotNull MemSize size) {
+		return allocateDirect(size.toInt());
+	}
+
+	/**
+	 * Allocates direct byte buffer in the same way as {@link #allocateDirect(int)} does, but
+	 * sets its positions so that write-remaining is equal to requested size.
+	 *
+	 * @param size requested size
+	 * @return direct byte buffer from this pool with appropriate positions set
+	 * @see #allocateExact(int)
+	 */
+	@NotNull
+	public static ByteBuf allocateDirectExact(int size) {
+		ByteBuf buf = allocateDirect(size);
+		int d = buf.writeRemaining() - size;
+		buf.tail(d);
+		buf.head(d);
+		return buf;
+	}
+
 	private static void recordNew(int index) {
 		created[index].incrementAndGet();
 	}
@@ -190,7 +286,7 @@ public final class ByteBufPool {
 		synchronized (registry) {
 			StackTraceElement[] stackTrace = currentThread().getStackTrace();
 			ArrayList<StackTraceElement> stackTraceList = new ArrayList<>(asList(stackTrace).subList(3, stackTrace.length));
-			registry.put(buf, new Entry(buf.array.length, currentTimeMillis(), stackTraceList));
+			registry.put(buf, new Entry(buf.limit(), currentTimeMillis(), stackTraceList));
 		}
 	}
 
@@ -230,9 +326,28 @@ public final class ByteBufPool {
 	 * @param buf the ByteBuf to be recycled
 	 */
 	static void recycle(@NotNull ByteBuf buf) {
-		int slab = 32 - numberOfLeadingZeros(buf.array.length - 1);
-		ByteBufConcurrentStack stack = slabs[slab];
-		stack.push(buf);
+		int slab = 32 - numberOfLeadingZeros(buf.limit() - 1);
+		if (buf instanceof ByteBufDirect) {
+			directSlabs[slab].push(buf);
+		} else if (MAGAZINES && slab <= MAGAZINE_MAX_SLAB) {
+			magazine.get().push(slab, buf);
+		} else {
+			slabs[slab].push(buf);
+		}
+	}
+
+	/**
+	 * Returns all of the ByteBufs cached in a thread-local magazine
+	 * of a current thread to the shared slabs.
+	 * <p>
+	 * Eventloops call it once they finish. Other threads which are about
+	 * to finish should call it too, otherwise ByteBufs cached in their
+	 * magazines will be garbage collected.
+	 */
+	public static void flushMagazine() {
+		if (MAGAZINES) {
+			magazine.get().flush();
+		}
 	}
 
 	@NotNull
@@ -248,7 +363,7 @@ public final class ByteBufPool {
 	  * <p>
 	  * Otherwise creates a new ByteBuf which contains data from the
 	  * original ByteBuf and fits the parameters. Then recycles the
-	  * original ByteBuf.
+	  * original ByteBuf. A new ByteBuf is direct if the original one is direct.
 	  *
 	  * @param buf the ByteBuf to check
 	  * @param minSize the minimal size of the ByteBuf
@@ -258,8 +373,10 @@ public final class ByteBufPool {
 	@NotNull
 	public static ByteBuf ensureWriteRemaining(@NotNull ByteBuf buf, int minSize, int newWriteRemaining) {
 		if (newWriteRemaining == 0) return buf;
-		if (buf.writeRemaining() < newWriteRemaining || buf instanceof ByteBufSlice) {
-			ByteBuf newBuf = allocate(max(minSize, newWriteRemaining + buf.readRemaining()));
+		if (buf.writeRemaining() < newWriteRemaining || buf instanceof ByteBufSlice ||
+				buf instanceof ByteBufDirect && ((ByteBufDirect) buf).isSlice()) {
+			int size = max(minSize, newWriteRemaining + buf.readRemaining());
+			ByteBuf newBuf = buf.isDirect() ? allocateDirect(size) : allocate(size);
 			newBuf.put(buf);
 			buf.recycle();
 			return newBuf;
@@ -267,6 +384,25 @@ public final class ByteBufPool {
 		return buf;
 	}
 
+	/**
+	 * Returns this ByteBuf if it is a heap one, so that its {@link ByteBuf#array()} can be used.
+	 * <p>
+	 * Otherwise creates a new heap ByteBuf which contains readable bytes
+	 * of the original direct ByteBuf. Then recycles the original ByteBuf.
+	 *
+	 * @param buf the ByteBuf to check
+	 * @return a heap ByteBuf with the same readable bytes
+	 * @see ByteBuf#isDirect()
+	 */
+	@NotNull
+	public static ByteBuf ensureHeap(@NotNull ByteBuf buf) {
+		if (!buf.isDirect()) return buf;
+		ByteBuf newBuf = allocate(buf.readRemaining());
+		newBuf.put(buf);
+		buf.recycle();
+		return newBuf;
+	}
+
 	 /**
 	  * Appends one ByteBuf to another ByteBuf. If target ByteBuf
 	  * can't accommodate the ByteBuf to be appended, a new ByteBuf
@@ -326,13 +462,20 @@ public final class ByteBufPool {
 
 	 /**
 	  * Clears all of the slabs and stats.
+	  * <p>
+	  * Thread-local magazines are cleared as well, note that they should not
+	  * be concurrently used by their owner threads while being cleared.
 	  */
 	public static void clear() {
 		for (int i = 0; i < ByteBufPool.NUMBER_OF_SLABS; i++) {
 			slabs[i].clear();
+			directSlabs[i].clear();
 			created[i].set(0);
 			reused[i].set(0);
 		}
+		synchronized (magazines) {
+			magazines.forEach(ByteBufMagazine::clear);
+		}
 		synchronized (registry) {
 			registry.clear();
 		}
@@ -358,6 +501,22 @@ public final class ByteBufPool {
 
 		List<Entry> queryUnrecycledBufs(int limit);
 
+		long getMagazineHits();
+
+		long getMagazineMisses();
+
+		double getMagazineHitRate();
+
+		long getMagazineSpills();
+
+		long getMagazineRefills();
+
+		int getMagazineItems();
+
+		int getDirectPoolItems();
+
+		long getDirectPoolSizeKB();
+
 		void clear();
 
 		void clearRegistry();
@@ -391,14 +550,14 @@ public final class ByteBufPool {
 
 		@Override
 		public int getPoolItems() {
-			return stream(slabs).mapToInt(ByteBufConcurrentStack::size).sum();
+			return stream(slabs).mapToInt(ByteBufConcurrentStack::size).sum() + getMagazineItems() + getDirectPoolItems();
 		}
 
 		public String getPoolItemsString() {
 			StringBuilder sb = new StringBuilder();
 			for (int i = 0; i < ByteBufPool.NUMBER_OF_SLABS; ++i) {
 				int createdItems = created[i].get();
-				int poolItems = slabs[i].size();
+				int poolItems = slabs[i].size() + magazinesSize(i) + directSlabs[i].size();
 				if (createdItems != poolItems) {
 					sb.append(String.format("Slab %d (%d) ", i, (1 << i)))
 							.append(" created: ").append(createdItems)
@@ -413,7 +572,12 @@ public final class ByteBufPool {
 			long result = 0;
 			for (int i = 0; i < slabs.length - 1; i++) {
 				long slabSize = 1L << i;
-				result += slabSize * slabs[i].size();
+				result += slabSize * (slabs[i].size() + directSlabs[i].size());
+			}
+			synchronized (magazines) {
+				for (ByteBufMagazine magazine : magazines) {
+					result += magazine.sizeBytes();
+				}
 			}
 			return result;
 		}
@@ -431,6 +595,20 @@ public final class ByteBufPool {
 						externalBufs.remove(buf);
 					}
 				}
+				for (ByteBufConcurrentStack slab : directSlabs) {
+					for (ByteBuf buf = slab.peek(); buf != null; buf = buf.next) {
+						externalBufs.remove(buf);
+					}
+				}
+				synchronized (magazines) {
+					for (ByteBufMagazine magazine : magazines) {
+						for (int i = 0; i < NUMBER_OF_SLABS; i++) {
+							for (ByteBuf buf = magazine.peek(i); buf != null; buf = buf.next) {
+								externalBufs.remove(buf);
+							}
+						}
+					}
+				}
 				return externalBufs;
 			}
 		}
@@ -450,7 +628,7 @@ public final class ByteBufPool {
 			for (int i = 0; i < slabs.length; i++) {
 				int idx = (i + 32) % slabs.length;
 				long slabSize = idx == 32 ? 0 : 1L << idx;
-				int count = slabs[idx].size();
+				int count = slabs[idx].size() + magazinesSize(idx) + directSlabs[idx].size();
 				result.add(slabSize + "," +
 						(STATS ? created[idx] : '-') + "," +
 						(STATS ? reused[idx] : '-') + "," +
@@ -460,6 +638,62 @@ public final class ByteBufPool {
 			return result;
 		}
 
+		@Override
+		public long getMagazineHits() {
+			return sumMagazines(magazine -> magazine.hits);
+		}
+
+		@Override
+		public long getMagazineMisses() {
+			return sumMagazines(magazine -> magazine.misses);
+		}
+
+		@Override
+		public double getMagazineHitRate() {
+			long hits = getMagazineHits();
+			long total = hits + getMagazineMisses();
+			return total != 0 ? (double) hits / total : 0.0;
+		}
+
+		@Override
+		public long getMagazineSpills() {
+			return sumMagazines(magazine -> magazine.spills);
+		}
+
+		@Override
+		public long getMagazineRefills() {
+			return sumMagazines(magazine -> magazine.refills);
+		}
+
+		@Override
+		public int getMagazineItems() {
+			return (int) sumMagazines(ByteBufMagazine::size);
+		}
+
+		@Override
+		public int getDirectPoolItems() {
+			return stream(directSlabs).mapToInt(ByteBufConcurrentStack::size).sum();
+		}
+
+		@Override
+		public long getDirectPoolSizeKB() {
+			long result = 0;
+			for (int i = 0; i < directSlabs.length - 1; i++) {
+				result += (1L << i) * directSlabs[i].size();
+			}
+			return result / 1024;
+		}
+
+		private long sumMagazines(ToLongFunction<ByteBufMagazine> fn) {
+			synchronized (magazines) {
+				return magazines.stream().mapToLong(fn).sum();
+			}
+		}
+
+		private int magazinesSize(int slab) {
+			return (int) sumMagazines(magazine -> magazine.size(slab));
+		}
+
 		@Override
 		public void clear() {
 			ByteBufPool.clear();
@@ -524,11 +524,11 @@ public final class ByteBufQueue implements Recyclable {
 			ByteBuf buf = bufs[first];
 			int remaining = buf.readRemaining();
 			if (s < remaining) {
-				arraycopy(buf.array(), buf.head(), dest, destOffset, s);
+				buf.copyTo(buf.head(), dest, destOffset, s);
 				buf.moveHead(s);
 				return maxSize;
 			} else {
-				arraycopy(buf.array(), buf.head(), dest, destOffset, remaining);
+				buf.copyTo(buf.head(), dest, destOffset, remaining);
 				buf.recycle();
 				first = next(first);
 				s -= remaining;
@@ -544,11 +544,11 @@ public final class ByteBufQueue implements Recyclable {
 			ByteBuf buf = bufs[first];
 			int remaining = buf.readRemaining();
 			if (s < remaining) {
-				arraycopy(buf.array(), buf.head(), dest, destOffset, s);
+				buf.copyTo(buf.head(), dest, destOffset, s);
 				buf.moveHead(s);
 				return maxSize;
 			} else {
-				arraycopy(buf.array(), buf.head(), dest, destOffset, remaining);
+				buf.copyTo(buf.head(), dest, destOffset, remaining);
 				recycledBufs.accept(buf);
 				buf.recycle();
 				first = next(first);
@@ -570,6 +570,23 @@ public final class ByteBufQueue implements Recyclable {
 	 * @return number of drained bytes
 	 */
 	public int drainTo(@NotNull ByteBuf dest, int maxSize) {
+		if (dest.isDirect()) {
+			int s = maxSize;
+			while (hasRemaining()) {
+				ByteBuf buf = bufs[first];
+				int remaining = buf.readRemaining();
+				if (s < remaining) {
+					buf.drainTo(dest, s);
+					return maxSize;
+				} else {
+					buf.drainTo(dest, remaining);
+					buf.recycle();
+					first = next(first);
+					s -= remaining;
+				}
+			}
+			return maxSize - s;
+		}
 		int actualSize = drainTo(dest.array(), dest.tail(), maxSize);
 		dest.moveTail(actualSize);
 		return actualSize;
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.bytebuf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static io.datakernel.bytebuf.ByteBufTest.initByteBufPool;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class ByteBufDirectTest {
+	static {
+		initByteBufPool();
+	}
+
+	private static final byte[] BYTES = "Test message".getBytes(UTF_8);
+
+	@Before
+	public void clearByteBufPool() {
+		ByteBufPool.clear();
+	}
+
+	@After
+	public void checkByteBufPool() {
+		assertEquals(ByteBufPool.getStats().getPoolItemsString(), ByteBufPool.getStats().getCreatedItems(), ByteBufPool.getStats().getPoolItems());
+	}
+
+	@Test
+	public void testByteBuffers() {
+		ByteBuf buf = ByteBufPool.allocateDirect(100);
+		assertTrue(buf.isDirect());
+		assertEquals(128, buf.limit());
+
+		ByteBuffer writeBuffer = buf.toWriteByteBuffer();
+		assertTrue(writeBuffer.isDirect());
+		writeBuffer.put(BYTES);
+		buf.ofWriteByteBuffer(writeBuffer);
+		assertEquals(BYTES.length, buf.readRemaining());
+
+		ByteBuffer readBuffer = buf.toReadByteBuffer();
+		assertTrue(readBuffer.isDirect());
+		readBuffer.get();
+		buf.ofReadByteBuffer(readBuffer);
+
+		assertArrayEquals("est message".getBytes(UTF_8), buf.asArray());
+		assertEquals(1, ByteBufPool.getStats().getDirectPoolItems());
+	}
+
+	@Test
+	public void testBulkOperationsStayDirect() {
+		ByteBuf buf = ByteBufPool.allocateDirect(32);
+		buf.put(BYTES);
+		ByteBuf heap = ByteBuf.wrapForReading(BYTES);
+		buf.put(heap);
+		assertTrue(buf.isDirect());
+		assertEquals(2 * BYTES.length, buf.readRemaining());
+		assertTrue(buf.isContentEqual("Test messageTest message".getBytes(UTF_8)));
+
+		ByteBuf target = ByteBufPool.allocate(32);
+		target.put(buf);
+		assertTrue(buf.isDirect());
+		assertFalse(buf.canRead());
+		assertEquals("Test messageTest message", target.asString(UTF_8));
+
+		buf.recycle();
+	}
+
+	@Test
+	public void testSingleByteOperationsStayDirect() {
+		ByteBuf buf = ByteBufPool.allocateDirect(64);
+		buf.writeByte((byte) 1);
+		buf.writeChar('c');
+		buf.writeShort((short) -2);
+		buf.writeInt(123456789);
+		buf.writeLong(-1234567890123L);
+		buf.writeVarInt(300);
+		buf.writeVarInt(-1);
+		buf.writeVarLong(1L << 40);
+		buf.put(BYTES);
+
+		assertEquals(1, buf.readByte());
+		assertEquals('c', buf.readChar());
+		assertEquals(-2, buf.readShort());
+		assertEquals(123456789, buf.readInt());
+		assertEquals(-1234567890123L, buf.readLong());
+		assertEquals(300, buf.readVarInt());
+		assertEquals(-1, buf.readVarInt());
+		assertEquals(1L << 40, buf.readVarLong());
+		assertEquals('T', buf.peek());
+		assertEquals(buf.head() + 5, buf.find("message".getBytes(UTF_8)));
+		assertTrue(buf.isDirect());
+		assertEquals("Test message", buf.asString(UTF_8));
+	}
+
+	@Test
+	public void testEnsureHeap() {
+		ByteBuf buf = ByteBufPool.allocateDirect(16);
+		buf.put(BYTES);
+		buf.moveHead(5);
+		try {
+			buf.array();
+			fail();
+		} catch (UnsupportedOperationException ignored) {
+		}
+
+		ByteBuf heap = ByteBufPool.ensureHeap(buf);
+		assertFalse(heap.isDirect());
+		assertEquals("message", new String(heap.array(), heap.head(), heap.readRemaining(), UTF_8));
+		assertSame(heap, ByteBufPool.ensureHeap(heap));
+		heap.recycle();
+
+		ByteBuf reused = ByteBufPool.allocateDirect(16);
+		assertSame(buf, reused);
+		reused.recycle();
+	}
+
+	@Test
+	public void testSlices() {
+		ByteBuf buf = ByteBufPool.allocateDirect(16);
+		buf.put(BYTES);
+
+		ByteBuf slice = buf.slice(5, 7);
+		ByteBuf other = buf.slice(5, 7);
+		assertTrue(slice.isDirect());
+		buf.recycle();
+
+		assertEquals("message", slice.getString(UTF_8));
+		assertEquals('m', slice.readByte());
+		slice.set(5, (byte) 'M');
+		assertTrue(slice.isDirect());
+		assertEquals("essage", slice.asString(UTF_8));
+		assertEquals("Message", other.asString(UTF_8));
+	}
+
+	@Test
+	public void testDrainQueueToDirect() {
+		ByteBufQueue queue = new ByteBufQueue();
+		queue.add(ByteBuf.wrapForReading("Test ".getBytes(UTF_8)));
+		queue.add(ByteBuf.wrapForReading(BYTES));
+
+		ByteBuf buf = ByteBufPool.allocateDirect(16);
+		assertEquals(16, queue.drainTo(buf));
+		assertEquals("Test Test messag", buf.asString(UTF_8));
+		assertEquals("e", queue.takeRemaining().asString(UTF_8));
+	}
+
+	@Test
+	public void testEnsureWriteRemaining() {
+		ByteBuf buf = ByteBufPool.allocateDirect(16);
+		buf.put(BYTES);
+
+		buf = ByteBufPool.ensureWriteRemaining(buf, 32);
+		assertTrue(buf.isDirect());
+		assertEquals(64, buf.limit());
+		assertEquals("Test message", buf.asString(UTF_8));
+	}
+}
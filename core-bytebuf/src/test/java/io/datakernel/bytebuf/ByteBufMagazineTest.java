@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.bytebuf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ByteBufMagazineTest {
+	private static final int SLAB = 4;
+
+	private ByteBufConcurrentStack[] shared;
+	private ByteBufMagazine magazine;
+
+	@Before
+	public void setUp() {
+		shared = new ByteBufConcurrentStack[33];
+		for (int i = 0; i < shared.length; i++) {
+			shared[i] = new ByteBufConcurrentStack();
+		}
+		magazine = new ByteBufMagazine(shared, 8);
+	}
+
+	@Test
+	public void testLocalHits() {
+		assertNull(magazine.pop(SLAB));
+		assertEquals(1, magazine.misses);
+
+		ByteBuf buf = ByteBuf.wrapForWriting(new byte[1 << SLAB]);
+		magazine.push(SLAB, buf);
+		assertSame(buf, magazine.pop(SLAB));
+		assertNull(buf.next);
+		assertEquals(1, magazine.hits);
+		assertEquals(0, magazine.spills);
+		assertTrue(shared[SLAB].isEmpty());
+	}
+
+	@Test
+	public void testSpillInBatches() {
+		List<ByteBuf> bufs = createBufs(9);
+		for (int i = 0; i < 8; i++) {
+			magazine.push(SLAB, bufs.get(i));
+		}
+		assertEquals(8, magazine.size(SLAB));
+		assertTrue(shared[SLAB].isEmpty());
+
+		magazine.push(SLAB, bufs.get(8));
+		assertEquals(1, magazine.spills);
+		assertEquals(5, magazine.size(SLAB));
+		assertEquals(4, shared[SLAB].size());
+	}
+
+	@Test
+	public void testRefillInBatches() {
+		for (ByteBuf buf : createBufs(6)) {
+			shared[SLAB].push(buf);
+		}
+
+		assertNotNull(magazine.pop(SLAB));
+		assertEquals(1, magazine.refills);
+		assertEquals(3, magazine.size(SLAB));
+		assertEquals(2, shared[SLAB].size());
+
+		for (int i = 0; i < 3; i++) {
+			assertNotNull(magazine.pop(SLAB));
+		}
+		assertEquals(1, magazine.refills);
+		assertEquals(0, magazine.size(SLAB));
+
+		assertNotNull(magazine.pop(SLAB));
+		assertEquals(2, magazine.refills);
+		assertEquals(1, magazine.size(SLAB));
+		assertTrue(shared[SLAB].isEmpty());
+	}
+
+	@Test
+	public void testFlush() {
+		for (ByteBuf buf : createBufs(5)) {
+			magazine.push(SLAB, buf);
+		}
+		magazine.push(SLAB + 1, ByteBuf.wrapForWriting(new byte[1 << (SLAB + 1)]));
+
+		magazine.flush();
+		assertEquals(0, magazine.size());
+		assertEquals(5, shared[SLAB].size());
+		assertEquals(1, shared[SLAB + 1].size());
+	}
+
+	private static List<ByteBuf> createBufs(int count) {
+		List<ByteBuf> bufs = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			bufs.add(ByteBuf.wrapForWriting(new byte[1 << SLAB]));
+		}
+		return bufs;
+	}
+}
@@ -0,0 +1,526 @@
+package io.datakernel.codec.json;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.codec.StructuredDecoder;
+import io.datakernel.codec.StructuredInput;
+import io.datakernel.exception.ParseException;
+import io.datakernel.exception.UncheckedException;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+import static io.datakernel.codec.StructuredCodecs.STRING_CODEC;
+import static io.datakernel.codec.StructuredInput.Token.*;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Parses JSON from UTF-8 bytes of a {@link ByteBuf} in place, without decoding them into an intermediate string.
+ * <p>
+ * The buffer is neither modified nor recycled. Like {@link JsonStructuredInput}, numbers are accepted
+ * where strings are expected and vice versa.
+ */
+public final class JsonBufStructuredInput implements StructuredInput {
+	private static final byte EMPTY_DOCUMENT = 0;
+	private static final byte NONEMPTY_DOCUMENT = 1;
+	private static final byte EMPTY_ARRAY = 2;
+	private static final byte NONEMPTY_ARRAY = 3;
+	private static final byte EMPTY_OBJECT = 4;
+	private static final byte DANGLING_NAME = 5;
+	private static final byte NONEMPTY_OBJECT = 6;
+
+	private final byte[] array;
+	private final int limit;
+	private int pos;
+
+	private byte[] stack = new byte[16];
+	private int depth = 1;
+
+	private char[] chars = new char[64];
+
+	public JsonBufStructuredInput(ByteBuf buf) {
+		this.array = buf.array();
+		this.pos = buf.head();
+		this.limit = buf.tail();
+		this.stack[0] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Checks whether there is nothing but whitespace left in the buffer
+	 */
+	public boolean isEnd() {
+		return skipWhitespace(pos) == limit;
+	}
+
+	private int skipWhitespace(int p) {
+		while (p < limit) {
+			byte b = array[p];
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t') break;
+			p++;
+		}
+		return p;
+	}
+
+	private byte peekAt(int p) throws ParseException {
+		if (p >= limit) {
+			throw new ParseException(JsonBufStructuredInput.class, "Unexpected end of JSON input");
+		}
+		return array[p];
+	}
+
+	/**
+	 * Returns position of the next value, skipping whitespace and a separating comma without changing the state
+	 */
+	private int valueStart() throws ParseException {
+		int p = skipWhitespace(pos);
+		switch (stack[depth - 1]) {
+			case NONEMPTY_ARRAY:
+				if (peekAt(p) == ']') {
+					throw new ParseException(JsonBufStructuredInput.class, "Unexpected end of array at " + p);
+				}
+				if (array[p] != ',') {
+					throw syntaxError("',' or ']'", p);
+				}
+				return skipWhitespace(p + 1);
+			case NONEMPTY_DOCUMENT:
+				throw new ParseException(JsonBufStructuredInput.class, "Unexpected data after the top-level value at " + p);
+			case EMPTY_OBJECT:
+			case NONEMPTY_OBJECT:
+				throw syntaxError("name", p);
+			default:
+				return p;
+		}
+	}
+
+	/**
+	 * Moves to the next value, which starts at {@code p}, and returns its first byte
+	 */
+	private byte enterValue(int p) throws ParseException {
+		byte b = peekAt(p);
+		byte context = stack[depth - 1];
+		stack[depth - 1] = context == EMPTY_ARRAY ? NONEMPTY_ARRAY :
+				context == DANGLING_NAME ? NONEMPTY_OBJECT :
+						context == EMPTY_DOCUMENT ? NONEMPTY_DOCUMENT :
+								context;
+		pos = p;
+		return b;
+	}
+
+	private byte nextValue() throws ParseException {
+		return enterValue(valueStart());
+	}
+
+	private void push(byte context) {
+		if (depth == stack.length) {
+			stack = Arrays.copyOf(stack, depth * 2);
+		}
+		stack[depth++] = context;
+	}
+
+	private void begin(char open, byte context) throws ParseException {
+		int p = valueStart();
+		if (enterValue(p) != open) {
+			throw syntaxError("'" + open + "'", p);
+		}
+		pos = p + 1;
+		push(context);
+	}
+
+	private void end(char close) throws ParseException {
+		int p = skipWhitespace(pos);
+		if (peekAt(p) != close) {
+			throw syntaxError("'" + close + "'", p);
+		}
+		if (stack[depth - 1] == DANGLING_NAME) {
+			throw syntaxError("value", p);
+		}
+		pos = p + 1;
+		depth--;
+	}
+
+	private ParseException syntaxError(String expected, int p) {
+		return new ParseException(JsonBufStructuredInput.class, "Expected " + expected + " at " + p +
+				(p < limit ? ", but was: '" + (char) (array[p] & 0xFF) + "'" : ", but was end of input"));
+	}
+
+	private void readLiteral(byte[] literal) throws ParseException {
+		int p = pos;
+		if (limit - p < literal.length) {
+			throw syntaxError(new String(literal, ISO_8859_1), p);
+		}
+		for (int i = 0; i < literal.length; i++) {
+			if (array[p + i] != literal[i]) {
+				throw syntaxError(new String(literal, ISO_8859_1), p);
+			}
+		}
+		pos = p + literal.length;
+	}
+
+	private static final byte[] NULL_LITERAL = {'n', 'u', 'l', 'l'};
+	private static final byte[] TRUE_LITERAL = {'t', 'r', 'u', 'e'};
+	private static final byte[] FALSE_LITERAL = {'f', 'a', 'l', 's', 'e'};
+
+	@Override
+	public void readNull() throws ParseException {
+		nextValue();
+		readLiteral(NULL_LITERAL);
+	}
+
+	@Override
+	public boolean readBoolean() throws ParseException {
+		byte b = nextValue();
+		if (b == 't') {
+			readLiteral(TRUE_LITERAL);
+			return true;
+		}
+		readLiteral(FALSE_LITERAL);
+		return false;
+	}
+
+	@Override
+	public byte readByte() throws ParseException {
+		int n = readInt();
+		if (n != (n & 0xFF)) throw new ParseException("Expected byte, but was: " + n);
+		return (byte) n;
+	}
+
+	@Override
+	public int readInt() throws ParseException {
+		long value = readLong();
+		if (value != (int) value) {
+			throw new ParseException(JsonBufStructuredInput.class, "Expected int, but was: " + value);
+		}
+		return (int) value;
+	}
+
+	@Override
+	public long readLong() throws ParseException {
+		byte b = nextValue();
+		if (b == '"') {
+			String str = parseString();
+			try {
+				return Long.parseLong(str);
+			} catch (NumberFormatException e) {
+				return integral(parseDouble(str));
+			}
+		}
+		int start = pos;
+		int p = start;
+		boolean negative = false;
+		if (b == '-') {
+			negative = true;
+			p++;
+		}
+		long value = 0;
+		int digitsStart = p;
+		while (p < limit) {
+			int digit = array[p] - '0';
+			if (digit < 0 || digit > 9) break;
+			if (value < -922337203685477580L || value == -922337203685477580L && digit > (negative ? 8 : 7)) {
+				throw new ParseException(JsonBufStructuredInput.class, "Long overflow at " + start);
+			}
+			// accumulating negative value does not overflow on Long.MIN_VALUE
+			value = value * 10 - digit;
+			p++;
+		}
+		if (p == digitsStart) {
+			throw syntaxError("number", start);
+		}
+		if (p < limit && (array[p] == '.' || array[p] == 'e' || array[p] == 'E')) {
+			return integral(parseDouble(scanNumber(start)));
+		}
+		pos = p;
+		return negative ? value : -value;
+	}
+
+	private static long integral(double value) throws ParseException {
+		long result = (long) value;
+		if (result != value) {
+			throw new ParseException(JsonBufStructuredInput.class, "Expected integer, but was: " + value);
+		}
+		return result;
+	}
+
+	private static double parseDouble(String str) throws ParseException {
+		try {
+			return Double.parseDouble(str);
+		} catch (NumberFormatException e) {
+			throw new ParseException(JsonBufStructuredInput.class, "Invalid number: " + str, e);
+		}
+	}
+
+	/**
+	 * Scans a number, including the non-finite ones, and moves past it
+	 */
+	private String scanNumber(int start) throws ParseException {
+		int p = start;
+		while (p < limit) {
+			byte b = array[p];
+			if (!(b >= '0' && b <= '9' || b == '-' || b == '+' || b == '.' || b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z')) break;
+			p++;
+		}
+		if (p == start) {
+			throw syntaxError("number", start);
+		}
+		pos = p;
+		return new String(array, start, p - start, ISO_8859_1);
+	}
+
+	@Override
+	public int readInt32() throws ParseException {
+		return readInt();
+	}
+
+	@Override
+	public long readLong64() throws ParseException {
+		return readLong();
+	}
+
+	@Override
+	public float readFloat() throws ParseException {
+		return (float) readDouble();
+	}
+
+	@Override
+	public double readDouble() throws ParseException {
+		byte b = nextValue();
+		return parseDouble(b == '"' ? parseString() : scanNumber(pos));
+	}
+
+	@Override
+	public byte[] readBytes() throws ParseException {
+		String str = readString();
+		try {
+			return Base64.getDecoder().decode(str);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException(e);
+		}
+	}
+
+	@Override
+	public String readString() throws ParseException {
+		byte b = nextValue();
+		if (b == '"') {
+			return parseString();
+		}
+		if (b == '-' || b >= '0' && b <= '9') {
+			return scanNumber(pos);
+		}
+		throw syntaxError("string", pos);
+	}
+
+	/**
+	 * Parses a quoted string at the current position, decoding UTF-8 and escapes into a reused char buffer
+	 */
+	private String parseString() throws ParseException {
+		int p = pos + 1;
+		int n = 0;
+		char[] chars = this.chars;
+		while (true) {
+			if (p >= limit) {
+				throw new ParseException(JsonBufStructuredInput.class, "Unterminated string at " + pos);
+			}
+			if (n + 2 > chars.length) {
+				chars = this.chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+			int b = array[p++];
+			if (b == '"') {
+				break;
+			}
+			if (b >= 0) {
+				if (b == '\\') {
+					b = peekAt(p++);
+					switch (b) {
+						case '"':
+						case '\\':
+						case '/':
+							chars[n++] = (char) b;
+							break;
+						case 't':
+							chars[n++] = '\t';
+							break;
+						case 'b':
+							chars[n++] = '\b';
+							break;
+						case 'n':
+							chars[n++] = '\n';
+							break;
+						case 'r':
+							chars[n++] = '\r';
+							break;
+						case 'f':
+							chars[n++] = '\f';
+							break;
+						case 'u':
+							if (p + 4 > limit) {
+								throw new ParseException(JsonBufStructuredInput.class, "Unterminated escape sequence at " + p);
+							}
+							int c = 0;
+							for (int i = 0; i < 4; i++) {
+								int digit = Character.digit(array[p++], 16);
+								if (digit < 0) {
+									throw new ParseException(JsonBufStructuredInput.class, "Invalid escape sequence at " + p);
+								}
+								c = c << 4 | digit;
+							}
+							chars[n++] = (char) c;
+							break;
+						default:
+							throw new ParseException(JsonBufStructuredInput.class, "Invalid escape sequence at " + p);
+					}
+				} else {
+					chars[n++] = (char) b;
+				}
+			} else if ((b & 0xE0) == 0xC0) {
+				chars[n++] = (char) ((b & 0x1F) << 6 | peekAt(p++) & 0x3F);
+			} else if ((b & 0xF0) == 0xE0) {
+				chars[n++] = (char) ((b & 0x0F) << 12 | (peekAt(p++) & 0x3F) << 6 | peekAt(p++) & 0x3F);
+			} else if ((b & 0xF8) == 0xF0) {
+				int codePoint = (b & 0x07) << 18 | (peekAt(p++) & 0x3F) << 12 | (peekAt(p++) & 0x3F) << 6 | peekAt(p++) & 0x3F;
+				chars[n++] = Character.highSurrogate(codePoint);
+				chars[n++] = Character.lowSurrogate(codePoint);
+			} else {
+				throw new ParseException(JsonBufStructuredInput.class, "Invalid UTF-8 sequence at " + (p - 1));
+			}
+		}
+		pos = p;
+		return new String(chars, 0, n);
+	}
+
+	@Override
+	public <T> T readNullable(StructuredDecoder<T> decoder) throws ParseException {
+		int p = valueStart();
+		if (peekAt(p) == 'n') {
+			enterValue(p);
+			readLiteral(NULL_LITERAL);
+			return null;
+		}
+		return decoder.decode(this);
+	}
+
+	@Override
+	public boolean hasNext() throws ParseException {
+		byte b = peekAt(skipWhitespace(pos));
+		return b != ']' && b != '}';
+	}
+
+	@Override
+	public String readKey() throws ParseException {
+		int p = skipWhitespace(pos);
+		byte context = stack[depth - 1];
+		if (context == NONEMPTY_OBJECT) {
+			if (peekAt(p) != ',') {
+				throw syntaxError("',' or '}'", p);
+			}
+			p = skipWhitespace(p + 1);
+		} else if (context != EMPTY_OBJECT) {
+			throw syntaxError("value", p);
+		}
+		if (peekAt(p) != '"') {
+			throw syntaxError("name", p);
+		}
+		pos = p;
+		String key = parseString();
+		p = skipWhitespace(pos);
+		if (peekAt(p) != ':') {
+			throw syntaxError("':'", p);
+		}
+		pos = p + 1;
+		stack[depth - 1] = DANGLING_NAME;
+		return key;
+	}
+
+	@Override
+	public <T> T readTuple(StructuredDecoder<T> decoder) throws ParseException {
+		begin('[', EMPTY_ARRAY);
+		T result = decoder.decode(this);
+		end(']');
+		return result;
+	}
+
+	@Override
+	public <T> T readObject(StructuredDecoder<T> decoder) throws ParseException {
+		try {
+			begin('{', EMPTY_OBJECT);
+			T result = decoder.decode(this);
+			end('}');
+			return result;
+		} catch (UncheckedException e) {
+			throw e.propagate(ParseException.class);
+		}
+	}
+
+	@Override
+	public <T> List<T> readList(StructuredDecoder<T> decoder) throws ParseException {
+		try {
+			List<T> list = new ArrayList<>();
+			begin('[', EMPTY_ARRAY);
+			while (hasNext()) {
+				T item = decoder.decode(this);
+				list.add(item);
+			}
+			end(']');
+			return list;
+		} catch (UncheckedException e) {
+			throw e.propagate(ParseException.class);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <K, V> Map<K, V> readMap(StructuredDecoder<K> keyDecoder, StructuredDecoder<V> valueDecoder) throws ParseException {
+		try {
+			Map<K, V> map = new LinkedHashMap<>();
+			if (keyDecoder == STRING_CODEC) {
+				begin('{', EMPTY_OBJECT);
+				while (hasNext()) {
+					K key = (K) readKey();
+					V value = valueDecoder.decode(this);
+					map.put(key, value);
+				}
+				end('}');
+			} else {
+				begin('[', EMPTY_ARRAY);
+				while (hasNext()) {
+					begin('[', EMPTY_ARRAY);
+					K key = keyDecoder.decode(this);
+					V value = valueDecoder.decode(this);
+					map.put(key, value);
+					end(']');
+				}
+				end(']');
+			}
+			return map;
+		} catch (UncheckedException e) {
+			throw e.propagate(ParseException.class);
+		}
+	}
+
+	@Override
+	public <T> T readCustom(Type type) throws ParseException {
+		throw new UnsupportedOperationException("No custom type readers");
+	}
+
+	@Override
+	public EnumSet<Token> getNext() throws ParseException {
+		int p = valueStart();
+		byte b = peekAt(p);
+		switch (b) {
+			case 'n':
+				return EnumSet.of(NULL);
+			case 't':
+			case 'f':
+				return EnumSet.of(BOOLEAN);
+			case '"':
+				return EnumSet.of(STRING, BYTES);
+			case '[':
+				return EnumSet.of(LIST, TUPLE);
+			case '{':
+				return EnumSet.of(MAP, OBJECT);
+			default:
+				if (b == '-' || b >= '0' && b <= '9') {
+					return EnumSet.of(BYTE, INT, LONG, FLOAT, DOUBLE);
+				}
+				throw syntaxError("value", p);
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package io.datakernel.codec.json;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufPool;
+import io.datakernel.codec.StructuredCodecs;
+import io.datakernel.codec.StructuredEncoder;
+import io.datakernel.codec.StructuredOutput;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes compact JSON as UTF-8 bytes directly into a growing {@link ByteBuf},
+ * without intermediate {@link java.io.Writer}s and strings.
+ * <p>
+ * Output is the same as of {@link JsonStructuredOutput} configured by {@link JsonUtils#toJson}.
+ */
+public final class JsonBufStructuredOutput implements StructuredOutput {
+	private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+	private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+	private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+	private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+	private ByteBuf buf;
+	private boolean comma;
+
+	public JsonBufStructuredOutput() {
+		this(256);
+	}
+
+	public JsonBufStructuredOutput(int initialSize) {
+		this.buf = ByteBufPool.allocate(initialSize);
+	}
+
+	public ByteBuf getBuf() {
+		return buf;
+	}
+
+	private void beforeValue(int size) {
+		buf = ByteBufPool.ensureWriteRemaining(buf, size + 1);
+		if (comma) {
+			buf.writeByte((byte) ',');
+		}
+		comma = true;
+	}
+
+	private void write(byte[] bytes) {
+		beforeValue(bytes.length);
+		buf.write(bytes);
+	}
+
+	private void begin(char c) {
+		beforeValue(1);
+		buf.writeByte((byte) c);
+		comma = false;
+	}
+
+	private void end(char c) {
+		buf = ByteBufPool.ensureWriteRemaining(buf, 1);
+		buf.writeByte((byte) c);
+		comma = true;
+	}
+
+	@Override
+	public void writeNull() {
+		write(NULL);
+	}
+
+	@Override
+	public void writeBoolean(boolean value) {
+		write(value ? TRUE : FALSE);
+	}
+
+	@Override
+	public void writeByte(byte value) {
+		writeInt(value & 0xFF);
+	}
+
+	@Override
+	public void writeInt(int value) {
+		beforeValue(11);
+		writeDigits(value);
+	}
+
+	@Override
+	public void writeLong(long value) {
+		beforeValue(20);
+		if (value == (int) value) {
+			writeDigits((int) value);
+			return;
+		}
+		if (value == Long.MIN_VALUE) {
+			writeAscii("-9223372036854775808");
+			return;
+		}
+		byte[] array = buf.array();
+		int tail = buf.tail();
+		if (value < 0) {
+			array[tail++] = '-';
+			value = -value;
+		}
+		int end = tail + digits(value);
+		for (int pos = end - 1; pos >= tail; pos--) {
+			array[pos] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		buf.tail(end);
+	}
+
+	private void writeDigits(int value) {
+		if (value == Integer.MIN_VALUE) {
+			writeAscii("-2147483648");
+			return;
+		}
+		byte[] array = buf.array();
+		int tail = buf.tail();
+		if (value < 0) {
+			array[tail++] = '-';
+			value = -value;
+		}
+		int end = tail + digits(value);
+		for (int pos = end - 1; pos >= tail; pos--) {
+			array[pos] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		buf.tail(end);
+	}
+
+	private static int digits(long value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	private void writeAscii(String value) {
+		byte[] array = buf.array();
+		int tail = buf.tail();
+		for (int i = 0; i < value.length(); i++) {
+			array[tail++] = (byte) value.charAt(i);
+		}
+		buf.tail(tail);
+	}
+
+	@Override
+	public void writeInt32(int value) {
+		writeInt(value);
+	}
+
+	@Override
+	public void writeLong64(long value) {
+		writeLong(value);
+	}
+
+	@Override
+	public void writeFloat(float value) {
+		// Gson widens floats to doubles
+		writeDouble(value);
+	}
+
+	@Override
+	public void writeDouble(double value) {
+		String str = Double.toString(value);
+		beforeValue(str.length());
+		writeAscii(str);
+	}
+
+	@Override
+	public void writeBytes(byte[] bytes, int off, int len) {
+		byte[] encoded = Base64.getEncoder().encode(off == 0 && len == bytes.length ?
+				bytes :
+				Arrays.copyOfRange(bytes, off, off + len));
+		beforeValue(encoded.length + 2);
+		buf.writeByte((byte) '"');
+		buf.write(encoded);
+		buf.writeByte((byte) '"');
+	}
+
+	@Override
+	public void writeString(String value) {
+		beforeValue(value.length() * 6 + 2);
+		writeQuoted(value);
+	}
+
+	/**
+	 * Writes a string in quotes, escaping it the same way as Gson does when HTML-safe output is off.
+	 * Write remaining of the buffer should be sufficient for 6 bytes per char, which is the length of a unicode escape
+	 */
+	private void writeQuoted(String value) {
+		byte[] array = buf.array();
+		int tail = buf.tail();
+		array[tail++] = '"';
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				if (c >= 0x20 && c != '"' && c != '\\') {
+					array[tail++] = (byte) c;
+					continue;
+				}
+				array[tail++] = '\\';
+				switch (c) {
+					case '"':
+					case '\\':
+						array[tail++] = (byte) c;
+						break;
+					case '\t':
+						array[tail++] = 't';
+						break;
+					case '\b':
+						array[tail++] = 'b';
+						break;
+					case '\n':
+						array[tail++] = 'n';
+						break;
+					case '\r':
+						array[tail++] = 'r';
+						break;
+					case '\f':
+						array[tail++] = 'f';
+						break;
+					default:
+						tail = writeUnicodeEscape(array, tail, c);
+				}
+			} else if (c < 0x800) {
+				array[tail++] = (byte) (0xC0 | c >> 6);
+				array[tail++] = (byte) (0x80 | c & 0x3F);
+			} else if (c == '\u2028' || c == '\u2029') {
+				array[tail++] = '\\';
+				tail = writeUnicodeEscape(array, tail, c);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				array[tail++] = (byte) (0xF0 | codePoint >> 18);
+				array[tail++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+				array[tail++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+				array[tail++] = (byte) (0x80 | codePoint & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogates cannot be encoded as UTF-8
+				array[tail++] = '?';
+			} else {
+				array[tail++] = (byte) (0xE0 | c >> 12);
+				array[tail++] = (byte) (0x80 | c >> 6 & 0x3F);
+				array[tail++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+		array[tail++] = '"';
+		buf.tail(tail);
+	}
+
+	private static int writeUnicodeEscape(byte[] array, int tail, char c) {
+		array[tail++] = 'u';
+		array[tail++] = HEX[c >> 12];
+		array[tail++] = HEX[c >> 8 & 0xF];
+		array[tail++] = HEX[c >> 4 & 0xF];
+		array[tail++] = HEX[c & 0xF];
+		return tail;
+	}
+
+	@Override
+	public <T> void writeNullable(StructuredEncoder<T> encoder, T value) {
+		if (value != null) {
+			encoder.encode(this, value);
+		} else {
+			writeNull();
+		}
+	}
+
+	@Override
+	public <T> void writeList(StructuredEncoder<T> encoder, List<T> list) {
+		begin('[');
+		for (T item : list) {
+			encoder.encode(this, item);
+		}
+		end(']');
+	}
+
+	@Override
+	public <K, V> void writeMap(StructuredEncoder<K> keyEncoder, StructuredEncoder<V> valueEncoder, Map<K, V> map) {
+		if (keyEncoder == StructuredCodecs.STRING_CODEC) {
+			begin('{');
+			for (Map.Entry<K, V> entry : map.entrySet()) {
+				writeKey((String) entry.getKey());
+				valueEncoder.encode(this, entry.getValue());
+			}
+			end('}');
+		} else {
+			begin('[');
+			for (Map.Entry<K, V> entry : map.entrySet()) {
+				begin('[');
+				keyEncoder.encode(this, entry.getKey());
+				valueEncoder.encode(this, entry.getValue());
+				end(']');
+			}
+			end(']');
+		}
+	}
+
+	@Override
+	public <T> void writeTuple(StructuredEncoder<T> encoder, T value) {
+		begin('[');
+		encoder.encode(this, value);
+		end(']');
+	}
+
+	@Override
+	public <T> void writeObject(StructuredEncoder<T> encoder, T value) {
+		begin('{');
+		encoder.encode(this, value);
+		end('}');
+	}
+
+	@Override
+	public void writeKey(String field) {
+		beforeValue(field.length() * 6 + 3);
+		writeQuoted(field);
+		buf.writeByte((byte) ':');
+		comma = false;
+	}
+
+	@Override
+	public <T> void writeCustom(Type type, T value) {
+		throw new UnsupportedOperationException("No custom type writers");
+	}
+}
@@ -0,0 +1,125 @@
+package io.datakernel.codec.json;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.codec.StructuredDecoder;
+import io.datakernel.exception.ParseException;
+import org.jetbrains.annotations.Nullable;
+
+import static io.datakernel.util.Preconditions.checkArgument;
+
+/**
+ * Incrementally parses a sequence of JSON values, such as newline-delimited JSON, from a {@link ByteBufQueue}.
+ * <p>
+ * Each call scans only the bytes which have been added to the queue since the previous call,
+ * tracking nesting of arrays and objects, and once a complete value is found
+ * it is taken from the queue and decoded in place by {@link JsonBufStructuredInput}.
+ * Top-level numbers and literals are complete only when followed by whitespace.
+ * <p>
+ * The parser is stateful, so an instance should be used with a single queue only.
+ */
+public final class JsonBufsParser<T> {
+	private final StructuredDecoder<T> decoder;
+	private final int maxSize;
+
+	private int scanned;
+	private int depth;
+	private boolean started;
+	private boolean scalar;
+	private boolean string;
+	private boolean escape;
+
+	private JsonBufsParser(StructuredDecoder<T> decoder, int maxSize) {
+		this.decoder = decoder;
+		this.maxSize = maxSize;
+	}
+
+	public static <T> JsonBufsParser<T> create(StructuredDecoder<T> decoder) {
+		return new JsonBufsParser<>(decoder, Integer.MAX_VALUE);
+	}
+
+	public static <T> JsonBufsParser<T> create(StructuredDecoder<T> decoder, int maxSize) {
+		checkArgument(maxSize > 0, "Max size should be positive");
+		return new JsonBufsParser<>(decoder, maxSize);
+	}
+
+	/**
+	 * Takes the next complete value from the queue and decodes it
+	 *
+	 * @return decoded value or {@code null} if the queue does not contain a complete value yet
+	 */
+	@Nullable
+	public T tryParse(ByteBufQueue bufs) throws ParseException {
+		int end = scan(bufs);
+		if (end == -1) {
+			if (scanned > maxSize) {
+				throw new ParseException(JsonBufsParser.class, "JSON value exceeds max size of " + maxSize + " bytes");
+			}
+			return null;
+		}
+		scanned = 0;
+		depth = 0;
+		started = scalar = string = escape = false;
+		ByteBuf buf = bufs.takeExactSize(end);
+		try {
+			return JsonUtils.fromJson(decoder, buf);
+		} finally {
+			buf.recycle();
+		}
+	}
+
+	/**
+	 * Scans bytes starting from the first unscanned one
+	 *
+	 * @return size of the first complete value, including leading whitespace, or -1
+	 */
+	private int scan(ByteBufQueue bufs) {
+		int offset = 0;
+		for (int i = 0; i < bufs.remainingBufs(); i++) {
+			ByteBuf buf = bufs.peekBuf(i);
+			int size = buf.readRemaining();
+			if (offset + size <= scanned) {
+				offset += size;
+				continue;
+			}
+			byte[] array = buf.array();
+			int head = buf.head();
+			for (int p = head + scanned - offset; p < buf.tail(); p++) {
+				byte b = array[p];
+				int position = offset + p - head;
+				if (string) {
+					if (escape) {
+						escape = false;
+					} else if (b == '\\') {
+						escape = true;
+					} else if (b == '"') {
+						string = false;
+						if (depth == 0) return position + 1;
+					}
+				} else if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+					if (scalar) return position;
+				} else if (!started) {
+					started = true;
+					if (b == '{' || b == '[') {
+						depth = 1;
+					} else if (b == '"') {
+						string = true;
+					} else {
+						scalar = true;
+					}
+				} else if (!scalar) {
+					if (b == '"') {
+						string = true;
+					} else if (b == '{' || b == '[') {
+						depth++;
+					} else if ((b == '}' || b == ']') && --depth == 0) {
+						return position + 1;
+					}
+				}
+			}
+			offset += size;
+			scanned = offset;
+		}
+		return -1;
+	}
+}
@@ -7,6 +7,7 @@ import io.datakernel.codec.StructuredOutput;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
@@ -92,7 +93,7 @@ public class JsonStructuredOutput implements StructuredOutput {
 
 	@Override
 	public void writeBytes(byte[] bytes, int off, int len) {
-		// TODO
+		writeBytes(Arrays.copyOfRange(bytes, off, off + len));
 	}
 
 	@Override
@@ -20,6 +20,7 @@ import com.google.gson.internal.Streams;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
+import io.datakernel.bytebuf.ByteBuf;
 import io.datakernel.codec.*;
 import io.datakernel.exception.ParseException;
 
@@ -44,6 +45,18 @@ public class JsonUtils {
 		return result;
 	}
 
+	/**
+	 * Decodes JSON from UTF-8 bytes of the buffer in place, the buffer is neither modified nor recycled
+	 */
+	public static <T> T fromJson(StructuredDecoder<T> decoder, ByteBuf buf) throws ParseException {
+		JsonBufStructuredInput in = new JsonBufStructuredInput(buf);
+		T result = decoder.decode(in);
+		if (!in.isEnd()) {
+			throw new ParseException("Json data was not fully consumed when decoding");
+		}
+		return result;
+	}
+
 	private static <T> void toJson(StructuredEncoder<T> encoder, T value, Writer writer) {
 		JsonWriterEx jsonWriter = new JsonWriterEx(writer);
 		jsonWriter.setLenient(true);
@@ -63,6 +76,15 @@ public class JsonUtils {
 		toJson(encoder, value, Streams.writerForAppendable(appendable));
 	}
 
+	/**
+	 * Encodes a value as compact JSON straight into a pooled buffer, bypassing Gson and intermediate strings
+	 */
+	public static <T> ByteBuf toJsonBuf(StructuredEncoder<? super T> encoder, T value) {
+		JsonBufStructuredOutput out = new JsonBufStructuredOutput();
+		encoder.encode(out, value);
+		return out.getBuf();
+	}
+
 	public static <T> StructuredCodec<T> oneline(StructuredCodec<T> codec) {
 		return indent(codec, "");
 	}
@@ -0,0 +1,181 @@
+package io.datakernel.codec.json;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.codec.StructuredCodec;
+import io.datakernel.codec.StructuredInput;
+import io.datakernel.exception.ParseException;
+import io.datakernel.test.rules.ByteBufRule;
+import io.datakernel.util.Tuple2;
+import io.datakernel.util.Tuple3;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.datakernel.bytebuf.ByteBufStrings.wrapUtf8;
+import static io.datakernel.codec.StructuredCodecs.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.*;
+
+public class JsonBufStructuredTest {
+	@Rule
+	public ByteBufRule byteBufRule = new ByteBufRule();
+
+	private static final StructuredCodec<Tuple3<String, Long, List<Double>>> OBJECT_CODEC = object(Tuple3::new,
+			"name", Tuple3::getValue1, STRING_CODEC.nullable(),
+			"id", Tuple3::getValue2, LONG_CODEC,
+			"values", Tuple3::getValue3, DOUBLE_CODEC.ofList());
+
+	private static <T> void test(StructuredCodec<T> codec, T item) throws ParseException {
+		String expected = JsonUtils.toJson(codec, item);
+		ByteBuf buf = JsonUtils.toJsonBuf(codec, item);
+		assertEquals(expected, buf.asString(UTF_8));
+
+		ByteBuf wrapped = wrapUtf8(expected);
+		assertEquals(item, JsonUtils.fromJson(codec, wrapped));
+		wrapped.recycle();
+	}
+
+	@Test
+	public void testPrimitives() throws ParseException {
+		for (int value : new int[]{0, 1, -1, 9, 10, 123456789, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+			test(INT_CODEC, value);
+		}
+		for (long value : new long[]{0, -10, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE}) {
+			test(LONG_CODEC, value);
+		}
+		for (double value : new double[]{0.0, -1.5, 1e-10, 1.0E100, Double.MAX_VALUE}) {
+			test(DOUBLE_CODEC, value);
+		}
+		for (float value : new float[]{0.0f, 0.1f, -1.5f, 3.4e38f, Float.MIN_VALUE}) {
+			test(FLOAT_CODEC, value);
+		}
+		test(BOOLEAN_CODEC, true);
+		test(BOOLEAN_CODEC, false);
+		test(BYTE_CODEC, (byte) 200);
+		test(STRING_CODEC.nullable(), null);
+	}
+
+	@Test
+	public void testStrings() throws ParseException {
+		test(STRING_CODEC, "");
+		test(STRING_CODEC, "plain ascii");
+		test(STRING_CODEC, "quotes \" and \\ backslashes / slash");
+		test(STRING_CODEC, "control \t\b\n\r\f\u0000\u001f chars");
+		test(STRING_CODEC, "кириллица, 中文, \u2028\u2029 separators");
+		test(STRING_CODEC, "surrogates \uD83D\uDE00 pair");
+		test(STRING_CODEC.ofList(), asList("a", "b\"", "\u00e9"));
+	}
+
+	@Test
+	public void testStructures() throws ParseException {
+		test(OBJECT_CODEC, new Tuple3<>("name", 1L, asList(1.0, 2.5)));
+		test(OBJECT_CODEC, new Tuple3<>(null, -1L, emptyList()));
+		test(OBJECT_CODEC.ofList(), asList(new Tuple3<>("a", 1L, emptyList()), new Tuple3<>("b", 2L, asList(0.5))));
+		StructuredCodec<Tuple2<Integer, String>> tupleCodec = tuple(Tuple2::new,
+				Tuple2::getValue1, INT_CODEC,
+				Tuple2::getValue2, STRING_CODEC.nullable());
+		test(tupleCodec, new Tuple2<>(1, null));
+
+		Map<String, Integer> stringKeys = new LinkedHashMap<>();
+		stringKeys.put("a", 1);
+		stringKeys.put("b", 2);
+		test(ofMap(STRING_CODEC, INT_CODEC), stringKeys);
+
+		Map<Integer, List<String>> intKeys = new LinkedHashMap<>();
+		intKeys.put(1, asList("x", "y"));
+		intKeys.put(2, emptyList());
+		test(ofMap(INT_CODEC, STRING_CODEC.ofList()), intKeys);
+	}
+
+	@Test
+	public void testBytes() throws ParseException {
+		byte[] bytes = {1, 2, 3, -1, -128, 127};
+		ByteBuf buf = JsonUtils.toJsonBuf(BYTES_CODEC, bytes);
+		assertEquals(JsonUtils.toJson(BYTES_CODEC, bytes), buf.getString(UTF_8));
+		assertArrayEquals(bytes, JsonUtils.fromJson(BYTES_CODEC, buf));
+		buf.recycle();
+
+		StructuredCodec<byte[]> rangeCodec = StructuredCodec.of(StructuredInput::readBytes, (out, item) -> out.writeBytes(item, 1, 3));
+		buf = JsonUtils.toJsonBuf(rangeCodec, bytes);
+		assertEquals(JsonUtils.toJson(rangeCodec, bytes), buf.getString(UTF_8));
+		assertArrayEquals(new byte[]{2, 3, -1}, JsonUtils.fromJson(BYTES_CODEC, buf));
+		buf.recycle();
+	}
+
+	@Test
+	public void testLenientInput() throws ParseException {
+		assertEquals(new Tuple3<>("x", 42L, asList(1.0, 100.0)),
+				fromJson(OBJECT_CODEC, " {\n\t\"name\" : \"\\u0078\" ,\"id\":\"42\", \"values\": [1, 1e2] } "));
+		assertEquals("12.5", fromJson(STRING_CODEC, "12.5"));
+		assertEquals(Integer.valueOf(3), fromJson(INT_CODEC, "3.0"));
+	}
+
+	@Test
+	public void testMalformedInput() {
+		for (String json : asList("", "[1,2", "[1 2]", "[1,]", "{\"name\" \"a\"}", "{\"name\":\"a\",}", "\"abc",
+				"1 2", "2147483648", "1.5", "99999999999999999999", "tru")) {
+			try {
+				StructuredCodec<?> codec = json.startsWith("[") ? INT_CODEC.ofList() : json.startsWith("{") ? OBJECT_CODEC : INT_CODEC;
+				fromJson(codec, json);
+				fail("Expected parse exception for " + json);
+			} catch (ParseException ignored) {
+			}
+		}
+	}
+
+	@Test
+	public void testBufsParser() throws ParseException {
+		JsonBufsParser<Tuple3<String, Long, List<Double>>> parser = JsonBufsParser.create(OBJECT_CODEC);
+		String json = "{\"name\":\"a}]\\\"\",\"id\":1,\"values\":[]}\n{\"name\":null,\"id\":2,\"values\":[0.5]}";
+
+		ByteBufQueue queue = new ByteBufQueue();
+		int parsed = 0;
+		for (int i = 0; i < json.length(); i++) {
+			queue.add(wrapUtf8(json.substring(i, i + 1)));
+			Tuple3<String, Long, List<Double>> result = parser.tryParse(queue);
+			if (result != null) {
+				assertEquals(parsed == 0 ?
+								new Tuple3<>("a}]\"", 1L, emptyList()) :
+								new Tuple3<>(null, 2L, asList(0.5)),
+						result);
+				parsed++;
+			}
+		}
+		assertEquals(2, parsed);
+		assertTrue(queue.isEmpty());
+
+		JsonBufsParser<Integer> intParser = JsonBufsParser.create(INT_CODEC);
+		queue.add(wrapUtf8(" 123"));
+		assertNull(intParser.tryParse(queue));
+		queue.add(wrapUtf8("\n"));
+		assertEquals(Integer.valueOf(123), intParser.tryParse(queue));
+		queue.recycle();
+	}
+
+	@Test(expected = ParseException.class)
+	public void testBufsParserMaxSize() throws ParseException {
+		JsonBufsParser<List<Integer>> parser = JsonBufsParser.create(INT_CODEC.ofList(), 8);
+		ByteBufQueue queue = new ByteBufQueue();
+		queue.add(wrapUtf8("[1,2,3,4,5,6"));
+		try {
+			parser.tryParse(queue);
+		} finally {
+			queue.recycle();
+		}
+	}
+
+	private static <T> T fromJson(StructuredCodec<T> codec, String json) throws ParseException {
+		ByteBuf buf = wrapUtf8(json);
+		try {
+			return JsonUtils.fromJson(codec, buf);
+		} finally {
+			buf.recycle();
+		}
+	}
+}
@@ -17,16 +17,14 @@
 package io.datakernel.csp.binary;
 
 import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufPool;
 import io.datakernel.bytebuf.ByteBufQueue;
 import io.datakernel.codec.StructuredCodec;
 import io.datakernel.codec.binary.BinaryUtils;
 import io.datakernel.codec.json.JsonUtils;
 import io.datakernel.exception.ParseException;
-import io.datakernel.writer.ByteBufWriter;
 import org.jetbrains.annotations.Nullable;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 public interface ByteBufSerializer<I, O> extends ByteBufsParser<I> {
 	ByteBuf serialize(O item);
 
@@ -52,14 +50,19 @@ public interface ByteBufSerializer<I, O> extends ByteBufsParser<I> {
 
 	static <I, O> ByteBufSerializer<I, O> ofJsonCodec(StructuredCodec<I> in, StructuredCodec<O> out) {
 		ByteBufsParser<I> parser = ByteBufsParser.ofNullTerminatedBytes()
-				.andThen(buf -> JsonUtils.fromJson(in, buf.asString(UTF_8)));
+				.andThen(buf -> {
+					try {
+						return JsonUtils.fromJson(in, buf);
+					} finally {
+						buf.recycle();
+					}
+				});
 		return new ByteBufSerializer<I, O>() {
 			@Override
 			public ByteBuf serialize(O item) {
-				ByteBufWriter writer = new ByteBufWriter();
-				JsonUtils.toJson(out, item, writer);
-				writer.append("\0");
-				return writer.getBuf();
+				ByteBuf buf = ByteBufPool.ensureWriteRemaining(JsonUtils.toJsonBuf(out, item), 1);
+				buf.writeByte((byte) 0);
+				return buf;
 			}
 
 			@Nullable
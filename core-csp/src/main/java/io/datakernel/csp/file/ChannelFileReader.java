@@ -23,6 +23,7 @@ import io.datakernel.csp.AbstractChannelSupplier;
 import io.datakernel.exception.CloseException;
 import io.datakernel.file.AsyncFileService;
 import io.datakernel.file.ExecutorAsyncFileService;
+import io.datakernel.util.ApplicationSettings;
 import io.datakernel.util.MemSize;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -32,6 +33,7 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.concurrent.Executor;
 
 import static io.datakernel.util.Preconditions.checkArgument;
@@ -39,6 +41,12 @@ import static java.nio.file.StandardOpenOption.READ;
 
 /**
  * This supplier allows you to asynchronously read binary data from a file.
+ * <p>
+ * Each read is a round trip to the executor of the {@link AsyncFileService}, so to keep the disk busy
+ * while the data are being processed, several reads may be kept in flight with {@link #withReadAhead(int)},
+ * and the size of each read may be increased with {@link #withBufferSize(int)}.
+ * <p>
+ * Local files may be {@link #withMemoryMapping memory-mapped} instead, each buffer is then a view of a mapped region of the file.
  */
 public final class ChannelFileReader extends AbstractChannelSupplier<ByteBuf> {
 	private static final Logger logger = LoggerFactory.getLogger(ChannelFileReader.class);
@@ -46,14 +54,23 @@ public final class ChannelFileReader extends AbstractChannelSupplier<ByteBuf> {
 	public static final OpenOption[] DEFAULT_OPTIONS = new OpenOption[]{READ};
 
 	public static final MemSize DEFAULT_BUFFER_SIZE = MemSize.kilobytes(8);
+	public static final boolean DEFAULT_DIRECT_BUFFERS = ApplicationSettings.getBoolean(ChannelFileReader.class, "directBuffers", false);
+	public static final int DEFAULT_READ_AHEAD = ApplicationSettings.getInt(ChannelFileReader.class, "readAhead", 1);
 
 	private final AsyncFileService fileService;
 	private final FileChannel channel;
 
 	private int bufferSize = DEFAULT_BUFFER_SIZE.toInt();
+	private boolean directBuffers = DEFAULT_DIRECT_BUFFERS;
+	private int readAhead = DEFAULT_READ_AHEAD;
+	private boolean memoryMapping;
 	private long position = 0;
 	private long limit = Long.MAX_VALUE;
 
+	// reads which have been issued, but not yet returned by get(), in the order of their positions
+	private final ArrayDeque<Read> reads = new ArrayDeque<>();
+	private long readPosition;
+
 	private ChannelFileReader(AsyncFileService fileService, FileChannel channel) {
 		this.fileService = fileService;
 		this.channel = channel;
@@ -95,9 +112,46 @@ public final class ChannelFileReader extends AbstractChannelSupplier<ByteBuf> {
 		return this;
 	}
 
+	/**
+	 * Defines whether file is read to direct {@link ByteBuf ByteBufs}, which are written
+	 * to sockets and other files without intermediate copying.
+	 * It is off by default, as a direct ByteBuf has no {@link ByteBuf#array()}, which parsers work with.
+	 *
+	 * @see ByteBuf#isDirect()
+	 */
+	public ChannelFileReader withDirectBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+		return this;
+	}
+
+	/**
+	 * Sets the number of reads which are kept in flight, including the one which is being waited for by {@link #get()}.
+	 * Up to this number of buffers may be read ahead of the consumer.
+	 */
+	public ChannelFileReader withReadAhead(int readAhead) {
+		checkArgument(readAhead > 0, "Number of reads ahead should be positive");
+		this.readAhead = readAhead;
+		return this;
+	}
+
+	/**
+	 * Defines whether file is memory-mapped in regions of {@link #withBufferSize buffer size}, rather than read.
+	 * Each region is mapped by the file service, and supplied as a direct {@link ByteBuf} over the mapping,
+	 * which is not pooled and is released by garbage collector.
+	 * <p>
+	 * Data are loaded by page faults on the thread which accesses them, which is cheap for files
+	 * in the page cache, and also when mapped data are written to sockets or files without copying.
+	 * The buffer size should then be large, a few megabytes rather than kilobytes.
+	 */
+	public ChannelFileReader withMemoryMapping(boolean memoryMapping) {
+		this.memoryMapping = memoryMapping;
+		return this;
+	}
+
 	public ChannelFileReader withOffset(long offset) {
 		checkArgument(offset >= 0, "Offset cannot be negative");
 		position = offset;
+		readPosition = offset;
 		return this;
 	}
 
@@ -113,35 +167,78 @@ public final class ChannelFileReader extends AbstractChannelSupplier<ByteBuf> {
 
 	@Override
 	protected Promise<ByteBuf> doGet() {
-		if (limit == 0) {
+		while (reads.size() < readAhead && limit != 0) {
+			reads.add(read());
+		}
+		Read read = reads.poll();
+		if (read == null) {
 			close();
 			return Promise.of(null);
 		}
-		ByteBuf buf = ByteBufPool.allocateExact((int) Math.min(bufferSize, limit));
-		return fileService.read(channel, position, buf.array(), buf.head(), buf.writeRemaining()) // reads are synchronized at least on asyncFile, so if produce() is called twice, position wont be broken (i hope)
-				.thenEx((bytesRead, e) -> {
+		return read.promise
+				.thenEx((buf, e) -> {
 					if (e != null) {
-						buf.recycle();
 						close(e);
 						return Promise.ofException(getException());
 					}
-					if (bytesRead == 0) { // no data read, assuming end of file
-						buf.recycle();
+					if (buf == null) { // no data read, assuming end of file
 						close();
 						return Promise.of(null);
 					}
-
-					buf.moveTail(Math.toIntExact(bytesRead));
-					position += bytesRead;
-					if (limit != Long.MAX_VALUE) {
-						limit -= bytesRead; // bytesRead is always <= the limit (^ see the min call)
+					position += buf.readRemaining();
+					if (buf.readRemaining() < read.size) {
+						// reads ahead have started past the current end of file, which may still grow
+						recycleReads();
+						if (limit != Long.MAX_VALUE) {
+							limit += readPosition - position;
+						}
+						readPosition = position;
 					}
 					return Promise.of(buf);
 				});
 	}
 
+	private Read read() {
+		int size = (int) Math.min(bufferSize, limit);
+		long readPosition = this.readPosition;
+		this.readPosition += size;
+		if (limit != Long.MAX_VALUE) {
+			limit -= size;
+		}
+		if (memoryMapping) {
+			return new Read(size, fileService.map(channel, readPosition, size)
+					.map(buffer -> buffer.hasRemaining() ? ByteBuf.wrapDirect(buffer) : null));
+		}
+		ByteBuf buf = directBuffers ? ByteBufPool.allocateDirectExact(size) : ByteBufPool.allocateExact(size);
+		return new Read(size, fileService.read(channel, readPosition, buf.toWriteByteBuffer())
+				.thenEx((bytesRead, e) -> {
+					if (e != null) {
+						buf.recycle();
+						return Promise.ofException(e);
+					}
+					if (bytesRead == 0) {
+						buf.recycle();
+						return Promise.of(null);
+					}
+					buf.moveTail(bytesRead);
+					return Promise.of(buf);
+				}));
+	}
+
+	private void recycleReads() {
+		for (Read read : reads) {
+			read.promise.whenResult(buf -> {
+				if (buf != null) {
+					buf.recycle();
+				}
+			});
+		}
+		reads.clear();
+	}
+
 	@Override
 	protected void onClosed(@NotNull Throwable e) {
+		recycleReads();
 		closeFile();
 	}
 
@@ -160,6 +257,16 @@ public final class ChannelFileReader extends AbstractChannelSupplier<ByteBuf> {
 		}
 	}
 
+	private static final class Read {
+		final int size;
+		final Promise<ByteBuf> promise;
+
+		Read(int size, Promise<ByteBuf> promise) {
+			this.size = size;
+			this.promise = promise;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "ChannelFileReader{" +
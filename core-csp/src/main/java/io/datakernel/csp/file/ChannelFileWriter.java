@@ -18,10 +18,16 @@ package io.datakernel.csp.file;
 
 import io.datakernel.async.Promise;
 import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufQueue;
 import io.datakernel.csp.AbstractChannelConsumer;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.eventloop.ScheduledRunnable;
 import io.datakernel.file.AsyncFileService;
 import io.datakernel.file.ExecutorAsyncFileService;
+import io.datakernel.util.ApplicationSettings;
+import io.datakernel.util.MemSize;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,28 +35,64 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.concurrent.Executor;
 
+import static io.datakernel.eventloop.Eventloop.getCurrentEventloop;
+import static io.datakernel.util.Preconditions.checkArgument;
 import static java.nio.file.StandardOpenOption.*;
 
 /**
  * This consumer allows you to asynchronously write binary data to a file.
+ * <p>
+ * By default each accepted buf is written by its own write, which completes the accept.
+ * With a {@link #withWriteBufferSize write buffer} bufs are accepted while a previous write is still in progress,
+ * and all of the bufs accumulated meanwhile are merged into a single write once it completes.
+ * <p>
+ * Writes may be forced to the storage device periodically, either {@link #withForceEvery every N bytes}
+ * or {@link #withForceInterval every T}, in which case a single force covers all of the writes made since the last one,
+ * as well as {@link #withForceOnClose on close}.
  */
 public final class ChannelFileWriter extends AbstractChannelConsumer<ByteBuf> {
 	private static final Logger logger = LoggerFactory.getLogger(ChannelFileWriter.class);
 
 	public static final OpenOption[] DEFAULT_OPTIONS = new OpenOption[]{WRITE, CREATE_NEW, APPEND};
+	public static final MemSize DEFAULT_WRITE_BUFFER_SIZE = ApplicationSettings.getMemSize(ChannelFileWriter.class, "writeBufferSize", MemSize.ZERO);
 
 	private final AsyncFileService fileService;
 	private final FileChannel channel;
 
 	private boolean forceOnClose = false;
 	private boolean forceMetadata = false;
+	private long forceEveryBytes = 0;
+	private boolean forceEveryMetadata = false;
+	private long forceIntervalMillis = 0;
+	private boolean forceIntervalMetadata = false;
+	private int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE.toInt();
 	private long startingOffset = 0;
 	private boolean started;
 
+	private Eventloop eventloop;
 	private long position = 0;
 
+	private final ByteBufQueue queue = new ByteBufQueue();
+	private int queueBufs;
+	private int queueBytes;
+	private int writingBytes;
+	@Nullable
+	private Promise<Void> writing;
+
+	private long unforcedBytes;
+	private long lastForceTimestamp;
+	@Nullable
+	private ScheduledRunnable scheduledForce;
+
+	// region stats
+	private long writes;
+	private long mergedBufs;
+	private long forces;
+	// endregion
+
 	// region creators
 
 	public ChannelFileWriter(AsyncFileService fileService, FileChannel channel) {
@@ -90,6 +132,37 @@ public final class ChannelFileWriter extends AbstractChannelConsumer<ByteBuf> {
 		return this;
 	}
 
+	/**
+	 * Forces writes to the storage device once at least given number of bytes has been written since the last force.
+	 */
+	public ChannelFileWriter withForceEvery(MemSize bytes, boolean forceMetadata) {
+		checkArgument(bytes.toLong() > 0, "Number of bytes should be positive");
+		forceEveryBytes = bytes.toLong();
+		forceEveryMetadata = forceMetadata;
+		return this;
+	}
+
+	/**
+	 * Forces writes to the storage device at most given interval after they are made.
+	 */
+	public ChannelFileWriter withForceInterval(Duration interval, boolean forceMetadata) {
+		checkArgument(interval.toMillis() > 0, "Interval should be positive");
+		forceIntervalMillis = interval.toMillis();
+		forceIntervalMetadata = forceMetadata;
+		return this;
+	}
+
+	/**
+	 * Sets the number of bytes which may be accepted while a previous write is still in progress.
+	 * Bufs accumulated this way are merged into a single write.
+	 * Zero, which is the default, means that each buf is written before the next one is accepted.
+	 */
+	public ChannelFileWriter withWriteBufferSize(MemSize writeBufferSize) {
+		checkArgument(writeBufferSize.toLong() >= 0, "Write buffer size should not be negative");
+		this.writeBufferSize = writeBufferSize.toInt();
+		return this;
+	}
+
 	public ChannelFileWriter withOffset(long offset) {
 		startingOffset = offset;
 		return this;
@@ -98,36 +171,111 @@ public final class ChannelFileWriter extends AbstractChannelConsumer<ByteBuf> {
 
 	@Override
 	protected void onClosed(@NotNull Throwable e) {
+		if (scheduledForce != null) {
+			scheduledForce.cancel();
+			scheduledForce = null;
+		}
+		queue.recycle();
 		closeFile();
 	}
 
 	@Override
 	protected Promise<Void> doAccept(ByteBuf buf) {
 		if (!started) {
+			eventloop = getCurrentEventloop();
+			lastForceTimestamp = eventloop.currentTimeMillis();
 			position = startingOffset;
 		}
 		started = true;
 		if (buf == null) {
-			closeFile();
-			close();
-			return Promise.of(null);
+			return flush()
+					.then($ -> {
+						closeFile();
+						close();
+						return Promise.of(null);
+					});
+		}
+		if (!buf.canRead()) {
+			buf.recycle();
+			return Promise.complete();
+		}
+		queueBufs++;
+		queueBytes += buf.readRemaining();
+		queue.add(buf);
+		if (writing == null) {
+			write();
+		}
+		return awaitWriteBuffer();
+	}
+
+	private Promise<Void> awaitWriteBuffer() {
+		if (writing == null || writingBytes + queueBytes <= writeBufferSize) {
+			return Promise.complete();
 		}
+		return writing.then($ -> awaitWriteBuffer());
+	}
+
+	private Promise<Void> flush() {
+		if (writing == null) {
+			return isClosed() ? Promise.ofException(getException()) : Promise.complete();
+		}
+		return writing.then($ -> flush());
+	}
+
+	private void write() {
+		ByteBuf buf = queue.takeRemaining();
 		long p = position;
 		position += buf.readRemaining();
+		writes++;
+		mergedBufs += queueBufs - 1;
+		writingBytes = queueBytes;
+		queueBufs = 0;
+		queueBytes = 0;
 
-		byte[] array = buf.getArray();
-		return fileService.write(channel, p, array, 0, array.length)
-				.thenEx(($, e2) -> {
-					if (isClosed()) return Promise.ofException(getException());
-					if (e2 != null) {
-						close(e2);
+		writing = fileService.write(channel, p, buf.toReadByteBuffer())
+				.thenEx((bytesWritten, e) -> {
+					buf.recycle();
+					if (e != null || isClosed()) {
+						return Promise.of(null, e);
 					}
-					return Promise.of($, e2);
+					unforcedBytes += bytesWritten;
+					boolean bytesDue = forceEveryBytes != 0 && unforcedBytes >= forceEveryBytes;
+					boolean intervalDue = forceIntervalMillis != 0 &&
+							eventloop.currentTimeMillis() - lastForceTimestamp >= forceIntervalMillis;
+					return bytesDue || intervalDue ?
+							force(bytesDue && forceEveryMetadata || intervalDue && forceIntervalMetadata) :
+							Promise.complete();
 				})
-				.then($ -> {
-					buf.recycle();
-					return Promise.complete();
-				});
+				.thenEx(this::onWritten);
+	}
+
+	private Promise<Void> force(boolean metadata) {
+		forces++;
+		unforcedBytes = 0;
+		lastForceTimestamp = eventloop.currentTimeMillis();
+		return fileService.force(channel, metadata);
+	}
+
+	private Promise<Void> onWritten(Void $, @Nullable Throwable e) {
+		writing = null;
+		writingBytes = 0;
+		if (isClosed()) return Promise.ofException(getException());
+		if (e != null) {
+			close(e);
+			return Promise.ofException(e);
+		}
+		if (queue.hasRemaining()) {
+			write();
+		} else if (forceIntervalMillis != 0 && unforcedBytes != 0 && scheduledForce == null) {
+			// writes have stopped for now, force them in background once the interval has passed
+			scheduledForce = eventloop.scheduleBackground(lastForceTimestamp + forceIntervalMillis, () -> {
+				scheduledForce = null;
+				if (writing == null && unforcedBytes != 0 && !isClosed()) {
+					writing = force(forceIntervalMetadata).thenEx(this::onWritten);
+				}
+			});
+		}
+		return Promise.complete();
 	}
 
 	private void closeFile() {
@@ -147,8 +295,31 @@ public final class ChannelFileWriter extends AbstractChannelConsumer<ByteBuf> {
 		}
 	}
 
+	/**
+	 * Returns the number of writes made, each of which may consist of several merged bufs
+	 */
+	public long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * Returns the number of bufs which have been merged into writes of previous bufs, that is, writes saved
+	 */
+	public long getMergedBufs() {
+		return mergedBufs;
+	}
+
+	public long getForces() {
+		return forces;
+	}
+
 	@Override
 	public String toString() {
-		return "ChannelFileWriter{}";
+		return "ChannelFileWriter{" +
+				"position=" + position +
+				", writes=" + writes +
+				", mergedBufs=" + mergedBufs +
+				", forces=" + forces +
+				'}';
 	}
 }
@@ -22,6 +22,8 @@ import io.datakernel.bytebuf.ByteBuf;
 import io.datakernel.bytebuf.ByteBufQueue;
 import io.datakernel.csp.ChannelConsumer;
 import io.datakernel.csp.ChannelSupplier;
+import io.datakernel.file.AsyncFileService;
+import io.datakernel.file.ExecutorAsyncFileService;
 import io.datakernel.test.rules.ByteBufRule;
 import io.datakernel.test.rules.EventloopRule;
 import io.datakernel.util.MemSize;
@@ -32,14 +34,22 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static io.datakernel.async.TestUtils.await;
 import static io.datakernel.async.TestUtils.awaitException;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.junit.Assert.*;
 
@@ -143,4 +153,148 @@ public final class ChannelFileReaderWriterTest {
 
 		assertEquals("", byteBuf.asString(UTF_8));
 	}
+
+	@Test
+	public void readAhead() throws IOException {
+		ByteBuf byteBuf = await(ChannelFileReader.open(newCachedThreadPool(), Paths.get("test_data/in.dat"))
+				.then(cfr -> cfr.withBufferSize(MemSize.of(3))
+						.withReadAhead(4)
+						.mapAsync(buf -> Promises.delay(1L, buf))
+						.toCollector(ByteBufQueue.collector())));
+
+		assertArrayEquals(Files.readAllBytes(Paths.get("test_data/in.dat")), byteBuf.asArray());
+	}
+
+	@Test
+	public void readAheadWithOffsetAndLength() throws IOException {
+		byte[] expected = Files.readAllBytes(Paths.get("test_data/in.dat"));
+		ByteBuf byteBuf = await(ChannelFileReader.open(newCachedThreadPool(), Paths.get("test_data/in.dat"))
+				.then(cfr -> cfr.withBufferSize(MemSize.of(2))
+						.withReadAhead(3)
+						.withOffset(1)
+						.withLength(expected.length - 3)
+						.toCollector(ByteBufQueue.collector())));
+
+		assertArrayEquals(Arrays.copyOfRange(expected, 1, expected.length - 2), byteBuf.asArray());
+	}
+
+	@Test
+	public void readAheadOfGrowingFile() throws IOException {
+		Path file = tempFolder.newFile("growing.dat").toPath();
+		Files.write(file, "abc".getBytes(UTF_8));
+
+		ChannelFileReader cfr = await(ChannelFileReader.open(newCachedThreadPool(), file))
+				.withBufferSize(MemSize.of(2))
+				.withReadAhead(4);
+		assertEquals("ab", await(cfr.get()).asString(UTF_8));
+		assertEquals("c", await(cfr.get()).asString(UTF_8));
+
+		// reads past the former end of file are discarded, the next one starts right after the last byte returned
+		Files.write(file, "defg".getBytes(UTF_8), StandardOpenOption.APPEND);
+		ByteBuf rest = await(cfr.toCollector(ByteBufQueue.collector()));
+		assertEquals("defg", rest.asString(UTF_8));
+	}
+
+	@Test
+	public void memoryMapping() throws IOException {
+		Path file = tempFolder.newFile("mapped.dat").toPath();
+		byte[] data = new byte[100_000];
+		ThreadLocalRandom.current().nextBytes(data);
+		Files.write(file, data);
+
+		ByteBuf byteBuf = await(ChannelFileReader.open(newCachedThreadPool(), file)
+				.then(cfr -> cfr.withMemoryMapping(true)
+						.withBufferSize(MemSize.kilobytes(16))
+						.withReadAhead(2)
+						.withOffset(10)
+						.toCollector(ByteBufQueue.collector())));
+
+		assertArrayEquals(Arrays.copyOfRange(data, 10, data.length), byteBuf.asArray());
+	}
+
+	@Test
+	public void writeBehindMergesBufs() throws IOException {
+		Path tempPath = tempFolder.getRoot().toPath().resolve("out.dat");
+		byte[] bytes = new byte[10_000];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		List<ByteBuf> bufs = new ArrayList<>();
+		for (int i = 0; i < bytes.length; i += 10) {
+			bufs.add(ByteBuf.wrapForReading(Arrays.copyOfRange(bytes, i, i + 10)));
+		}
+
+		ChannelFileWriter writer = await(ChannelFileWriter.open(newCachedThreadPool(), tempPath))
+				.withWriteBufferSize(MemSize.kilobytes(1))
+				.withForceEvery(MemSize.kilobytes(4), false);
+		await(ChannelSupplier.ofIterable(bufs).streamTo(writer));
+
+		assertArrayEquals(bytes, Files.readAllBytes(tempPath));
+		assertEquals(bufs.size(), writer.getWrites() + writer.getMergedBufs());
+		assertTrue(writer.getMergedBufs() > 0);
+		assertTrue(writer.getForces() > 0);
+	}
+
+	@Test
+	public void forceInterval() throws IOException {
+		Path tempPath = tempFolder.getRoot().toPath().resolve("out.dat");
+
+		ChannelFileWriter writer = await(ChannelFileWriter.open(newCachedThreadPool(), tempPath))
+				.withForceInterval(Duration.ofMillis(20), false);
+		await(writer.accept(ByteBuf.wrapForReading("abc".getBytes(UTF_8)))
+				.then($ -> Promises.delay(100L))
+				.then($ -> writer.accept(ByteBuf.wrapForReading("def".getBytes(UTF_8))))
+				.then($ -> Promises.delay(100L)));
+		assertEquals(2, writer.getForces());
+
+		await(writer.accept(null));
+		assertEquals("abcdef", new String(Files.readAllBytes(tempPath), UTF_8));
+	}
+
+	@Test
+	public void forceMetadataPerPolicy() throws IOException {
+		Path tempPath = tempFolder.getRoot().toPath().resolve("out.dat");
+		AsyncFileService fileService = new ExecutorAsyncFileService(newCachedThreadPool());
+		List<Boolean> forcedMetadata = new ArrayList<>();
+		AsyncFileService recordingFileService = new AsyncFileService() {
+			@Override
+			public Promise<Integer> read(FileChannel channel, long position, byte[] array, int offset, int size) {
+				return fileService.read(channel, position, array, offset, size);
+			}
+
+			@Override
+			public Promise<Integer> write(FileChannel channel, long position, byte[] array, int offset, int size) {
+				return fileService.write(channel, position, array, offset, size);
+			}
+
+			@Override
+			public Promise<Integer> read(FileChannel channel, long position, ByteBuffer buffer) {
+				return fileService.read(channel, position, buffer);
+			}
+
+			@Override
+			public Promise<Integer> write(FileChannel channel, long position, ByteBuffer buffer) {
+				return fileService.write(channel, position, buffer);
+			}
+
+			@Override
+			public Promise<ByteBuffer> map(FileChannel channel, long position, int size) {
+				return fileService.map(channel, position, size);
+			}
+
+			@Override
+			public Promise<Void> force(FileChannel channel, boolean metaData) {
+				forcedMetadata.add(metaData);
+				return fileService.force(channel, metaData);
+			}
+		};
+
+		ChannelFileWriter writer = new ChannelFileWriter(recordingFileService,
+				FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+				.withForceEvery(MemSize.of(3), true)
+				.withForceOnClose(false);
+		await(writer.accept(ByteBuf.wrapForReading("abc".getBytes(UTF_8)))
+				.then($ -> writer.accept(null)));
+
+		assertEquals(singletonList(true), forcedMetadata);
+		assertEquals("abc", new String(Files.readAllBytes(tempPath), UTF_8));
+	}
 }
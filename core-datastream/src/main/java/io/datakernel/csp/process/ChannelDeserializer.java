@@ -102,30 +102,10 @@ public final class ChannelDeserializer<T> extends AbstractStreamSupplier<T> impl
 				}
 
 			} else {
-				byte b = queue.peekByte();
-				if (b >= 0) {
-					dataSize = b;
-					headerSize = 1;
-				} else if (queue.hasRemainingBytes(2)) {
-					dataSize = b & 0x7f;
-					b = queue.peekByte(1);
-					if (b >= 0) {
-						dataSize += (b << 7);
-						headerSize = 2;
-					} else if (queue.hasRemainingBytes(3)) {
-						dataSize += ((b & 0x7f) << 7);
-						b = queue.peekByte(2);
-						if (b >= 0) {
-							dataSize += (b << 14);
-							headerSize = 3;
-						} else
-							throw new IllegalArgumentException("Invalid header size");
-					} else {
-						break;
-					}
-				} else {
+				headerSize = peekHeaderSize(queue);
+				if (headerSize == 0)
 					break;
-				}
+				dataSize = peekDataSize(queue, headerSize);
 				size = headerSize + dataSize;
 			}
 
@@ -164,4 +144,28 @@ public final class ChannelDeserializer<T> extends AbstractStreamSupplier<T> impl
 		input.close(e);
 	}
 
+	/**
+	 * Returns the size of a varint header of the first message in a queue,
+	 * or 0 if the header is not received completely yet
+	 */
+	public static int peekHeaderSize(ByteBufQueue queue) {
+		if (!queue.hasRemaining()) return 0;
+		if (queue.peekByte() >= 0) return 1;
+		if (!queue.hasRemainingBytes(2)) return 0;
+		if (queue.peekByte(1) >= 0) return 2;
+		if (!queue.hasRemainingBytes(3)) return 0;
+		if (queue.peekByte(2) >= 0) return 3;
+		throw new IllegalArgumentException("Invalid header size");
+	}
+
+	/**
+	 * Returns the data size of the first message in a queue, decoded from its header of a given size
+	 */
+	public static int peekDataSize(ByteBufQueue queue, int headerSize) {
+		int dataSize = 0;
+		for (int i = 0; i < headerSize; i++) {
+			dataSize += (queue.peekByte(i) & 0x7f) << (7 * i);
+		}
+		return dataSize;
+	}
 }
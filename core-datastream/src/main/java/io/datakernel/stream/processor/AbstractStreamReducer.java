@@ -31,6 +31,10 @@ import static io.datakernel.util.Preconditions.checkArgument;
  * with key function, selects elements with some key, reductions it and streams result sorted by key.
  * Elements from stream to input must be sorted by keys. It is Stream Transformer
  * because it represents few consumers and one supplier.
+ * <p>
+ * Inputs are ordered by a tournament tree of losers, so that taking the next item
+ * costs a single comparison per level of the tree, that is about log<sub>2</sub> of the number of inputs.
+ * Items with equal keys are taken in the order of inputs.
  *
  * @param <K> type of key of element
  * @param <O> type of output data
@@ -52,7 +56,12 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 	@Nullable
 	private A accumulator;
 
-	private final PriorityQueue<Input> priorityQueue;
+	private final Comparator<K> keyComparator;
+	// tournament tree over the inputs, leaves are implicit at positions k..2k-1 for k inputs,
+	// tree[0] is the index of the winning input and other nodes hold the indices of inputs which lost there
+	private int[] tree = new int[0];
+	private Input[] leaves = new Input[0];
+	private boolean replayWinner;
 	private int streamsAwaiting;
 	private int streamsOpen;
 
@@ -63,12 +72,7 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 	 */
 	public AbstractStreamReducer(Comparator<K> keyComparator) {
 		this.output = new Output();
-		this.priorityQueue = new PriorityQueue<>(1, (o1, o2) -> {
-			int compare = ((Comparator) keyComparator).compare(o1.headKey, o2.headKey);
-			if (compare != 0)
-				return compare;
-			return o1.index - o2.index;
-		});
+		this.keyComparator = keyComparator;
 	}
 
 	protected AbstractStreamReducer<K, O, A> withBufferSize(int bufferSize) {
@@ -78,7 +82,7 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 	}
 
 	protected <I> StreamConsumer<I> newInput(Function<I, K> keyFunction, Reducer<K, I, O, A> reducer) {
-		Input<I> input = new Input<I>(inputs.size(), priorityQueue, keyFunction, reducer, bufferSize);
+		Input<I> input = new Input<I>(keyFunction, reducer, bufferSize);
 		inputs.add(input);
 		streamsAwaiting++;
 		streamsOpen++;
@@ -98,18 +102,13 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 	private final class Input<I> extends AbstractStreamConsumer<I> implements StreamDataAcceptor<I> {
 		private I headItem;
 		private K headKey;
-		private final int index;
-		private final PriorityQueue<Input> priorityQueue;
 		private final ArrayDeque<I> deque = new ArrayDeque<>();
 		private final int bufferSize;
 
 		private final Function<I, K> keyFunction;
 		private final Reducer<K, I, O, A> reducer;
 
-		private Input(int index,
-				PriorityQueue<Input> priorityQueue, Function<I, K> keyFunction, Reducer<K, I, O, A> reducer, int bufferSize) {
-			this.index = index;
-			this.priorityQueue = priorityQueue;
+		private Input(Function<I, K> keyFunction, Reducer<K, I, O, A> reducer, int bufferSize) {
 			this.keyFunction = keyFunction;
 			this.reducer = reducer;
 			this.bufferSize = bufferSize;
@@ -136,7 +135,6 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 			if (headItem == null) {
 				headItem = item;
 				headKey = keyFunction.apply(headItem);
-				priorityQueue.offer(this);
 				streamsAwaiting--;
 			} else {
 				deque.offer(item);
@@ -180,10 +178,13 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 		StreamDataAcceptor<O> dataAcceptor = output.getCurrentDataAcceptor();
 		if (dataAcceptor == null)
 			return;
+		boolean exhausted = false;
 		while (streamsAwaiting == 0) {
-			Input<Object> input = priorityQueue.poll();
-			if (input == null)
+			Input<Object> input = nextInput();
+			if (input == null) {
+				exhausted = true;
 				break;
+			}
 			//noinspection PointlessNullCheck intellij doesn't know
 			if (key != null && input.headKey.equals(key)) {
 				accumulator = input.reducer.onNextItem(dataAcceptor, key, input.headItem, accumulator);
@@ -196,9 +197,9 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 			}
 			input.headItem = input.deque.poll();
 			lastInput = input;
+			replayWinner = true;
 			if (input.headItem != null) {
 				input.headKey = input.keyFunction.apply(input.headItem);
-				priorityQueue.offer(input);
 			} else {
 				if (!input.getEndOfStream().isResult()) {
 					streamsAwaiting++;
@@ -213,7 +214,7 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 			}
 		}
 
-		if (streamsOpen == 0 && priorityQueue.isEmpty()) {
+		if (streamsOpen == 0 && exhausted) {
 			if (lastInput != null) {
 				lastInput.reducer.onComplete(dataAcceptor, key, accumulator);
 				lastInput = null;
@@ -224,4 +225,57 @@ public abstract class AbstractStreamReducer<K, O, A> implements StreamInputs, St
 		}
 	}
 
+	/**
+	 * Returns the input with the least head item, or null if all of the inputs are exhausted.
+	 * Every input which is not exhausted should have a head item.
+	 */
+	@Nullable
+	private Input<Object> nextInput() {
+		if (leaves.length != inputs.size()) {
+			leaves = inputs.toArray(new Input[0]);
+			tree = new int[leaves.length];
+			if (leaves.length != 0) {
+				tree[0] = build(1);
+			}
+			replayWinner = false;
+		} else if (replayWinner) {
+			// only the head of the last winner has changed, so it replays its matches up to the root
+			int winner = tree[0];
+			for (int node = (winner + tree.length) >>> 1; node != 0; node >>>= 1) {
+				int loser = tree[node];
+				if (isBefore(loser, winner)) {
+					tree[node] = winner;
+					winner = loser;
+				}
+			}
+			tree[0] = winner;
+			replayWinner = false;
+		}
+		if (leaves.length == 0) return null;
+		Input<Object> input = leaves[tree[0]];
+		return input.headItem != null ? input : null;
+	}
+
+	private int build(int node) {
+		if (node >= tree.length) return node - tree.length;
+		int left = build(2 * node);
+		int right = build(2 * node + 1);
+		if (isBefore(left, right)) {
+			tree[node] = right;
+			return left;
+		} else {
+			tree[node] = left;
+			return right;
+		}
+	}
+
+	private boolean isBefore(int index1, int index2) {
+		Input input1 = leaves[index1];
+		Input input2 = leaves[index2];
+		if (input1.headItem == null) return input2.headItem == null && index1 < index2;
+		if (input2.headItem == null) return true;
+		int compare = keyComparator.compare((K) input1.headKey, (K) input2.headKey);
+		return compare < 0 || compare == 0 && index1 < index2;
+	}
+
 }
@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.stream.processor;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
+import io.datakernel.functional.Try;
+import io.datakernel.stream.*;
+import io.datakernel.stream.processor.StreamJoin.Joiner;
+import io.datakernel.util.MemSize;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import static io.datakernel.stream.StreamCapability.LATE_BINDING;
+import static io.datakernel.util.Preconditions.checkArgument;
+import static io.datakernel.util.Preconditions.checkNotNull;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Joins two streams, none of which needs to be sorted, by a hash table.
+ * <p>
+ * The right stream is read completely into a hash table first, and then items of the left stream
+ * are looked up in it as they come, so the right stream should be the smaller one, such as a dimension table.
+ * Results are produced in the order of the left stream, using the same {@link Joiner} as {@link StreamJoin}.
+ * Keys are compared by their {@code equals} and {@code hashCode}.
+ * Unlike {@link StreamJoin}, several right items may have the same key.
+ * <p>
+ * If a {@link #withMemoryLimit memory limit} is set, items are split into partitions by hash of their keys,
+ * and once the estimated size of the hash table exceeds the limit, its largest partition is spilled to a storage.
+ * Right and left items of spilled partitions are then written to the storages,
+ * and these partitions are joined one by one after the end of both streams.
+ * A spilled partition which still exceeds the limit is joined the same way, split by other bits of the key hashes.
+ *
+ * @param <K> type of keys
+ * @param <L> type of data from left stream
+ * @param <R> type of data from right stream
+ * @param <V> type of output data
+ */
+public final class StreamHashJoin<K, L, R, V> implements StreamInputs, StreamOutput<V> {
+	public static final int PARTITIONS = 16;
+	public static final int SPILL_BATCH_SIZE = 10_000;
+	public static final int MAX_ACTIVE_SPILLS = 2;
+
+	private static final int PARTITION_BITS = Integer.numberOfTrailingZeros(PARTITIONS);
+	private static final int MAX_DEPTH = 32 / PARTITION_BITS - 1;
+
+	public enum JoinType {
+		/**
+		 * Every pair of matching left and right items is joined, left items without a match are skipped
+		 */
+		INNER,
+		/**
+		 * Same as {@link #INNER}, and additionally each left item without a match is passed to {@link Joiner#onLeftJoin}
+		 */
+		LEFT,
+		/**
+		 * Each left item with at least one match is joined once, with the first of its matching right items
+		 */
+		SEMI
+	}
+
+	private final Function<L, K> leftKeyFunction;
+	private final Function<R, K> rightKeyFunction;
+	private final Joiner<K, L, R, V> joiner;
+	private final JoinType joinType;
+	private final int depth;
+	private final StreamHashJoin<?, ?, ?, ?> root;
+
+	private long memoryLimit;
+	private ToIntFunction<R> rightSizeEstimator;
+	private StreamSorterStorage<L> leftStorage;
+	private StreamSorterStorage<R> rightStorage;
+
+	private final Right right;
+	private final Probe probe;
+	private final StreamSupplier<V> output;
+
+	private Map<K, Object>[] tables;
+	private long[] tableSizes;
+	private long tablesSize;
+	private boolean[] spilled;
+	private List<R>[] rightBuffers;
+	private List<L>[] leftBuffers;
+	private List<Promise<Integer>>[] rightSpills;
+	private List<Promise<Integer>>[] leftSpills;
+	private int activeSpills;
+
+	private long usedMemory;
+	private long peakUsedMemory;
+
+	// region creators
+	private StreamHashJoin(Function<L, K> leftKeyFunction, Function<R, K> rightKeyFunction,
+			Joiner<K, L, R, V> joiner, JoinType joinType, int depth, @Nullable StreamHashJoin<?, ?, ?, ?> root) {
+		this.leftKeyFunction = checkNotNull(leftKeyFunction);
+		this.rightKeyFunction = checkNotNull(rightKeyFunction);
+		this.joiner = checkNotNull(joiner);
+		this.joinType = checkNotNull(joinType);
+		this.depth = depth;
+		this.root = root != null ? root : this;
+		this.right = new Right();
+		this.probe = new Probe(right.getEndOfStream(), this::probeOrSpill);
+		this.output = StreamSupplier.concat(
+				probe.output,
+				// the left stream may end before the right one, if it is empty
+				StreamSupplier.ofPromise(Promises.all(right.getEndOfStream(), probe.input.getEndOfStream())
+						.then($ -> joinSpilled())))
+				.withLateBinding();
+	}
+
+	/**
+	 * Creates a new instance of StreamHashJoin
+	 *
+	 * @param leftKeyFunction  function for counting keys of left stream
+	 * @param rightKeyFunction function for counting keys of right stream
+	 * @param joiner           joiner which will join streams
+	 * @param joinType         which of the joiner methods are called, and for which items
+	 */
+	public static <K, L, R, V> StreamHashJoin<K, L, R, V> create(Function<L, K> leftKeyFunction, Function<R, K> rightKeyFunction,
+			Joiner<K, L, R, V> joiner, JoinType joinType) {
+		return new StreamHashJoin<>(leftKeyFunction, rightKeyFunction, joiner, joinType, 0, null);
+	}
+
+	/**
+	 * Creates a new instance of StreamHashJoin, which calls both of the joiner methods, as {@link StreamJoin} does
+	 */
+	public static <K, L, R, V> StreamHashJoin<K, L, R, V> create(Function<L, K> leftKeyFunction, Function<R, K> rightKeyFunction,
+			Joiner<K, L, R, V> joiner) {
+		return new StreamHashJoin<>(leftKeyFunction, rightKeyFunction, joiner, JoinType.LEFT, 0, null);
+	}
+
+	/**
+	 * Bounds the estimated size of the hash table, partitions of which are spilled to given storages when it is exceeded
+	 *
+	 * @param memoryLimit        estimated size of right items which can be kept in RAM
+	 * @param rightSizeEstimator function which estimates the size of a right item in bytes
+	 * @param leftStorage        storage for left items of spilled partitions
+	 * @param rightStorage       storage for right items of spilled partitions
+	 */
+	public StreamHashJoin<K, L, R, V> withMemoryLimit(MemSize memoryLimit, ToIntFunction<R> rightSizeEstimator,
+			StreamSorterStorage<L> leftStorage, StreamSorterStorage<R> rightStorage) {
+		checkArgument(memoryLimit.toLong() > 0, "Memory limit should be positive");
+		this.memoryLimit = memoryLimit.toLong();
+		this.rightSizeEstimator = checkNotNull(rightSizeEstimator);
+		this.leftStorage = checkNotNull(leftStorage);
+		this.rightStorage = checkNotNull(rightStorage);
+		return this;
+	}
+	// endregion
+
+	@SuppressWarnings("unchecked")
+	private void init() {
+		if (tables != null) return;
+		int partitions = memoryLimit != 0 ? PARTITIONS : 1;
+		tables = new Map[partitions];
+		for (int i = 0; i < partitions; i++) {
+			tables[i] = new HashMap<>();
+		}
+		tableSizes = new long[partitions];
+		spilled = new boolean[partitions];
+		rightBuffers = new List[partitions];
+		leftBuffers = new List[partitions];
+		rightSpills = new List[partitions];
+		leftSpills = new List[partitions];
+	}
+
+	// each level of spilled partitions is split by the next bits of the hash
+	private int partition(K key) {
+		return tables.length == 1 ? 0 : ((Objects.hashCode(key) * 0x9E3779B9) << (PARTITION_BITS * depth)) >>> (32 - PARTITION_BITS);
+	}
+
+	private void addTableSize(int partition, long size) {
+		tableSizes[partition] += size;
+		tablesSize += size;
+		root.usedMemory += size;
+		root.peakUsedMemory = Math.max(root.peakUsedMemory, root.usedMemory);
+	}
+
+	private static <K, R> void put(Map<K, Object> table, K key, R item) {
+		Object existing = table.putIfAbsent(key, item);
+		if (existing != null) {
+			if (existing instanceof Matches) {
+				((Matches) existing).add(item);
+			} else {
+				table.put(key, new Matches(existing, item));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void probe(Map<K, Object> table, L item, StreamDataAcceptor<V> output) {
+		K key = leftKeyFunction.apply(item);
+		Object match = table.get(key);
+		if (match == null) {
+			if (joinType == JoinType.LEFT) {
+				joiner.onLeftJoin(key, item, output);
+			}
+		} else if (match instanceof Matches) {
+			List<Object> matches = (Matches) match;
+			for (int i = 0; i < (joinType == JoinType.SEMI ? 1 : matches.size()); i++) {
+				joiner.onInnerJoin(key, item, (R) matches.get(i), output);
+			}
+		} else {
+			joiner.onInnerJoin(key, item, (R) match, output);
+		}
+	}
+
+	private void probeOrSpill(L item, StreamDataAcceptor<V> output) {
+		int partition = partition(leftKeyFunction.apply(item));
+		if (!spilled[partition]) {
+			probe(tables[partition], item, output);
+			return;
+		}
+		List<L> buffer = leftBuffers[partition];
+		buffer.add(item);
+		if (buffer.size() == SPILL_BATCH_SIZE) {
+			leftBuffers[partition] = new ArrayList<>();
+			leftSpills[partition].add(spill(leftStorage, buffer));
+			if (activeSpills > MAX_ACTIVE_SPILLS) {
+				probe.input.getSupplier().suspend();
+			}
+		}
+	}
+
+	private void spillPartition(int partition) {
+		List<R> buffer = new ArrayList<>();
+		for (Object value : tables[partition].values()) {
+			if (value instanceof Matches) {
+				for (Object item : (Matches) value) {
+					addToSpillBuffer(partition, buffer, item);
+				}
+			} else {
+				addToSpillBuffer(partition, buffer, value);
+			}
+		}
+		tables[partition] = Collections.emptyMap();
+		addTableSize(partition, -tableSizes[partition]);
+		spilled[partition] = true;
+		rightBuffers[partition] = buffer;
+		leftBuffers[partition] = new ArrayList<>();
+		leftSpills[partition] = new ArrayList<>();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addToSpillBuffer(int partition, List<R> buffer, Object item) {
+		buffer.add((R) item);
+		if (buffer.size() == SPILL_BATCH_SIZE) {
+			if (rightSpills[partition] == null) {
+				rightSpills[partition] = new ArrayList<>();
+			}
+			rightSpills[partition].add(spill(rightStorage, new ArrayList<>(buffer)));
+			buffer.clear();
+		}
+	}
+
+	private <T> Promise<Integer> spill(StreamSorterStorage<T> storage, List<T> items) {
+		activeSpills++;
+		return storage.newPartitionId()
+				.then(partitionId -> storage.write(partitionId)
+						.then(consumer -> StreamSupplier.ofIterable(items).streamTo(consumer))
+						.map($ -> partitionId))
+				.whenComplete(($, e) -> {
+					if (activeSpills-- != MAX_ACTIVE_SPILLS + 1) return;
+					if (!right.getEndOfStream().isComplete()) {
+						right.getSupplier().resume(right);
+					} else {
+						probe.output.produceIfReady();
+					}
+				});
+	}
+
+	private void flushSpillBuffers() {
+		for (int partition = 0; partition < tables.length; partition++) {
+			if (!spilled[partition]) continue;
+			if (rightSpills[partition] == null) {
+				rightSpills[partition] = new ArrayList<>();
+			}
+			if (!rightBuffers[partition].isEmpty()) {
+				rightSpills[partition].add(spill(rightStorage, rightBuffers[partition]));
+				rightBuffers[partition] = null;
+			}
+			if (leftBuffers[partition] != null && !leftBuffers[partition].isEmpty()) {
+				leftSpills[partition].add(spill(leftStorage, leftBuffers[partition]));
+				leftBuffers[partition] = null;
+			}
+		}
+	}
+
+	private Promise<StreamSupplier<V>> joinSpilled() {
+		init();
+		flushSpillBuffers();
+		// all of the left items are probed, so only spilled partitions are needed from now on
+		for (int partition = 0; partition < tables.length; partition++) {
+			tables[partition] = Collections.emptyMap();
+			addTableSize(partition, -tableSizes[partition]);
+		}
+		Deque<Integer> partitions = new ArrayDeque<>();
+		for (int partition = 0; partition < tables.length; partition++) {
+			if (spilled[partition]) {
+				partitions.add(partition);
+			}
+		}
+		output.getEndOfStream()
+				.whenException(e -> {
+					for (Integer partition : partitions) {
+						cleanup(rightStorage, rightSpills[partition]);
+						cleanup(leftStorage, leftSpills[partition]);
+					}
+					partitions.clear();
+				});
+		// partitions are read only when the previous ones are joined, so that just one of them is kept in RAM
+		Iterator<StreamSupplier<V>> suppliers = new Iterator<StreamSupplier<V>>() {
+			@Override
+			public boolean hasNext() {
+				return !partitions.isEmpty();
+			}
+
+			@Override
+			public StreamSupplier<V> next() {
+				return joinSpilled(partitions.remove());
+			}
+		};
+		return Promise.of(StreamSupplier.concat(suppliers).withLateBinding());
+	}
+
+	private StreamSupplier<V> joinSpilled(int partition) {
+		List<Promise<Integer>> rightSpills = this.rightSpills[partition];
+		List<Promise<Integer>> leftSpills = this.leftSpills[partition];
+		return StreamSupplier.ofPromise(Promises.toList(rightSpills)
+				.then(rightIds -> Promises.toList(leftSpills)
+						.map(leftIds -> {
+							StreamHashJoin<K, L, R, V> join = new StreamHashJoin<>(leftKeyFunction, rightKeyFunction,
+									joiner, joinType, depth + 1, root);
+							join.memoryLimit = depth + 1 <= MAX_DEPTH ? memoryLimit : 0;
+							join.rightSizeEstimator = rightSizeEstimator;
+							join.leftStorage = leftStorage;
+							join.rightStorage = rightStorage;
+							StreamSupplier.concat(rightIds.stream().map(rightStorage::readStream).collect(toList()))
+									.streamTo(join.getRight());
+							StreamSupplier.concat(leftIds.stream().map(leftStorage::readStream).collect(toList()))
+									.streamTo(join.getLeft());
+							join.getOutput().getEndOfStream()
+									.whenComplete(($, e) -> {
+										rightStorage.cleanup(rightIds);
+										leftStorage.cleanup(leftIds);
+									});
+							return join.getOutput();
+						})));
+	}
+
+	private static <T> void cleanup(StreamSorterStorage<T> storage, List<Promise<Integer>> spills) {
+		Promises.toList(spills.stream().map(Promise::toTry))
+				.whenResult(tries -> storage.cleanup(tries.stream()
+						.filter(Try::isSuccess)
+						.map(Try::get)
+						.collect(toList())));
+	}
+
+	private static final class Matches extends ArrayList<Object> {
+		Matches(Object first, Object second) {
+			super(asList(first, second));
+		}
+	}
+
+	private final class Right extends AbstractStreamConsumer<R> implements StreamDataAcceptor<R> {
+		@Override
+		protected void onStarted() {
+			init();
+			getSupplier().resume(this);
+		}
+
+		@Override
+		public void accept(R item) {
+			K key = rightKeyFunction.apply(item);
+			int partition = partition(key);
+			if (spilled[partition]) {
+				addToSpillBuffer(partition, rightBuffers[partition], item);
+			} else {
+				put(tables[partition], key, item);
+				if (rightSizeEstimator != null) {
+					addTableSize(partition, rightSizeEstimator.applyAsInt(item));
+					if (memoryLimit != 0 && tablesSize > memoryLimit) {
+						int largest = 0;
+						for (int i = 1; i < tables.length; i++) {
+							if (tableSizes[i] > tableSizes[largest]) {
+								largest = i;
+							}
+						}
+						spillPartition(largest);
+					}
+				}
+			}
+			if (activeSpills > MAX_ACTIVE_SPILLS) {
+				getSupplier().suspend();
+			}
+		}
+
+		@Override
+		protected Promise<Void> onEndOfStream() {
+			init();
+			probe.output.produceIfReady();
+			return output.getEndOfStream();
+		}
+
+		@Override
+		protected void onError(Throwable e) {
+			probe.output.close(e);
+		}
+	}
+
+	/**
+	 * Passes left items to a handler once a given promise completes, which is the end of the right stream
+	 * for the items which are joined as they come, or immediately for the spilled ones
+	 */
+	private final class Probe {
+		private final Promise<Void> ready;
+		private final BiConsumer<L, StreamDataAcceptor<V>> handler;
+		private final ProbeInput input = new ProbeInput();
+		private final ProbeOutput output = new ProbeOutput();
+
+		private Probe(Promise<Void> ready, BiConsumer<L, StreamDataAcceptor<V>> handler) {
+			this.ready = ready;
+			this.handler = handler;
+		}
+
+		private final class ProbeInput extends AbstractStreamConsumer<L> {
+			@Override
+			protected Promise<Void> onEndOfStream() {
+				return output.sendEndOfStream();
+			}
+
+			@Override
+			protected void onError(Throwable e) {
+				output.close(e);
+			}
+		}
+
+		private final class ProbeOutput extends AbstractStreamSupplier<V> {
+			void produceIfReady() {
+				if (isReceiverReady()) {
+					onProduce(getCurrentDataAcceptor());
+				}
+			}
+
+			@Override
+			protected void onSuspended() {
+				input.getSupplier().suspend();
+			}
+
+			@Override
+			protected void onError(Throwable e) {
+				input.close(e);
+				if (this == StreamHashJoin.this.probe.output) {
+					right.close(e);
+				}
+			}
+
+			@Override
+			protected void onProduce(StreamDataAcceptor<V> dataAcceptor) {
+				if (ready.isResult() && activeSpills <= MAX_ACTIVE_SPILLS) {
+					input.getSupplier().resume(item -> handler.accept(item, dataAcceptor));
+				}
+			}
+
+			@Override
+			public Set<StreamCapability> getCapabilities() {
+				// nothing is produced until the output is bound and resumed
+				return EnumSet.of(LATE_BINDING);
+			}
+		}
+	}
+
+	public int getSpilledPartitions() {
+		if (spilled == null) return 0;
+		int result = 0;
+		for (boolean partitionSpilled : spilled) {
+			if (partitionSpilled) result++;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the largest estimated size of right items which were kept in RAM at once,
+	 * including the ones of spilled partitions, or 0 if no memory limit is set
+	 */
+	public long getPeakUsedMemory() {
+		return peakUsedMemory;
+	}
+
+	/**
+	 * Returns left stream, which is joined as it comes
+	 */
+	public StreamConsumer<L> getLeft() {
+		return probe.input;
+	}
+
+	/**
+	 * Returns right stream, which is read into a hash table
+	 */
+	public StreamConsumer<R> getRight() {
+		return right;
+	}
+
+	@Override
+	public List<? extends StreamConsumer<?>> getInputs() {
+		return asList(probe.input, right);
+	}
+
+	@Override
+	public StreamSupplier<V> getOutput() {
+		return output;
+	}
+}
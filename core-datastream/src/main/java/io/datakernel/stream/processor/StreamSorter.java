@@ -19,22 +19,42 @@ package io.datakernel.stream.processor;
 import io.datakernel.async.AsyncCollector;
 import io.datakernel.async.Promise;
 import io.datakernel.stream.*;
+import io.datakernel.util.ApplicationSettings;
+import io.datakernel.util.MemSize;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import static io.datakernel.util.Preconditions.checkArgument;
 
 /**
  * Represent {@link StreamTransformer} which receives data and saves it in collection, when it
  * receive end of stream it sorts it and streams to destination.
+ * <p>
+ * Items are collected into runs, bounded by a number of items and optionally by an estimated memory size.
+ * Each complete run is sorted and written to the temporary storage, while the next one is being collected.
+ * By default runs are sorted on the eventloop thread, which stalls it for the time of sorting,
+ * so for large runs a {@link #withSortExecutor sort executor} should be set.
+ * <p>
+ * At the end of stream all of the runs are merged at once, unless {@link #withMaxFanIn max fan-in} is set.
+ * Then, whenever the number of runs in the storage reaches it, the oldest runs are merged
+ * into a single one by an intermediate merge, while the input is still being received.
  *
  * @param <K> type of keys
  * @param <T> type of objects
  */
 public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
+	public static final int DEFAULT_MAX_FAN_IN = ApplicationSettings.getInt(StreamSorter.class, "maxFanIn", 0);
+	public static final int DEFAULT_PARALLEL_SORT_THRESHOLD = ApplicationSettings.getInt(StreamSorter.class, "parallelSortThreshold", 1 << 16);
+
 	private final AsyncCollector<? extends List<Integer>> temporaryStreamsCollector;
+	// partitions which are written and are not being merged, in the order of writing
+	private final List<Integer> partitions = new ArrayList<>();
+	private final Map<Integer, Integer> partitionPasses = new HashMap<>();
 	private final StreamSorterStorage<T> storage;
 	private final Function<T, K> keyFunction;
 	private final Comparator<K> keyComparator;
@@ -42,6 +62,21 @@ public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
 	private final boolean distinct;
 	private final int itemsInMemory;
 
+	private long memoryLimit;
+	private ToIntFunction<T> itemSizeEstimator;
+	@Nullable
+	private Executor sortExecutor;
+	private int parallelSortThreshold = DEFAULT_PARALLEL_SORT_THRESHOLD;
+	@Nullable
+	private ForkJoinPool sortPool;
+	private int maxFanIn = DEFAULT_MAX_FAN_IN;
+
+	// region stats
+	private int runs;
+	private int merges;
+	private int mergePasses;
+	// endregion
+
 	private Input input;
 	private StreamSupplier<T> output;
 	private StreamConsumer<T> outputConsumer;
@@ -64,14 +99,13 @@ public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
 		this.input = new Input();
 
 		this.output = new ForwardingStreamSupplier<T>(StreamSupplier.ofPromise(
-				(this.temporaryStreamsCollector = AsyncCollector.create(new ArrayList<>()))
+				(this.temporaryStreamsCollector = AsyncCollector.create(partitions))
 						.run(input.getEndOfStream())
 						.get()
-						.map(streamIds -> {
-							input.list.sort(itemComparator);
+						.then(streamIds -> sort(input.list).map(sortedList -> {
 							Iterator<T> iterator = !distinct ?
-									input.list.iterator() :
-									new DistinctIterator<>(input.list, keyFunction, keyComparator);
+									sortedList.iterator() :
+									new DistinctIterator<>(sortedList, keyFunction, keyComparator);
 							StreamSupplier<T> listSupplier = StreamSupplier.ofIterator(iterator);
 							if (streamIds.isEmpty()) {
 								return listSupplier;
@@ -85,7 +119,7 @@ public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
 										.getOutput()
 										.withLateBinding();
 							}
-						})
+						}))
 		)) {
 			@Override
 			public void setConsumer(StreamConsumer<T> consumer) {
@@ -96,12 +130,12 @@ public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
 	}
 
 	private static final class DistinctIterator<K, T> implements Iterator<T> {
-		private final ArrayList<T> sortedList;
+		private final List<T> sortedList;
 		private final Function<T, K> keyFunction;
 		private final Comparator<K> keyComparator;
 		int i = 0;
 
-		private DistinctIterator(ArrayList<T> sortedList, Function<T, K> keyFunction, Comparator<K> keyComparator) {
+		private DistinctIterator(List<T> sortedList, Function<T, K> keyFunction, Comparator<K> keyComparator) {
 			this.sortedList = sortedList;
 			this.keyFunction = keyFunction;
 			this.keyComparator = keyComparator;
@@ -141,10 +175,108 @@ public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
 			int itemsInMemorySize) {
 		return new StreamSorter<>(storage, keyFunction, keyComparator, distinct, itemsInMemorySize);
 	}
+
+	/**
+	 * Additionally bounds each run by the total estimated size of its items
+	 *
+	 * @param memoryLimit       estimated size of items which can be saved in RAM before sorting
+	 * @param itemSizeEstimator function which estimates the size of an item in bytes
+	 */
+	public StreamSorter<K, T> withMemoryLimit(MemSize memoryLimit, ToIntFunction<T> itemSizeEstimator) {
+		checkArgument(memoryLimit.toLong() > 0, "Memory limit should be positive");
+		this.memoryLimit = memoryLimit.toLong();
+		this.itemSizeEstimator = itemSizeEstimator;
+		return this;
+	}
+
+	/**
+	 * Sorts runs on a given executor, rather than on the eventloop thread,
+	 * so that a run is sorted while the next one is being collected.
+	 * Runs of at least {@link #withParallelSort parallel sort threshold} items are sorted by {@link Arrays#parallelSort}.
+	 * Key function and key comparator should be thread-safe then.
+	 */
+	public StreamSorter<K, T> withSortExecutor(Executor sortExecutor) {
+		this.sortExecutor = sortExecutor;
+		return this;
+	}
+
+	/**
+	 * Sets the number of items, starting from which runs are sorted in parallel, if a sort executor is set.
+	 * Parallel sorting runs on a given pool, or on the common pool if it is {@code null}.
+	 */
+	public StreamSorter<K, T> withParallelSort(int parallelSortThreshold, @Nullable ForkJoinPool sortPool) {
+		checkArgument(parallelSortThreshold >= 0, "Parallel sort threshold should not be negative");
+		this.parallelSortThreshold = parallelSortThreshold;
+		this.sortPool = sortPool;
+		return this;
+	}
+
+	/**
+	 * Limits the number of partitions which are merged at once, 0 means no limit
+	 */
+	public StreamSorter<K, T> withMaxFanIn(int maxFanIn) {
+		checkArgument(maxFanIn == 0 || maxFanIn >= 2, "Max fan-in should be at least 2");
+		this.maxFanIn = maxFanIn;
+		return this;
+	}
 	// endregion
 
+	@SuppressWarnings("unchecked")
+	private Promise<List<T>> sort(ArrayList<T> list) {
+		if (sortExecutor == null) {
+			list.sort(itemComparator);
+			return Promise.of(list);
+		}
+		return Promise.ofBlockingCallable(sortExecutor, () -> {
+			if (list.size() < parallelSortThreshold) {
+				list.sort(itemComparator);
+				return list;
+			}
+			T[] array = (T[]) list.toArray();
+			if (sortPool != null) {
+				// parallel sort splits into tasks of the pool it is invoked from
+				sortPool.submit(() -> Arrays.parallelSort(array, itemComparator)).join();
+			} else {
+				Arrays.parallelSort(array, itemComparator);
+			}
+			return Arrays.asList(array);
+		});
+	}
+
+	private void onPartitionWritten(int partitionId, int passes) {
+		partitions.add(partitionId);
+		partitionPasses.put(partitionId, passes);
+		mergePasses = Math.max(mergePasses, passes);
+		if (maxFanIn != 0 && partitions.size() >= maxFanIn) {
+			List<Integer> partitionsToMerge = new ArrayList<>(partitions.subList(0, maxFanIn));
+			partitions.subList(0, maxFanIn).clear();
+			int mergedPasses = 1 + partitionsToMerge.stream()
+					.mapToInt(partitionPasses::remove)
+					.max().orElse(0);
+			temporaryStreamsCollector.addPromise(merge(partitionsToMerge),
+					(partitions, mergedPartitionId) -> onPartitionWritten(mergedPartitionId, mergedPasses))
+					.whenResult($ -> input.suspendOrResume());
+		}
+	}
+
+	private Promise<Integer> merge(List<Integer> partitionsToMerge) {
+		merges++;
+		return storage.newPartitionId()
+				.then(partitionId -> storage.write(partitionId)
+						.then(consumer -> {
+							StreamMerger<K, T> streamMerger = StreamMerger.create(keyFunction, keyComparator, distinct);
+							partitionsToMerge.forEach(streamId ->
+									StreamSupplier.ofPromise(storage.read(streamId))
+											.streamTo(streamMerger.newInput()));
+							return streamMerger.getOutput().streamTo(consumer);
+						})
+						.then($ -> storage.cleanup(partitionsToMerge))
+						.map($ -> partitionId));
+	}
+
 	private final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
 		private ArrayList<T> list = new ArrayList<>();
+		private long listSize;
 
 		@Override
 		protected void onStarted() {
@@ -154,25 +286,31 @@ public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
 		@Override
 		public void accept(T item) {
 			list.add(item);
-			if (list.size() >= itemsInMemory) {
-				list.sort(itemComparator);
-				Iterator<T> iterator = !distinct ?
-						input.list.iterator() :
-						new DistinctIterator<>(input.list, keyFunction, keyComparator);
-				writeToTemporaryStorage(iterator)
+			if (memoryLimit != 0) {
+				listSize += itemSizeEstimator.applyAsInt(item);
+			}
+			if (list.size() >= itemsInMemory || memoryLimit != 0 && listSize >= memoryLimit) {
+				ArrayList<T> run = list;
+				list = new ArrayList<>(run.size());
+				listSize = 0;
+				writeToTemporaryStorage(run)
 						.whenResult($ -> suspendOrResume());
 				suspendOrResume();
-				list = new ArrayList<>(itemsInMemory);
 			}
 		}
 
-		private Promise<Integer> writeToTemporaryStorage(Iterator<T> sortedList) {
+		private Promise<Integer> writeToTemporaryStorage(ArrayList<T> run) {
+			runs++;
 			return temporaryStreamsCollector.addPromise(
-					storage.newPartitionId()
-							.then(partitionId -> storage.write(partitionId)
-									.then(consumer -> StreamSupplier.ofIterator(sortedList).streamTo(consumer)
-											.map($ -> partitionId))),
-					List::add);
+					sort(run)
+							.then(sortedList -> storage.newPartitionId()
+									.then(partitionId -> storage.write(partitionId)
+											.then(consumer -> StreamSupplier.ofIterator(!distinct ?
+													sortedList.iterator() :
+													new DistinctIterator<>(sortedList, keyFunction, keyComparator))
+													.streamTo(consumer)
+													.map($ -> partitionId)))),
+					(partitions, partitionId) -> onPartitionWritten(partitionId, 0));
 		}
 
 		private void suspendOrResume() {
@@ -194,6 +332,27 @@ public final class StreamSorter<K, T> implements StreamTransformer<T, T> {
 		}
 	}
 
+	/**
+	 * Returns the number of sorted runs written to the storage
+	 */
+	public int getRuns() {
+		return runs;
+	}
+
+	/**
+	 * Returns the number of intermediate merges
+	 */
+	public int getMerges() {
+		return merges;
+	}
+
+	/**
+	 * Returns the largest number of intermediate merges any item has passed through
+	 */
+	public int getMergePasses() {
+		return mergePasses;
+	}
+
 	@Override
 	public StreamConsumer<T> getInput() {
 		return input;
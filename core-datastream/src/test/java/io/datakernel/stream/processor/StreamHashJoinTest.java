@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.stream.processor;
+
+import io.datakernel.async.Promises;
+import io.datakernel.stream.StreamConsumerToList;
+import io.datakernel.stream.StreamSupplier;
+import io.datakernel.stream.processor.StreamHashJoin.JoinType;
+import io.datakernel.stream.processor.StreamJoin.ValueJoiner;
+import io.datakernel.test.rules.ByteBufRule;
+import io.datakernel.test.rules.EventloopRule;
+import io.datakernel.util.MemSize;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static io.datakernel.async.TestUtils.await;
+import static io.datakernel.serializer.util.BinarySerializers.INT_SERIALIZER;
+import static io.datakernel.stream.TestStreamConsumers.randomlySuspending;
+import static io.datakernel.stream.TestUtils.assertEndOfStream;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class StreamHashJoinTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	// left and right items are joined by their values modulo 100
+	private static final ValueJoiner<Integer, Integer, Integer, String> JOINER = new ValueJoiner<Integer, Integer, Integer, String>() {
+		@Override
+		public String doInnerJoin(Integer key, Integer left, Integer right) {
+			return left + "-" + right;
+		}
+
+		@Override
+		public String doLeftJoin(Integer key, Integer left) {
+			return left + "-";
+		}
+	};
+
+	@Test
+	public void testJoinTypes() {
+		List<Integer> left = asList(305, 101, 7, 205, 1);
+		List<Integer> right = asList(1, 5, 105, 50);
+
+		assertEquals(asList("305-5", "305-105", "101-1", "205-5", "205-105", "1-1"), join(left, right, JoinType.INNER));
+		assertEquals(asList("305-5", "305-105", "101-1", "7-", "205-5", "205-105", "1-1"), join(left, right, JoinType.LEFT));
+		assertEquals(asList("305-5", "101-1", "205-5", "1-1"), join(left, right, JoinType.SEMI));
+		assertEquals(asList("305-", "101-", "7-", "205-", "1-"), join(left, asList(), JoinType.LEFT));
+	}
+
+	private static List<String> join(List<Integer> left, List<Integer> right, JoinType joinType) {
+		StreamHashJoin<Integer, Integer, Integer, String> join = StreamHashJoin.create(item -> item % 100, item -> item % 100, JOINER, joinType);
+		StreamSupplier<Integer> leftSupplier = StreamSupplier.ofIterable(left);
+		StreamSupplier<Integer> rightSupplier = StreamSupplier.ofIterable(right);
+		StreamConsumerToList<String> consumer = StreamConsumerToList.create();
+
+		await(leftSupplier.streamTo(join.getLeft()),
+				rightSupplier.streamTo(join.getRight()),
+				join.getOutput().streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertEndOfStream(leftSupplier);
+		assertEndOfStream(rightSupplier);
+		return consumer.getList();
+	}
+
+	@Test
+	public void testSpilling() throws IOException {
+		Random random = new Random(1);
+		List<Integer> left = new ArrayList<>();
+		for (int i = 0; i < 100_000; i++) {
+			left.add(random.nextInt(1_000_000));
+		}
+		List<Integer> right = new ArrayList<>();
+		for (int i = 0; i < 50_000; i++) {
+			right.add(i * 2);
+		}
+
+		for (JoinType joinType : JoinType.values()) {
+			Executor executor = Executors.newCachedThreadPool();
+			StreamSorterStorage<Integer> leftStorage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+			StreamSorterStorage<Integer> rightStorage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+			StreamHashJoin<Integer, Integer, Integer, String> join = StreamHashJoin.create((Integer item) -> item % 100_000, (Integer item) -> item, JOINER, joinType)
+					.withMemoryLimit(MemSize.kilobytes(64), item -> 16, leftStorage, rightStorage);
+
+			StreamConsumerToList<String> consumer = StreamConsumerToList.create();
+			await(StreamSupplier.ofIterable(left).streamTo(join.getLeft()),
+					StreamSupplier.ofIterable(right).streamTo(join.getRight()),
+					join.getOutput().streamTo(consumer));
+
+			List<String> expected = left.stream()
+					.filter(item -> joinType == JoinType.LEFT || item % 2 == 0)
+					.map(item -> item % 2 == 0 ? item + "-" + item % 100_000 : item + "-")
+					.sorted()
+					.collect(toList());
+			// items of spilled partitions come after the rest, so the order of the left stream is not kept
+			List<String> actual = consumer.getList().stream().sorted().collect(toList());
+			assertEquals(expected, actual);
+			assertTrue(join.getSpilledPartitions() > 0);
+		}
+	}
+
+	@Test
+	public void testSpilledPartitionsAreSplit() throws IOException {
+		List<Integer> left = new ArrayList<>();
+		List<Integer> right = new ArrayList<>();
+		for (int i = 0; i < 50_000; i++) {
+			left.add(i);
+			right.add(i);
+		}
+
+		Executor executor = Executors.newCachedThreadPool();
+		StreamSorterStorage<Integer> leftStorage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+		StreamSorterStorage<Integer> rightStorage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+		// each of 16 spilled partitions is about 12 times larger than the limit
+		MemSize memoryLimit = MemSize.kilobytes(4);
+		StreamHashJoin<Integer, Integer, Integer, String> join = StreamHashJoin.create((Integer item) -> item, (Integer item) -> item, JOINER, JoinType.INNER)
+				.withMemoryLimit(memoryLimit, item -> 16, leftStorage, rightStorage);
+
+		StreamConsumerToList<String> consumer = StreamConsumerToList.create();
+		await(StreamSupplier.ofIterable(left).streamTo(join.getLeft()),
+				StreamSupplier.ofIterable(right).streamTo(join.getRight()),
+				join.getOutput().streamTo(consumer.transformWith(randomlySuspending())));
+
+		List<String> expected = left.stream().map(item -> item + "-" + item).sorted().collect(toList());
+		assertEquals(expected, consumer.getList().stream().sorted().collect(toList()));
+		assertEquals(StreamHashJoin.PARTITIONS, join.getSpilledPartitions());
+		assertTrue(join.getPeakUsedMemory() > 0);
+		assertTrue(join.getPeakUsedMemory() <= memoryLimit.toLong() + 16);
+	}
+
+	@Test
+	public void testLeftEndsFirst() throws IOException {
+		List<Integer> right = new ArrayList<>();
+		for (int i = 0; i < 50_000; i++) {
+			right.add(i);
+		}
+
+		Executor executor = Executors.newCachedThreadPool();
+		StreamSorterStorage<Integer> leftStorage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+		StreamSorterStorage<Integer> rightStorage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+		StreamHashJoin<Integer, Integer, Integer, String> join = StreamHashJoin.create((Integer item) -> item, (Integer item) -> item, JOINER, JoinType.LEFT)
+				.withMemoryLimit(MemSize.kilobytes(64), item -> 16, leftStorage, rightStorage);
+
+		StreamConsumerToList<String> consumer = StreamConsumerToList.create();
+		// the second half of the right stream arrives after the empty left stream has ended
+		await(StreamSupplier.<Integer>closing().streamTo(join.getLeft()),
+				StreamSupplier.concat(
+						StreamSupplier.ofIterable(right.subList(0, 25_000)),
+						StreamSupplier.ofPromise(Promises.delay(50L, StreamSupplier.ofIterable(right.subList(25_000, 50_000)))))
+						.streamTo(join.getRight()),
+				join.getOutput().streamTo(consumer));
+
+		assertTrue(consumer.getList().isEmpty());
+		assertTrue(join.getSpilledPartitions() > 0);
+	}
+}
@@ -16,6 +16,8 @@
 
 package io.datakernel.stream.processor;
 
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
 import io.datakernel.stream.StreamConsumerToList;
 import io.datakernel.stream.StreamSupplier;
 import io.datakernel.test.rules.EventloopRule;
@@ -24,7 +26,9 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 import java.util.function.Function;
 
 import static io.datakernel.async.TestUtils.await;
@@ -212,4 +216,31 @@ public class StreamMergerTest {
 		assertClosedWithError(merger.getInput(1));
 	}
 
+
+	@Test
+	public void testManyInputs() {
+		Random random = new Random(1);
+		for (int inputs : new int[]{1, 2, 3, 7, 16, 100}) {
+			StreamMerger<Integer, Integer> merger = StreamMerger.create(item -> item / 1000, Integer::compareTo, false);
+			List<Integer> all = new ArrayList<>();
+			List<Promise<Void>> promises = new ArrayList<>();
+			for (int i = 0; i < inputs; i++) {
+				List<Integer> items = new ArrayList<>();
+				int size = random.nextInt(100);
+				for (int j = 0; j < size; j++) {
+					items.add(random.nextInt(50) * 1000 + i);
+				}
+				items.sort(Integer::compareTo);
+				all.addAll(items);
+				promises.add(StreamSupplier.ofIterable(items).streamTo(merger.newInput()));
+			}
+			StreamConsumerToList<Integer> consumer = StreamConsumerToList.create();
+			promises.add(merger.getOutput().streamTo(consumer.transformWith(randomlySuspending())));
+			await(Promises.all(promises));
+
+			// items with equal keys come in the order of inputs
+			all.sort(Comparator.comparing(item -> item / 1000));
+			assertEquals(all, consumer.getList());
+		}
+	}
 }
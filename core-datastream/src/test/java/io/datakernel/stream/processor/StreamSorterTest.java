@@ -30,12 +30,17 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static io.datakernel.async.TestUtils.await;
 import static io.datakernel.async.TestUtils.awaitException;
@@ -43,8 +48,10 @@ import static io.datakernel.serializer.util.BinarySerializers.INT_SERIALIZER;
 import static io.datakernel.stream.TestStreamConsumers.*;
 import static io.datakernel.stream.TestUtils.assertEndOfStream;
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public final class StreamSorterTest {
 	@Rule
@@ -154,4 +161,81 @@ public final class StreamSorterTest {
 		assertSame(exception, e);
 		assertEquals(0, consumerToList.getList().size());
 	}
+
+	@Test
+	public void testSortExecutorAndMemoryLimit() throws Exception {
+		List<Integer> items = new ArrayList<>();
+		Random random = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			items.add(random.nextInt(50_000));
+		}
+
+		Executor executor = Executors.newCachedThreadPool();
+		StreamSorterStorage<Integer> storage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+		StreamSorter<Integer, Integer> sorter = StreamSorter.create(storage, Function.identity(), Integer::compareTo, false, Integer.MAX_VALUE)
+				.withMemoryLimit(MemSize.kilobytes(64), item -> 16)
+				.withSortExecutor(executor);
+
+		List<Integer> result = await(StreamSupplier.ofIterable(items)
+				.transformWith(sorter)
+				.toList());
+
+		items.sort(Integer::compareTo);
+		assertEquals(items, result);
+	}
+
+	@Test
+	public void testParallelSort() throws Exception {
+		List<Integer> items = new ArrayList<>();
+		Random random = new Random(3);
+		for (int i = 0; i < 100_000; i++) {
+			items.add(random.nextInt(50_000));
+		}
+
+		Executor executor = Executors.newCachedThreadPool();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		StreamSorterStorage<Integer> storage = StreamSorterStorageImpl.create(executor, INT_SERIALIZER, tempFolder.newFolder().toPath());
+		StreamSorter<Integer, Integer> sorter = StreamSorter.create(storage, Function.identity(), Integer::compareTo, false, 30_000)
+				.withSortExecutor(executor)
+				.withParallelSort(20_000, pool);
+
+		List<Integer> result = await(StreamSupplier.ofIterable(items)
+				.transformWith(sorter)
+				.toList());
+		pool.shutdown();
+
+		items.sort(Integer::compareTo);
+		assertEquals(items, result);
+	}
+
+	@Test
+	public void testMaxFanIn() throws Exception {
+		List<Integer> items = new ArrayList<>();
+		Random random = new Random(2);
+		for (int i = 0; i < 10_000; i++) {
+			items.add(random.nextInt(1_000));
+		}
+
+		for (boolean distinct : new boolean[]{false, true}) {
+			Path folder = tempFolder.newFolder().toPath();
+			StreamSorterStorage<Integer> storage = StreamSorterStorageImpl.create(Executors.newCachedThreadPool(), INT_SERIALIZER, folder);
+			StreamSorter<Integer, Integer> sorter = StreamSorter.create(storage, Function.identity(), Integer::compareTo, distinct, 100)
+					.withMaxFanIn(3);
+
+			List<Integer> result = await(StreamSupplier.ofIterable(items)
+					.transformWith(sorter)
+					.toList());
+
+			List<Integer> expected = distinct ?
+					items.stream().distinct().sorted().collect(toList()) :
+					items.stream().sorted().collect(toList());
+			assertEquals(expected, result);
+			assertEquals(100, sorter.getRuns());
+			assertTrue(sorter.getMerges() > 0);
+			assertTrue(sorter.getMergePasses() > 1);
+			try (Stream<Path> files = Files.list(folder)) {
+				assertTrue(files.count() < 3);
+			}
+		}
+	}
 }
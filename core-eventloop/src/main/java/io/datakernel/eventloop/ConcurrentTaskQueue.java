@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.eventloop;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded multi-producer single-consumer queue of tasks, which are
+ * passed to an {@link Eventloop} from other threads.
+ * <p>
+ * Tasks are stored in a linked list of fixed-size array segments.
+ * A producer claims a slot with a single atomic increment, so unlike
+ * {@link java.util.concurrent.ConcurrentLinkedQueue} it does not allocate
+ * a node per task, only a new segment once per {@link #SEGMENT_SIZE} tasks.
+ * <p>
+ * {@link #poll()} and {@link #isEmpty()} must only be called by a consumer thread,
+ * {@link #size()} called from other threads is approximate.
+ */
+final class ConcurrentTaskQueue {
+	static final int SEGMENT_SIZE = 1024;
+	private static final int MASK = SEGMENT_SIZE - 1;
+
+	private static final class Segment {
+		private static final AtomicReferenceFieldUpdater<Segment, Segment> NEXT =
+				AtomicReferenceFieldUpdater.newUpdater(Segment.class, Segment.class, "next");
+
+		final long base;
+		final AtomicReferenceArray<Runnable> tasks = new AtomicReferenceArray<>(SEGMENT_SIZE);
+		volatile Segment next;
+
+		Segment(long base) {
+			this.base = base;
+		}
+
+		Segment getOrCreateNext() {
+			Segment next = this.next;
+			if (next == null) {
+				next = new Segment(base + SEGMENT_SIZE);
+				if (!NEXT.compareAndSet(this, null, next)) {
+					next = this.next;
+				}
+			}
+			return next;
+		}
+	}
+
+	private final AtomicLong producerIndex = new AtomicLong();
+
+	/**
+	 * A segment to start looking for a claimed slot from, its base never
+	 * exceeds the indexes which are claimed after it has been read
+	 */
+	private volatile Segment tail;
+
+	private Segment head;
+	private long consumerIndex;
+
+	ConcurrentTaskQueue() {
+		head = tail = new Segment(0);
+	}
+
+	void offer(@NotNull Runnable task) {
+		Segment segment = tail;
+		long index = producerIndex.getAndIncrement();
+		Segment start = segment;
+		while (index >= segment.base + SEGMENT_SIZE) {
+			segment = segment.getOrCreateNext();
+		}
+		if (segment != start) {
+			tail = segment;
+		}
+		segment.tasks.lazySet((int) (index & MASK), task);
+	}
+
+	/**
+	 * Returns the next task or {@code null} if the queue is empty,
+	 * or the next task has been claimed by a producer but is not published yet
+	 */
+	@Nullable
+	Runnable poll() {
+		long index = consumerIndex;
+		int offset = (int) (index & MASK);
+		Segment segment = head;
+		if (offset == 0 && index != segment.base) {
+			segment = segment.next;
+			if (segment == null) {
+				return null;
+			}
+			head = segment;
+		}
+		Runnable task = segment.tasks.get(offset);
+		if (task == null) {
+			return null;
+		}
+		segment.tasks.lazySet(offset, null);
+		consumerIndex = index + 1;
+		return task;
+	}
+
+	/**
+	 * Tasks which are claimed but not published yet are counted as present
+	 */
+	boolean isEmpty() {
+		return producerIndex.get() == consumerIndex;
+	}
+
+	int size() {
+		return (int) (producerIndex.get() - consumerIndex);
+	}
+}
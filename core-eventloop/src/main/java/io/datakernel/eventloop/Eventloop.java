@@ -17,6 +17,7 @@
 package io.datakernel.eventloop;
 
 import io.datakernel.async.Completable;
+import io.datakernel.bytebuf.ByteBufPool;
 import io.datakernel.exception.AsyncTimeoutException;
 import io.datakernel.exception.StacklessException;
 import io.datakernel.exception.UncheckedException;
@@ -28,6 +29,7 @@ import io.datakernel.net.DatagramSocketSettings;
 import io.datakernel.net.ServerSocketSettings;
 import io.datakernel.time.CurrentTimeProvider;
 import io.datakernel.time.CurrentTimeProviderSystem;
+import io.datakernel.util.ApplicationSettings;
 import io.datakernel.util.Initializable;
 import io.datakernel.util.Stopwatch;
 import org.jetbrains.annotations.Async;
@@ -43,17 +45,18 @@ import java.nio.channels.*;
 import java.nio.channels.spi.SelectorProvider;
 import java.time.Duration;
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static io.datakernel.eventloop.Utils.tryToOptimizeSelector;
 import static io.datakernel.util.Preconditions.checkArgument;
 import static io.datakernel.util.Preconditions.checkNotNull;
+import static io.datakernel.util.Preconditions.checkState;
 import static io.datakernel.util.ReflectionUtils.isPrivateApiAvailable;
 import static java.util.Collections.emptyIterator;
 
@@ -86,6 +89,8 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 	public static final AsyncTimeoutException CONNECT_TIMEOUT = new AsyncTimeoutException(Eventloop.class, "Connection timed out");
 	public static final StacklessException NOT_CONNECTED = new StacklessException(Eventloop.class, "Connection key was received but the channel was not connected - this is not possible without some bug in Java NIO");
 	public static final Duration DEFAULT_IDLE_INTERVAL = Duration.ofSeconds(1);
+	public static final boolean DEFAULT_TIMING_WHEEL = ApplicationSettings.getBoolean(Eventloop.class, "timingWheel", false);
+	public static final Duration DEFAULT_TIMING_WHEEL_TICK = ApplicationSettings.getDuration(Eventloop.class, "timingWheelTick", Duration.ofMillis(1));
 
 	@NotNull
 	private static volatile FatalErrorHandler globalFatalErrorHandler = FatalErrorHandlers.ignoreAllErrors();
@@ -98,19 +103,33 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 	/**
 	 * Collection of concurrent tasks which were added from other threads.
 	 */
-	private final ConcurrentLinkedQueue<Runnable> concurrentTasks = new ConcurrentLinkedQueue<>();
+	private final ConcurrentTaskQueue concurrentTasks = new ConcurrentTaskQueue();
+
+	/**
+	 * Set once a thread has woken up the selector, and reset before selecting,
+	 * so that concurrent tasks which are added in between do not wake it up again.
+	 */
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+	/**
+	 * Amount of selector wakeups made by {@link #execute} since last execution of concurrent tasks
+	 */
+	private final AtomicInteger wakeups = new AtomicInteger();
 
 	/**
 	 * Collection of scheduled tasks that are scheduled
 	 * to be executed at particular timestamp.
 	 */
-	private final PriorityQueue<ScheduledRunnable> scheduledTasks = new PriorityQueue<>();
+	private ScheduledQueue scheduledTasks;
 
 	/**
 	 * Collection of background tasks,
 	 * if eventloop contains only background tasks, it will be closed.
 	 */
-	private final PriorityQueue<ScheduledRunnable> backgroundTasks = new PriorityQueue<>();
+	private ScheduledQueue backgroundTasks;
+
+	private boolean timingWheel = DEFAULT_TIMING_WHEEL;
+	private Duration timingWheelTick = DEFAULT_TIMING_WHEEL_TICK;
 
 	/**
 	 * Amount of concurrent operations in other threads,
@@ -181,6 +200,7 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 	private Eventloop(@NotNull CurrentTimeProvider timeProvider) {
 		this.timeProvider = timeProvider;
 		refreshTimestamp();
+		createScheduledQueues();
 	}
 
 	public static Eventloop create() {
@@ -228,6 +248,29 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 		return this;
 	}
 
+	/**
+	 * Makes this eventloop keep scheduled and background tasks in a hierarchical timing wheel
+	 * instead of a priority queue. A timing wheel schedules and cancels tasks in constant time,
+	 * which pays off with lots of short-living timeouts, at the cost of executing tasks
+	 * up to {@link #withTimingWheelTick one tick} later than scheduled.
+	 * <p>
+	 * Should be called before any task is scheduled.
+	 */
+	@NotNull
+	public Eventloop withTimingWheel(boolean timingWheel) {
+		this.timingWheel = timingWheel;
+		createScheduledQueues();
+		return this;
+	}
+
+	@NotNull
+	public Eventloop withTimingWheelTick(@NotNull Duration timingWheelTick) {
+		checkArgument(timingWheelTick.toMillis() > 0, "Timing wheel tick should be at least 1 millisecond");
+		this.timingWheelTick = timingWheelTick;
+		createScheduledQueues();
+		return this;
+	}
+
 	@NotNull
 	public Eventloop withCurrentThread() {
 		CURRENT_EVENTLOOP.set(this);
@@ -236,6 +279,19 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 
 	// endregion
 
+	private void createScheduledQueues() {
+		checkState((scheduledTasks == null || scheduledTasks.isEmpty()) && (backgroundTasks == null || backgroundTasks.isEmpty()),
+				"Cannot change scheduled queues of eventloop with scheduled tasks");
+		scheduledTasks = createScheduledQueue();
+		backgroundTasks = createScheduledQueue();
+	}
+
+	private ScheduledQueue createScheduledQueue() {
+		return timingWheel ?
+				new ScheduledTimingWheel(timingWheelTick.toMillis(), timestamp) :
+				new ScheduledPriorityQueue();
+	}
+
 	@Nullable
 	public Selector getSelector() {
 		return selector;
@@ -362,6 +418,7 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 		long timeAfterBusinessLogic = 0;
 		while (isAlive()) {
 			try {
+				wakeupPending.set(false);
 				long selectTimeout = getSelectTimeout();
 				if (inspector != null) inspector.onUpdateSelectorSelectTimeout(selectTimeout);
 				if (selectTimeout <= 0) {
@@ -403,6 +460,8 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 			tick = 0;
 		}
 		logger.info("{} finished", this);
+		// bufs cached by this thread would be lost otherwise, if the thread finishes
+		ByteBufPool.flushMagazine();
 		eventloopThread = null;
 		if (selector != null && selector.isOpen() && selector.keys().stream().anyMatch(SelectionKey::isValid)) {
 			logger.warn("Selector is still open, because event loop {} has {} keys", this, selector.keys());
@@ -419,17 +478,11 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 		return Math.min(getTimeBeforeExecution(scheduledTasks), getTimeBeforeExecution(backgroundTasks));
 	}
 
-	private long getTimeBeforeExecution(PriorityQueue<ScheduledRunnable> taskQueue) {
-		while (!taskQueue.isEmpty()) {
-			ScheduledRunnable first = taskQueue.peek();
-			assert first != null; // unreachable condition
-			if (first.isCancelled()) {
-				taskQueue.poll();
-				continue;
-			}
-			return first.getTimestamp() - currentTimeMillis();
-		}
-		return idleInterval.toMillis();
+	private long getTimeBeforeExecution(ScheduledQueue taskQueue) {
+		long nextTimestamp = taskQueue.nextTimestamp();
+		if (nextTimestamp == Long.MAX_VALUE)
+			return idleInterval.toMillis();
+		return nextTimestamp - currentTimeMillis();
 	}
 
 	/**
@@ -620,7 +673,11 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 
 		if (concurrentTasks != 0) {
 			long loopTime = refreshTimestampAndGet() - startTimestamp;
-			if (inspector != null) inspector.onUpdateConcurrentTasksStats(concurrentTasks, loopTime);
+			if (inspector != null) {
+				inspector.onUpdateConcurrentTasksStats(concurrentTasks, loopTime);
+				int wakeups = this.wakeups.getAndSet(0);
+				inspector.onUpdateConcurrentTasksWakeups(wakeups, Math.max(concurrentTasks - wakeups, 0));
+			}
 		}
 
 		return concurrentTasks;
@@ -637,7 +694,7 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 		return executeScheduledTasks(backgroundTasks);
 	}
 
-	private int executeScheduledTasks(PriorityQueue<ScheduledRunnable> taskQueue) {
+	private int executeScheduledTasks(ScheduledQueue taskQueue) {
 		long startTimestamp = timestamp;
 		boolean background = taskQueue == backgroundTasks;
 
@@ -645,17 +702,9 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 		Stopwatch sw = monitoring ? Stopwatch.createUnstarted() : null;
 
 		for (; ; ) {
-			ScheduledRunnable peeked = taskQueue.peek();
+			ScheduledRunnable peeked = taskQueue.poll(currentTimeMillis());
 			if (peeked == null)
 				break;
-			if (peeked.isCancelled()) {
-				taskQueue.poll();
-				continue;
-			}
-			if (peeked.getTimestamp() > currentTimeMillis()) {
-				break;
-			}
-			taskQueue.poll();
 
 			Runnable runnable = peeked.getRunnable();
 			if (sw != null) {
@@ -957,8 +1006,31 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 	@Override
 	public void execute(@NotNull @Async.Schedule Runnable runnable) {
 		concurrentTasks.offer(runnable);
-		if (selector != null) {
-			selector.wakeup();
+		wakeup();
+	}
+
+	/**
+	 * Posts a batch of new tasks from other threads,
+	 * waking up eventloop at most once.
+	 *
+	 * @param runnables runnables of these tasks
+	 */
+	@Override
+	public void executeAll(@NotNull Collection<? extends Runnable> runnables) {
+		if (runnables.isEmpty()) return;
+		for (Runnable runnable : runnables) {
+			concurrentTasks.offer(runnable);
+		}
+		wakeup();
+	}
+
+	private void wakeup() {
+		if (!wakeupPending.get() && wakeupPending.compareAndSet(false, true)) {
+			Selector selector = this.selector;
+			if (selector != null) {
+				selector.wakeup();
+				wakeups.incrementAndGet();
+			}
 		}
 	}
 
@@ -995,8 +1067,8 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 	@NotNull
 	private ScheduledRunnable addScheduledTask(long timestamp, Runnable runnable, boolean background) {
 		ScheduledRunnable scheduledTask = ScheduledRunnable.create(timestamp, runnable);
-		PriorityQueue<ScheduledRunnable> taskQueue = background ? backgroundTasks : scheduledTasks;
-		taskQueue.offer(scheduledTask);
+		ScheduledQueue taskQueue = background ? backgroundTasks : scheduledTasks;
+		taskQueue.add(scheduledTask);
 		return scheduledTask;
 	}
 
@@ -1181,6 +1253,16 @@ public final class Eventloop implements Runnable, EventloopExecutor, Scheduler,
 		return idleInterval;
 	}
 
+	@JmxAttribute
+	public boolean isTimingWheel() {
+		return timingWheel;
+	}
+
+	@JmxAttribute
+	public Duration getTimingWheelTick() {
+		return timingWheelTick;
+	}
+
 	@JmxAttribute
 	public void setIdleInterval(Duration idleInterval) {
 		this.idleInterval = idleInterval;
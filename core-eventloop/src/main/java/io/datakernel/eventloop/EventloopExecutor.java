@@ -19,6 +19,7 @@ package io.datakernel.eventloop;
 import io.datakernel.async.Completable;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.function.Supplier;
@@ -35,6 +36,16 @@ public interface EventloopExecutor extends Executor {
 	 */
 	@NotNull CompletableFuture<Void> submit(@NotNull Runnable computation);
 
+	/**
+	 * Executes all of the given tasks at some time in the future in some underlying eventloop,
+	 * in order of iteration. Implementations may hand off the tasks in a single batch.
+	 */
+	default void executeAll(@NotNull Collection<? extends Runnable> runnables) {
+		for (Runnable runnable : runnables) {
+			execute(runnable);
+		}
+	}
+
 	/**
 	 * Executes the given computation at some time in the future in some undelying eventloop
 	 * and returns its result in a {@link CompletableFuture future}.
@@ -160,7 +160,7 @@ public final class EventloopStats extends ForwardingInspector<EventloopInspector
 
 	@Override
 	public void onUpdateConcurrentTaskDuration(@NotNull Runnable runnable, @Nullable Stopwatch sw) {
-		updateTaskDuration(tasks.concurrent.oneTaskTime, tasks.concurrent.longestTask, runnable, sw);
+		updateTaskDuration(tasks.concurrent.getOneTaskTime(), tasks.concurrent.getLongestTask(), runnable, sw);
 		if (next != null) {
 			next.onUpdateConcurrentTaskDuration(runnable, sw);
 		}
@@ -168,13 +168,22 @@ public final class EventloopStats extends ForwardingInspector<EventloopInspector
 
 	@Override
 	public void onUpdateConcurrentTasksStats(int newConcurrentTasks, long loopTime) {
-		if (newConcurrentTasks != 0) tasks.concurrent.loopTime.recordValue((int) loopTime);
-		tasks.concurrent.tasksPerLoop.recordValue(newConcurrentTasks);
+		if (newConcurrentTasks != 0) tasks.concurrent.getLoopTime().recordValue((int) loopTime);
+		tasks.concurrent.getTasksPerLoop().recordValue(newConcurrentTasks);
 		if (next != null) {
 			next.onUpdateConcurrentTasksStats(newConcurrentTasks, loopTime);
 		}
 	}
 
+	@Override
+	public void onUpdateConcurrentTasksWakeups(int wakeups, int savedWakeups) {
+		tasks.concurrent.wakeups.recordEvents(wakeups);
+		tasks.concurrent.savedWakeups.recordEvents(savedWakeups);
+		if (next != null) {
+			next.onUpdateConcurrentTasksWakeups(wakeups, savedWakeups);
+		}
+	}
+
 	@Override
 	public void onUpdateScheduledTaskDuration(@NotNull Runnable runnable, @Nullable Stopwatch sw, boolean background) {
 		if (background) {
@@ -287,13 +296,13 @@ public final class EventloopStats extends ForwardingInspector<EventloopInspector
 	// region helper classes for stats grouping
 	public static final class Tasks {
 		private final TaskStats local;
-		private final TaskStats concurrent;
+		private final ConcurrentTaskStats concurrent;
 		private final ScheduledTaskStats scheduled;
 		private final ScheduledTaskStats background;
 
 		Tasks() {
 			local = new TaskStats();
-			concurrent = new TaskStats();
+			concurrent = new ConcurrentTaskStats();
 			scheduled = new ScheduledTaskStats();
 			background = new ScheduledTaskStats();
 		}
@@ -304,7 +313,7 @@ public final class EventloopStats extends ForwardingInspector<EventloopInspector
 		}
 
 		@JmxAttribute
-		public TaskStats getConcurrent() {
+		public ConcurrentTaskStats getConcurrent() {
 			return concurrent;
 		}
 
@@ -359,6 +368,26 @@ public final class EventloopStats extends ForwardingInspector<EventloopInspector
 		}
 	}
 
+	public static final class ConcurrentTaskStats extends TaskStats {
+		private final EventStats wakeups;
+		private final EventStats savedWakeups;
+
+		ConcurrentTaskStats() {
+			wakeups = EventStats.create(DEFAULT_SMOOTHING_WINDOW);
+			savedWakeups = EventStats.create(DEFAULT_SMOOTHING_WINDOW);
+		}
+
+		@JmxAttribute
+		public EventStats getWakeups() {
+			return wakeups;
+		}
+
+		@JmxAttribute
+		public EventStats getSavedWakeups() {
+			return savedWakeups;
+		}
+	}
+
 	public static final class ScheduledTaskStats extends TaskStats {
 		private final ValueStats overdues;
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.eventloop;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.PriorityQueue;
+
+/**
+ * A {@link ScheduledQueue} backed by a binary heap.
+ * <p>
+ * Insertion takes O(log n) time, cancelled tasks are kept in the heap
+ * until they reach its head.
+ */
+final class ScheduledPriorityQueue implements ScheduledQueue {
+	private final PriorityQueue<ScheduledRunnable> queue = new PriorityQueue<>();
+
+	@Override
+	public void add(@NotNull ScheduledRunnable task) {
+		queue.offer(task);
+	}
+
+	@Nullable
+	@Override
+	public ScheduledRunnable poll(long timestamp) {
+		for (; ; ) {
+			ScheduledRunnable peeked = queue.peek();
+			if (peeked == null)
+				return null;
+			if (peeked.isCancelled()) {
+				queue.poll();
+				continue;
+			}
+			if (peeked.getTimestamp() > timestamp)
+				return null;
+			return queue.poll();
+		}
+	}
+
+	@Override
+	public long nextTimestamp() {
+		for (; ; ) {
+			ScheduledRunnable peeked = queue.peek();
+			if (peeked == null)
+				return Long.MAX_VALUE;
+			if (peeked.isCancelled()) {
+				queue.poll();
+				continue;
+			}
+			return peeked.getTimestamp();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.eventloop;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A collection of {@link ScheduledRunnable ScheduledRunnables} of an {@link Eventloop},
+ * which yields tasks once their timestamps are reached.
+ * <p>
+ * Implementations are not thread-safe and are only accessed from eventloop thread.
+ */
+interface ScheduledQueue {
+	void add(@NotNull ScheduledRunnable task);
+
+	/**
+	 * Removes and returns a task whose timestamp is not after given timestamp.
+	 * Tasks are returned in order of their timestamps, cancelled tasks are never returned.
+	 *
+	 * @param timestamp current time
+	 * @return a task due for execution, or {@code null} if there is none
+	 */
+	@Nullable
+	ScheduledRunnable poll(long timestamp);
+
+	/**
+	 * Returns a timestamp at which {@link #poll(long)} should be called next.
+	 * It is never later than a timestamp of the earliest task, but may be earlier.
+	 *
+	 * @return a timestamp, or {@link Long#MAX_VALUE} if there are no tasks
+	 */
+	long nextTimestamp();
+
+	boolean isEmpty();
+
+	int size();
+}
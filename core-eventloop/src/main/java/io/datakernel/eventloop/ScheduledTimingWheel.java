@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.eventloop;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static io.datakernel.util.Preconditions.checkArgument;
+
+/**
+ * A {@link ScheduledQueue} implemented as a hierarchical timing wheel.
+ * <p>
+ * Time is divided into ticks of {@code tickMillis}. The wheel has {@link #LEVELS} levels
+ * of 64 slots each, a slot of level {@code n} spans {@code 64^n} ticks. A task is put
+ * into the lowest level whose slot contains both current tick and the tick of the task,
+ * and is moved to lower levels (cascaded) once current tick reaches its slot.
+ * Tasks which do not fit into the top level are kept in a separate overflow slot.
+ * <p>
+ * Slots are intrusive doubly linked lists of {@link ScheduledRunnable ScheduledRunnables},
+ * so both insertion and {@link ScheduledRunnable#cancel() cancellation} take O(1) time,
+ * and cancelled tasks are released immediately. Empty slots are skipped with a bitmap
+ * of occupied slots per level.
+ * <p>
+ * Tasks are never executed before their timestamps, but may be executed up to one tick later.
+ * Tasks within a single tick are executed in order of their scheduling.
+ */
+final class ScheduledTimingWheel implements ScheduledQueue {
+	static final int SLOT_BITS = 6;
+	static final int SLOTS = 1 << SLOT_BITS;
+	static final int LEVELS = 6;
+
+	private static final int MASK = SLOTS - 1;
+	private static final int WHEEL_BITS = SLOT_BITS * LEVELS;
+	private static final int OVERFLOW = SLOTS * LEVELS;
+
+	private final long tickMillis;
+
+	/**
+	 * Heads of slots, the {@code prev} link of a head points to the tail of its slot
+	 */
+	private final ScheduledRunnable[] slots = new ScheduledRunnable[OVERFLOW + 1];
+	private final long[] occupied = new long[LEVELS];
+
+	/**
+	 * All of the ticks before current one have been processed
+	 */
+	private long currentTick;
+	private int size;
+
+	ScheduledTimingWheel(long tickMillis, long timestamp) {
+		checkArgument(tickMillis > 0, "Tick should be positive");
+		this.tickMillis = tickMillis;
+		this.currentTick = Math.floorDiv(timestamp, tickMillis);
+	}
+
+	@Override
+	public void add(@NotNull ScheduledRunnable task) {
+		assert task.wheel == null;
+		link(task, slotOf(Math.max(toTick(task.getTimestamp()), currentTick)));
+		size++;
+	}
+
+	void remove(@NotNull ScheduledRunnable task) {
+		assert task.wheel == this;
+		unlink(task);
+		size--;
+	}
+
+	@Nullable
+	@Override
+	public ScheduledRunnable poll(long timestamp) {
+		long nowTick = Math.floorDiv(timestamp, tickMillis);
+		while (currentTick <= nowTick) {
+			ScheduledRunnable task = slots[(int) currentTick & MASK];
+			if (task != null) {
+				remove(task);
+				return task;
+			}
+			if (currentTick == nowTick) {
+				break;
+			}
+			advance(Math.min(nextTick(), nowTick));
+		}
+		return null;
+	}
+
+	@Override
+	public long nextTimestamp() {
+		long nextTick = nextTick();
+		return nextTick != Long.MAX_VALUE ? nextTick * tickMillis : Long.MAX_VALUE;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the first tick of the earliest occupied slot, which is
+	 * not later than the tick of any task of this wheel
+	 */
+	private long nextTick() {
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = level * SLOT_BITS;
+			long bits = occupied[level] & (-1L << ((currentTick >>> shift) & MASK));
+			if (bits != 0) {
+				long base = currentTick >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+				return base | ((long) Long.numberOfTrailingZeros(bits) << shift);
+			}
+		}
+		if (slots[OVERFLOW] != null) {
+			return ((currentTick >>> WHEEL_BITS) + 1) << WHEEL_BITS;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Moves current tick forward, there should be no occupied slots before the target tick
+	 */
+	private void advance(long targetTick) {
+		long previousTick = currentTick;
+		currentTick = targetTick;
+		if ((previousTick >>> WHEEL_BITS) != (targetTick >>> WHEEL_BITS)) {
+			cascade(OVERFLOW);
+		}
+		for (int level = LEVELS - 1; level > 0; level--) {
+			int slot = level * SLOTS + (int) ((targetTick >>> (level * SLOT_BITS)) & MASK);
+			if (slots[slot] != null) {
+				cascade(slot);
+			}
+		}
+	}
+
+	private void cascade(int slot) {
+		ScheduledRunnable task = slots[slot];
+		slots[slot] = null;
+		if (slot != OVERFLOW) {
+			occupied[slot >>> SLOT_BITS] &= ~(1L << (slot & MASK));
+		}
+		while (task != null) {
+			ScheduledRunnable next = task.next;
+			task.prev = task.next = null;
+			task.wheel = null;
+			link(task, slotOf(Math.max(toTick(task.getTimestamp()), currentTick)));
+			task = next;
+		}
+	}
+
+	private int slotOf(long tick) {
+		long diff = tick ^ currentTick;
+		if ((diff >>> WHEEL_BITS) != 0) {
+			return OVERFLOW;
+		}
+		int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+		return level * SLOTS + (int) ((tick >>> (level * SLOT_BITS)) & MASK);
+	}
+
+	private long toTick(long timestamp) {
+		long tick = Math.floorDiv(timestamp, tickMillis);
+		return tick * tickMillis == timestamp ? tick : tick + 1;
+	}
+
+	private void link(ScheduledRunnable task, int slot) {
+		ScheduledRunnable head = slots[slot];
+		if (head == null) {
+			slots[slot] = task;
+			task.prev = task;
+			if (slot != OVERFLOW) {
+				occupied[slot >>> SLOT_BITS] |= 1L << (slot & MASK);
+			}
+		} else {
+			ScheduledRunnable tail = head.prev;
+			tail.next = task;
+			task.prev = tail;
+			head.prev = task;
+		}
+		task.wheel = this;
+		task.slot = slot;
+	}
+
+	private void unlink(ScheduledRunnable task) {
+		int slot = task.slot;
+		ScheduledRunnable head = slots[slot];
+		ScheduledRunnable next = task.next;
+		if (task == head) {
+			slots[slot] = next;
+			if (next != null) {
+				next.prev = task.prev;
+			} else if (slot != OVERFLOW) {
+				occupied[slot >>> SLOT_BITS] &= ~(1L << (slot & MASK));
+			}
+		} else {
+			task.prev.next = next;
+			if (next != null) {
+				next.prev = task.prev;
+			} else {
+				head.prev = task.prev;
+			}
+		}
+		task.prev = task.next = null;
+		task.wheel = null;
+	}
+}
@@ -43,9 +43,15 @@ public final class SocketSettings {
 	private final int implReadTimeout;
 	private final int implWriteTimeout;
 	private final int implReadBufferSize;
+	private final byte implDirectReadBuffers;
+	private final int implMaxWriteBufs;
+	private final int implMaxWriteSize;
+	private final byte implAdaptiveReadBuffers;
+	private final int implMinReadBufferSize;
+	private final int implMaxReadBufferSize;
 
 	// region builders
-	private SocketSettings(int sendBufferSize, int receiveBufferSize, byte keepAlive, byte reuseAddress, byte tcpNoDelay, int implReadTimeout, int implWriteTimeout, int implReadBufferSize) {
+	private SocketSettings(int sendBufferSize, int receiveBufferSize, byte keepAlive, byte reuseAddress, byte tcpNoDelay, int implReadTimeout, int implWriteTimeout, int implReadBufferSize, byte implDirectReadBuffers, int implMaxWriteBufs, int implMaxWriteSize, byte implAdaptiveReadBuffers, int implMinReadBufferSize, int implMaxReadBufferSize) {
 		this.sendBufferSize = sendBufferSize;
 		this.receiveBufferSize = receiveBufferSize;
 		this.keepAlive = keepAlive;
@@ -54,42 +60,87 @@ public final class SocketSettings {
 		this.implReadTimeout = implReadTimeout;
 		this.implWriteTimeout = implWriteTimeout;
 		this.implReadBufferSize = implReadBufferSize;
+		this.implDirectReadBuffers = implDirectReadBuffers;
+		this.implMaxWriteBufs = implMaxWriteBufs;
+		this.implMaxWriteSize = implMaxWriteSize;
+		this.implAdaptiveReadBuffers = implAdaptiveReadBuffers;
+		this.implMinReadBufferSize = implMinReadBufferSize;
+		this.implMaxReadBufferSize = implMaxReadBufferSize;
 	}
 
 	public static SocketSettings create() {
-		return new SocketSettings(0, 0, DEF_BOOL, DEF_BOOL, DEF_BOOL, 0, 0, 0);
+		return new SocketSettings(0, 0, DEF_BOOL, DEF_BOOL, DEF_BOOL, 0, 0, 0, DEF_BOOL, 0, 0, DEF_BOOL, 0, 0);
 	}
 
 	public SocketSettings withSendBufferSize(@NotNull MemSize sendBufferSize) {
-		return new SocketSettings(sendBufferSize.toInt(), receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize);
+		return new SocketSettings(sendBufferSize.toInt(), receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
 	}
 
 	public SocketSettings withReceiveBufferSize(@NotNull MemSize receiveBufferSize) {
-		return new SocketSettings(sendBufferSize, receiveBufferSize.toInt(), keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize);
+		return new SocketSettings(sendBufferSize, receiveBufferSize.toInt(), keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
 	}
 
 	public SocketSettings withKeepAlive(boolean keepAlive) {
-		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive ? TRUE : FALSE, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize);
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive ? TRUE : FALSE, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
 	}
 
 	public SocketSettings withReuseAddress(boolean reuseAddress) {
-		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress ? TRUE : FALSE, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize);
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress ? TRUE : FALSE, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
 	}
 
 	public SocketSettings withTcpNoDelay(boolean tcpNoDelay) {
-		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay ? TRUE : FALSE, implReadTimeout, implWriteTimeout, implReadBufferSize);
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay ? TRUE : FALSE, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
 	}
 
 	public SocketSettings withImplReadTimeout(@NotNull Duration implReadTimeout) {
-		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, (int) implReadTimeout.toMillis(), implWriteTimeout, implReadBufferSize);
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, (int) implReadTimeout.toMillis(), implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
 	}
 
 	public SocketSettings withImplWriteTimeout(@NotNull Duration implWriteTimeout) {
-		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, (int) implWriteTimeout.toMillis(), implReadBufferSize);
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, (int) implWriteTimeout.toMillis(), implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
 	}
 
 	public SocketSettings withImplReadBufferSize(@NotNull MemSize implReadBufferSize) {
-		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize.toInt());
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize.toInt(), implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
+	}
+
+	/**
+	 * Makes socket read to direct ByteBufs, which have no backing array.
+	 * It suits the sockets whose data is written to other sockets or files as is, rather than parsed
+	 */
+	public SocketSettings withImplDirectReadBuffers(boolean implDirectReadBuffers) {
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers ? TRUE : FALSE, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
+	}
+
+	/**
+	 * Limits the number of pending buffers which are written to socket with a single gathering write
+	 */
+	public SocketSettings withImplMaxWriteBufs(int implMaxWriteBufs) {
+		check(implMaxWriteBufs > 0, "Max write bufs should be positive");
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
+	}
+
+	/**
+	 * Limits the number of bytes which are written to socket with a single gathering write
+	 */
+	public SocketSettings withImplMaxWriteSize(@NotNull MemSize implMaxWriteSize) {
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize.toInt(), implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize);
+	}
+
+	/**
+	 * Makes read buffer size adapt to the amounts of data actually read from socket,
+	 * within bounds set by {@link #withImplMinReadBufferSize} and {@link #withImplMaxReadBufferSize}
+	 */
+	public SocketSettings withImplAdaptiveReadBuffers(boolean implAdaptiveReadBuffers) {
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers ? TRUE : FALSE, implMinReadBufferSize, implMaxReadBufferSize);
+	}
+
+	public SocketSettings withImplMinReadBufferSize(@NotNull MemSize implMinReadBufferSize) {
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize.toInt(), implMaxReadBufferSize);
+	}
+
+	public SocketSettings withImplMaxReadBufferSize(@NotNull MemSize implMaxReadBufferSize) {
+		return new SocketSettings(sendBufferSize, receiveBufferSize, keepAlive, reuseAddress, tcpNoDelay, implReadTimeout, implWriteTimeout, implReadBufferSize, implDirectReadBuffers, implMaxWriteBufs, implMaxWriteSize, implAdaptiveReadBuffers, implMinReadBufferSize, implMaxReadBufferSize.toInt());
 	}
 
 	// endregion
@@ -209,4 +260,73 @@ public final class SocketSettings {
 		return implReadBufferSize;
 	}
 
+	public boolean hasImplDirectReadBuffers() {
+		return implDirectReadBuffers != DEF_BOOL;
+	}
+
+	public boolean getImplDirectReadBuffers() {
+		check(hasImplDirectReadBuffers(), "No 'direct read buffers' setting is present");
+		return implDirectReadBuffers != FALSE;
+	}
+
+	public boolean hasImplMaxWriteBufs() {
+		return implMaxWriteBufs != 0;
+	}
+
+	public int getImplMaxWriteBufs() {
+		check(hasImplMaxWriteBufs(), "No 'max write bufs' setting is present");
+		return implMaxWriteBufs;
+	}
+
+	public boolean hasImplMaxWriteSize() {
+		return implMaxWriteSize != 0;
+	}
+
+	@NotNull
+	public MemSize getImplMaxWriteSize() {
+		return MemSize.of(getImplMaxWriteSizeBytes());
+	}
+
+	public int getImplMaxWriteSizeBytes() {
+		check(hasImplMaxWriteSize(), "No 'max write size' setting is present");
+		return implMaxWriteSize;
+	}
+
+	public boolean hasImplAdaptiveReadBuffers() {
+		return implAdaptiveReadBuffers != DEF_BOOL;
+	}
+
+	public boolean getImplAdaptiveReadBuffers() {
+		check(hasImplAdaptiveReadBuffers(), "No 'adaptive read buffers' setting is present");
+		return implAdaptiveReadBuffers != FALSE;
+	}
+
+	public boolean hasImplMinReadBufferSize() {
+		return implMinReadBufferSize != 0;
+	}
+
+	@NotNull
+	public MemSize getImplMinReadBufferSize() {
+		return MemSize.of(getImplMinReadBufferSizeBytes());
+	}
+
+	public int getImplMinReadBufferSizeBytes() {
+		check(hasImplMinReadBufferSize(), "No 'min read buffer size' setting is present");
+		return implMinReadBufferSize;
+	}
+
+	public boolean hasImplMaxReadBufferSize() {
+		return implMaxReadBufferSize != 0;
+	}
+
+	@NotNull
+	public MemSize getImplMaxReadBufferSize() {
+		return MemSize.of(getImplMaxReadBufferSizeBytes());
+	}
+
+	public int getImplMaxReadBufferSizeBytes() {
+		check(hasImplMaxReadBufferSize(), "No 'max read buffer size' setting is present");
+		return implMaxReadBufferSize;
+	}
+
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.eventloop;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentTaskQueueTest {
+	@Test
+	public void testSegments() {
+		ConcurrentTaskQueue queue = new ConcurrentTaskQueue();
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+
+		int count = ConcurrentTaskQueue.SEGMENT_SIZE * 3 + 5;
+		List<Runnable> tasks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Runnable task = () -> {};
+			tasks.add(task);
+			queue.offer(task);
+		}
+		assertEquals(count, queue.size());
+
+		for (Runnable task : tasks) {
+			assertSame(task, queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		int producers = 4;
+		int tasksPerProducer = 100_000;
+		ConcurrentTaskQueue queue = new ConcurrentTaskQueue();
+		int[] executed = new int[producers];
+
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			int producer = p;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < tasksPerProducer; i++) {
+					int expected = i;
+					queue.offer(() -> {
+						assertEquals(expected, executed[producer]);
+						executed[producer]++;
+					});
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		int polled = 0;
+		while (polled != producers * tasksPerProducer) {
+			Runnable task = queue.poll();
+			if (task == null) {
+				Thread.yield();
+				continue;
+			}
+			task.run();
+			polled++;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(queue.isEmpty());
+		for (int count : executed) {
+			assertEquals(tasksPerProducer, count);
+		}
+	}
+
+	@Test
+	public void testExecuteAll() throws ExecutionException, InterruptedException {
+		Eventloop eventloop = Eventloop.create().withInspector(EventloopStats.create());
+		eventloop.keepAlive(true);
+		Thread eventloopThread = new Thread(eventloop);
+		eventloopThread.start();
+
+		AtomicInteger counter = new AtomicInteger();
+		List<Runnable> tasks = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			tasks.add(counter::incrementAndGet);
+		}
+		eventloop.executeAll(tasks);
+		CompletableFuture<Void> future = eventloop.submit(() -> eventloop.keepAlive(false));
+		future.get();
+		eventloopThread.join();
+
+		assertEquals(100, counter.get());
+	}
+}
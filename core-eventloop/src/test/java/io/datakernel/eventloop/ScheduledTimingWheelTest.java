@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.eventloop;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ScheduledTimingWheelTest {
+	private static final long START = 1_500_000_000_000L;
+	private static final Runnable NOP = () -> {};
+
+	@Test
+	public void testOrder() {
+		ScheduledTimingWheel wheel = new ScheduledTimingWheel(1, START);
+		ScheduledRunnable later = add(wheel, START + 100_000);
+		ScheduledRunnable first = add(wheel, START + 10);
+		ScheduledRunnable second = add(wheel, START + 10);
+		ScheduledRunnable past = add(wheel, START - 5);
+		assertEquals(4, wheel.size());
+
+		assertSame(past, wheel.poll(START));
+		assertNull(wheel.poll(START + 9));
+		assertEquals(START + 10, wheel.nextTimestamp());
+		assertSame(first, wheel.poll(START + 50));
+		assertSame(second, wheel.poll(START + 50));
+		assertNull(wheel.poll(START + 50));
+
+		assertTrue(wheel.nextTimestamp() <= START + 100_000);
+		assertNull(wheel.poll(START + 99_999));
+		assertSame(later, wheel.poll(START + 100_000));
+		assertTrue(wheel.isEmpty());
+		assertEquals(Long.MAX_VALUE, wheel.nextTimestamp());
+	}
+
+	@Test
+	public void testCancel() {
+		ScheduledTimingWheel wheel = new ScheduledTimingWheel(1, START);
+		ScheduledRunnable first = add(wheel, START + 1000);
+		ScheduledRunnable second = add(wheel, START + 1000);
+		ScheduledRunnable third = add(wheel, START + 1000);
+
+		second.cancel();
+		assertEquals(2, wheel.size());
+		assertNull(second.wheel);
+
+		first.cancel();
+		third.cancel();
+		assertTrue(wheel.isEmpty());
+		assertEquals(Long.MAX_VALUE, wheel.nextTimestamp());
+		assertNull(wheel.poll(START + 2000));
+	}
+
+	@Test
+	public void testTicks() {
+		ScheduledTimingWheel wheel = new ScheduledTimingWheel(10, START);
+		ScheduledRunnable task = add(wheel, START + 15);
+		assertNull(wheel.poll(START + 15));
+		assertNull(wheel.poll(START + 19));
+		assertSame(task, wheel.poll(START + 20));
+	}
+
+	@Test
+	public void testOverflow() {
+		ScheduledTimingWheel wheel = new ScheduledTimingWheel(1, START);
+		ScheduledRunnable never = add(wheel, Long.MAX_VALUE);
+		long farTimestamp = START + (1L << 40);
+		ScheduledRunnable far = add(wheel, farTimestamp);
+
+		assertTrue(wheel.nextTimestamp() <= farTimestamp);
+		assertNull(wheel.poll(farTimestamp - 1));
+		assertSame(far, wheel.poll(farTimestamp));
+		assertEquals(1, wheel.size());
+		never.cancel();
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void testRandomAgainstPriorityQueue() {
+		Random random = new Random(0);
+		ScheduledTimingWheel wheel = new ScheduledTimingWheel(1, START);
+		ScheduledPriorityQueue queue = new ScheduledPriorityQueue();
+		List<ScheduledRunnable> wheelTasks = new ArrayList<>();
+		List<ScheduledRunnable> queueTasks = new ArrayList<>();
+		Set<Long> timestamps = new HashSet<>();
+
+		long now = START;
+		for (int i = 0; i < 100_000; i++) {
+			int action = random.nextInt(10);
+			if (action < 5) {
+				long timestamp = now + (random.nextInt(4) == 0 ? random.nextInt(10_000_000) : random.nextInt(100));
+				if (!timestamps.add(timestamp)) continue;
+				wheelTasks.add(add(wheel, timestamp));
+				queueTasks.add(add(queue, timestamp));
+			} else if (action < 7 && !wheelTasks.isEmpty()) {
+				int index = random.nextInt(wheelTasks.size());
+				wheelTasks.get(index).cancel();
+				queueTasks.get(index).cancel();
+			} else {
+				now += random.nextInt(4) == 0 ? random.nextInt(1_000_000) : random.nextInt(10);
+				assertTrue(wheel.nextTimestamp() <= queue.nextTimestamp());
+				for (; ; ) {
+					ScheduledRunnable expected = queue.poll(now);
+					ScheduledRunnable actual = wheel.poll(now);
+					if (expected == null) {
+						assertNull(actual);
+						break;
+					}
+					assertNotNull(actual);
+					assertEquals(expected.getTimestamp(), actual.getTimestamp());
+					expected.complete();
+					actual.complete();
+				}
+			}
+		}
+	}
+
+	private static ScheduledRunnable add(ScheduledQueue queue, long timestamp) {
+		ScheduledRunnable task = ScheduledRunnable.create(timestamp, NOP);
+		queue.add(task);
+		return task;
+	}
+}
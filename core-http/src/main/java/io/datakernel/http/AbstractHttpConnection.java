@@ -29,6 +29,7 @@ import io.datakernel.csp.ChannelSupplier;
 import io.datakernel.csp.ChannelSuppliers;
 import io.datakernel.csp.binary.BinaryChannelSupplier;
 import io.datakernel.eventloop.AsyncTcpSocket;
+import io.datakernel.eventloop.AsyncTcpSocketImpl;
 import io.datakernel.eventloop.Eventloop;
 import io.datakernel.exception.AsyncTimeoutException;
 import io.datakernel.exception.ParseException;
@@ -429,6 +430,31 @@ public abstract class AbstractHttpConnection {
 		}
 	}
 
+	protected void writeFileRegion(HttpMessage httpMessage) {
+		FileRegion fileRegion = httpMessage.fileRegion;
+		httpMessage.fileRegion = null;
+		httpMessage.addHeader(CONTENT_LENGTH, HttpHeaderValue.of(Long.toString(fileRegion.getCount())));
+		ByteBuf buf = ByteBufPool.allocate(httpMessage.estimateSize());
+		httpMessage.writeTo(buf);
+		if (!(socket instanceof AsyncTcpSocketImpl)) {
+			writeStream(ChannelSuppliers.concat(ChannelSupplier.of(buf), fileRegion.toChannelSupplier(true)));
+			return;
+		}
+		AsyncTcpSocketImpl tcpSocket = (AsyncTcpSocketImpl) socket;
+		tcpSocket.write(buf)
+				.then($ -> tcpSocket.writeFile(fileRegion.getChannel(), fileRegion.getPosition(), fileRegion.getCount()))
+				.whenComplete(($, e) -> {
+					fileRegion.close();
+					if (isClosed()) return;
+					if (e == null) {
+						flags |= BODY_SENT;
+						onBodySent();
+					} else {
+						closeWithError(e);
+					}
+				});
+	}
+
 	protected void writeBuf(ByteBuf buf) {
 		socket.write(buf)
 				.whenComplete(($, e2) -> {
@@ -473,7 +499,7 @@ public abstract class AbstractHttpConnection {
 		poolTimestamp = eventloop.currentTimeMillis();
 	}
 
-	private abstract class ReadConsumer implements Callback<ByteBuf> {
+	protected abstract class ReadConsumer implements Callback<ByteBuf> {
 		@Override
 		public void accept(ByteBuf buf, Throwable e) {
 			assert !isClosed() || e != null;
@@ -23,6 +23,8 @@ import io.datakernel.dns.DnsQueryException;
 import io.datakernel.dns.DnsResponse;
 import io.datakernel.dns.RemoteAsyncDnsClient;
 import io.datakernel.eventloop.*;
+import io.datakernel.exception.AsyncTimeoutException;
+import io.datakernel.exception.StacklessException;
 import io.datakernel.inspector.AbstractInspector;
 import io.datakernel.inspector.BaseInspector;
 import io.datakernel.jmx.*;
@@ -39,9 +41,7 @@ import javax.net.ssl.SSLException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 
@@ -70,6 +70,13 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 	public static final Duration KEEP_ALIVE_TIMEOUT = ApplicationSettings.getDuration(AsyncHttpClient.class, "keepAliveTimeout", Duration.ZERO);
 	public static final MemSize MAX_BODY_SIZE = ApplicationSettings.getMemSize(AsyncHttpClient.class, "maxBodySize", MemSize.ZERO);
 	public static final int MAX_KEEP_ALIVE_REQUESTS = ApplicationSettings.getInt(AsyncHttpClient.class, "maxKeepAliveRequests", 0);
+	public static final int MAX_CONNECTIONS_PER_HOST = ApplicationSettings.getInt(AsyncHttpClient.class, "maxConnectionsPerHost", 0);
+	public static final int MAX_PENDING_REQUESTS_PER_HOST = ApplicationSettings.getInt(AsyncHttpClient.class, "maxPendingRequestsPerHost", 0);
+	public static final Duration PENDING_REQUEST_TIMEOUT = ApplicationSettings.getDuration(AsyncHttpClient.class, "pendingRequestTimeout", Duration.ZERO);
+
+	public static final StacklessException TOO_MANY_PENDING_REQUESTS = new StacklessException(AsyncHttpClient.class, "Too many pending requests to host");
+	public static final AsyncTimeoutException PENDING_REQUEST_TIMEOUT_ERROR = new AsyncTimeoutException(AsyncHttpClient.class, "Timed out waiting for a connection to host");
+	public static final StacklessException CLIENT_STOPPED = new StacklessException(AsyncHttpClient.class, "Client is stopped");
 
 	@NotNull
 	private final Eventloop eventloop;
@@ -84,6 +91,21 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 	private int poolKeepAliveExpired;
 	private int poolReadWriteExpired;
 
+	// HTTP/1.x connections and requests waiting for them, per address
+	private final HashMap<InetSocketAddress, HostConnections> hosts = new HashMap<>();
+	private int pendingRequests;
+	private boolean stopping;
+
+	// HTTP/2
+	private boolean http2PriorKnowledge;
+	private boolean http2Upgrade;
+	final HashMap<InetSocketAddress, Http2ClientConnection> http2Connections = new HashMap<>();
+	private final HashMap<InetSocketAddress, Promise<Http2ClientConnection>> http2Connecting = new HashMap<>();
+	private final HashSet<InetSocketAddress> http2Upgrading = new HashSet<>();
+	private final HashSet<InetSocketAddress> http1Addresses = new HashSet<>();
+	private int http2ConnectionsCount;
+	private int http2Expired;
+
 	@Nullable
 	private ScheduledRunnable expiredConnectionsCheck;
 
@@ -94,6 +116,9 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 	int keepAliveTimeoutMillis = (int) KEEP_ALIVE_TIMEOUT.toMillis();
 	int maxBodySize = MAX_BODY_SIZE.toInt();
 	int maxKeepAliveRequests = MAX_KEEP_ALIVE_REQUESTS;
+	int maxConnectionsPerHost = MAX_CONNECTIONS_PER_HOST;
+	int maxPendingRequestsPerHost = MAX_PENDING_REQUESTS_PER_HOST;
+	int pendingRequestTimeoutMillis = (int) PENDING_REQUEST_TIMEOUT.toMillis();
 
 	// SSL
 	private SSLContext sslContext;
@@ -113,13 +138,23 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 
 		void onResolveError(HttpRequest request, Throwable e);
 
-		void onConnect(HttpRequest request, HttpClientConnection connection);
+		/**
+		 * @param connection HTTP/1.x connection, or {@code null} for HTTP/2 connections
+		 */
+		void onConnect(HttpRequest request, @Nullable HttpClientConnection connection);
 
 		void onConnectError(HttpRequest request, InetSocketAddress address, Throwable e);
 
-		void onHttpResponse(HttpClientConnection connection, HttpResponse response);
+		/**
+		 * Called when a request, which has waited for a connection to its host, is sent
+		 */
+		void onRequestDequeued(HttpRequest request, long queueTimeMillis);
+
+		void onQueueOverflow(HttpRequest request, InetSocketAddress address);
+
+		void onHttpResponse(@Nullable HttpClientConnection connection, HttpResponse response);
 
-		void onHttpError(HttpClientConnection connection, boolean keepAliveConnection, Throwable e);
+		void onHttpError(@Nullable HttpClientConnection connection, boolean keepAliveConnection, Throwable e);
 	}
 
 	@SuppressWarnings("WeakerAccess")
@@ -135,6 +170,8 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		private final ExceptionStats httpErrors = ExceptionStats.create();
 		private long responsesErrors;
 		private final EventStats sslErrors = EventStats.create(SMOOTHING_WINDOW);
+		private final ValueStats queueTime = ValueStats.create(SMOOTHING_WINDOW).withUnit("milliseconds");
+		private final EventStats queueOverflows = EventStats.create(SMOOTHING_WINDOW);
 
 		@Override
 		public void onRequest(HttpRequest request) {
@@ -151,7 +188,7 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		}
 
 		@Override
-		public void onConnect(HttpRequest request, HttpClientConnection connection) {
+		public void onConnect(HttpRequest request, @Nullable HttpClientConnection connection) {
 			connected.recordEvent();
 		}
 
@@ -161,12 +198,22 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		}
 
 		@Override
-		public void onHttpResponse(HttpClientConnection connection, HttpResponse response) {
+		public void onRequestDequeued(HttpRequest request, long queueTimeMillis) {
+			queueTime.recordValue(queueTimeMillis);
+		}
+
+		@Override
+		public void onQueueOverflow(HttpRequest request, InetSocketAddress address) {
+			queueOverflows.recordEvent();
+		}
+
+		@Override
+		public void onHttpResponse(@Nullable HttpClientConnection connection, HttpResponse response) {
 			responses++;
 		}
 
 		@Override
-		public void onHttpError(HttpClientConnection connection, boolean keepAliveConnection, Throwable e) {
+		public void onHttpError(@Nullable HttpClientConnection connection, boolean keepAliveConnection, Throwable e) {
 			if (e == AbstractHttpConnection.READ_TIMEOUT_ERROR || e == AbstractHttpConnection.WRITE_TIMEOUT_ERROR) {
 				httpTimeouts.recordEvent();
 				return;
@@ -215,7 +262,8 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		@JmxAttribute(reducer = JmxReducerSum.class)
 		public long getActiveRequests() {
 			return totalRequests.getTotalCount() -
-					(httpTimeouts.getTotalCount() + resolveErrors.getTotal() + connectErrors.getTotal() + responsesErrors + responses);
+					(httpTimeouts.getTotalCount() + resolveErrors.getTotal() + connectErrors.getTotal() + responsesErrors + responses +
+							queueOverflows.getTotalCount());
 		}
 
 		@JmxAttribute(reducer = JmxReducerSum.class)
@@ -227,6 +275,16 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		public EventStats getSslErrors() {
 			return sslErrors;
 		}
+
+		@JmxAttribute(description = "time which requests have spent waiting for a connection to their host")
+		public ValueStats getQueueTime() {
+			return queueTime;
+		}
+
+		@JmxAttribute(extraSubAttributes = "totalCount", description = "requests rejected because the queue of their host is full")
+		public EventStats getQueueOverflows() {
+			return queueOverflows;
+		}
 	}
 
 	private int inetAddressIdx = 0;
@@ -273,6 +331,40 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		return this;
 	}
 
+	/**
+	 * Limits the number of HTTP/1.x connections to each host, including connections which are being established.
+	 * Requests over the limit wait in a FIFO queue of the host and are sent over the first connection
+	 * which is returned to the keep-alive pool, or over a new one once another connection is closed.
+	 * Value of 0 means no limit.
+	 */
+	public AsyncHttpClient withMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		checkArgument(maxConnectionsPerHost >= 0, "Maximum number of connections per host should not be less than zero");
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		return this;
+	}
+
+	/**
+	 * Limits the number of requests which wait for a connection to each host,
+	 * requests over the limit fail with {@link #TOO_MANY_PENDING_REQUESTS}.
+	 * Value of 0 means no limit.
+	 */
+	public AsyncHttpClient withMaxPendingRequestsPerHost(int maxPendingRequestsPerHost) {
+		checkArgument(maxPendingRequestsPerHost >= 0, "Maximum number of pending requests per host should not be less than zero");
+		this.maxPendingRequestsPerHost = maxPendingRequestsPerHost;
+		return this;
+	}
+
+	/**
+	 * Limits the time which a request waits for a connection to its host,
+	 * after which it fails with {@link #PENDING_REQUEST_TIMEOUT_ERROR}.
+	 * Value of 0 means no limit.
+	 */
+	public AsyncHttpClient withPendingRequestTimeout(@NotNull Duration pendingRequestTimeout) {
+		checkArgument(!pendingRequestTimeout.isNegative(), "Pending request timeout should not be negative");
+		this.pendingRequestTimeoutMillis = (int) pendingRequestTimeout.toMillis();
+		return this;
+	}
+
 	public AsyncHttpClient withReadWriteTimeout(@NotNull Duration readTimeout) {
 		this.readWriteTimeoutMillis = (int) readTimeout.toMillis();
 		return this;
@@ -292,6 +384,27 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		return this;
 	}
 
+	/**
+	 * Makes the client send plain HTTP requests over HTTP/2 (h2c) connections without negotiation,
+	 * so the servers are expected to support HTTP/2. Concurrent requests to an address are multiplexed
+	 * over a single connection, which is closed after {@link #withKeepAliveTimeout keep-alive timeout} of inactivity.
+	 */
+	public AsyncHttpClient withHttp2PriorKnowledge() {
+		this.http2PriorKnowledge = true;
+		return this;
+	}
+
+	/**
+	 * Makes the client ask servers to upgrade connections to HTTP/2 (h2c) with HTTP/1.1 Upgrade header.
+	 * Only a request without a body may upgrade a connection, and until an upgrade succeeds
+	 * other requests to the address are sent over HTTP/1.1. Addresses, whose servers reject
+	 * the upgrade, are remembered and served over HTTP/1.1 further on.
+	 */
+	public AsyncHttpClient withHttp2Upgrade() {
+		this.http2Upgrade = true;
+		return this;
+	}
+
 	public AsyncHttpClient withInspector(Inspector inspector) {
 		this.inspector = inspector;
 		return this;
@@ -314,6 +427,7 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		expiredConnectionsCheck = eventloop.delayBackground(1000L, () -> {
 			expiredConnectionsCheck = null;
 			poolKeepAliveExpired += poolKeepAlive.closeExpiredConnections(eventloop.currentTimeMillis() - keepAliveTimeoutMillis);
+			http2Expired += closeIdleHttp2Connections(eventloop.currentTimeMillis() - keepAliveTimeoutMillis);
 			boolean isClosing = closePromise != null;
 			if (readWriteTimeoutMillis != 0 || isClosing) {
 				poolReadWriteExpired += poolReadWrite.closeExpiredConnections(eventloop.currentTimeMillis() -
@@ -328,6 +442,17 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		});
 	}
 
+	private int closeIdleHttp2Connections(long expiration) {
+		int count = 0;
+		for (Http2ClientConnection connection : new ArrayList<>(http2Connections.values())) {
+			if (connection.streams.isEmpty() && connection.idleTimestamp <= expiration) {
+				connection.goAway();
+				count++;
+			}
+		}
+		return count;
+	}
+
 	@Nullable
 	private HttpClientConnection takeKeepAliveConnection(InetSocketAddress address) {
 		AddressLinkedList addresses = this.addresses.get(address);
@@ -347,6 +472,16 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 
 	void returnToKeepAlivePool(HttpClientConnection connection) {
 		assert !connection.isClosed();
+		HostConnections host = hosts.get(connection.remoteAddress);
+		PendingRequest pending = host != null ? host.pending.poll() : null;
+		if (pending != null) {
+			// the connection is handed over to the oldest request, which waits for it
+			connection.pool.removeNode(connection);
+			connection.pool = null;
+			onDequeued(pending);
+			connection.send(pending.request).whenComplete(pending.promise);
+			return;
+		}
 		AddressLinkedList addresses = this.addresses.get(connection.remoteAddress);
 		if (addresses == null) {
 			addresses = new AddressLinkedList();
@@ -390,11 +525,62 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		InetAddress inetAddress = inetAddresses[(inetAddressIdx++ & Integer.MAX_VALUE) % inetAddresses.length];
 		InetSocketAddress address = new InetSocketAddress(inetAddress, request.getUrl().getPort());
 
-		HttpClientConnection keepAliveConnection = takeKeepAliveConnection(address);
-		if (keepAliveConnection != null) {
-			return keepAliveConnection.send(request);
+		boolean upgrade = false;
+		if ((http2PriorKnowledge || http2Upgrade) && !request.isHttps()) {
+			Http2ClientConnection http2Connection = http2Connections.get(address);
+			if (http2Connection != null && http2Connection.isAvailable()) {
+				return http2Connection.send(request);
+			}
+			if (http2PriorKnowledge) {
+				return sendHttp2(request, address);
+			}
+			upgrade = !http1Addresses.contains(address) && !http2Upgrading.contains(address) &&
+					request.fileRegion == null && request.bodyStream == null && (request.body == null || !request.body.canRead());
+		}
+
+		if (!upgrade) {
+			HttpClientConnection keepAliveConnection = takeKeepAliveConnection(address);
+			if (keepAliveConnection != null) {
+				return keepAliveConnection.send(request);
+			}
+		}
+
+		HostConnections host = hosts.get(address);
+		if (host == null) {
+			host = new HostConnections();
+			hosts.put(address, host);
+		}
+		if (maxConnectionsPerHost != 0 && host.connections >= maxConnectionsPerHost) {
+			if (stopping) {
+				request.recycle();
+				return Promise.ofException(CLIENT_STOPPED);
+			}
+			if (maxPendingRequestsPerHost != 0 && host.pending.size() >= maxPendingRequestsPerHost) {
+				if (inspector != null) inspector.onQueueOverflow(request, address);
+				request.recycle();
+				return Promise.ofException(TOO_MANY_PENDING_REQUESTS);
+			}
+			SettablePromise<HttpResponse> promise = new SettablePromise<>();
+			PendingRequest pending = new PendingRequest(request, promise, eventloop.currentTimeMillis());
+			host.pending.add(pending);
+			pendingRequests++;
+			if (pendingRequestTimeoutMillis != 0) {
+				HostConnections pendingHost = host;
+				pending.timeout = eventloop.delay(pendingRequestTimeoutMillis, () -> {
+					pendingHost.pending.remove(pending);
+					failPending(pending, PENDING_REQUEST_TIMEOUT_ERROR);
+				});
+			}
+			return promise;
 		}
+		host.connections++;
+		return connect(request, address, upgrade);
+	}
 
+	private Promise<HttpResponse> connect(HttpRequest request, InetSocketAddress address, boolean upgradeHttp2) {
+		if (upgradeHttp2) {
+			http2Upgrading.add(address);
+		}
 		return AsyncTcpSocketImpl.connect(address, connectTimeoutMillis, socketSettings)
 				.thenEx((asyncTcpSocketImpl, e) -> {
 					if (e == null) {
@@ -422,15 +608,127 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 						if (expiredConnectionsCheck == null)
 							scheduleExpiredConnectionsCheck();
 
-						return connection.send(request);
+						if (!upgradeHttp2) {
+							return connection.send(request);
+						}
+						connection.upgradeHttp2 = true;
+						return connection.send(request)
+								.whenComplete(($, e2) -> http2Upgrading.remove(address));
 					} else {
+						if (upgradeHttp2) {
+							http2Upgrading.remove(address);
+						}
 						if (inspector != null) inspector.onConnectError(request, address, e);
+						request.recycle();
+						releaseConnection(address);
+						return Promise.ofException(e);
+					}
+				});
+	}
+
+	/**
+	 * Frees a connection slot of a host, which is taken over by the oldest request waiting for a connection, if any
+	 */
+	private void releaseConnection(InetSocketAddress address) {
+		HostConnections host = hosts.get(address);
+		host.connections--;
+		// no new connections are opened while the client is stopping, its pending requests have already failed
+		PendingRequest pending = !stopping ? host.pending.poll() : null;
+		if (pending != null) {
+			host.connections++;
+			onDequeued(pending);
+			connect(pending.request, address, false).whenComplete(pending.promise);
+		} else if (host.connections == 0) {
+			hosts.remove(address);
+		}
+	}
+
+	private void onDequeued(PendingRequest pending) {
+		pendingRequests--;
+		if (pending.timeout != null) {
+			pending.timeout.cancel();
+		}
+		if (inspector != null) {
+			inspector.onRequestDequeued(pending.request, eventloop.currentTimeMillis() - pending.timestamp);
+		}
+	}
+
+	private void failPending(PendingRequest pending, Throwable e) {
+		onDequeued(pending);
+		pending.request.recycle();
+		pending.promise.setException(e);
+	}
+
+	/**
+	 * Sends a request over a new HTTP/2 connection, which is shared by all requests to the address made while it is being connected
+	 */
+	private Promise<HttpResponse> sendHttp2(HttpRequest request, InetSocketAddress address) {
+		Promise<Http2ClientConnection> connecting = http2Connecting.get(address);
+		if (connecting == null) {
+			connecting = AsyncTcpSocketImpl.connect(address, connectTimeoutMillis, socketSettings)
+					.thenEx((asyncTcpSocketImpl, e) -> {
+						http2Connecting.remove(address);
+						if (e != null) {
+							if (inspector != null) inspector.onConnectError(request, address, e);
+							return Promise.ofException(e);
+						}
+						asyncTcpSocketImpl.withInspector(socketInspector);
+						Http2ClientConnection connection = new Http2ClientConnection(eventloop, asyncTcpSocketImpl, this, address);
+						if (inspector != null) inspector.onConnect(request, null);
+						onHttp2ConnectionOpened(connection);
+						connection.start(null, null);
+						return Promise.of(connection);
+					});
+			if (!connecting.isComplete()) {
+				http2Connecting.put(address, connecting);
+			}
+		}
+		return connecting
+				.thenEx((connection, e) -> {
+					if (e != null) {
 						request.recycle();
 						return Promise.ofException(e);
 					}
+					return connection.send(request);
 				});
 	}
 
+	private void onHttp2ConnectionOpened(Http2ClientConnection connection) {
+		http2Connections.put(connection.remoteAddress, connection);
+		http2ConnectionsCount++;
+		if (expiredConnectionsCheck == null) {
+			scheduleExpiredConnectionsCheck();
+		}
+	}
+
+	void onHttp2Upgraded(HttpClientConnection connection, SettablePromise<HttpResponse> promise) {
+		Http2ClientConnection http2Connection = new Http2ClientConnection(eventloop, connection.socket, this, connection.remoteAddress);
+		onHttp2ConnectionOpened(http2Connection);
+		http2Connection.start(connection.readQueue, promise);
+
+		// requests to the host, which wait for HTTP/1.x connections, are multiplexed over the new connection
+		HostConnections host = hosts.get(connection.remoteAddress);
+		for (PendingRequest pending = host.pending.poll(); pending != null; pending = host.pending.poll()) {
+			onDequeued(pending);
+			http2Connection.send(pending.request).whenComplete(pending.promise);
+		}
+		releaseConnection(connection.remoteAddress);
+	}
+
+	void onHttp2UpgradeRejected(InetSocketAddress address) {
+		http1Addresses.add(address);
+	}
+
+	void onHttp2GoAway(Http2ClientConnection connection) {
+		http2Connections.remove(connection.remoteAddress, connection);
+	}
+
+	void onHttp2ConnectionClosed(Http2ClientConnection connection) {
+		http2Connections.remove(connection.remoteAddress, connection);
+		http2ConnectionsCount--;
+		onConnectionClosed();
+	}
+
 	@NotNull
 	@Override
 	public Eventloop getEventloop() {
@@ -441,12 +739,18 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 	@Override
 	public Promise<Void> start() {
 		checkState(eventloop.inEventloopThread(), "Not in eventloop thread");
+		stopping = false;
 		return Promise.complete();
 	}
 
 	@Nullable
 	private SettablePromise<Void> closePromise;
 
+	void onConnectionClosed(HttpClientConnection connection) {
+		releaseConnection(connection.remoteAddress);
+		onConnectionClosed();
+	}
+
 	public void onConnectionClosed() {
 		if (getConnectionsCount() == 0 && closePromise != null) {
 			closePromise.set(null);
@@ -461,9 +765,18 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 
 		SettablePromise<@Nullable Void> promise = new SettablePromise<>();
 
+		stopping = true;
+		for (HostConnections host : hosts.values()) {
+			for (PendingRequest pending = host.pending.poll(); pending != null; pending = host.pending.poll()) {
+				failPending(pending, CLIENT_STOPPED);
+			}
+		}
 		poolKeepAlive.closeAllConnections();
 		assert addresses.isEmpty();
 		keepAliveTimeoutMillis = 0;
+		for (Http2ClientConnection connection : new ArrayList<>(http2Connections.values())) {
+			connection.goAway();
+		}
 		if (getConnectionsCount() == 0) {
 			assert poolReadWrite.isEmpty();
 			promise.set(null);
@@ -477,7 +790,37 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 	// region jmx
 	@JmxAttribute(description = "current number of connections", reducer = JmxReducerSum.class)
 	public int getConnectionsCount() {
-		return poolKeepAlive.size() + poolReadWrite.size();
+		return poolKeepAlive.size() + poolReadWrite.size() + http2ConnectionsCount;
+	}
+
+	@JmxAttribute
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	@JmxAttribute
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		withMaxConnectionsPerHost(maxConnectionsPerHost);
+	}
+
+	@JmxAttribute
+	public int getMaxPendingRequestsPerHost() {
+		return maxPendingRequestsPerHost;
+	}
+
+	@JmxAttribute
+	public void setMaxPendingRequestsPerHost(int maxPendingRequestsPerHost) {
+		withMaxPendingRequestsPerHost(maxPendingRequestsPerHost);
+	}
+
+	@JmxAttribute(description = "requests waiting for a connection to their host", reducer = JmxReducerSum.class)
+	public int getPendingRequestsCount() {
+		return pendingRequests;
+	}
+
+	@JmxAttribute(reducer = JmxReducerSum.class)
+	public int getConnectionsHttp2Count() {
+		return http2ConnectionsCount;
 	}
 
 	@JmxAttribute(reducer = JmxReducerSum.class)
@@ -500,6 +843,11 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 		return poolReadWriteExpired;
 	}
 
+	@JmxAttribute(reducer = JmxReducerSum.class)
+	public int getConnectionsHttp2Expired() {
+		return http2Expired;
+	}
+
 	@JmxOperation(description = "number of connections per address")
 	public String getAddressConnections() {
 		if (addresses.isEmpty())
@@ -533,8 +881,27 @@ public final class AsyncHttpClient implements IAsyncHttpClient, EventloopService
 	}
 	// endregion
 
+	private static final class HostConnections {
+		int connections;
+		final ArrayDeque<PendingRequest> pending = new ArrayDeque<>();
+	}
+
+	private static final class PendingRequest {
+		final HttpRequest request;
+		final SettablePromise<HttpResponse> promise;
+		final long timestamp;
+		@Nullable
+		ScheduledRunnable timeout;
+
+		PendingRequest(HttpRequest request, SettablePromise<HttpResponse> promise, long timestamp) {
+			this.request = request;
+			this.promise = promise;
+			this.timestamp = timestamp;
+		}
+	}
+
 	@Override
 	public String toString() {
-		return "AsyncHttpClient" + "{" + "read/write:" + poolReadWrite.size() + " keep-alive:" + poolKeepAlive.size() + "}";
+		return "AsyncHttpClient" + "{" + "read/write:" + poolReadWrite.size() + " keep-alive:" + poolKeepAlive.size() + " http2:" + http2ConnectionsCount + "}";
 	}
 }
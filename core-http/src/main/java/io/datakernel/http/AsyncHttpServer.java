@@ -35,8 +35,12 @@ import org.jetbrains.annotations.Nullable;
 
 import java.net.InetAddress;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import static io.datakernel.http.AbstractHttpConnection.READ_TIMEOUT_ERROR;
+import static io.datakernel.util.Preconditions.checkArgument;
 
 /**
  * This is an implementation of the asynchronous HTTP server on top of {@link Eventloop}.
@@ -49,6 +53,8 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 	public static final Duration KEEP_ALIVE_TIMEOUT = ApplicationSettings.getDuration(AsyncHttpServer.class, "keepAliveTimeout", Duration.ofSeconds(30));
 	public static final MemSize MAX_BODY_SIZE = ApplicationSettings.getMemSize(AsyncHttpServer.class, "maxBodySize", MemSize.ZERO);
 	public static final int MAX_KEEP_ALIVE_REQUESTS = ApplicationSettings.getInt(AsyncHttpServer.class, "maxKeepAliveRequests", 0);
+	public static final int MAX_IN_FLIGHT_REQUESTS = ApplicationSettings.getInt(AsyncHttpServer.class, "maxInFlightRequests", 16);
+	public static final boolean HTTP2 = ApplicationSettings.getBoolean(AsyncHttpServer.class, "http2", false);
 
 	@NotNull
 	private final AsyncServlet servlet;
@@ -61,13 +67,17 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 	int keepAliveTimeoutMillis = (int) KEEP_ALIVE_TIMEOUT.toMillis();
 	int maxBodySize = MAX_BODY_SIZE.toInt();
 	int maxKeepAliveRequests = MAX_KEEP_ALIVE_REQUESTS;
+	int maxInFlightRequests = MAX_IN_FLIGHT_REQUESTS;
+	boolean http2 = HTTP2;
 
 	final ConnectionsLinkedList poolNew = new ConnectionsLinkedList();
 	final ConnectionsLinkedList poolReadWrite = new ConnectionsLinkedList();
 	final ConnectionsLinkedList poolServing = new ConnectionsLinkedList();
 	final ConnectionsLinkedList poolKeepAlive = new ConnectionsLinkedList();
+	final Set<Http2ServerConnection> http2Connections = new HashSet<>();
 	private int poolKeepAliveExpired;
 	private int poolReadWriteExpired;
+	private int http2Expired;
 
 	@Nullable
 	private ScheduledRunnable expiredConnectionsCheck;
@@ -167,6 +177,28 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 		return this;
 	}
 
+	/**
+	 * Sets the maximum number of pipelined requests of a connection, which are being served
+	 * or waiting for their responses to be written. Once it is reached, no more requests
+	 * are read from the connection until responses to previous ones are sent.
+	 * Value of 1 disables concurrent serving of pipelined requests.
+	 */
+	public AsyncHttpServer withMaxInFlightRequests(int maxInFlightRequests) {
+		checkArgument(maxInFlightRequests > 0, "Max in-flight requests should be positive");
+		this.maxInFlightRequests = maxInFlightRequests;
+		return this;
+	}
+
+	/**
+	 * Enables HTTP/2 over plain TCP (h2c), which is used by clients that either start with HTTP/2 connection
+	 * preface, or send HTTP/1.1 request to upgrade a connection. Other clients are served over HTTP/1.x.
+	 * Idle HTTP/2 connections are closed after {@link #withKeepAliveTimeout keep-alive timeout}.
+	 */
+	public AsyncHttpServer withHttp2(boolean http2) {
+		this.http2 = http2;
+		return this;
+	}
+
 	public AsyncHttpServer withNoKeepAlive() {
 		return withKeepAliveTimeout(Duration.ZERO);
 	}
@@ -211,6 +243,17 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 		return Duration.ofMillis(readWriteTimeoutMillis);
 	}
 
+	@JmxAttribute
+	public int getMaxInFlightRequests() {
+		return maxInFlightRequests;
+	}
+
+	@JmxAttribute
+	public void setMaxInFlightRequests(int maxInFlightRequests) {
+		checkArgument(maxInFlightRequests > 0, "Max in-flight requests should be positive");
+		this.maxInFlightRequests = maxInFlightRequests;
+	}
+
 	public Promise<Void> getCloseNotification() {
 		return closeNotification;
 	}
@@ -227,6 +270,7 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 						(!isClosing ? readWriteTimeoutMillis : readWriteTimeoutMillisShutdown), READ_TIMEOUT_ERROR);
 			}
 			poolKeepAliveExpired += poolKeepAlive.closeExpiredConnections(eventloop.currentTimeMillis() - keepAliveTimeoutMillis);
+			http2Expired += closeIdleHttp2Connections(eventloop.currentTimeMillis() - keepAliveTimeoutMillis);
 			if (getConnectionsCount() != 0) {
 				scheduleExpiredConnectionsCheck();
 				if (isClosing) {
@@ -236,6 +280,17 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 		});
 	}
 
+	private int closeIdleHttp2Connections(long expiration) {
+		int count = 0;
+		for (Http2ServerConnection connection : new ArrayList<>(http2Connections)) {
+			if (connection.streams.isEmpty() && connection.idleTimestamp <= expiration) {
+				connection.goAway();
+				count++;
+			}
+		}
+		return count;
+	}
+
 	@Override
 	protected void serve(AsyncTcpSocket socket, InetAddress remoteAddress) {
 		assert eventloop.inEventloopThread();
@@ -257,11 +312,23 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 		}
 	}
 
+	void onHttp2ConnectionOpened(Http2ServerConnection connection) {
+		http2Connections.add(connection);
+	}
+
+	void onHttp2ConnectionClosed(Http2ServerConnection connection) {
+		http2Connections.remove(connection);
+		onConnectionClosed();
+	}
+
 	@Override
 	protected void onClose(SettablePromise<@Nullable Void> cb) {
 		closeNotification.set(null);
 		poolKeepAlive.closeAllConnections();
 		keepAliveTimeoutMillis = 0;
+		for (Http2ServerConnection connection : new ArrayList<>(http2Connections)) {
+			connection.goAway();
+		}
 		if (getConnectionsCount() == 0) {
 			cb.set(null);
 		} else {
@@ -272,7 +339,12 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 
 	@JmxAttribute(description = "current number of connections", reducer = JmxReducerSum.class)
 	public int getConnectionsCount() {
-		return poolNew.size() + poolKeepAlive.size() + poolReadWrite.size() + poolServing.size();
+		return poolNew.size() + poolKeepAlive.size() + poolReadWrite.size() + poolServing.size() + http2Connections.size();
+	}
+
+	@JmxAttribute(reducer = JmxReducerSum.class)
+	public int getConnectionsHttp2Count() {
+		return http2Connections.size();
 	}
 
 	@JmxAttribute(reducer = JmxReducerSum.class)
@@ -305,6 +377,11 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 		return poolReadWriteExpired;
 	}
 
+	@JmxAttribute(reducer = JmxReducerSum.class)
+	public int getConnectionsHttp2Expired() {
+		return http2Expired;
+	}
+
 	HttpResponse formatHttpError(Throwable e) {
 		return errorFormatter.formatException(e);
 	}
@@ -317,6 +394,6 @@ public final class AsyncHttpServer extends AbstractServer<AsyncHttpServer> {
 
 	@Override
 	public String toString() {
-		return "AsyncHttpServer" + "{" + "new:" + poolNew.size() + " read/write:" + poolReadWrite.size() + " serving:" + poolServing.size() + " keep-alive:" + poolKeepAlive.size() + "}";
+		return "AsyncHttpServer" + "{" + "new:" + poolNew.size() + " read/write:" + poolReadWrite.size() + " serving:" + poolServing.size() + " keep-alive:" + poolKeepAlive.size() + " http2:" + http2Connections.size() + "}";
 	}
 }
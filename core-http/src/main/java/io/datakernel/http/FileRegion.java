@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.csp.ChannelSupplier;
+import io.datakernel.csp.file.ChannelFileReader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+import static io.datakernel.util.Preconditions.checkArgument;
+
+/**
+ * A region of a file, which can be used as a body of an {@link HttpResponse}.
+ * <p>
+ * The server sends a file region from the file channel directly to the socket with
+ * {@link FileChannel#transferTo}, so its contents are never copied to the heap.
+ * If the connection does not support that (for example, it is encrypted),
+ * the region is read with a {@link ChannelFileReader} on the given executor,
+ * to direct chunks, which are sent as is.
+ * <p>
+ * The region owns its file channel, which is closed once the region is sent or its response is recycled.
+ */
+public final class FileRegion {
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final Executor executor;
+	private final FileChannel channel;
+	private final long position;
+	private final long count;
+
+	private FileRegion(Executor executor, FileChannel channel, long position, long count) {
+		this.executor = executor;
+		this.channel = channel;
+		this.position = position;
+		this.count = count;
+	}
+
+	public static FileRegion of(@NotNull Executor executor, @NotNull FileChannel channel, long position, long count) {
+		checkArgument(position >= 0 && count >= 0, "Position and count should not be negative");
+		return new FileRegion(executor, channel, position, count);
+	}
+
+	public FileChannel getChannel() {
+		return channel;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	ChannelSupplier<ByteBuf> toChannelSupplier() {
+		return toChannelSupplier(false);
+	}
+
+	/**
+	 * Reads the region in chunks, direct chunks are meant to be written to a socket as is
+	 */
+	ChannelSupplier<ByteBuf> toChannelSupplier(boolean directBuffers) {
+		ChannelFileReader reader = ChannelFileReader.create(executor, channel)
+				.withOffset(position)
+				.withLength(count)
+				.withBufferSize(CHUNK_SIZE)
+				.withDirectBuffers(directBuffers);
+		return reader.withEndOfStream(eos -> eos
+				.then($ -> reader.getPosition() == position + count ?
+						Promise.complete() :
+						Promise.ofException(new IOException("File has been truncated while being read"))));
+	}
+
+	@Override
+	public String toString() {
+		return "FileRegion{position=" + position + ", count=" + count + '}';
+	}
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.http;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.exception.ParseException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.datakernel.bytebuf.ByteBufStrings.encodeAscii;
+import static io.datakernel.http.Http2Exception.COMPRESSION_ERROR;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * HPACK header compression of HTTP/2 (RFC 7541).
+ * <p>
+ * Each HTTP/2 connection has an {@link Encoder} and a {@link Decoder}, which keep the dynamic tables
+ * of their directions, so header blocks must be encoded and decoded in the order in which they are sent.
+ * Header names are expected to be in lower case, names and values are treated as ISO-8859-1 bytes.
+ */
+final class Hpack {
+	static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+
+	private static final int ENTRY_OVERHEAD = 32;
+
+	static final Http2Exception INVALID_INDEX = new Http2Exception(COMPRESSION_ERROR, "Invalid header table index");
+	static final Http2Exception INVALID_INTEGER = new Http2Exception(COMPRESSION_ERROR, "Integer is too large");
+	static final Http2Exception INVALID_HUFFMAN = new Http2Exception(COMPRESSION_ERROR, "Invalid Huffman-encoded string");
+	static final Http2Exception INVALID_TABLE_SIZE_UPDATE = new Http2Exception(COMPRESSION_ERROR, "Invalid dynamic table size update");
+	static final Http2Exception INCOMPLETE_HEADER_BLOCK = new Http2Exception(COMPRESSION_ERROR, "Incomplete header block");
+
+	private static final String[][] STATIC_TABLE = {
+			{":authority", ""},
+			{":method", "GET"},
+			{":method", "POST"},
+			{":path", "/"},
+			{":path", "/index.html"},
+			{":scheme", "http"},
+			{":scheme", "https"},
+			{":status", "200"},
+			{":status", "204"},
+			{":status", "206"},
+			{":status", "304"},
+			{":status", "400"},
+			{":status", "404"},
+			{":status", "500"},
+			{"accept-charset", ""},
+			{"accept-encoding", "gzip, deflate"},
+			{"accept-language", ""},
+			{"accept-ranges", ""},
+			{"accept", ""},
+			{"access-control-allow-origin", ""},
+			{"age", ""},
+			{"allow", ""},
+			{"authorization", ""},
+			{"cache-control", ""},
+			{"content-disposition", ""},
+			{"content-encoding", ""},
+			{"content-language", ""},
+			{"content-length", ""},
+			{"content-location", ""},
+			{"content-range", ""},
+			{"content-type", ""},
+			{"cookie", ""},
+			{"date", ""},
+			{"etag", ""},
+			{"expect", ""},
+			{"expires", ""},
+			{"from", ""},
+			{"host", ""},
+			{"if-match", ""},
+			{"if-modified-since", ""},
+			{"if-none-match", ""},
+			{"if-range", ""},
+			{"if-unmodified-since", ""},
+			{"last-modified", ""},
+			{"link", ""},
+			{"location", ""},
+			{"max-forwards", ""},
+			{"proxy-authenticate", ""},
+			{"proxy-authorization", ""},
+			{"range", ""},
+			{"referer", ""},
+			{"refresh", ""},
+			{"retry-after", ""},
+			{"server", ""},
+			{"set-cookie", ""},
+			{"strict-transport-security", ""},
+			{"transfer-encoding", ""},
+			{"user-agent", ""},
+			{"vary", ""},
+			{"via", ""},
+			{"www-authenticate", ""}
+	};
+
+	private static final Field[] STATIC_FIELDS = new Field[STATIC_TABLE.length + 1];
+	private static final Map<String, Integer> STATIC_NAME_INDEX = new HashMap<>();
+
+	static {
+		for (int i = 0; i < STATIC_TABLE.length; i++) {
+			STATIC_FIELDS[i + 1] = new Field(encodeAscii(STATIC_TABLE[i][0]), encodeAscii(STATIC_TABLE[i][1]));
+			STATIC_NAME_INDEX.putIfAbsent(STATIC_TABLE[i][0], i + 1);
+		}
+	}
+
+	// region Huffman code of RFC 7541, Appendix B
+	private static final int[] HUFFMAN_CODES = {
+			0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+			0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+			0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+			0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+			0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+			0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+			0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+			0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+			0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+			0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+			0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+			0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+			0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+			0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+			0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+			0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+			0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+			0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+			0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+			0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+			0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+			0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+			0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+			0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+			0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+			0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+			0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+			0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+			0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+			0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+			0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+			0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee, 0x3fffffff
+	};
+
+	private static final byte[] HUFFMAN_LENGTHS = {
+			13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+			28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+			6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+			5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+			13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+			7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+			15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+			6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+			20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+			24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+			22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+			21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+			26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+			19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+			20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+			26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26, 30
+	};
+
+	private static final int EOS = 256;
+
+	/**
+	 * Binary decoding tree of Huffman code, where children of node {@code n} are at {@code 2 * n} and {@code 2 * n + 1},
+	 * positive values are indices of inner nodes and negative ones are inverted symbols
+	 */
+	private static final int[] HUFFMAN_TREE = new int[2 * 2 * (EOS + 1)];
+
+	static {
+		int nodes = 1;
+		for (int symbol = 0; symbol <= EOS; symbol++) {
+			int code = HUFFMAN_CODES[symbol];
+			int node = 0;
+			for (int bit = HUFFMAN_LENGTHS[symbol] - 1; bit > 0; bit--) {
+				int slot = 2 * node + ((code >>> bit) & 1);
+				if (HUFFMAN_TREE[slot] == 0) {
+					HUFFMAN_TREE[slot] = nodes++;
+				}
+				node = HUFFMAN_TREE[slot];
+			}
+			HUFFMAN_TREE[2 * node + (code & 1)] = ~symbol;
+		}
+	}
+	// endregion
+
+	private Hpack() {
+	}
+
+	static final class Field {
+		final byte[] name;
+		final byte[] value;
+
+		Field(byte[] name, byte[] value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		int size() {
+			return name.length + value.length + ENTRY_OVERHEAD;
+		}
+
+		@Override
+		public String toString() {
+			return new String(name, ISO_8859_1) + ": " + new String(value, ISO_8859_1);
+		}
+	}
+
+	@FunctionalInterface
+	interface HeaderListener {
+		void onHeader(byte[] name, byte[] value) throws ParseException;
+	}
+
+	/**
+	 * Dynamic table of header fields, which is a FIFO ring of fields where index 0 is the newest one
+	 */
+	private static final class DynamicTable {
+		private Field[] fields = new Field[16];
+		private int head;
+		private int count;
+		private int size;
+		private int maxSize;
+
+		DynamicTable(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		int count() {
+			return count;
+		}
+
+		Field get(int index) {
+			return fields[(head + index) & (fields.length - 1)];
+		}
+
+		void add(Field field) {
+			int fieldSize = field.size();
+			while (count != 0 && size + fieldSize > maxSize) {
+				evict();
+			}
+			if (fieldSize > maxSize) {
+				return;
+			}
+			if (count == fields.length) {
+				Field[] newFields = new Field[fields.length * 2];
+				for (int i = 0; i < count; i++) {
+					newFields[i] = get(i);
+				}
+				fields = newFields;
+				head = 0;
+			}
+			head = (head - 1) & (fields.length - 1);
+			fields[head] = field;
+			count++;
+			size += fieldSize;
+		}
+
+		void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+			while (size > maxSize) {
+				evict();
+			}
+		}
+
+		private void evict() {
+			int last = (head + count - 1) & (fields.length - 1);
+			size -= fields[last].size();
+			fields[last] = null;
+			count--;
+		}
+	}
+
+	static final class Decoder {
+		private final DynamicTable table;
+		private final int maxTableSize;
+
+		Decoder(int maxTableSize) {
+			this.table = new DynamicTable(maxTableSize);
+			this.maxTableSize = maxTableSize;
+		}
+
+		/**
+		 * Decodes a complete header block, consuming the given buf
+		 */
+		void decode(ByteBuf block, HeaderListener listener) throws ParseException {
+			boolean fieldDecoded = false;
+			while (block.canRead()) {
+				int b = block.readByte() & 0xFF;
+				if ((b & 0x80) != 0) {
+					Field field = field(readInt(block, b, 7));
+					listener.onHeader(field.name, field.value);
+				} else if ((b & 0x40) != 0) {
+					int index = readInt(block, b, 6);
+					byte[] name = index == 0 ? readString(block) : field(index).name;
+					byte[] value = readString(block);
+					table.add(new Field(name, value));
+					listener.onHeader(name, value);
+				} else if ((b & 0x20) != 0) {
+					int size = readInt(block, b, 5);
+					if (fieldDecoded || size > maxTableSize) throw INVALID_TABLE_SIZE_UPDATE;
+					table.setMaxSize(size);
+					continue;
+				} else {
+					// literal field without indexing or never indexed
+					int index = readInt(block, b, 4);
+					byte[] name = index == 0 ? readString(block) : field(index).name;
+					listener.onHeader(name, readString(block));
+				}
+				fieldDecoded = true;
+			}
+		}
+
+		private Field field(int index) throws ParseException {
+			if (index == 0) throw INVALID_INDEX;
+			if (index < STATIC_FIELDS.length) {
+				return STATIC_FIELDS[index];
+			}
+			index -= STATIC_FIELDS.length;
+			if (index >= table.count()) throw INVALID_INDEX;
+			return table.get(index);
+		}
+	}
+
+	static final class Encoder {
+		private final DynamicTable table = new DynamicTable(DEFAULT_HEADER_TABLE_SIZE);
+		private int tableSize = DEFAULT_HEADER_TABLE_SIZE;
+		private boolean tableSizeChanged;
+
+		/**
+		 * Applies the limit of dynamic table size, which is set by the peer,
+		 * the table never grows over the default size
+		 */
+		void setMaxTableSize(int maxTableSize) {
+			int size = Math.min(maxTableSize, DEFAULT_HEADER_TABLE_SIZE);
+			if (size != tableSize) {
+				tableSize = size;
+				tableSizeChanged = true;
+				table.setMaxSize(size);
+			}
+		}
+
+		/**
+		 * Returns the upper bound of encoded size of a header field
+		 */
+		static int estimateSize(byte[] name, byte[] value) {
+			return name.length + value.length + 12;
+		}
+
+		void beginBlock(ByteBuf buf) {
+			if (tableSizeChanged) {
+				tableSizeChanged = false;
+				writeInt(buf, 0x20, 5, tableSize);
+			}
+		}
+
+		/**
+		 * Encodes a header field, sensitive fields are never put into tables of any intermediaries
+		 */
+		void encode(ByteBuf buf, byte[] name, byte[] value, boolean sensitive) {
+			int nameIndex = 0;
+			Integer staticIndex = STATIC_NAME_INDEX.get(new String(name, ISO_8859_1));
+			if (staticIndex != null) {
+				nameIndex = staticIndex;
+				for (int i = staticIndex; i < STATIC_FIELDS.length && Arrays.equals(STATIC_FIELDS[i].name, name); i++) {
+					if (Arrays.equals(STATIC_FIELDS[i].value, value)) {
+						writeInt(buf, 0x80, 7, i);
+						return;
+					}
+				}
+			}
+			if (sensitive) {
+				writeInt(buf, 0x10, 4, nameIndex);
+				if (nameIndex == 0) {
+					writeString(buf, name);
+				}
+				writeString(buf, value);
+				return;
+			}
+			for (int i = 0; i < table.count(); i++) {
+				Field field = table.get(i);
+				if (Arrays.equals(field.name, name)) {
+					if (Arrays.equals(field.value, value)) {
+						writeInt(buf, 0x80, 7, STATIC_FIELDS.length + i);
+						return;
+					}
+					if (nameIndex == 0) {
+						nameIndex = STATIC_FIELDS.length + i;
+					}
+				}
+			}
+			Field field = new Field(name, value);
+			if (field.size() > tableSize / 2) {
+				// large fields would flush the whole table, so they are not indexed
+				writeInt(buf, 0x00, 4, nameIndex);
+			} else {
+				writeInt(buf, 0x40, 6, nameIndex);
+				table.add(field);
+			}
+			if (nameIndex == 0) {
+				writeString(buf, name);
+			}
+			writeString(buf, value);
+		}
+	}
+
+	// region primitives
+	static void writeInt(ByteBuf buf, int flags, int prefixBits, int value) {
+		int max = (1 << prefixBits) - 1;
+		if (value < max) {
+			buf.writeByte((byte) (flags | value));
+			return;
+		}
+		buf.writeByte((byte) (flags | max));
+		value -= max;
+		while (value >= 0x80) {
+			buf.writeByte((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buf.writeByte((byte) value);
+	}
+
+	static int readInt(ByteBuf buf, int first, int prefixBits) throws ParseException {
+		int max = (1 << prefixBits) - 1;
+		int value = first & max;
+		if (value < max) {
+			return value;
+		}
+		for (int shift = 0; shift <= 21; shift += 7) {
+			if (!buf.canRead()) throw INCOMPLETE_HEADER_BLOCK;
+			int b = buf.readByte() & 0xFF;
+			value += (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw INVALID_INTEGER;
+	}
+
+	static void writeString(ByteBuf buf, byte[] string) {
+		int huffmanLength = huffmanLength(string);
+		if (huffmanLength < string.length) {
+			writeInt(buf, 0x80, 7, huffmanLength);
+			huffmanEncode(buf, string);
+		} else {
+			writeInt(buf, 0x00, 7, string.length);
+			buf.put(string);
+		}
+	}
+
+	static byte[] readString(ByteBuf buf) throws ParseException {
+		if (!buf.canRead()) throw INCOMPLETE_HEADER_BLOCK;
+		int first = buf.readByte() & 0xFF;
+		int length = readInt(buf, first, 7);
+		if (buf.readRemaining() < length) throw INCOMPLETE_HEADER_BLOCK;
+		byte[] string = (first & 0x80) != 0 ?
+				huffmanDecode(buf.array(), buf.head(), length) :
+				Arrays.copyOfRange(buf.array(), buf.head(), buf.head() + length);
+		buf.moveHead(length);
+		return string;
+	}
+
+	static int huffmanLength(byte[] string) {
+		long bits = 0;
+		for (byte b : string) {
+			bits += HUFFMAN_LENGTHS[b & 0xFF];
+		}
+		return (int) ((bits + 7) >>> 3);
+	}
+
+	static void huffmanEncode(ByteBuf buf, byte[] string) {
+		long current = 0;
+		int bits = 0;
+		for (byte b : string) {
+			int symbol = b & 0xFF;
+			current = (current << HUFFMAN_LENGTHS[symbol]) | HUFFMAN_CODES[symbol];
+			bits += HUFFMAN_LENGTHS[symbol];
+			while (bits >= 8) {
+				bits -= 8;
+				buf.writeByte((byte) (current >>> bits));
+			}
+			current &= (1L << bits) - 1;
+		}
+		if (bits != 0) {
+			// padded with the most significant bits of EOS
+			buf.writeByte((byte) ((current << (8 - bits)) | (0xFF >>> bits)));
+		}
+	}
+
+	static byte[] huffmanDecode(byte[] array, int offset, int length) throws ParseException {
+		// the shortest code is 5 bits long
+		byte[] result = new byte[length * 8 / 5];
+		int size = 0;
+		int node = 0;
+		int bits = 0;
+		boolean ones = true;
+		for (int i = offset; i < offset + length; i++) {
+			int b = array[i];
+			for (int shift = 7; shift >= 0; shift--) {
+				int bit = (b >>> shift) & 1;
+				int next = HUFFMAN_TREE[2 * node + bit];
+				if (next < 0) {
+					int symbol = ~next;
+					if (symbol == EOS) throw INVALID_HUFFMAN;
+					result[size++] = (byte) symbol;
+					node = 0;
+					bits = 0;
+					ones = true;
+				} else {
+					node = next;
+					bits++;
+					ones &= bit == 1;
+				}
+			}
+		}
+		// padding is strictly shorter than 8 bits and consists of the most significant bits of EOS
+		if (bits > 7 || !ones) throw INVALID_HUFFMAN;
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+	// endregion
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.SettablePromise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufPool;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.eventloop.AsyncTcpSocket;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.exception.ParseException;
+import io.datakernel.http.AsyncHttpClient.Inspector;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.datakernel.bytebuf.ByteBufStrings.encodeAscii;
+import static io.datakernel.http.AbstractHttpConnection.BUF_RECYCLER;
+import static io.datakernel.http.Http2Exception.PROTOCOL_ERROR;
+import static io.datakernel.http.Http2Exception.REFUSED_STREAM;
+import static io.datakernel.http.Http2ServerConnection.*;
+import static io.datakernel.http.HttpHeaders.HOST;
+import static io.datakernel.http.HttpMessage.MUST_LOAD_BODY;
+
+/**
+ * Client side of HTTP/2 connection, which sends requests to a single address over concurrent streams.
+ * <p>
+ * Requests over the limit of concurrent streams, set by the server, are queued until other streams complete.
+ * A connection is either started with prior knowledge, or it replaces {@link HttpClientConnection}
+ * once the server accepts HTTP/1.1 upgrade request, whose response is then received over the first stream.
+ */
+final class Http2ClientConnection extends Http2Connection {
+	public static final Http2Exception GOAWAY_RECEIVED = new Http2Exception(REFUSED_STREAM, "Connection is going away");
+
+	private static final byte[] SCHEME_HTTP = encodeAscii("http");
+
+	// streams, which may be opened before the limit of the server is known, the limit is not expected to be lower
+	private static final int INITIAL_MAX_CONCURRENT_STREAMS = 100;
+
+	final InetSocketAddress remoteAddress;
+	private final AsyncHttpClient client;
+	@Nullable
+	private final Inspector inspector;
+	private final int maxBodySize;
+
+	private int nextStreamId = 1;
+	private final ArrayDeque<PendingRequest> pending = new ArrayDeque<>();
+
+	Http2ClientConnection(Eventloop eventloop, AsyncTcpSocket socket, AsyncHttpClient client, InetSocketAddress remoteAddress) {
+		super(eventloop, socket);
+		this.remoteAddress = remoteAddress;
+		this.client = client;
+		this.inspector = client.inspector;
+		this.maxBodySize = client.maxBodySize;
+		this.peerMaxConcurrentStreams = INITIAL_MAX_CONCURRENT_STREAMS;
+	}
+
+	/**
+	 * Returns payload of SETTINGS frame of a client, which is also sent in HTTP2-Settings header of upgrade request
+	 */
+	static ByteBuf settingsPayload() {
+		ByteBuf payload = ByteBufPool.allocate(3 * 6);
+		putSetting(payload, SETTINGS_ENABLE_PUSH, 0);
+		putSetting(payload, SETTINGS_INITIAL_WINDOW_SIZE, INITIAL_WINDOW_SIZE.toInt());
+		putSetting(payload, SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE.toInt());
+		return payload;
+	}
+
+	/**
+	 * Starts the connection by sending the connection preface
+	 *
+	 * @param received       data, which has already been read from the socket
+	 * @param upgradePromise promise of the response to HTTP/1.1 upgrade request, which is received over the first stream
+	 */
+	void start(@Nullable ByteBufQueue received, @Nullable SettablePromise<HttpResponse> upgradePromise) {
+		if (received != null) {
+			received.drainTo(readQueue);
+		}
+		if (upgradePromise != null) {
+			Http2Stream stream = openStream(nextStreamId);
+			nextStreamId += 2;
+			stream.localEnded = true;
+			stream.responsePromise = upgradePromise;
+		}
+		socket.write(ByteBuf.wrapForReading(PREFACE));
+		start();
+	}
+
+	@Override
+	void writeSettings(ByteBuf payload) {
+		ByteBuf settings = settingsPayload();
+		payload.put(settings);
+		settings.recycle();
+	}
+
+	/**
+	 * Checks whether new requests may be sent over this connection
+	 */
+	boolean isAvailable() {
+		return !isClosed() && !goAwaySent && !goAwayReceived && nextStreamId > 0;
+	}
+
+	Promise<HttpResponse> send(HttpRequest request) {
+		SettablePromise<HttpResponse> promise = new SettablePromise<>();
+		if (streams.size() >= peerMaxConcurrentStreams) {
+			pending.add(new PendingRequest(request, promise));
+			return promise;
+		}
+		doSend(request, promise);
+		return promise;
+	}
+
+	private void doSend(HttpRequest request, SettablePromise<HttpResponse> promise) {
+		if (!isAvailable()) {
+			request.recycle();
+			promise.setException(isClosed() ? CONNECTION_CLOSED : GOAWAY_RECEIVED);
+			return;
+		}
+		Http2Stream stream = openStream(nextStreamId);
+		nextStreamId += 2;
+		stream.responsePromise = promise;
+
+		String authority = request.getHeader(HOST);
+		String path = request.getPathAndQuery();
+		List<byte[]> fields = new ArrayList<>();
+		fields.add(METHOD);
+		fields.add(request.getMethod().bytes);
+		fields.add(SCHEME);
+		fields.add(SCHEME_HTTP);
+		fields.add(AUTHORITY);
+		fields.add(encodeAscii(authority != null ? authority : request.getHostAndPort()));
+		fields.add(PATH);
+		fields.add(encodeAscii(path.startsWith("/") ? path : "/" + path));
+		addHeaderFields(fields, request);
+		writeMessage(stream, fields, request, false);
+		request.recycle();
+	}
+
+	@Override
+	boolean isIdleStream(int streamId) {
+		return (streamId & 1) == 0 || streamId >= nextStreamId;
+	}
+
+	@Override
+	void onHeaders(int streamId, List<byte[]> fields, boolean endStream) throws ParseException {
+		Http2Stream stream = streams.get(streamId);
+		if (stream == null) {
+			if (isIdleStream(streamId)) throw UNEXPECTED_FRAME;
+			// a stream, which has been reset by this side
+			return;
+		}
+		if (stream.response != null) {
+			// trailers, which are ignored
+			if (!endStream || stream.remoteEnded) {
+				resetStream(stream, PROTOCOL_ERROR);
+				return;
+			}
+			stream.onData(ByteBuf.empty(), true);
+			onStreamUpdated(stream);
+			return;
+		}
+
+		int code;
+		HttpResponse response;
+		try {
+			if (fields.isEmpty() || !Arrays.equals(fields.get(0), STATUS)) throw MALFORMED_HEADERS;
+			byte[] status = fields.get(1);
+			code = HttpUtils.trimAndDecodePositiveInt(status, 0, status.length);
+			if (code < 100 || code >= 600) throw MALFORMED_HEADERS;
+			if (code < 200) {
+				// informational responses are skipped
+				if (endStream) throw MALFORMED_HEADERS;
+				return;
+			}
+			response = new HttpResponse(code);
+			try {
+				addHeaders(response, fields, 2);
+			} catch (ParseException e) {
+				response.recycle();
+				throw e;
+			}
+		} catch (ParseException e) {
+			resetStream(stream, PROTOCOL_ERROR);
+			return;
+		}
+		response.maxBodySize = maxBodySize;
+		response.flags |= MUST_LOAD_BODY;
+		stream.response = response;
+
+		if (endStream) {
+			stream.remoteEnded = true;
+			response.body = ByteBuf.empty();
+			onResponse(stream);
+			onStreamUpdated(stream);
+			return;
+		}
+		int contentLength = getBufferedBodySize(fields, maxBodySize);
+		if (contentLength != -1) {
+			stream.bufferBody(contentLength);
+			return;
+		}
+		response.bodyStream = getBodySupplier(stream, response);
+		stream.responseStreamed = true;
+		onResponse(stream);
+	}
+
+	@Override
+	void onBodyReceived(Http2Stream stream, ByteBuf body) {
+		assert stream.response != null;
+		stream.response.body = body;
+		onResponse(stream);
+	}
+
+	private void onResponse(Http2Stream stream) {
+		HttpResponse response = stream.response;
+		assert response != null;
+		if (inspector != null) inspector.onHttpResponse(null, response);
+		SettablePromise<HttpResponse> promise = stream.responsePromise;
+		stream.responsePromise = null;
+		if (promise != null) {
+			promise.set(response);
+		}
+	}
+
+	@Override
+	void onSettings() {
+		sendPending();
+	}
+
+	@Override
+	void onStreamClosed(Http2Stream stream) {
+		HttpResponse response = stream.response;
+		if (response != null) {
+			stream.response = null;
+			if (!stream.responseStreamed) {
+				response.recycle();
+			} else if (response.bodyStream != null) {
+				response.bodyStream.streamTo(BUF_RECYCLER);
+				response.bodyStream = null;
+			}
+			// otherwise the body, which is loaded from the stream, belongs to the caller, as it does with HTTP/1.1 connections
+		}
+		if (isClosed()) return;
+		sendPending();
+		if (streams.isEmpty() && client.keepAliveTimeoutMillis == 0) {
+			goAway();
+		}
+	}
+
+	private void sendPending() {
+		while (!pending.isEmpty() && streams.size() < peerMaxConcurrentStreams && !isClosed()) {
+			PendingRequest request = pending.poll();
+			doSend(request.request, request.promise);
+		}
+	}
+
+	@Override
+	void onGoAway(int lastStreamId) {
+		client.onHttp2GoAway(this);
+		List<Http2Stream> refused = new ArrayList<>();
+		for (Http2Stream stream : streams.values()) {
+			if (stream.id > lastStreamId) {
+				refused.add(stream);
+			}
+		}
+		for (Http2Stream stream : refused) {
+			resetStream(stream, REFUSED_STREAM);
+		}
+		failPending(GOAWAY_RECEIVED);
+	}
+
+	private void failPending(Throwable e) {
+		for (PendingRequest request = pending.poll(); request != null; request = pending.poll()) {
+			request.request.recycle();
+			request.promise.setException(e);
+		}
+	}
+
+	@Override
+	void onClosed(@Nullable Throwable e) {
+		failPending(e != null ? e : CONNECTION_CLOSED);
+		if (e != null && inspector != null) {
+			inspector.onHttpError(null, false, e);
+		}
+		client.onHttp2ConnectionClosed(this);
+	}
+
+	private static final class PendingRequest {
+		final HttpRequest request;
+		final SettablePromise<HttpResponse> promise;
+
+		PendingRequest(HttpRequest request, SettablePromise<HttpResponse> promise) {
+			this.request = request;
+			this.promise = promise;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Http2ClientConnection{" +
+				"remoteAddress=" + remoteAddress +
+				", pending=" + pending.size() +
+				", " + super.toString() +
+				'}';
+	}
+}
@@ -0,0 +1,943 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.SettablePromise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufPool;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.csp.AbstractChannelConsumer;
+import io.datakernel.csp.ChannelSupplier;
+import io.datakernel.eventloop.AsyncTcpSocket;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.exception.ParseException;
+import io.datakernel.http.stream.BufsConsumerGzipDeflater;
+import io.datakernel.http.stream.BufsConsumerGzipInflater;
+import io.datakernel.util.ApplicationSettings;
+import io.datakernel.util.MemSize;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.datakernel.bytebuf.ByteBufStrings.encodeAscii;
+import static io.datakernel.bytebuf.ByteBufStrings.equalsLowerCaseAscii;
+import static io.datakernel.http.Http2Exception.*;
+import static io.datakernel.http.HttpHeaders.*;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Base of HTTP/2 connections (RFC 7540) over plain TCP sockets, also known as h2c.
+ * <p>
+ * It reads frames from the socket and keeps the state of the connection - settings,
+ * flow control windows and HPACK tables - while the exchanges of requests and responses
+ * over {@link Http2Stream streams} are driven by the server and the client subclasses.
+ * <p>
+ * Bodies of messages are mapped onto {@link ChannelSupplier channel suppliers}: a body is sent
+ * in DATA frames as its supplier produces bufs, within the flow control windows granted by the peer,
+ * and received DATA frames are credited back to the peer as the body supplier of the stream is consumed.
+ */
+abstract class Http2Connection {
+	public static final MemSize INITIAL_WINDOW_SIZE = ApplicationSettings.getMemSize(Http2Connection.class, "initialWindowSize", MemSize.megabytes(1));
+	public static final MemSize CONNECTION_WINDOW_SIZE = ApplicationSettings.getMemSize(Http2Connection.class, "connectionWindowSize", MemSize.megabytes(4));
+	public static final MemSize MAX_HEADER_LIST_SIZE = ApplicationSettings.getMemSize(Http2Connection.class, "maxHeaderListSize", MemSize.kilobytes(64));
+	public static final int MAX_CONCURRENT_STREAMS = ApplicationSettings.getInt(Http2Connection.class, "maxConcurrentStreams", 100);
+
+	static final byte[] PREFACE = encodeAscii("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n");
+
+	static final int FRAME_HEADER_SIZE = 9;
+	static final int DEFAULT_WINDOW_SIZE = 65535;
+	static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+	static final int MAX_FRAME_SIZE = (1 << 24) - 1;
+
+	// region frame types, flags and settings
+	static final byte DATA = 0x0;
+	static final byte HEADERS = 0x1;
+	static final byte PRIORITY = 0x2;
+	static final byte RST_STREAM = 0x3;
+	static final byte SETTINGS = 0x4;
+	static final byte PUSH_PROMISE = 0x5;
+	static final byte PING = 0x6;
+	static final byte GOAWAY = 0x7;
+	static final byte WINDOW_UPDATE = 0x8;
+	static final byte CONTINUATION = 0x9;
+
+	static final byte FLAG_END_STREAM = 0x1;
+	static final byte FLAG_ACK = 0x1;
+	static final byte FLAG_END_HEADERS = 0x4;
+	static final byte FLAG_PADDED = 0x8;
+	static final byte FLAG_PRIORITY = 0x20;
+
+	static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	static final int SETTINGS_ENABLE_PUSH = 0x2;
+	static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+	// endregion
+
+	public static final Http2Exception INVALID_PREFACE = new Http2Exception(PROTOCOL_ERROR, "Invalid connection preface");
+	public static final Http2Exception UNEXPECTED_FRAME = new Http2Exception(PROTOCOL_ERROR, "Unexpected frame");
+	public static final Http2Exception INVALID_FRAME_SIZE = new Http2Exception(FRAME_SIZE_ERROR, "Invalid frame size");
+	public static final Http2Exception INVALID_PADDING = new Http2Exception(PROTOCOL_ERROR, "Padding exceeds frame payload");
+	public static final Http2Exception INVALID_SETTING = new Http2Exception(PROTOCOL_ERROR, "Invalid setting value");
+	public static final Http2Exception INVALID_WINDOW_UPDATE = new Http2Exception(PROTOCOL_ERROR, "Invalid window size increment");
+	public static final Http2Exception WINDOW_OVERFLOW = new Http2Exception(FLOW_CONTROL_ERROR, "Flow control window overflow");
+	public static final Http2Exception WINDOW_EXCEEDED = new Http2Exception(FLOW_CONTROL_ERROR, "Flow control window exceeded");
+	public static final Http2Exception HEADER_LIST_TOO_LARGE = new Http2Exception(PROTOCOL_ERROR, "Header list exceeds max header list size");
+	public static final Http2Exception MALFORMED_HEADERS = new Http2Exception(PROTOCOL_ERROR, "Malformed header list");
+	public static final Http2Exception CONNECTION_CLOSED = new Http2Exception(CANCEL, "Connection closed");
+
+	private static final HttpHeader KEEP_ALIVE = HttpHeaders.of("Keep-Alive");
+	private static final HttpHeader PROXY_CONNECTION = HttpHeaders.of("Proxy-Connection");
+	private static final byte[] CONTENT_LENGTH_NAME = encodeAscii("content-length");
+	private static final byte[] CONTENT_ENCODING_NAME = encodeAscii("content-encoding");
+	private static final byte[] CONTENT_ENCODING_GZIP = encodeAscii("gzip");
+	private static final byte[][] SENSITIVE_NAMES = {encodeAscii("authorization"), encodeAscii("proxy-authorization"),
+			encodeAscii("cookie"), encodeAscii("set-cookie")};
+
+	protected final Eventloop eventloop;
+	protected final AsyncTcpSocket socket;
+	protected final ByteBufQueue readQueue = new ByteBufQueue();
+
+	final Map<Integer, Http2Stream> streams = new HashMap<>();
+
+	private final Hpack.Decoder hpackDecoder = new Hpack.Decoder(Hpack.DEFAULT_HEADER_TABLE_SIZE);
+	private final Hpack.Encoder hpackEncoder = new Hpack.Encoder();
+
+	// settings of the peer
+	int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+	int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	int peerMaxConcurrentStreams = Integer.MAX_VALUE;
+
+	final int initialWindowSize = INITIAL_WINDOW_SIZE.toInt();
+	private final int connectionWindowSize = max(CONNECTION_WINDOW_SIZE.toInt(), DEFAULT_WINDOW_SIZE);
+	private final int maxHeaderListSize = MAX_HEADER_LIST_SIZE.toInt();
+
+	private int sendWindow = DEFAULT_WINDOW_SIZE;
+	private int receiveWindow = DEFAULT_WINDOW_SIZE;
+	private int unacknowledged;
+
+	// header block, which is continued with CONTINUATION frames
+	@Nullable
+	private ByteBufQueue headerBlock;
+	private int headerBlockStreamId;
+	private boolean headerBlockEndStream;
+
+	boolean prefaceExpected;
+	int lastPeerStreamId;
+	boolean goAwaySent;
+	boolean goAwayReceived;
+	private boolean closed;
+
+	long idleTimestamp;
+
+	Http2Connection(Eventloop eventloop, AsyncTcpSocket socket) {
+		this.eventloop = eventloop;
+		this.socket = socket;
+		this.idleTimestamp = eventloop.currentTimeMillis();
+	}
+
+	// region hooks of server and client
+	abstract void writeSettings(ByteBuf payload);
+
+	abstract boolean isIdleStream(int streamId);
+
+	abstract void onHeaders(int streamId, List<byte[]> fields, boolean endStream) throws ParseException;
+
+	abstract void onBodyReceived(Http2Stream stream, ByteBuf body);
+
+	abstract void onStreamClosed(Http2Stream stream);
+
+	void onGoAway(int lastStreamId) {
+	}
+
+	void onSettings() {
+	}
+
+	abstract void onClosed(@Nullable Throwable e);
+	// endregion
+
+	final boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Sends the settings of this endpoint and enlarges the receive window of the connection,
+	 * then starts reading frames
+	 */
+	final void start() {
+		ByteBuf payload = ByteBufPool.allocate(6 * 8);
+		writeSettings(payload);
+		writeFrame(SETTINGS, (byte) 0, 0, payload);
+		if (connectionWindowSize > DEFAULT_WINDOW_SIZE) {
+			writeWindowUpdate(0, connectionWindowSize - DEFAULT_WINDOW_SIZE);
+			receiveWindow = connectionWindowSize;
+		}
+		readFrames();
+	}
+
+	static void putSetting(ByteBuf buf, int id, int value) {
+		buf.writeShort((short) id);
+		buf.writeInt(value);
+	}
+
+	final void writeCommonSettings(ByteBuf payload) {
+		putSetting(payload, SETTINGS_INITIAL_WINDOW_SIZE, initialWindowSize);
+		putSetting(payload, SETTINGS_MAX_HEADER_LIST_SIZE, maxHeaderListSize);
+	}
+
+	final Http2Stream openStream(int streamId) {
+		Http2Stream stream = new Http2Stream(this, streamId, peerInitialWindowSize, initialWindowSize);
+		streams.put(streamId, stream);
+		return stream;
+	}
+
+	// region reading
+	private void readFrames() {
+		while (!closed) {
+			if (prefaceExpected) {
+				if (!readQueue.hasRemainingBytes(PREFACE.length)) break;
+				for (int i = 0; i < PREFACE.length; i++) {
+					if (readQueue.peekByte(i) != PREFACE[i]) {
+						closeWithError(INVALID_PREFACE);
+						return;
+					}
+				}
+				readQueue.skip(PREFACE.length);
+				prefaceExpected = false;
+			}
+			if (!readQueue.hasRemainingBytes(FRAME_HEADER_SIZE)) break;
+			int length = (readQueue.peekByte(0) & 0xFF) << 16 | (readQueue.peekByte(1) & 0xFF) << 8 | (readQueue.peekByte(2) & 0xFF);
+			if (length > DEFAULT_MAX_FRAME_SIZE) {
+				closeWithError(INVALID_FRAME_SIZE);
+				return;
+			}
+			if (!readQueue.hasRemainingBytes(FRAME_HEADER_SIZE + length)) break;
+			readQueue.skip(3);
+			byte type = readQueue.getByte();
+			byte flags = readQueue.getByte();
+			int streamId = (readQueue.getByte() & 0x7F) << 24 | (readQueue.getByte() & 0xFF) << 16 |
+					(readQueue.getByte() & 0xFF) << 8 | (readQueue.getByte() & 0xFF);
+			ByteBuf payload = readQueue.takeExactSize(length);
+			try {
+				onFrame(type, flags, streamId, payload);
+			} catch (ParseException e) {
+				closeWithError(e);
+				return;
+			}
+		}
+		if (closed) return;
+		socket.read()
+				.whenComplete((buf, e) -> {
+					if (closed) {
+						if (buf != null) buf.recycle();
+						return;
+					}
+					if (e == null) {
+						if (buf != null) {
+							readQueue.add(buf);
+							readFrames();
+						} else {
+							close();
+						}
+					} else {
+						closeWithError(e);
+					}
+				});
+	}
+
+	private void onFrame(byte type, byte flags, int streamId, ByteBuf payload) throws ParseException {
+		if (headerBlock != null && type != CONTINUATION) {
+			payload.recycle();
+			throw UNEXPECTED_FRAME;
+		}
+		if (type == DATA) {
+			onData(flags, streamId, payload);
+			return;
+		}
+		if (type == HEADERS || type == CONTINUATION) {
+			onHeaderBlockFragment(type, flags, streamId, payload);
+			return;
+		}
+		try {
+			switch (type) {
+				case PRIORITY:
+					if (streamId == 0) throw UNEXPECTED_FRAME;
+					if (payload.readRemaining() != 5) throw INVALID_FRAME_SIZE;
+					break;
+				case RST_STREAM:
+					if (streamId == 0) throw UNEXPECTED_FRAME;
+					if (payload.readRemaining() != 4) throw INVALID_FRAME_SIZE;
+					onRstStream(streamId, payload.readInt());
+					break;
+				case SETTINGS:
+					if (streamId != 0) throw UNEXPECTED_FRAME;
+					if ((flags & FLAG_ACK) != 0) {
+						if (payload.canRead()) throw INVALID_FRAME_SIZE;
+						break;
+					}
+					if (payload.readRemaining() % 6 != 0) throw INVALID_FRAME_SIZE;
+					applySettings(payload);
+					writeFrame(SETTINGS, FLAG_ACK, 0, ByteBuf.empty());
+					onSettings();
+					break;
+				case PUSH_PROMISE:
+					// push is never enabled by this implementation
+					throw UNEXPECTED_FRAME;
+				case PING:
+					if (streamId != 0) throw UNEXPECTED_FRAME;
+					if (payload.readRemaining() != 8) throw INVALID_FRAME_SIZE;
+					if ((flags & FLAG_ACK) == 0) {
+						ByteBuf pong = ByteBufPool.allocate(8);
+						pong.put(payload);
+						writeFrame(PING, FLAG_ACK, 0, pong);
+					}
+					break;
+				case GOAWAY:
+					if (streamId != 0) throw UNEXPECTED_FRAME;
+					if (payload.readRemaining() < 8) throw INVALID_FRAME_SIZE;
+					goAwayReceived = true;
+					onGoAway(payload.readInt() & 0x7FFFFFFF);
+					closeIfDone();
+					break;
+				case WINDOW_UPDATE:
+					if (payload.readRemaining() != 4) throw INVALID_FRAME_SIZE;
+					onWindowUpdate(streamId, payload.readInt() & 0x7FFFFFFF);
+					break;
+				default:
+					// unknown frame types are ignored
+			}
+		} finally {
+			payload.recycle();
+		}
+	}
+
+	private void onData(byte flags, int streamId, ByteBuf payload) throws ParseException {
+		int length = payload.readRemaining();
+		if (streamId == 0) {
+			payload.recycle();
+			throw UNEXPECTED_FRAME;
+		}
+		if (length > receiveWindow) {
+			payload.recycle();
+			throw WINDOW_EXCEEDED;
+		}
+		receiveWindow -= length;
+		int padding = 0;
+		if ((flags & FLAG_PADDED) != 0) {
+			padding = length != 0 ? 1 + (payload.readByte() & 0xFF) : 1;
+			if (padding > length) {
+				payload.recycle();
+				throw INVALID_PADDING;
+			}
+			payload.moveTail(-(padding - 1));
+		}
+		Http2Stream stream = streams.get(streamId);
+		if (stream == null || stream.remoteEnded) {
+			payload.recycle();
+			onConsumed(null, length);
+			if (stream == null && isIdleStream(streamId)) throw UNEXPECTED_FRAME;
+			return;
+		}
+		if (length > stream.receiveWindow) {
+			payload.recycle();
+			onConsumed(null, length);
+			resetStream(stream, FLOW_CONTROL_ERROR);
+			return;
+		}
+		stream.receiveWindow -= length;
+		onConsumed(stream, padding);
+		stream.onData(payload, (flags & FLAG_END_STREAM) != 0);
+		onStreamUpdated(stream);
+	}
+
+	private void onHeaderBlockFragment(byte type, byte flags, int streamId, ByteBuf payload) throws ParseException {
+		if (type == HEADERS) {
+			if (streamId == 0) {
+				payload.recycle();
+				throw UNEXPECTED_FRAME;
+			}
+			int padding = 0;
+			if ((flags & FLAG_PADDED) != 0) {
+				padding = payload.canRead() ? payload.readByte() & 0xFF : Integer.MAX_VALUE;
+			}
+			if ((flags & FLAG_PRIORITY) != 0) {
+				if (payload.readRemaining() < 5) {
+					payload.recycle();
+					throw INVALID_FRAME_SIZE;
+				}
+				payload.moveHead(5);
+			}
+			if (padding > payload.readRemaining()) {
+				payload.recycle();
+				throw INVALID_PADDING;
+			}
+			payload.moveTail(-padding);
+			headerBlockStreamId = streamId;
+			headerBlockEndStream = (flags & FLAG_END_STREAM) != 0;
+			if ((flags & FLAG_END_HEADERS) != 0) {
+				onHeaderBlock(payload);
+				return;
+			}
+			headerBlock = new ByteBufQueue();
+			headerBlock.add(payload);
+			return;
+		}
+		if (headerBlock == null || streamId != headerBlockStreamId) {
+			payload.recycle();
+			throw UNEXPECTED_FRAME;
+		}
+		headerBlock.add(payload);
+		if (headerBlock.hasRemainingBytes(maxHeaderListSize + 1)) {
+			throw HEADER_LIST_TOO_LARGE;
+		}
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			ByteBuf block = headerBlock.takeRemaining();
+			headerBlock = null;
+			onHeaderBlock(block);
+		}
+	}
+
+	private void onHeaderBlock(ByteBuf block) throws ParseException {
+		List<byte[]> fields = new ArrayList<>();
+		int[] size = {0};
+		try {
+			hpackDecoder.decode(block, (name, value) -> {
+				fields.add(name);
+				fields.add(value);
+				size[0] += name.length + value.length + 32;
+			});
+		} finally {
+			block.recycle();
+		}
+		if (size[0] > maxHeaderListSize) throw HEADER_LIST_TOO_LARGE;
+		onHeaders(headerBlockStreamId, fields, headerBlockEndStream);
+	}
+
+	private void onRstStream(int streamId, int errorCode) throws ParseException {
+		Http2Stream stream = streams.remove(streamId);
+		if (stream == null) {
+			if (isIdleStream(streamId)) throw UNEXPECTED_FRAME;
+			return;
+		}
+		stream.onReset(new Http2Exception(errorCode, "Stream " + streamId + " is reset by peer with error code " + errorCode));
+		onStreamClosed(stream);
+		closeIfDone();
+	}
+
+	private void applySettings(ByteBuf payload) throws ParseException {
+		while (payload.canRead()) {
+			int id = payload.readShort() & 0xFFFF;
+			int value = payload.readInt();
+			switch (id) {
+				case SETTINGS_HEADER_TABLE_SIZE:
+					hpackEncoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+					break;
+				case SETTINGS_ENABLE_PUSH:
+					if (value != 0 && value != 1) throw INVALID_SETTING;
+					break;
+				case SETTINGS_MAX_CONCURRENT_STREAMS:
+					peerMaxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+					break;
+				case SETTINGS_INITIAL_WINDOW_SIZE:
+					if (value < 0) throw WINDOW_OVERFLOW;
+					int delta = value - peerInitialWindowSize;
+					peerInitialWindowSize = value;
+					for (Http2Stream stream : streams.values()) {
+						if ((long) stream.sendWindow + delta > Integer.MAX_VALUE) throw WINDOW_OVERFLOW;
+						stream.sendWindow += delta;
+					}
+					resumeBlockedStreams();
+					break;
+				case SETTINGS_MAX_FRAME_SIZE:
+					if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_FRAME_SIZE) throw INVALID_SETTING;
+					peerMaxFrameSize = value;
+					break;
+				default:
+					// unknown settings are ignored
+			}
+		}
+	}
+
+	/**
+	 * Applies settings of the client, which are sent in HTTP2-Settings header of HTTP/1.1 upgrade request
+	 */
+	final void applyUpgradeSettings(ByteBuf payload) throws ParseException {
+		try {
+			if (payload.readRemaining() % 6 != 0) throw INVALID_FRAME_SIZE;
+			applySettings(payload);
+		} finally {
+			payload.recycle();
+		}
+	}
+
+	private void onWindowUpdate(int streamId, int increment) throws ParseException {
+		if (streamId == 0) {
+			if (increment == 0) throw INVALID_WINDOW_UPDATE;
+			if ((long) sendWindow + increment > Integer.MAX_VALUE) throw WINDOW_OVERFLOW;
+			sendWindow += increment;
+			resumeBlockedStreams();
+			return;
+		}
+		Http2Stream stream = streams.get(streamId);
+		if (stream == null) {
+			if (isIdleStream(streamId)) throw UNEXPECTED_FRAME;
+			return;
+		}
+		if (increment == 0) {
+			resetStream(stream, PROTOCOL_ERROR);
+			return;
+		}
+		if ((long) stream.sendWindow + increment > Integer.MAX_VALUE) {
+			resetStream(stream, FLOW_CONTROL_ERROR);
+			return;
+		}
+		stream.sendWindow += increment;
+		resumeBlockedStreams();
+	}
+
+	private void resumeBlockedStreams() {
+		if (sendWindow <= 0) return;
+		List<SettablePromise<Void>> waiters = null;
+		for (Http2Stream stream : streams.values()) {
+			if (stream.sendWindowWaiter != null && stream.sendWindow > 0) {
+				if (waiters == null) waiters = new ArrayList<>();
+				waiters.add(stream.sendWindowWaiter);
+				stream.sendWindowWaiter = null;
+			}
+		}
+		if (waiters != null) {
+			for (SettablePromise<Void> waiter : waiters) {
+				waiter.set(null);
+			}
+		}
+	}
+
+	/**
+	 * Credits consumed bytes back to the peer, once half of a window is consumed
+	 */
+	final void onConsumed(@Nullable Http2Stream stream, int size) {
+		if (closed || size == 0) return;
+		unacknowledged += size;
+		if (unacknowledged >= connectionWindowSize / 2) {
+			writeWindowUpdate(0, unacknowledged);
+			receiveWindow += unacknowledged;
+			unacknowledged = 0;
+		}
+		if (stream != null && !stream.remoteEnded && !stream.isReset()) {
+			stream.unacknowledged += size;
+			if (stream.unacknowledged >= initialWindowSize / 2) {
+				writeWindowUpdate(stream.id, stream.unacknowledged);
+				stream.receiveWindow += stream.unacknowledged;
+				stream.unacknowledged = 0;
+			}
+		}
+	}
+	// endregion
+
+	// region messages
+	/**
+	 * Converts headers of a message into HTTP/2 header fields, leaving out connection-specific headers
+	 */
+	static void addHeaderFields(List<byte[]> fields, HttpMessage message) {
+		for (Map.Entry<HttpHeader, HttpHeaderValue> entry : message.getHeaders()) {
+			HttpHeader header = entry.getKey();
+			if (header == CONNECTION || header == TRANSFER_ENCODING || header == UPGRADE || header == HOST ||
+					header.equals(KEEP_ALIVE) || header.equals(PROXY_CONNECTION) || header.equals(HTTP2_SETTINGS)) {
+				continue;
+			}
+			byte[] name = new byte[header.size()];
+			ByteBuf nameBuf = ByteBuf.wrapForWriting(name);
+			header.writeTo(nameBuf);
+			for (int i = 0; i < name.length; i++) {
+				if (name[i] >= 'A' && name[i] <= 'Z') {
+					name[i] += 'a' - 'A';
+				}
+			}
+			HttpHeaderValue value = entry.getValue();
+			ByteBuf valueBuf = ByteBuf.wrapForWriting(new byte[value.estimateSize()]);
+			value.writeTo(valueBuf);
+			fields.add(name);
+			fields.add(valueBuf.getArray());
+		}
+	}
+
+	/**
+	 * Converts HTTP/2 header fields into headers of a message, pseudo-header fields are expected to be skipped
+	 */
+	static void addHeaders(HttpMessage message, List<byte[]> fields, int from) throws ParseException {
+		for (int i = from; i < fields.size(); i += 2) {
+			byte[] name = fields.get(i);
+			if (name.length == 0 || name[0] == ':') throw MALFORMED_HEADERS;
+			if (message.headers.size() >= AbstractHttpConnection.MAX_HEADERS) throw AbstractHttpConnection.TOO_MANY_HEADERS;
+			int hashCode = 1;
+			for (byte b : name) {
+				if (b >= 'A' && b <= 'Z') throw MALFORMED_HEADERS;
+				hashCode = 31 * hashCode + b;
+			}
+			HttpHeader header = HttpHeaders.of(name, 0, name.length, hashCode);
+			byte[] value = fields.get(i + 1);
+			message.addHeader(header, value, 0, value.length);
+		}
+	}
+
+	/**
+	 * Returns content length of a received message, if its body may be collected into a single buf
+	 * within the flow control window of a stream, or -1 otherwise
+	 */
+	final int getBufferedBodySize(List<byte[]> fields, int maxBodySize) {
+		int contentLength = -1;
+		for (int i = 0; i < fields.size(); i += 2) {
+			byte[] name = fields.get(i);
+			byte[] value = fields.get(i + 1);
+			if (equalsLowerCaseAscii(CONTENT_ENCODING_NAME, name, 0, name.length) &&
+					equalsLowerCaseAscii(CONTENT_ENCODING_GZIP, value, 0, value.length)) {
+				return -1;
+			}
+			if (equalsLowerCaseAscii(CONTENT_LENGTH_NAME, name, 0, name.length)) {
+				try {
+					contentLength = HttpUtils.trimAndDecodePositiveInt(value, 0, value.length);
+				} catch (ParseException e) {
+					return -1;
+				}
+			}
+		}
+		return contentLength <= initialWindowSize && (maxBodySize == 0 || contentLength <= maxBodySize) ? contentLength : -1;
+	}
+
+	/**
+	 * Returns a supplier of the body of a stream, which decompresses it if it is gzipped
+	 */
+	static ChannelSupplier<ByteBuf> getBodySupplier(Http2Stream stream, HttpMessage message) {
+		ChannelSupplier<ByteBuf> supplier = stream.getBodySupplier();
+		ByteBuf contentEncoding = message.getHeaderBuf(CONTENT_ENCODING);
+		if (contentEncoding != null && equalsLowerCaseAscii(CONTENT_ENCODING_GZIP, contentEncoding.array(), contentEncoding.head(), contentEncoding.readRemaining())) {
+			BufsConsumerGzipInflater inflater = BufsConsumerGzipInflater.create();
+			supplier.bindTo(inflater.getInput());
+			supplier = inflater.getOutput().getSupplier();
+		}
+		return supplier;
+	}
+
+	/**
+	 * Sends header fields and body of a message over a stream, taking the body away from the message,
+	 * a body of HEAD response is not sent, though its length is preserved
+	 */
+	final void writeMessage(Http2Stream stream, List<byte[]> fields, HttpMessage message, boolean headersOnly) {
+		ByteBuf body = null;
+		ChannelSupplier<ByteBuf> bodyStream = null;
+		if (message.fileRegion != null) {
+			FileRegion fileRegion = message.fileRegion;
+			message.fileRegion = null;
+			fields.add(CONTENT_LENGTH_NAME);
+			fields.add(encodeAscii(Long.toString(fileRegion.getCount())));
+			if (headersOnly) {
+				fileRegion.close();
+			} else {
+				bodyStream = fileRegion.toChannelSupplier();
+			}
+		} else if (message.body != null) {
+			body = message.body;
+			message.body = null;
+			if ((message.flags & HttpMessage.USE_GZIP) != 0) {
+				body = GzipProcessorUtils.toGzip(body);
+				fields.add(CONTENT_ENCODING_NAME);
+				fields.add(CONTENT_ENCODING_GZIP);
+			}
+			fields.add(CONTENT_LENGTH_NAME);
+			fields.add(encodeAscii(Integer.toString(body.readRemaining())));
+		} else if (message.bodyStream != null) {
+			bodyStream = message.bodyStream;
+			message.bodyStream = null;
+			if (headersOnly) {
+				bodyStream.cancel();
+				bodyStream = null;
+			} else if ((message.flags & HttpMessage.USE_GZIP) != 0) {
+				fields.add(CONTENT_ENCODING_NAME);
+				fields.add(CONTENT_ENCODING_GZIP);
+				BufsConsumerGzipDeflater deflater = BufsConsumerGzipDeflater.create();
+				bodyStream.bindTo(deflater.getInput());
+				bodyStream = deflater.getOutput().getSupplier();
+			}
+		}
+		if (body != null && (headersOnly || !body.canRead())) {
+			body.recycle();
+			body = null;
+		}
+
+		boolean endStream = body == null && bodyStream == null;
+		writeHeaders(stream.id, fields, endStream);
+		if (endStream) {
+			stream.localEnded = true;
+			onStreamUpdated(stream);
+		} else if (body != null) {
+			writeData(stream, body, true);
+		} else {
+			bodyStream.streamTo(new AbstractChannelConsumer<ByteBuf>() {
+				@Override
+				protected Promise<Void> doAccept(@Nullable ByteBuf buf) {
+					return buf != null ? writeData(stream, buf, false) : writeData(stream, ByteBuf.empty(), true);
+				}
+			}).whenException(e -> {
+				if (!stream.localEnded) {
+					resetStream(stream, INTERNAL_ERROR);
+				}
+			});
+		}
+	}
+	// endregion
+
+	// region writing
+	private static void writeFrameHeader(ByteBuf buf, int length, byte type, byte flags, int streamId) {
+		buf.writeByte((byte) (length >>> 16));
+		buf.writeByte((byte) (length >>> 8));
+		buf.writeByte((byte) length);
+		buf.writeByte(type);
+		buf.writeByte(flags);
+		buf.writeInt(streamId);
+	}
+
+	private Promise<Void> write(ByteBuf buf) {
+		if (closed) {
+			buf.recycle();
+			return Promise.ofException(CONNECTION_CLOSED);
+		}
+		return socket.write(buf)
+				.whenException(this::closeWithError);
+	}
+
+	final Promise<Void> writeFrame(byte type, byte flags, int streamId, ByteBuf payload) {
+		int length = payload.readRemaining();
+		ByteBuf frame = ByteBufPool.allocate(FRAME_HEADER_SIZE + length);
+		writeFrameHeader(frame, length, type, flags, streamId);
+		frame.put(payload);
+		payload.recycle();
+		return write(frame);
+	}
+
+	final void writeWindowUpdate(int streamId, int increment) {
+		ByteBuf payload = ByteBufPool.allocate(4);
+		payload.writeInt(increment);
+		writeFrame(WINDOW_UPDATE, (byte) 0, streamId, payload);
+	}
+
+	private void writeRstStream(int streamId, int errorCode) {
+		ByteBuf payload = ByteBufPool.allocate(4);
+		payload.writeInt(errorCode);
+		writeFrame(RST_STREAM, (byte) 0, streamId, payload);
+	}
+
+	private Promise<Void> writeGoAway(int errorCode) {
+		ByteBuf payload = ByteBufPool.allocate(8);
+		payload.writeInt(lastPeerStreamId);
+		payload.writeInt(errorCode);
+		return writeFrame(GOAWAY, (byte) 0, 0, payload);
+	}
+
+	final void writeHeaders(int streamId, List<byte[]> fields, boolean endStream) {
+		int estimatedSize = 8;
+		for (int i = 0; i < fields.size(); i += 2) {
+			estimatedSize += Hpack.Encoder.estimateSize(fields.get(i), fields.get(i + 1));
+		}
+		ByteBuf block = ByteBufPool.allocate(estimatedSize);
+		hpackEncoder.beginBlock(block);
+		for (int i = 0; i < fields.size(); i += 2) {
+			byte[] name = fields.get(i);
+			hpackEncoder.encode(block, name, fields.get(i + 1), isSensitive(name));
+		}
+		byte type = HEADERS;
+		do {
+			int size = min(block.readRemaining(), peerMaxFrameSize);
+			ByteBuf fragment = block.slice(size);
+			block.moveHead(size);
+			byte flags = (byte) ((block.canRead() ? 0 : FLAG_END_HEADERS) | (type == HEADERS && endStream ? FLAG_END_STREAM : 0));
+			writeFrame(type, flags, streamId, fragment);
+			type = CONTINUATION;
+		} while (block.canRead());
+		block.recycle();
+	}
+
+	private static boolean isSensitive(byte[] name) {
+		for (byte[] sensitiveName : SENSITIVE_NAMES) {
+			if (equalsLowerCaseAscii(sensitiveName, name, 0, name.length)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sends a buf in DATA frames as the flow control windows allow, the returned promise completes
+	 * once the last frame is written to the socket, which propagates back pressure of the socket to the body
+	 */
+	final Promise<Void> writeData(Http2Stream stream, ByteBuf buf, boolean endStream) {
+		Promise<Void> written = Promise.complete();
+		while (true) {
+			if (stream.isReset() || closed) {
+				buf.recycle();
+				return Promise.ofException(stream.isReset() ? stream.exception : CONNECTION_CLOSED);
+			}
+			int remaining = buf.readRemaining();
+			if (remaining == 0) {
+				if (!endStream) {
+					buf.recycle();
+					return written;
+				}
+				written = writeDataFrame(stream.id, buf, true);
+				stream.localEnded = true;
+				onStreamUpdated(stream);
+				return written;
+			}
+			int size = min(remaining, min(peerMaxFrameSize, min(stream.sendWindow, sendWindow)));
+			if (size <= 0) {
+				SettablePromise<Void> sendWindowWaiter = new SettablePromise<>();
+				stream.sendWindowWaiter = sendWindowWaiter;
+				return sendWindowWaiter
+						.thenEx(($, e) -> {
+							if (e != null) {
+								buf.recycle();
+								return Promise.ofException(e);
+							}
+							return writeData(stream, buf, endStream);
+						});
+			}
+			stream.sendWindow -= size;
+			sendWindow -= size;
+			if (size == remaining) {
+				written = writeDataFrame(stream.id, buf, endStream);
+				if (endStream) {
+					stream.localEnded = true;
+					onStreamUpdated(stream);
+				}
+				return written;
+			}
+			ByteBuf frame = buf.slice(size);
+			buf.moveHead(size);
+			written = writeDataFrame(stream.id, frame, false);
+		}
+	}
+
+	private Promise<Void> writeDataFrame(int streamId, ByteBuf data, boolean endStream) {
+		ByteBuf header = ByteBufPool.allocate(FRAME_HEADER_SIZE);
+		writeFrameHeader(header, data.readRemaining(), DATA, endStream ? FLAG_END_STREAM : 0, streamId);
+		if (!data.canRead()) {
+			data.recycle();
+			return write(header);
+		}
+		write(header);
+		return write(data);
+	}
+	// endregion
+
+	// region streams and connection lifecycle
+	final void onStreamUpdated(Http2Stream stream) {
+		if (stream.localEnded && stream.remoteEnded && streams.remove(stream.id) != null) {
+			onStreamClosed(stream);
+			closeIfDone();
+		}
+	}
+
+	final void resetStream(Http2Stream stream, int errorCode) {
+		if (closed || streams.remove(stream.id) == null) return;
+		writeRstStream(stream.id, errorCode);
+		stream.onReset(new Http2Exception(errorCode, "Stream " + stream.id + " is reset with error code " + errorCode));
+		onStreamClosed(stream);
+		closeIfDone();
+	}
+
+	/**
+	 * Resets a stream, which has not been opened
+	 */
+	final void rejectStream(int streamId, int errorCode) {
+		writeRstStream(streamId, errorCode);
+	}
+
+	private void closeIfDone() {
+		if (streams.isEmpty()) {
+			idleTimestamp = eventloop.currentTimeMillis();
+			if (goAwaySent || goAwayReceived) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting new streams and closes the connection once active streams complete
+	 */
+	final void goAway() {
+		if (closed || goAwaySent) return;
+		goAwaySent = true;
+		writeGoAway(NO_ERROR);
+		closeIfDone();
+	}
+
+	final void close() {
+		doClose(null);
+	}
+
+	final void closeWithError(Throwable e) {
+		if (closed) return;
+		if (e instanceof Http2Exception && !goAwaySent) {
+			// the peer is notified about protocol errors, the socket is closed once the notification is written
+			goAwaySent = true;
+			Promise<Void> written = writeGoAway(((Http2Exception) e).getErrorCode());
+			doClose(e);
+			written.whenComplete(($, e2) -> socket.close());
+			return;
+		}
+		doClose(e);
+		socket.close();
+	}
+
+	private void doClose(@Nullable Throwable e) {
+		if (closed) return;
+		closed = true;
+		Throwable streamException = e != null ? e : CONNECTION_CLOSED;
+		List<Http2Stream> streams = new ArrayList<>(this.streams.values());
+		this.streams.clear();
+		for (Http2Stream stream : streams) {
+			stream.onReset(streamException);
+			onStreamClosed(stream);
+		}
+		if (headerBlock != null) {
+			headerBlock.recycle();
+			headerBlock = null;
+		}
+		if (e == null) {
+			socket.close();
+		}
+		readQueue.recycle();
+		onClosed(e);
+	}
+	// endregion
+
+	@Override
+	public String toString() {
+		return "streams=" + streams.size() +
+				", sendWindow=" + sendWindow +
+				", receiveWindow=" + receiveWindow +
+				", goAwaySent=" + goAwaySent +
+				", goAwayReceived=" + goAwayReceived +
+				", closed=" + closed;
+	}
+}
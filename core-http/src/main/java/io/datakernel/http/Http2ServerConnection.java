@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.eventloop.AsyncTcpSocket;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.exception.ParseException;
+import io.datakernel.exception.UncheckedException;
+import io.datakernel.http.AsyncHttpServer.Inspector;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.datakernel.bytebuf.ByteBufStrings.decodeAscii;
+import static io.datakernel.bytebuf.ByteBufStrings.encodeAscii;
+import static io.datakernel.http.AbstractHttpConnection.BUF_RECYCLER;
+import static io.datakernel.http.Http2Exception.PROTOCOL_ERROR;
+import static io.datakernel.http.Http2Exception.REFUSED_STREAM;
+import static io.datakernel.http.HttpHeaders.HOST;
+import static io.datakernel.http.HttpMessage.MUST_LOAD_BODY;
+import static io.datakernel.http.HttpMethod.HEAD;
+
+/**
+ * Server side of HTTP/2 connection, which serves each stream of requests concurrently with the servlet of the server.
+ * <p>
+ * A connection is either started with the connection preface of a client (prior knowledge),
+ * or it replaces {@link HttpServerConnection} after HTTP/1.1 upgrade request,
+ * which then becomes the first stream of the connection.
+ */
+final class Http2ServerConnection extends Http2Connection {
+	static final byte[] METHOD = encodeAscii(":method");
+	static final byte[] SCHEME = encodeAscii(":scheme");
+	static final byte[] AUTHORITY = encodeAscii(":authority");
+	static final byte[] PATH = encodeAscii(":path");
+	static final byte[] STATUS = encodeAscii(":status");
+
+	private final InetAddress remoteAddress;
+	private final AsyncHttpServer server;
+	@Nullable
+	private final Inspector inspector;
+	private final AsyncServlet servlet;
+	private final int maxBodySize;
+
+	Http2ServerConnection(Eventloop eventloop, InetAddress remoteAddress, AsyncTcpSocket socket,
+			AsyncHttpServer server, AsyncServlet servlet) {
+		super(eventloop, socket);
+		this.remoteAddress = remoteAddress;
+		this.server = server;
+		this.inspector = server.inspector;
+		this.servlet = servlet;
+		this.maxBodySize = server.maxBodySize;
+	}
+
+	/**
+	 * Starts the connection with data, which has already been read from the socket
+	 *
+	 * @param received         data read from the socket, starting with the connection preface
+	 * @param upgradeRequest   HTTP/1.1 request, which has upgraded the connection, if any
+	 * @param upgradeSettings  payload of HTTP2-Settings header of the upgrade request
+	 */
+	void serve(ByteBufQueue received, @Nullable HttpRequest upgradeRequest, @Nullable ByteBuf upgradeSettings) {
+		received.drainTo(readQueue);
+		prefaceExpected = true;
+		if (upgradeSettings != null) {
+			try {
+				applyUpgradeSettings(upgradeSettings);
+			} catch (ParseException e) {
+				if (upgradeRequest != null) {
+					upgradeRequest.recycle();
+				}
+				closeWithError(e);
+				return;
+			}
+		}
+		Http2Stream upgradeStream = null;
+		if (upgradeRequest != null) {
+			// the request of upgrade is considered to be sent by the client with END_STREAM flag
+			lastPeerStreamId = 1;
+			upgradeStream = openStream(1);
+			upgradeStream.remoteEnded = true;
+			upgradeStream.request = upgradeRequest;
+		}
+		start();
+		if (upgradeStream != null && !upgradeStream.isReset()) {
+			serve(upgradeStream);
+		}
+	}
+
+	@Override
+	void writeSettings(ByteBuf payload) {
+		putSetting(payload, SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+		writeCommonSettings(payload);
+	}
+
+	@Override
+	boolean isIdleStream(int streamId) {
+		return (streamId & 1) == 0 || streamId > lastPeerStreamId;
+	}
+
+	@Override
+	void onHeaders(int streamId, List<byte[]> fields, boolean endStream) throws ParseException {
+		Http2Stream stream = streams.get(streamId);
+		if (stream != null) {
+			// trailers, which are ignored
+			if (!endStream || stream.remoteEnded) {
+				resetStream(stream, PROTOCOL_ERROR);
+				return;
+			}
+			stream.onData(ByteBuf.empty(), true);
+			onStreamUpdated(stream);
+			return;
+		}
+		if ((streamId & 1) == 0 || streamId <= lastPeerStreamId) throw UNEXPECTED_FRAME;
+		lastPeerStreamId = streamId;
+		if (goAwaySent || streams.size() >= MAX_CONCURRENT_STREAMS) {
+			rejectStream(streamId, REFUSED_STREAM);
+			return;
+		}
+
+		HttpRequest request;
+		try {
+			request = parseRequest(fields);
+		} catch (ParseException e) {
+			rejectStream(streamId, PROTOCOL_ERROR);
+			return;
+		}
+		request.maxBodySize = maxBodySize;
+		request.setRemoteAddress(remoteAddress);
+		request.flags |= MUST_LOAD_BODY;
+
+		stream = openStream(streamId);
+		stream.request = request;
+		if (endStream) {
+			stream.remoteEnded = true;
+			request.body = ByteBuf.empty();
+			serve(stream);
+			return;
+		}
+		int contentLength = getBufferedBodySize(fields, maxBodySize);
+		if (contentLength != -1) {
+			stream.bufferBody(contentLength);
+			return;
+		}
+		request.bodyStream = getBodySupplier(stream, request);
+		serve(stream);
+	}
+
+	private static HttpRequest parseRequest(List<byte[]> fields) throws ParseException {
+		HttpMethod method = null;
+		String path = null;
+		String authority = null;
+		boolean scheme = false;
+		int i = 0;
+		for (; i < fields.size(); i += 2) {
+			byte[] name = fields.get(i);
+			if (name.length == 0 || name[0] != ':') break;
+			String value = decodeAscii(fields.get(i + 1));
+			if (Arrays.equals(name, METHOD) && method == null) {
+				try {
+					method = HttpMethod.valueOf(value);
+				} catch (IllegalArgumentException e) {
+					throw MALFORMED_HEADERS;
+				}
+			} else if (Arrays.equals(name, PATH) && path == null && !value.isEmpty()) {
+				path = value;
+			} else if (Arrays.equals(name, AUTHORITY) && authority == null) {
+				authority = value;
+			} else if (Arrays.equals(name, SCHEME) && !scheme) {
+				scheme = true;
+			} else {
+				throw MALFORMED_HEADERS;
+			}
+		}
+		if (method == null || path == null || !scheme) throw MALFORMED_HEADERS;
+		HttpRequest request = new HttpRequest(method, UrlParser.parse(path));
+		try {
+			addHeaders(request, fields, i);
+			if (authority != null && request.getHeader(HOST) == null) {
+				request.addHeader(HOST, authority);
+			}
+		} catch (ParseException e) {
+			request.recycle();
+			throw e;
+		}
+		return request;
+	}
+
+	@Override
+	void onBodyReceived(Http2Stream stream, ByteBuf body) {
+		assert stream.request != null;
+		stream.request.body = body;
+		serve(stream);
+	}
+
+	private void serve(Http2Stream stream) {
+		HttpRequest request = stream.request;
+		assert request != null;
+		stream.dispatched = true;
+		if (inspector != null) {
+			inspector.onHttpRequest(request);
+		}
+		Promise<HttpResponse> servletResult;
+		try {
+			servletResult = servlet.serve(request);
+		} catch (UncheckedException u) {
+			servletResult = Promise.ofException(u.getCause());
+		}
+		servletResult.whenComplete((response, e) -> {
+			if (isClosed() || stream.isReset()) {
+				request.recycle();
+				if (response != null) {
+					response.recycle();
+				}
+				return;
+			}
+			stream.served = true;
+			if (request.bodyStream != null) {
+				request.bodyStream.streamTo(BUF_RECYCLER);
+				request.bodyStream = null;
+			}
+			if (e == null) {
+				if (inspector != null) {
+					inspector.onHttpResponse(request, response);
+				}
+				writeResponse(stream, request, response);
+			} else {
+				if (inspector != null) {
+					inspector.onServletException(request, e);
+				}
+				writeResponse(stream, request, server.formatHttpError(e));
+			}
+		});
+	}
+
+	private void writeResponse(Http2Stream stream, HttpRequest request, HttpResponse response) {
+		List<byte[]> fields = new ArrayList<>();
+		fields.add(STATUS);
+		fields.add(encodeAscii(Integer.toString(response.getCode())));
+		addHeaderFields(fields, response);
+		writeMessage(stream, fields, response, request.getMethod() == HEAD);
+		response.recycle();
+	}
+
+	@Override
+	void onStreamClosed(Http2Stream stream) {
+		// requests which are still being served are recycled once the servlet completes
+		if (stream.request != null && (!stream.dispatched || stream.served)) {
+			stream.request.recycle();
+		}
+		if (streams.isEmpty() && server.keepAliveTimeoutMillis == 0) {
+			goAway();
+		}
+	}
+
+	@Override
+	void onClosed(@Nullable Throwable e) {
+		if (e != null && inspector != null) {
+			inspector.onHttpError(remoteAddress, e);
+		}
+		server.onHttp2ConnectionClosed(this);
+	}
+
+	@Override
+	public String toString() {
+		return "Http2ServerConnection{" +
+				"remoteAddress=" + remoteAddress +
+				", " + super.toString() +
+				'}';
+	}
+}
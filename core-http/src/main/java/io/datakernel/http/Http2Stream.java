@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.SettablePromise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.csp.AbstractChannelSupplier;
+import io.datakernel.csp.ChannelSupplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * A stream of {@link Http2Connection}, which carries a single exchange of a request and a response.
+ * <p>
+ * Received DATA frames are either collected into a single body, or queued until they are taken
+ * by the body supplier of the stream, and only then they are credited back to the peer,
+ * so the number of queued bytes is bounded by the flow control window of the stream.
+ */
+final class Http2Stream {
+	final Http2Connection connection;
+	final int id;
+
+	int sendWindow;
+	int receiveWindow;
+	int unacknowledged;
+
+	boolean localEnded;
+	boolean remoteEnded;
+	@Nullable
+	Throwable exception;
+
+	@Nullable
+	SettablePromise<Void> sendWindowWaiter;
+
+	private final ArrayDeque<ByteBuf> received = new ArrayDeque<>();
+	@Nullable
+	private SettablePromise<ByteBuf> receiveWaiter;
+	@Nullable
+	private ByteBufQueue bufferedBody;
+	private int bufferedBodySize;
+
+	// request of a server stream
+	@Nullable
+	HttpRequest request;
+	boolean dispatched;
+	boolean served;
+
+	// response of a client stream
+	@Nullable
+	HttpResponse response;
+	boolean responseStreamed;
+	@Nullable
+	SettablePromise<HttpResponse> responsePromise;
+
+	Http2Stream(Http2Connection connection, int id, int sendWindow, int receiveWindow) {
+		this.connection = connection;
+		this.id = id;
+		this.sendWindow = sendWindow;
+		this.receiveWindow = receiveWindow;
+	}
+
+	boolean isReset() {
+		return exception != null;
+	}
+
+	/**
+	 * Makes the stream collect received DATA frames into a single body of given size,
+	 * which is passed to the connection once the stream is ended by the peer
+	 */
+	void bufferBody(int contentLength) {
+		bufferedBody = new ByteBufQueue();
+		bufferedBodySize = contentLength;
+	}
+
+	/**
+	 * Returns the supplier of received DATA frames, which may be taken only once
+	 */
+	ChannelSupplier<ByteBuf> getBodySupplier() {
+		return new AbstractChannelSupplier<ByteBuf>() {
+			@Override
+			protected Promise<ByteBuf> doGet() {
+				ByteBuf buf = received.poll();
+				if (buf != null) {
+					connection.onConsumed(Http2Stream.this, buf.readRemaining());
+					return Promise.of(buf);
+				}
+				if (remoteEnded) {
+					return Promise.of(null);
+				}
+				if (exception != null) {
+					return Promise.ofException(exception);
+				}
+				receiveWaiter = new SettablePromise<>();
+				return receiveWaiter;
+			}
+
+			@Override
+			protected void onClosed(@NotNull Throwable e) {
+				connection.onConsumed(null, recycleReceived());
+				if (receiveWaiter != null) {
+					SettablePromise<ByteBuf> receiveWaiter = Http2Stream.this.receiveWaiter;
+					Http2Stream.this.receiveWaiter = null;
+					receiveWaiter.setException(e);
+				}
+				if (!remoteEnded) {
+					connection.resetStream(Http2Stream.this, Http2Exception.CANCEL);
+				}
+			}
+		};
+	}
+
+	void onData(ByteBuf buf, boolean endStream) {
+		if (endStream) {
+			remoteEnded = true;
+		}
+		if (bufferedBody != null) {
+			int size = buf.readRemaining();
+			bufferedBody.add(buf);
+			connection.onConsumed(this, size);
+			if (!endStream) {
+				if (bufferedBody.hasRemainingBytes(bufferedBodySize + 1)) {
+					connection.resetStream(this, Http2Exception.PROTOCOL_ERROR);
+				}
+				return;
+			}
+			ByteBufQueue bufferedBody = this.bufferedBody;
+			this.bufferedBody = null;
+			if (bufferedBody.remainingBytes() != bufferedBodySize) {
+				bufferedBody.recycle();
+				connection.resetStream(this, Http2Exception.PROTOCOL_ERROR);
+				return;
+			}
+			connection.onBodyReceived(this, bufferedBody.takeRemaining());
+			return;
+		}
+		if (!buf.canRead()) {
+			buf.recycle();
+		} else if (receiveWaiter != null) {
+			SettablePromise<ByteBuf> receiveWaiter = this.receiveWaiter;
+			this.receiveWaiter = null;
+			connection.onConsumed(this, buf.readRemaining());
+			receiveWaiter.set(buf);
+		} else {
+			received.add(buf);
+		}
+		if (remoteEnded && receiveWaiter != null) {
+			SettablePromise<ByteBuf> receiveWaiter = this.receiveWaiter;
+			this.receiveWaiter = null;
+			receiveWaiter.set(null);
+		}
+	}
+
+	/**
+	 * Fails all pending operations of the stream, once it is reset or its connection is closed
+	 */
+	void onReset(Throwable e) {
+		exception = e;
+		connection.onConsumed(null, recycleReceived());
+		if (bufferedBody != null) {
+			bufferedBody.recycle();
+			bufferedBody = null;
+		}
+		if (receiveWaiter != null) {
+			SettablePromise<ByteBuf> receiveWaiter = this.receiveWaiter;
+			this.receiveWaiter = null;
+			receiveWaiter.setException(e);
+		}
+		if (sendWindowWaiter != null) {
+			SettablePromise<Void> sendWindowWaiter = this.sendWindowWaiter;
+			this.sendWindowWaiter = null;
+			sendWindowWaiter.setException(e);
+		}
+		if (responsePromise != null) {
+			SettablePromise<HttpResponse> responsePromise = this.responsePromise;
+			this.responsePromise = null;
+			responsePromise.setException(e);
+		}
+	}
+
+	private int recycleReceived() {
+		int size = 0;
+		for (ByteBuf buf = received.poll(); buf != null; buf = received.poll()) {
+			size += buf.readRemaining();
+			buf.recycle();
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "Http2Stream{" +
+				"id=" + id +
+				", sendWindow=" + sendWindow +
+				", receiveWindow=" + receiveWindow +
+				", localEnded=" + localEnded +
+				", remoteEnded=" + remoteEnded +
+				", reset=" + isReset() +
+				'}';
+	}
+}
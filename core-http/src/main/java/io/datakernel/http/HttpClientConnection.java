@@ -29,10 +29,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.InetSocketAddress;
+import java.util.Base64;
 
 import static io.datakernel.bytebuf.ByteBufStrings.SP;
 import static io.datakernel.bytebuf.ByteBufStrings.decodePositiveInt;
-import static io.datakernel.http.HttpHeaders.CONNECTION;
+import static io.datakernel.http.HttpHeaders.*;
 import static io.datakernel.http.HttpMessage.MUST_LOAD_BODY;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
@@ -81,6 +82,8 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
  */
 final class HttpClientConnection extends AbstractHttpConnection {
 	public static final ParseException INVALID_RESPONSE = new UnknownFormatException(HttpClientConnection.class, "Invalid response");
+	private static final HttpHeaderValue CONNECTION_UPGRADE_HEADER = HttpHeaderValue.of("Upgrade, HTTP2-Settings");
+	private static final HttpHeaderValue UPGRADE_H2C_HEADER = HttpHeaderValue.of("h2c");
 	private SettablePromise<HttpResponse> promise;
 	private HttpResponse response;
 	private final AsyncHttpClient client;
@@ -92,6 +95,11 @@ final class HttpClientConnection extends AbstractHttpConnection {
 	HttpClientConnection addressNext;
 	final int maxBodySize;
 
+	/**
+	 * Whether the next request asks the server to upgrade the connection to HTTP/2
+	 */
+	boolean upgradeHttp2;
+
 	HttpClientConnection(Eventloop eventloop, AsyncHttpClient client,
 			AsyncTcpSocket asyncTcpSocket, InetSocketAddress remoteAddress) {
 		super(eventloop, asyncTcpSocket);
@@ -175,6 +183,14 @@ final class HttpClientConnection extends AbstractHttpConnection {
 		response.flags |= MUST_LOAD_BODY;
 		response.body = body;
 		response.bodyStream = bodySupplier;
+		if (upgradeHttp2) {
+			upgradeHttp2 = false;
+			if (response.getCode() == 101) {
+				switchToHttp2();
+				return;
+			}
+			client.onHttp2UpgradeRejected(remoteAddress);
+		}
 		if (inspector != null) inspector.onHttpResponse(this, response);
 
 		SettablePromise<HttpResponse> promise = this.promise;
@@ -182,6 +198,20 @@ final class HttpClientConnection extends AbstractHttpConnection {
 		promise.set(response);
 	}
 
+	/**
+	 * Hands the socket over to HTTP/2 connection, which receives the response to the upgrade request over its first stream
+	 */
+	private void switchToHttp2() {
+		response.recycle();
+		response = null;
+		flags |= CLOSED;
+		pool.removeNode(this);
+		pool = null;
+		SettablePromise<HttpResponse> promise = this.promise;
+		this.promise = null;
+		client.onHttp2Upgraded(this, promise);
+	}
+
 	@Override
 	protected void onBodyReceived() {
 		if (response != null && (flags & (BODY_SENT | BODY_RECEIVED)) == (BODY_SENT | BODY_RECEIVED)) {
@@ -238,7 +268,14 @@ final class HttpClientConnection extends AbstractHttpConnection {
 				connectionHeader = CONNECTION_CLOSE_HEADER;
 			}
 		}
-		request.addHeader(CONNECTION, connectionHeader);
+		if (upgradeHttp2) {
+			request.addHeader(CONNECTION, CONNECTION_UPGRADE_HEADER);
+			request.addHeader(UPGRADE, UPGRADE_H2C_HEADER);
+			request.addHeader(HTTP2_SETTINGS, Base64.getUrlEncoder().withoutPadding().encodeToString(
+					Http2ClientConnection.settingsPayload().asArray()));
+		} else {
+			request.addHeader(CONNECTION, connectionHeader);
+		}
 		ByteBuf buf = renderHttpMessage(request);
 		if (buf != null) {
 			writeBuf(buf);
@@ -276,7 +313,7 @@ final class HttpClientConnection extends AbstractHttpConnection {
 		pool.removeNode(this);
 		pool = null;
 
-		client.onConnectionClosed();
+		client.onConnectionClosed(this);
 		if (response != null) {
 			response.recycle();
 			response = null;
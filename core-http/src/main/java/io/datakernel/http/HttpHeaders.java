@@ -57,6 +57,7 @@ public final class HttpHeaders {
 	public static final HttpHeader REFERER = headers.register("Referer");
 	public static final HttpHeader TE = headers.register("TE");
 	public static final HttpHeader UPGRADE = headers.register("Upgrade");
+	public static final HttpHeader HTTP2_SETTINGS = headers.register("HTTP2-Settings");
 	public static final HttpHeader USER_AGENT = headers.register("User-Agent");
 	public static final HttpHeader ACCEPT_RANGES = headers.register("Accept-Ranges");
 	public static final HttpHeader ACCESS_CONTROL_ALLOW_HEADERS = headers.register("Access-Control-Allow-Headers");
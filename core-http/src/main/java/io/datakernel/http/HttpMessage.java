@@ -66,6 +66,7 @@ public abstract class HttpMessage {
 	final HttpHeadersMultimap<HttpHeader, HttpHeaderValue> headers = new HttpHeadersMultimap<>();
 	ByteBuf body;
 	ChannelSupplier<ByteBuf> bodyStream;
+	FileRegion fileRegion;
 	Recyclable bufs;
 
 	protected int maxBodySize;
@@ -170,6 +171,11 @@ public abstract class HttpMessage {
 		ChannelSupplier<ByteBuf> bodyStream = this.bodyStream;
 		this.bodyStream = null;
 		if (bodyStream != null) return bodyStream;
+		if (fileRegion != null) {
+			FileRegion fileRegion = this.fileRegion;
+			this.fileRegion = null;
+			return fileRegion.toChannelSupplier();
+		}
 		if (body != null) {
 			ByteBuf body = this.body;
 			this.body = null;
@@ -247,6 +253,10 @@ public abstract class HttpMessage {
 			return Promise.of(body);
 		}
 		ChannelSupplier<ByteBuf> bodyStream = this.bodyStream;
+		if (bodyStream == null && fileRegion != null) {
+			bodyStream = fileRegion.toChannelSupplier();
+			fileRegion = null;
+		}
 		if (bodyStream == null) throw new IllegalStateException("Body stream is missing or already consumed");
 		this.bodyStream = null;
 		return ChannelSuppliers.collect(bodyStream,
@@ -381,6 +391,9 @@ public abstract class HttpMessage {
 		if (bodyStream != null) {
 			bodyStream.streamTo(recycling());
 		}
+		if (fileRegion != null) {
+			fileRegion.close();
+		}
 	}
 
 	protected void writeHeaders(@NotNull ByteBuf buf) {
@@ -28,6 +28,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -57,6 +58,10 @@ public final class HttpRequest extends HttpMessage implements Initializable<Http
 	private UrlParser url;
 	private InetAddress remoteAddress;
 	private Map<String, String> pathParameters;
+	@Nullable
+	private String[] capturedPathParameterNames;
+	private int[] capturedPathParameterBounds;
+	private int capturedPathParameters;
 	private Map<String, String> queryParameters;
 	private Map<String, String> postParameters;
 
@@ -299,12 +304,14 @@ public final class HttpRequest extends HttpMessage implements Initializable<Http
 	@NotNull
 	public Map<String, String> getPathParameters() {
 		assert !isRecycled();
+		decodeCapturedPathParameters();
 		return pathParameters != null ? pathParameters : emptyMap();
 	}
 
 	@NotNull
 	public String getPathParameter(@NotNull String key) {
 		assert !isRecycled();
+		decodeCapturedPathParameters();
 		if (pathParameters != null) {
 			String pathParameter = pathParameters.get(key);
 			if (pathParameter != null) {
@@ -326,10 +333,6 @@ public final class HttpRequest extends HttpMessage implements Initializable<Http
 		return MultipartParser.create(boundary).splitByFiles(getBodyStream(), name -> ChannelConsumer.ofPromise(uploader.apply(name)));
 	}
 
-	int getPos() {
-		return url.pos;
-	}
-
 	void setPos(int pos) {
 		url.pos = (short) pos;
 	}
@@ -341,13 +344,38 @@ public final class HttpRequest extends HttpMessage implements Initializable<Http
 		return partialPath.startsWith("/") ? partialPath.substring(1) : partialPath; // strip first '/'
 	}
 
-	String pollUrlPart() {
-		assert !isRecycled();
-		return url.pollUrlPart();
+	/**
+	 * Captures a path parameter as bounds of its value in the URL, it is decoded on the first access to path parameters
+	 */
+	void capturePathParameter(String key, int start, int end) {
+		if (capturedPathParameterNames == null) {
+			capturedPathParameterNames = new String[4];
+			capturedPathParameterBounds = new int[8];
+		} else if (capturedPathParameters == capturedPathParameterNames.length) {
+			capturedPathParameterNames = Arrays.copyOf(capturedPathParameterNames, capturedPathParameters * 2);
+			capturedPathParameterBounds = Arrays.copyOf(capturedPathParameterBounds, capturedPathParameters * 4);
+		}
+		capturedPathParameterNames[capturedPathParameters] = key;
+		capturedPathParameterBounds[capturedPathParameters * 2] = start;
+		capturedPathParameterBounds[capturedPathParameters * 2 + 1] = end;
+		capturedPathParameters++;
 	}
 
-	void removePathParameter(String key) {
-		pathParameters.remove(key);
+	void releasePathParameter() {
+		capturedPathParameters--;
+	}
+
+	private void decodeCapturedPathParameters() {
+		if (capturedPathParameters == 0) {
+			return;
+		}
+		assert capturedPathParameterNames != null;
+		String raw = url.raw();
+		for (int i = 0; i < capturedPathParameters; i++) {
+			putPathParameter(capturedPathParameterNames[i],
+					raw.substring(capturedPathParameterBounds[i * 2], capturedPathParameterBounds[i * 2 + 1]));
+		}
+		capturedPathParameters = 0;
 	}
 
 	void putPathParameter(String key, @NotNull String value) {
@@ -177,6 +177,16 @@ public final class HttpResponse extends HttpMessage implements Initializable<Htt
 		return this;
 	}
 
+	/**
+	 * Sets a region of a file as the body of this response, which is sent without copying it to the heap.
+	 * Gzip compression is not applied to such body.
+	 */
+	@NotNull
+	public HttpResponse withFileRegion(@NotNull FileRegion fileRegion) {
+		this.fileRegion = fileRegion;
+		return this;
+	}
+
 	@NotNull
 	public HttpResponse withPlainText(@NotNull String text) {
 		return withHeader(CONTENT_TYPE, ofContentType(PLAIN_TEXT_UTF_8))
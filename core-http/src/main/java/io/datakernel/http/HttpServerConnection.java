@@ -31,9 +31,10 @@ import org.jetbrains.annotations.Nullable;
 
 import java.net.InetAddress;
 import java.util.Arrays;
+import java.util.Base64;
 
 import static io.datakernel.bytebuf.ByteBufStrings.*;
-import static io.datakernel.http.HttpHeaders.CONNECTION;
+import static io.datakernel.http.HttpHeaders.*;
 import static io.datakernel.http.HttpMessage.MUST_LOAD_BODY;
 import static io.datakernel.http.HttpMethod.*;
 
@@ -41,6 +42,13 @@ import static io.datakernel.http.HttpMethod.*;
  * It represents server connection. It can receive {@link HttpRequest requests}
  * from {@link AsyncHttpClient clients} and respond to them with
  * {@link AsyncServlet<HttpRequest> async servlet}.
+ * <p>
+ * Pipelined requests, which are already received, are read and served concurrently
+ * up to {@link AsyncHttpServer#withMaxInFlightRequests(int) a limit}, while their responses
+ * are written in the order of requests.
+ * <p>
+ * If {@link AsyncHttpServer#withHttp2(boolean) HTTP/2} is enabled, the connection is handed over
+ * to {@link Http2ServerConnection} once a client sends HTTP/2 connection preface or HTTP/1.1 upgrade request.
  */
 final class HttpServerConnection extends AbstractHttpConnection {
 	private static final int HEADERS_SLOTS = 256;
@@ -65,7 +73,16 @@ final class HttpServerConnection extends AbstractHttpConnection {
 
 	private final InetAddress remoteAddress;
 
+	@Nullable
 	private HttpRequest request;
+	private boolean reading;
+
+	@Nullable
+	private PendingRequest first;
+	@Nullable
+	private PendingRequest last;
+	private int pendingRequests;
+
 	private final AsyncHttpServer server;
 	@Nullable
 	private final Inspector inspector;
@@ -75,6 +92,15 @@ final class HttpServerConnection extends AbstractHttpConnection {
 
 	private static final byte[] EXPECT_100_CONTINUE = encodeAscii("100-continue");
 	private static final byte[] EXPECT_RESPONSE_CONTINUE = encodeAscii("HTTP/1.1 100 Continue\r\n\r\n");
+	private static final byte[] SWITCHING_PROTOCOLS_RESPONSE = encodeAscii("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n");
+	private static final String UPGRADE_H2C = "h2c";
+
+	private final ReadConsumer prefaceConsumer = new ReadConsumer() {
+		@Override
+		public void thenRun() throws ParseException {
+			readPreface();
+		}
+	};
 
 	/**
 	 * Creates a new instance of HttpServerConnection
@@ -98,7 +124,46 @@ final class HttpServerConnection extends AbstractHttpConnection {
 	public void serve() {
 		(pool = server.poolNew).addLastNode(this);
 		poolTimestamp = eventloop.currentTimeMillis();
-		socket.read().whenComplete(startLineConsumer);
+		reading = true;
+		socket.read().whenComplete(server.http2 ? prefaceConsumer : startLineConsumer);
+	}
+
+	/**
+	 * Checks whether a client starts with HTTP/2 connection preface, which is sent by clients with prior knowledge,
+	 * and reads an HTTP/1.1 request otherwise
+	 */
+	private void readPreface() throws ParseException {
+		byte[] preface = Http2Connection.PREFACE;
+		int size = Math.min(readQueue.remainingBytes(), preface.length);
+		for (int i = 0; i < size; i++) {
+			if (readQueue.peekByte(i) != preface[i]) {
+				readHttpMessage();
+				return;
+			}
+		}
+		if (size < preface.length) {
+			socket.read().whenComplete(prefaceConsumer);
+			return;
+		}
+		switchToHttp2(null, null);
+	}
+
+	private boolean isHttp2Upgrade(HttpRequest request, @Nullable ByteBuf body) {
+		return server.http2 && first == null &&
+				body != null && !body.canRead() &&
+				UPGRADE_H2C.equalsIgnoreCase(request.getHeader(UPGRADE)) && request.getHeader(HTTP2_SETTINGS) != null;
+	}
+
+	/**
+	 * Hands the socket over to HTTP/2 connection, along with the data which has already been read
+	 */
+	private void switchToHttp2(@Nullable HttpRequest upgradeRequest, @Nullable ByteBuf upgradeSettings) {
+		flags |= CLOSED;
+		pool.removeNode(this);
+		reading = false;
+		Http2ServerConnection connection = new Http2ServerConnection(eventloop, remoteAddress, socket, server, servlet);
+		server.onHttp2ConnectionOpened(connection);
+		connection.serve(readQueue, upgradeRequest, upgradeSettings);
 	}
 
 	@Override
@@ -116,7 +181,9 @@ final class HttpServerConnection extends AbstractHttpConnection {
 	@SuppressWarnings("PointlessArithmeticExpression")
 	@Override
 	protected void onStartLine(byte[] line, int limit) throws ParseException {
-		switchPool(server.poolReadWrite);
+		if (first == null) {
+			switchPool(server.poolReadWrite);
+		}
 
 		HttpMethod method = getHttpMethod(line);
 		if (method == null) {
@@ -214,17 +281,23 @@ final class HttpServerConnection extends AbstractHttpConnection {
 		request.addHeader(header, array, off, len);
 	}
 
-	private void writeHttpResponse(HttpResponse httpResponse) {
-		HttpHeaderValue connectionHeader = (flags & KEEP_ALIVE) != 0 ? CONNECTION_KEEP_ALIVE_HEADER : CONNECTION_CLOSE_HEADER;
+	private void writeHttpResponse(PendingRequest pending, HttpResponse httpResponse) {
+		HttpHeaderValue connectionHeader = pending.keepAlive ? CONNECTION_KEEP_ALIVE_HEADER : CONNECTION_CLOSE_HEADER;
 		if (server.maxKeepAliveRequests != 0) {
 			if (++numberOfKeepAliveRequests >= server.maxKeepAliveRequests) {
 				connectionHeader = CONNECTION_CLOSE_HEADER;
+				pending.keepAlive = false;
 			}
 		}
 		httpResponse.addHeader(CONNECTION, connectionHeader);
+		if (httpResponse.fileRegion != null) {
+			writeFileRegion(httpResponse);
+			httpResponse.recycle();
+			return;
+		}
 		ByteBuf buf = renderHttpMessage(httpResponse);
 		if (buf != null) {
-			if ((flags & KEEP_ALIVE) != 0) {
+			if (pending.keepAlive) {
 				eventloop.post(() -> writeBuf(buf));
 			} else {
 				writeBuf(buf);
@@ -242,13 +315,50 @@ final class HttpServerConnection extends AbstractHttpConnection {
 		request.bodyStream = bodySupplier;
 		request.setRemoteAddress(remoteAddress);
 
+		if (isHttp2Upgrade(request, body)) {
+			byte[] settings = null;
+			try {
+				//noinspection ConstantConditions - checked by isHttp2Upgrade
+				settings = Base64.getUrlDecoder().decode(request.getHeader(HTTP2_SETTINGS).trim());
+			} catch (IllegalArgumentException ignored) {
+				// the request is served over HTTP/1.1, if its settings are malformed
+			}
+			if (settings != null) {
+				HttpRequest upgradeRequest = request;
+				request = null;
+				socket.write(ByteBuf.wrapForReading(SWITCHING_PROTOCOLS_RESPONSE));
+				switchToHttp2(upgradeRequest, ByteBuf.wrapForReading(settings));
+				return;
+			}
+		}
+
 		if (inspector != null) {
 			inspector.onHttpRequest(request);
 		}
 
-		switchPool(server.poolServing);
+		PendingRequest pending = new PendingRequest(request, (flags & KEEP_ALIVE) != 0);
+		request = null;
+		reading = false;
+		if (last == null) {
+			first = last = pending;
+		} else {
+			last = last.next = pending;
+		}
+		pendingRequests++;
+
+		// only safe requests are read ahead, so a request may be served concurrently with previous ones if it is safe itself
+		if (pending == first || isSafe(pending.request.getMethod())) {
+			serve(pending);
+		}
+	}
+
+	private void serve(PendingRequest pending) {
+		pending.dispatched = true;
+		if (pending == first) {
+			switchPool(server.poolServing);
+		}
 
-		HttpRequest request = this.request;
+		HttpRequest request = pending.request;
 		Promise<HttpResponse> servletResult;
 		try {
 			servletResult = servlet.serve(request);
@@ -263,37 +373,60 @@ final class HttpServerConnection extends AbstractHttpConnection {
 				}
 				return;
 			}
-			if (e == null) {
-				if (inspector != null) {
-					inspector.onHttpResponse(request, response);
-				}
-				switchPool(server.poolReadWrite);
-				writeHttpResponse(response);
-			} else {
-				if (inspector != null) {
-					inspector.onServletException(request, e);
-				}
-				switchPool(server.poolReadWrite);
-				writeException(e);
+			pending.served = true;
+			pending.response = response;
+			pending.exception = e;
+			if (pending == first) {
+				writeResponse(pending);
 			}
+		});
+	}
 
-			if (request.bodyStream != null) {
-				request.bodyStream.streamTo(BUF_RECYCLER);
-				request.bodyStream = null;
+	private void writeResponse(PendingRequest pending) {
+		HttpRequest request = pending.request;
+		HttpResponse response = pending.response;
+		Throwable e = pending.exception;
+		pending.response = null;
+		pending.exception = null;
+
+		switchPool(server.poolReadWrite);
+		if (e == null) {
+			if (inspector != null) {
+				inspector.onHttpResponse(request, response);
 			}
-		});
+			writeHttpResponse(pending, response);
+		} else {
+			if (inspector != null) {
+				inspector.onServletException(request, e);
+			}
+			writeHttpResponse(pending, server.formatHttpError(e));
+		}
+
+		if (request.bodyStream != null) {
+			request.bodyStream.streamTo(BUF_RECYCLER);
+			request.bodyStream = null;
+		}
 	}
 
 	@Override
 	protected void onBodyReceived() {
-		if ((flags & (BODY_SENT | BODY_RECEIVED)) == (BODY_SENT | BODY_RECEIVED) && pool != server.poolServing) {
+		if (isClosed()) return;
+		// the body of the last request is always received before the next one is read
+		PendingRequest pending = last;
+		pending.bodyReceived = true;
+		if (pending == first && pending.sent) {
 			onHttpMessageComplete();
+		} else {
+			readAhead();
 		}
 	}
 
 	@Override
 	protected void onBodySent() {
-		if ((flags & (BODY_SENT | BODY_RECEIVED)) == (BODY_SENT | BODY_RECEIVED) && pool != server.poolServing) {
+		if (isClosed()) return;
+		PendingRequest pending = first;
+		pending.sent = true;
+		if (pending.bodyReceived) {
 			onHttpMessageComplete();
 		}
 	}
@@ -301,42 +434,125 @@ final class HttpServerConnection extends AbstractHttpConnection {
 	private void onHttpMessageComplete() {
 		assert !isClosed();
 
-		if (request != null) {
-			request.recycle();
-			request = null;
+		PendingRequest pending = first;
+		first = pending.next;
+		if (first == null) {
+			last = null;
 		}
+		pendingRequests--;
+		pending.request.recycle();
 
-		if ((flags & KEEP_ALIVE) != 0 && server.keepAliveTimeoutMillis != 0) {
-			switchPool(server.poolKeepAlive);
-			flags = 0;
-			try {
-				readHttpMessage();
-			} catch (ParseException e) {
-				closeWithError(e);
+		if (!pending.keepAlive || (first == null && server.keepAliveTimeoutMillis == 0)) {
+			close();
+			return;
+		}
+
+		if (first == null) {
+			if (reading) {
+				switchPool(server.poolReadWrite);
+			} else {
+				switchPool(server.poolKeepAlive);
+				reading = true;
+				flags = 0;
+				try {
+					readHttpMessage();
+				} catch (ParseException e) {
+					closeWithError(e);
+				}
 			}
+			return;
+		}
+
+		if (!first.dispatched) {
+			serve(first);
+		} else if (first.served) {
+			writeResponse(first);
 		} else {
-			close();
+			switchPool(server.poolServing);
+		}
+		if (!isClosed()) {
+			readAhead();
 		}
 	}
 
-	private void writeException(Throwable e) {
-		writeHttpResponse(server.formatHttpError(e));
+	/**
+	 * Starts reading the next pipelined request, if it is already in the read queue
+	 * and the number of requests that have not been responded to yet is below the limit.
+	 * Requests are not read ahead past a request with an unsafe method, so that such requests
+	 * are never served concurrently with other ones.
+	 */
+	private void readAhead() {
+		PendingRequest pending = last;
+		if (reading || pending == null || !pending.bodyReceived || !pending.keepAlive ||
+				!isSafe(pending.request.getMethod()) || pendingRequests >= server.maxInFlightRequests ||
+				server.keepAliveTimeoutMillis == 0 || !readQueue.hasRemaining()) {
+			return;
+		}
+		reading = true;
+		flags = 0;
+		try {
+			readHttpMessage();
+		} catch (ParseException e) {
+			closeWithError(e);
+		}
+	}
+
+	private static boolean isSafe(HttpMethod method) {
+		return method == GET || method == HEAD || method == OPTIONS || method == TRACE;
 	}
 
 	@Override
 	protected void onClosed() {
-		if (request != null && pool != server.poolServing) {
+		if (request != null) {
 			request.recycle();
 			request = null;
 		}
+		for (PendingRequest pending = first; pending != null; pending = pending.next) {
+			// requests which are still being served are recycled once the servlet completes
+			if (!pending.dispatched || pending.served) {
+				pending.request.recycle();
+				if (pending.response != null) {
+					pending.response.recycle();
+				}
+			}
+		}
+		first = last = null;
 		pool.removeNode(this);
 		server.onConnectionClosed();
 	}
 
+	/**
+	 * A request which has been read, but has not been responded to yet.
+	 * Responses are written strictly in the order in which requests were received.
+	 */
+	private static final class PendingRequest {
+		final HttpRequest request;
+		boolean keepAlive;
+
+		boolean dispatched;
+		boolean served;
+		@Nullable
+		HttpResponse response;
+		@Nullable
+		Throwable exception;
+
+		boolean bodyReceived;
+		boolean sent;
+
+		@Nullable
+		PendingRequest next;
+
+		PendingRequest(HttpRequest request, boolean keepAlive) {
+			this.request = request;
+			this.keepAlive = keepAlive;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "HttpServerConnection{" +
 				"remoteAddress=" + remoteAddress +
+				", pendingRequests=" + pendingRequests +
 				',' + super.toString() +
 				'}';
 	}
@@ -23,16 +23,21 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
 
 import static io.datakernel.util.Preconditions.checkArgument;
 import static io.datakernel.util.Preconditions.checkNotNull;
+import static java.util.Collections.newSetFromMap;
 
 /**
  * This servlet allows to build complex servlet trees, routing requests between them by the HTTP paths.
+ * <p>
+ * Requests are routed by an immutable trie, which is compiled from the tree on the first request,
+ * and is recompiled on the next request after this servlet or any of its subtrees is modified.
  */
 public final class RoutingServlet implements AsyncServlet, Initializable<RoutingServlet> {
 	private static final String ROOT = "/";
@@ -50,6 +55,20 @@ public final class RoutingServlet implements AsyncServlet, Initializable<Routing
 
 	protected final Map<@Nullable HttpMethod, AsyncServlet> fallbackServlets = new HashMap<>();
 
+	/**
+	 * Servlets which have this one as a subtree, so that their compiled tries
+	 * are recompiled after this subtree is modified
+	 */
+	private final Set<RoutingServlet> parents = newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Counts modifications of this servlet and of its subtrees
+	 */
+	private volatile int modCount;
+
+	@Nullable
+	private RoutingTrie trie;
+
 	private RoutingServlet() {
 	}
 
@@ -141,66 +160,47 @@ public final class RoutingServlet implements AsyncServlet, Initializable<Routing
 	@NotNull
 	@Override
 	public Promise<HttpResponse> serve(@NotNull HttpRequest request) {
-		Promise<HttpResponse> processed = tryServe(request);
+		RoutingTrie trie = this.trie;
+		int modCount = this.modCount;
+		if (trie == null || trie.modCount != modCount) {
+			trie = RoutingTrie.compile(this, modCount);
+			this.trie = trie;
+		}
+		Promise<HttpResponse> processed = trie.tryServe(request);
 		return processed != null ?
 				processed :
 				Promise.ofException(HttpException.notFound404());
 	}
 
 	private void map(@Nullable HttpMethod method, AsyncServlet servlet, BinaryOperator<AsyncServlet> merger) {
+		modified();
 		rootServlets.merge(method, servlet, merger);
 	}
 
 	private void mapFallback(@Nullable HttpMethod method, AsyncServlet servlet, BinaryOperator<AsyncServlet> merger) {
+		modified();
 		fallbackServlets.merge(method, servlet, merger);
 	}
 
-	@Nullable
-	private Promise<HttpResponse> tryServe(HttpRequest request) {
-		int introPosition = request.getPos();
-		String urlPart = request.pollUrlPart();
-		HttpMethod method = request.getMethod();
-
-		if (urlPart.isEmpty()) {
-			AsyncServlet servlet = rootServlets.getOrDefault(method, rootServlets.get(null));
-			if (servlet != null) {
-				return servlet.serve(request);
-			}
-		} else {
-			int position = request.getPos();
-			RoutingServlet transit = routes.get(urlPart);
-			if (transit != null) {
-				Promise<HttpResponse> result = transit.tryServe(request);
-				if (result != null) {
-					return result;
-				}
-				request.setPos(position);
-			}
-			for (Entry<String, RoutingServlet> entry : parameters.entrySet()) {
-				String key = entry.getKey();
-				request.putPathParameter(key, urlPart);
-				Promise<HttpResponse> result = entry.getValue().tryServe(request);
-				if (result != null) {
-					return result;
-				}
-				request.removePathParameter(key);
-				request.setPos(position);
-			}
+	@SuppressWarnings("NonAtomicOperationOnVolatileField") // servlet trees are modified from a single thread
+	private void modified() {
+		modCount++;
+		for (RoutingServlet parent : parents) {
+			parent.modified();
 		}
+	}
 
-		AsyncServlet servlet = fallbackServlets.getOrDefault(method, fallbackServlets.get(null));
-		if (servlet != null) {
-			request.setPos(introPosition);
-			return servlet.serve(request);
-		}
-		return null;
+	private RoutingServlet attach(RoutingServlet subtree) {
+		subtree.parents.add(this);
+		modified();
+		return subtree;
 	}
 
 	private RoutingServlet makeSubtree(String path) {
 		return getOrCreateSubtree(path, (servlet, name) ->
 				name.startsWith(":") ?
-						servlet.parameters.computeIfAbsent(name.substring(1), $ -> new RoutingServlet()) :
-						servlet.routes.computeIfAbsent(name, $ -> new RoutingServlet()));
+						servlet.parameters.computeIfAbsent(name.substring(1), $ -> servlet.attach(new RoutingServlet())) :
+						servlet.routes.computeIfAbsent(name, $ -> servlet.attach(new RoutingServlet())));
 	}
 
 	private RoutingServlet getOrCreateSubtree(String path, BiFunction<RoutingServlet, String, @Nullable RoutingServlet> childGetter) {
@@ -250,18 +250,19 @@ public final class RoutingServlet implements AsyncServlet, Initializable<Routing
 	}
 
 	private static void mergeInto(RoutingServlet into, RoutingServlet from, BinaryOperator<AsyncServlet> merger) {
+		into.modified();
 		from.rootServlets.forEach((method, servlet) -> into.map(method, servlet, merger));
 		from.fallbackServlets.forEach((method, servlet) -> into.mapFallback(method, servlet, merger));
 		from.routes.forEach((key, value) ->
-				into.routes.merge(key, value, (s1, s2) -> {
+				into.attach(into.routes.merge(key, value, (s1, s2) -> {
 					mergeInto(s1, s2, merger);
 					return s1;
-				}));
+				})));
 		from.parameters.forEach((key, value) ->
-				into.parameters.merge(key, value, (s1, s2) -> {
+				into.attach(into.parameters.merge(key, value, (s1, s2) -> {
 					mergeInto(s1, s2, merger);
 					return s1;
-				}));
+				})));
 	}
 
 	@FunctionalInterface
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable trie of path segments, which is compiled from a tree of {@link RoutingServlet RoutingServlets}.
+ * <p>
+ * Segments of a request path are matched directly against the raw URL string: static segments are looked up
+ * in open addressing tables by a hash computed over the URL characters, and parameter segments are captured
+ * as offsets into the URL, which are decoded only when path parameters are accessed. Servlets are resolved
+ * by HTTP method in advance, so routing of a request does not allocate unless it captures parameters.
+ */
+final class RoutingTrie {
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+	private static final AsyncServlet[] NO_SERVLETS = new AsyncServlet[METHODS.length];
+
+	final int modCount;
+	private final Node root;
+
+	private RoutingTrie(int modCount, Node root) {
+		this.modCount = modCount;
+		this.root = root;
+	}
+
+	static RoutingTrie compile(RoutingServlet servlet, int modCount) {
+		return new RoutingTrie(modCount, compile(servlet, new IdentityHashMap<>()));
+	}
+
+	private static Node compile(RoutingServlet servlet, Map<RoutingServlet, Node> compiled) {
+		Node node = compiled.get(servlet);
+		if (node != null) {
+			return node;
+		}
+
+		String[] staticKeys = new String[tableSize(servlet.routes.size())];
+		Node[] staticNodes = new Node[staticKeys.length];
+		servlet.routes.forEach((key, subtree) -> {
+			int mask = staticKeys.length - 1;
+			int slot = key.hashCode() & mask;
+			while (staticKeys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			staticKeys[slot] = key;
+			staticNodes[slot] = compile(subtree, compiled);
+		});
+
+		List<String> parameterNames = new ArrayList<>();
+		List<Node> parameterNodes = new ArrayList<>();
+		servlet.parameters.forEach((name, subtree) -> {
+			parameterNames.add(name);
+			parameterNodes.add(compile(subtree, compiled));
+		});
+
+		node = new Node(
+				byMethod(servlet.rootServlets),
+				byMethod(servlet.fallbackServlets),
+				servlet.routes.isEmpty() ? null : staticKeys,
+				staticNodes,
+				parameterNames.toArray(new String[0]),
+				parameterNodes.toArray(new Node[0]));
+		compiled.put(servlet, node);
+		return node;
+	}
+
+	private static int tableSize(int size) {
+		int tableSize = 1;
+		while (tableSize < size * 2) {
+			tableSize <<= 1;
+		}
+		return tableSize;
+	}
+
+	private static AsyncServlet[] byMethod(Map<@Nullable HttpMethod, AsyncServlet> servlets) {
+		if (servlets.isEmpty()) {
+			return NO_SERVLETS;
+		}
+		AsyncServlet[] result = new AsyncServlet[METHODS.length];
+		for (HttpMethod method : METHODS) {
+			result[method.ordinal()] = servlets.getOrDefault(method, servlets.get(null));
+		}
+		return result;
+	}
+
+	@Nullable
+	Promise<HttpResponse> tryServe(HttpRequest request) {
+		UrlParser url = request.getUrl();
+		return root.tryServe(request, url.raw(), url.pathEnd(), url.pos, request.getMethod().ordinal());
+	}
+
+	private static final class Node {
+		private final AsyncServlet[] rootServlets;
+		private final AsyncServlet[] fallbackServlets;
+
+		@Nullable
+		private final String[] staticKeys;
+		private final Node[] staticNodes;
+
+		private final String[] parameterNames;
+		private final Node[] parameterNodes;
+
+		Node(AsyncServlet[] rootServlets, AsyncServlet[] fallbackServlets,
+				@Nullable String[] staticKeys, Node[] staticNodes,
+				String[] parameterNames, Node[] parameterNodes) {
+			this.rootServlets = rootServlets;
+			this.fallbackServlets = fallbackServlets;
+			this.staticKeys = staticKeys;
+			this.staticNodes = staticNodes;
+			this.parameterNames = parameterNames;
+			this.parameterNodes = parameterNodes;
+		}
+
+		/**
+		 * Mirrors the way {@link UrlParser#pollUrlPart()} splits a path into segments,
+		 * so that servlets see the same position of a request as before
+		 */
+		@Nullable
+		Promise<HttpResponse> tryServe(HttpRequest request, String raw, int pathEnd, int pos, int method) {
+			int start;
+			int end;
+			int next;
+			if (pos < pathEnd) {
+				start = pos + 1;
+				int nextSlash = raw.indexOf('/', start);
+				next = nextSlash > pathEnd ? pathEnd : nextSlash;
+				if (next == -1) {
+					end = pathEnd;
+					next = raw.length();
+				} else {
+					end = next;
+				}
+			} else {
+				start = end = next = pos;
+			}
+
+			if (start == end) {
+				AsyncServlet servlet = rootServlets[method];
+				if (servlet != null) {
+					request.setPos(next);
+					return servlet.serve(request);
+				}
+			} else {
+				Node transit = findStatic(raw, start, end);
+				if (transit != null) {
+					Promise<HttpResponse> result = transit.tryServe(request, raw, pathEnd, next, method);
+					if (result != null) {
+						return result;
+					}
+				}
+				for (int i = 0; i < parameterNames.length; i++) {
+					request.capturePathParameter(parameterNames[i], start, end);
+					Promise<HttpResponse> result = parameterNodes[i].tryServe(request, raw, pathEnd, next, method);
+					if (result != null) {
+						return result;
+					}
+					request.releasePathParameter();
+				}
+			}
+
+			AsyncServlet servlet = fallbackServlets[method];
+			if (servlet != null) {
+				request.setPos(pos);
+				return servlet.serve(request);
+			}
+			return null;
+		}
+
+		@Nullable
+		private Node findStatic(String raw, int start, int end) {
+			String[] keys = this.staticKeys;
+			if (keys == null) {
+				return null;
+			}
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + raw.charAt(i);
+			}
+			int length = end - start;
+			int mask = keys.length - 1;
+			for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+				String key = keys[slot];
+				if (key == null) {
+					return null;
+				}
+				if (key.length() == length && raw.regionMatches(start, key, 0, length)) {
+					return staticNodes[slot];
+				}
+			}
+		}
+	}
+}
@@ -19,6 +19,7 @@ package io.datakernel.http;
 import io.datakernel.async.Promise;
 import io.datakernel.async.Promises;
 import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.loader.StaticFile;
 import io.datakernel.loader.StaticLoader;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -26,21 +27,39 @@ import org.jetbrains.annotations.Nullable;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static io.datakernel.http.HttpHeaderValue.ofContentType;
-import static io.datakernel.http.HttpHeaders.CONTENT_TYPE;
+import static io.datakernel.http.HttpHeaderValue.ofTimestamp;
+import static io.datakernel.http.HttpHeaders.*;
+import static io.datakernel.http.HttpMethod.GET;
+import static io.datakernel.http.HttpMethod.HEAD;
 
 /**
  * This servlet allows return HTTP responses by HTTP paths from some predefined storage, mainly the filesystem.
+ * <p>
+ * Resources which are backed by files are sent as {@link FileRegion file regions}, without loading them into memory.
+ * They, as well as the resources cached along with their last modification time, are validated
+ * by their {@code ETag} and {@code Last-Modified} headers, so that conditional requests
+ * get {@code 304 Not Modified} responses. Requests for a single byte range get {@code 206 Partial Content} responses.
+ * <p>
+ * If the loader provides {@link StaticLoader#loadGzipped gzipped contents} of a resource,
+ * such as {@link io.datakernel.loader.StaticLoaderLruCache StaticLoaderLruCache} does,
+ * they are sent as is to clients that accept gzip encoding, with an entity tag of their own.
  */
 public final class StaticServlet implements AsyncServlet {
 	public static final Charset DEFAULT_TXT_ENCODING = StandardCharsets.UTF_8;
+	private static final long[] UNSATISFIABLE_RANGE = new long[0];
+	private static final HttpHeaderValue ACCEPT_RANGES_BYTES = HttpHeaderValue.of("bytes");
+	private static final HttpHeaderValue CONTENT_ENCODING_GZIP = HttpHeaderValue.of("gzip");
+	private static final HttpHeaderValue VARY_ACCEPT_ENCODING = HttpHeaderValue.of("Accept-Encoding");
 
 	private final StaticLoader resourceLoader;
 	private Function<String, ContentType> contentTypeResolver = StaticServlet::getContentType;
@@ -136,10 +155,197 @@ public final class StaticServlet implements AsyncServlet {
 		return type;
 	}
 
-	private HttpResponse createHttpResponse(ByteBuf buf, ContentType contentType) {
-		return responseSupplier.get()
+	private Promise<HttpResponse> loadResource(HttpRequest request, String path, ContentType contentType) {
+		if (acceptsGzip(request)) {
+			return resourceLoader.loadGzipped(path)
+					.then(gzipped -> gzipped != null ?
+							Promise.of(createFileResponse(request, gzipped, contentType, true)) :
+							loadIdentityResource(request, path, contentType));
+		}
+		return loadIdentityResource(request, path, contentType);
+	}
+
+	private Promise<HttpResponse> loadIdentityResource(HttpRequest request, String path, ContentType contentType) {
+		return resourceLoader.loadFile(path)
+				.then(file -> file != null ?
+						Promise.of(createFileResponse(request, file, contentType, false)) :
+						resourceLoader.load(path)
+								.map(buf -> createHttpResponse(request, buf, contentType)));
+	}
+
+	private HttpResponse createHttpResponse(HttpRequest request, ByteBuf buf, ContentType contentType) {
+		HttpResponse response = responseSupplier.get();
+		if (response.getCode() != 200) {
+			return response
+					.withBody(buf)
+					.withHeader(CONTENT_TYPE, ofContentType(contentType));
+		}
+		int size = buf.readRemaining();
+		long[] range = getRange(request, size, null);
+		if (range == UNSATISFIABLE_RANGE) {
+			buf.recycle();
+			return rangeNotSatisfiable(size);
+		}
+		if (range != null) {
+			buf.moveHead((int) range[0]);
+			buf.tail(buf.head() + (int) (range[1] - range[0] + 1));
+			response = withCode(response, 206)
+					.withHeader(CONTENT_RANGE, contentRange(range, size));
+		}
+		return response
 				.withBody(buf)
-				.withHeader(CONTENT_TYPE, ofContentType(contentType));
+				.withHeader(CONTENT_TYPE, ofContentType(contentType))
+				.withHeader(ACCEPT_RANGES, ACCEPT_RANGES_BYTES);
+	}
+
+	private HttpResponse createFileResponse(HttpRequest request, StaticFile file, ContentType contentType, boolean gzipped) {
+		HttpResponse response = responseSupplier.get();
+		if (gzipped) {
+			// contents are gzipped already, so they should not be compressed once more when the response is sent
+			response.flags &= ~HttpMessage.USE_GZIP;
+			response.addHeader(CONTENT_ENCODING, CONTENT_ENCODING_GZIP);
+			response.addHeader(VARY, VARY_ACCEPT_ENCODING);
+		}
+		long size = file.getSize();
+		if (response.getCode() != 200) {
+			return withContents(response, file, 0, size)
+					.withHeader(CONTENT_TYPE, ofContentType(contentType));
+		}
+		long lastModified = file.getLastModified();
+		// gzipped contents are a separate representation of a resource, hence they get their own entity tag
+		String etag = '"' + Long.toHexString(lastModified) + '-' + Long.toHexString(size) + (gzipped ? "-gzip\"" : "\"");
+		if (isNotModified(request, etag, lastModified)) {
+			file.close();
+			return withCode(response, 304)
+					.withHeader(ETAG, etag)
+					.withHeader(LAST_MODIFIED, ofTimestamp(lastModified));
+		}
+		long[] range = getRange(request, size, etag);
+		if (range == UNSATISFIABLE_RANGE) {
+			file.close();
+			return rangeNotSatisfiable(size);
+		}
+		if (range != null) {
+			response = withContents(withCode(response, 206), file, range[0], range[1] - range[0] + 1)
+					.withHeader(CONTENT_RANGE, contentRange(range, size));
+		} else {
+			withContents(response, file, 0, size);
+		}
+		return response
+				.withHeader(CONTENT_TYPE, ofContentType(contentType))
+				.withHeader(ACCEPT_RANGES, ACCEPT_RANGES_BYTES)
+				.withHeader(ETAG, etag)
+				.withHeader(LAST_MODIFIED, ofTimestamp(lastModified));
+	}
+
+	private static HttpResponse withContents(HttpResponse response, StaticFile file, long position, long count) {
+		ByteBuf buf = file.getBuf();
+		if (buf == null) {
+			return response.withFileRegion(file.toFileRegion(position, count));
+		}
+		buf.moveHead((int) position);
+		buf.tail(buf.head() + (int) count);
+		return response.withBody(buf);
+	}
+
+	/**
+	 * Creates a response with given code, which has headers of the response from {@link #withResponse response supplier}
+	 */
+	private static HttpResponse withCode(HttpResponse response, int code) {
+		HttpResponse result = HttpResponse.ofCode(code);
+		for (Map.Entry<HttpHeader, HttpHeaderValue> entry : response.getHeaders()) {
+			result.addHeader(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	private static boolean acceptsGzip(HttpRequest request) {
+		String acceptEncoding = request.getHeader(ACCEPT_ENCODING);
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			int semicolon = coding.indexOf(';');
+			String name = (semicolon == -1 ? coding : coding.substring(0, semicolon)).trim();
+			if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+				return semicolon == -1 || !coding.substring(semicolon + 1).replace(" ", "").matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNotModified(HttpRequest request, String etag, long lastModified) {
+		if (request.getMethod() != GET && request.getMethod() != HEAD) {
+			return false;
+		}
+		String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.equals("*") || tag.equals(etag) || (tag.startsWith("W/") && tag.substring(2).equals(etag))) {
+					return true;
+				}
+			}
+			return false;
+		}
+		Instant ifModifiedSince = request.getHeader(IF_MODIFIED_SINCE, HttpHeaderValue::toInstant);
+		return ifModifiedSince != null && lastModified / 1000 <= ifModifiedSince.getEpochSecond();
+	}
+
+	/**
+	 * Returns first and last positions of a single byte range requested by a {@code Range} header,
+	 * or {@code null} if the whole resource should be sent, which is also the case for multiple ranges
+	 * and for an {@code If-Range} header that does not match the current entity tag
+	 */
+	@Nullable
+	private static long[] getRange(HttpRequest request, long size, @Nullable String etag) {
+		String range = request.getHeader(RANGE);
+		if (range == null || request.getMethod() != GET || !range.startsWith("bytes=") || range.indexOf(',') != -1) {
+			return null;
+		}
+		String ifRange = request.getHeader(IF_RANGE);
+		if (ifRange != null && !ifRange.trim().equals(etag)) {
+			return null;
+		}
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1) {
+			return null;
+		}
+		String first = spec.substring(0, dash).trim();
+		String last = spec.substring(dash + 1).trim();
+		try {
+			if (first.isEmpty()) {
+				long suffix = Long.parseLong(last);
+				if (suffix < 0) {
+					return null;
+				}
+				if (suffix == 0 || size == 0) {
+					return UNSATISFIABLE_RANGE;
+				}
+				return new long[]{Math.max(0, size - suffix), size - 1};
+			}
+			long from = Long.parseLong(first);
+			long to = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+			if (from < 0 || to < from) {
+				return null;
+			}
+			if (from >= size) {
+				return UNSATISFIABLE_RANGE;
+			}
+			return new long[]{from, Math.min(to, size - 1)};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static String contentRange(long[] range, long size) {
+		return "bytes " + range[0] + '-' + range[1] + '/' + size;
+	}
+
+	private static HttpResponse rangeNotSatisfiable(long size) {
+		return HttpResponse.ofCode(416)
+				.withHeader(CONTENT_RANGE, "bytes */" + size);
 	}
 
 	@NotNull
@@ -150,12 +356,11 @@ public final class StaticServlet implements AsyncServlet {
 		ContentType contentType = contentTypeResolver.apply(mappedPath);
 		return Promise.complete()
 				.then($ -> (mappedPath.endsWith("/") || mappedPath.isEmpty()) ?
-						tryLoadIndexResource(mappedPath) :
-						resourceLoader.load(mappedPath)
-								.map(byteBuf -> createHttpResponse(byteBuf, contentType))
+						tryLoadIndexResource(request, mappedPath) :
+						loadResource(request, mappedPath, contentType)
 								.thenEx((value, e) -> {
 									if (e == StaticLoader.IS_A_DIRECTORY) {
-										return tryLoadIndexResource(mappedPath);
+										return tryLoadIndexResource(request, mappedPath);
 									} else {
 										return Promise.of(value, e);
 									}
@@ -164,7 +369,7 @@ public final class StaticServlet implements AsyncServlet {
 					if (e == null) {
 						return Promise.of(response);
 					} else if (e == StaticLoader.NOT_FOUND_EXCEPTION) {
-						return tryLoadDefaultResource();
+						return tryLoadDefaultResource(request);
 					} else {
 						return Promise.ofException(HttpException.ofCode(400, e));
 					}
@@ -172,19 +377,17 @@ public final class StaticServlet implements AsyncServlet {
 	}
 
 	@NotNull
-	private Promise<HttpResponse> tryLoadIndexResource(String mappedPath) {
+	private Promise<HttpResponse> tryLoadIndexResource(HttpRequest request, String mappedPath) {
 		String dirPath = mappedPath.endsWith("/") || mappedPath.isEmpty() ? mappedPath : (mappedPath + '/');
 		return Promises.<HttpResponse>firstSuccessful(indexResources.stream()
-				.map(indexResource -> () -> resourceLoader.load(dirPath + indexResource)
-						.map(byteBuf -> createHttpResponse(byteBuf, contentTypeResolver.apply(indexResource)))))
+				.map(indexResource -> () -> loadResource(request, dirPath + indexResource, contentTypeResolver.apply(indexResource))))
 				.thenEx(((response, e) -> e == null ? Promise.of(response) : Promise.ofException(StaticLoader.NOT_FOUND_EXCEPTION)));
 	}
 
 	@NotNull
-	private Promise<? extends HttpResponse> tryLoadDefaultResource() {
+	private Promise<? extends HttpResponse> tryLoadDefaultResource(HttpRequest request) {
 		return defaultResource != null ?
-				resourceLoader.load(defaultResource)
-						.map(buf -> createHttpResponse(buf, contentTypeResolver.apply(defaultResource))) :
+				loadResource(request, defaultResource, contentTypeResolver.apply(defaultResource)) :
 				Promise.ofException(HttpException.notFound404());
 	}
 }
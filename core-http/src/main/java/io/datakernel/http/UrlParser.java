@@ -455,6 +455,14 @@ public final class UrlParser {
 	}
 
 	// work with path
+	String raw() {
+		return raw;
+	}
+
+	int pathEnd() {
+		return pathEnd;
+	}
+
 	@NotNull
 	String getPartialPath() {
 		if (pos == -1 || pos > pathEnd) {
@@ -0,0 +1,83 @@
+package io.datakernel.http.session;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Sessions ordered by the time of their last access, so that a session is touched on read in O(1),
+ * and expired sessions are always at the head of the map, which lets them be swept without scanning live ones.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class ExpiringSessions<T> {
+	private final LinkedHashMap<String, Session<T>> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+	private static final class Session<T> {
+		final T sessionObject;
+		long lastAccessTime;
+
+		Session(T sessionObject, long lastAccessTime) {
+			this.sessionObject = sessionObject;
+			this.lastAccessTime = lastAccessTime;
+		}
+	}
+
+	/**
+	 * Saves a session and evicts least recently accessed ones if there are more than {@code maxSessions} sessions
+	 *
+	 * @return number of evicted sessions
+	 */
+	int save(String sessionId, T sessionObject, long now, int maxSessions) {
+		sessions.put(sessionId, new Session<>(sessionObject, now));
+		int evicted = 0;
+		Iterator<Session<T>> iterator = sessions.values().iterator();
+		while (sessions.size() > maxSessions) {
+			iterator.next();
+			iterator.remove();
+			evicted++;
+		}
+		return evicted;
+	}
+
+	@Nullable
+	T get(String sessionId, long now, long ttlMillis) {
+		Session<T> session = sessions.get(sessionId);
+		if (session == null) {
+			return null;
+		}
+		if (now - session.lastAccessTime >= ttlMillis) {
+			sessions.remove(sessionId);
+			return null;
+		}
+		session.lastAccessTime = now;
+		return session.sessionObject;
+	}
+
+	/**
+	 * Removes sessions which have not been accessed for {@code ttlMillis}
+	 *
+	 * @return number of expired sessions
+	 */
+	int sweep(long now, long ttlMillis) {
+		int expired = 0;
+		Iterator<Session<T>> iterator = sessions.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().lastAccessTime < ttlMillis) {
+				break;
+			}
+			iterator.remove();
+			expired++;
+		}
+		return expired;
+	}
+
+	int size() {
+		return sessions.size();
+	}
+
+	boolean isEmpty() {
+		return sessions.isEmpty();
+	}
+}
@@ -0,0 +1,154 @@
+package io.datakernel.http.session;
+
+import io.datakernel.async.Promise;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.eventloop.ScheduledRunnable;
+import io.datakernel.jmx.EventStats;
+import io.datakernel.jmx.EventloopJmxMBeanEx;
+import io.datakernel.jmx.JmxAttribute;
+import io.datakernel.time.CurrentTimeProvider;
+import io.datakernel.util.ApplicationSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+
+import static io.datakernel.util.Preconditions.checkArgument;
+
+/**
+ * In-memory session storage of a single eventloop, which limits both the idle time of sessions and their number.
+ * <p>
+ * A session expires when it has not been saved or read for {@link #withSessionTtl session TTL},
+ * expired sessions are removed by a background task of the eventloop, which runs while there are any sessions.
+ * When the number of sessions exceeds {@link #withMaxSessions max sessions}, least recently accessed ones are evicted.
+ *
+ * @see SessionStoreSharded
+ */
+public final class SessionStoreExpiring<T> implements SessionStore<T>, EventloopJmxMBeanEx {
+	public static final Duration DEFAULT_SESSION_TTL = ApplicationSettings.getDuration(SessionStoreExpiring.class, "sessionTtl", Duration.ofMinutes(30));
+	public static final int DEFAULT_MAX_SESSIONS = ApplicationSettings.getInt(SessionStoreExpiring.class, "maxSessions", 1_000_000);
+	public static final Duration DEFAULT_SWEEP_INTERVAL = ApplicationSettings.getDuration(SessionStoreExpiring.class, "sweepInterval", Duration.ofSeconds(10));
+
+	private static final Duration SMOOTHING_WINDOW = Duration.ofMinutes(1);
+
+	private final Eventloop eventloop;
+	private final ExpiringSessions<T> sessions = new ExpiringSessions<>();
+
+	private long sessionTtlMillis = DEFAULT_SESSION_TTL.toMillis();
+	private int maxSessions = DEFAULT_MAX_SESSIONS;
+	private long sweepIntervalMillis = DEFAULT_SWEEP_INTERVAL.toMillis();
+
+	CurrentTimeProvider now;
+
+	@Nullable
+	private ScheduledRunnable sweep;
+
+	// region JMX
+	private final EventStats expiredSessions = EventStats.create(SMOOTHING_WINDOW);
+	private final EventStats evictedSessions = EventStats.create(SMOOTHING_WINDOW);
+	// endregion
+
+	private SessionStoreExpiring(Eventloop eventloop) {
+		this.eventloop = eventloop;
+		this.now = eventloop;
+	}
+
+	public static <T> SessionStoreExpiring<T> create(Eventloop eventloop) {
+		return new SessionStoreExpiring<>(eventloop);
+	}
+
+	public SessionStoreExpiring<T> withSessionTtl(Duration sessionTtl) {
+		checkArgument(!sessionTtl.isNegative() && !sessionTtl.isZero(), "Session TTL should be positive");
+		this.sessionTtlMillis = sessionTtl.toMillis();
+		return this;
+	}
+
+	public SessionStoreExpiring<T> withMaxSessions(int maxSessions) {
+		checkArgument(maxSessions > 0, "Max sessions should be positive");
+		this.maxSessions = maxSessions;
+		return this;
+	}
+
+	public SessionStoreExpiring<T> withSweepInterval(Duration sweepInterval) {
+		checkArgument(!sweepInterval.isNegative() && !sweepInterval.isZero(), "Sweep interval should be positive");
+		this.sweepIntervalMillis = sweepInterval.toMillis();
+		return this;
+	}
+
+	@Override
+	public Promise<Void> save(String sessionId, T sessionObject) {
+		int evicted = sessions.save(sessionId, sessionObject, now.currentTimeMillis(), maxSessions);
+		if (evicted != 0) {
+			evictedSessions.recordEvents(evicted);
+		}
+		if (sweep == null) {
+			scheduleSweep();
+		}
+		return Promise.complete();
+	}
+
+	@Override
+	public Promise<@Nullable T> get(String sessionId) {
+		return Promise.of(sessions.get(sessionId, now.currentTimeMillis(), sessionTtlMillis));
+	}
+
+	private void scheduleSweep() {
+		sweep = eventloop.delayBackground(sweepIntervalMillis, () -> {
+			sweep = null;
+			sweep();
+			if (!sessions.isEmpty()) {
+				scheduleSweep();
+			}
+		});
+	}
+
+	void sweep() {
+		int expired = sessions.sweep(now.currentTimeMillis(), sessionTtlMillis);
+		if (expired != 0) {
+			expiredSessions.recordEvents(expired);
+		}
+	}
+
+	// region JMX
+	@NotNull
+	@Override
+	public Eventloop getEventloop() {
+		return eventloop;
+	}
+
+	@JmxAttribute
+	public int getSessions() {
+		return sessions.size();
+	}
+
+	@JmxAttribute
+	public Duration getSessionTtl() {
+		return Duration.ofMillis(sessionTtlMillis);
+	}
+
+	@JmxAttribute
+	public void setSessionTtl(Duration sessionTtl) {
+		withSessionTtl(sessionTtl);
+	}
+
+	@JmxAttribute
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	@JmxAttribute
+	public void setMaxSessions(int maxSessions) {
+		withMaxSessions(maxSessions);
+	}
+
+	@JmxAttribute(extraSubAttributes = "totalCount")
+	public EventStats getExpiredSessions() {
+		return expiredSessions;
+	}
+
+	@JmxAttribute(extraSubAttributes = "totalCount")
+	public EventStats getEvictedSessions() {
+		return evictedSessions;
+	}
+	// endregion
+}
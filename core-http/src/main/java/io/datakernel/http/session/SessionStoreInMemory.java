@@ -8,6 +8,8 @@ import java.util.Map;
 
 /**
  * Extremely simple reference implementation of the session storage over a hash map.
+ * <p>
+ * Sessions are never removed from it, so {@link SessionStoreExpiring} should be used in production.
  */
 public final class SessionStoreInMemory<T> implements SessionStore<T> {
 	private final Map<String, T> store = new HashMap<>();
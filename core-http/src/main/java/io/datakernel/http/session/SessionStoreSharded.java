@@ -0,0 +1,242 @@
+package io.datakernel.http.session;
+
+import io.datakernel.async.Promise;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.jmx.ConcurrentJmxMBean;
+import io.datakernel.jmx.JmxAttribute;
+import io.datakernel.time.CurrentTimeProvider;
+import io.datakernel.util.ApplicationSettings;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.datakernel.util.Preconditions.checkArgument;
+
+/**
+ * In-memory session storage which may be shared by several worker eventloops.
+ * <p>
+ * Sessions are split into shards by their ids, each of the shards is locked separately,
+ * so that workers contend only when they access sessions of the same shard.
+ * Sessions expire and are evicted in the same way as in {@link SessionStoreExpiring},
+ * expired sessions are removed by a background task of the eventloop which has saved a session first,
+ * and the task runs while there are any sessions. If the task is overdue, for example because its eventloop
+ * has finished, it is taken over by the eventloop which saves a session next.
+ */
+public final class SessionStoreSharded<T> implements SessionStore<T>, ConcurrentJmxMBean {
+	public static final int DEFAULT_SHARDS = ApplicationSettings.getInt(SessionStoreSharded.class, "shards",
+			4 * Runtime.getRuntime().availableProcessors());
+
+	private final ExpiringSessions<T>[] shards;
+	private final int mask;
+
+	private volatile long sessionTtlMillis = SessionStoreExpiring.DEFAULT_SESSION_TTL.toMillis();
+	private volatile int maxSessionsPerShard;
+	private long sweepIntervalMillis = SessionStoreExpiring.DEFAULT_SWEEP_INTERVAL.toMillis();
+
+	CurrentTimeProvider now = CurrentTimeProvider.ofSystem();
+
+	/**
+	 * The scheduled sweep of expired sessions, or {@code null} if there is none
+	 */
+	private final AtomicReference<Sweep> scheduledSweep = new AtomicReference<>();
+
+	// region JMX
+	private final LongAdder expiredSessions = new LongAdder();
+	private final LongAdder evictedSessions = new LongAdder();
+	// endregion
+
+	@SuppressWarnings("unchecked")
+	private SessionStoreSharded(int shards) {
+		int size = Integer.highestOneBit(shards);
+		if (size < shards) {
+			size <<= 1;
+		}
+		this.shards = new ExpiringSessions[size];
+		for (int i = 0; i < size; i++) {
+			this.shards[i] = new ExpiringSessions<>();
+		}
+		this.mask = size - 1;
+		this.maxSessionsPerShard = maxSessionsPerShard(SessionStoreExpiring.DEFAULT_MAX_SESSIONS);
+	}
+
+	public static <T> SessionStoreSharded<T> create() {
+		return create(DEFAULT_SHARDS);
+	}
+
+	/**
+	 * Creates a store with given number of shards, which is rounded up to a power of two
+	 */
+	public static <T> SessionStoreSharded<T> create(int shards) {
+		checkArgument(shards > 0 && shards <= 1 << 16, "Number of shards should be in [1, 65536]");
+		return new SessionStoreSharded<>(shards);
+	}
+
+	public SessionStoreSharded<T> withSessionTtl(Duration sessionTtl) {
+		checkArgument(!sessionTtl.isNegative() && !sessionTtl.isZero(), "Session TTL should be positive");
+		this.sessionTtlMillis = sessionTtl.toMillis();
+		return this;
+	}
+
+	/**
+	 * Sets the limit of sessions, which is split evenly between shards
+	 */
+	public SessionStoreSharded<T> withMaxSessions(int maxSessions) {
+		checkArgument(maxSessions > 0, "Max sessions should be positive");
+		this.maxSessionsPerShard = maxSessionsPerShard(maxSessions);
+		return this;
+	}
+
+	public SessionStoreSharded<T> withSweepInterval(Duration sweepInterval) {
+		checkArgument(!sweepInterval.isNegative() && !sweepInterval.isZero(), "Sweep interval should be positive");
+		this.sweepIntervalMillis = sweepInterval.toMillis();
+		return this;
+	}
+
+	private int maxSessionsPerShard(int maxSessions) {
+		return Math.max(1, (maxSessions + mask) / shards.length);
+	}
+
+	private ExpiringSessions<T> shard(String sessionId) {
+		int hash = sessionId.hashCode();
+		return shards[(hash ^ (hash >>> 16)) & mask];
+	}
+
+	@Override
+	public Promise<Void> save(String sessionId, T sessionObject) {
+		ExpiringSessions<T> shard = shard(sessionId);
+		long timestamp = now.currentTimeMillis();
+		int evicted;
+		synchronized (shard) {
+			evicted = shard.save(sessionId, sessionObject, timestamp, maxSessionsPerShard);
+		}
+		if (evicted != 0) {
+			evictedSessions.add(evicted);
+		}
+		Sweep sweep = scheduledSweep.get();
+		// an overdue sweep is taken over, as the eventloop which has scheduled it may have finished
+		if (sweep == null || sweep.deadline < timestamp) {
+			Sweep next = new Sweep(timestamp + 2 * sweepIntervalMillis);
+			if (scheduledSweep.compareAndSet(sweep, next)) {
+				scheduleSweep(Eventloop.getCurrentEventloop(), next);
+			}
+		}
+		return Promise.complete();
+	}
+
+	@Override
+	public Promise<@Nullable T> get(String sessionId) {
+		ExpiringSessions<T> shard = shard(sessionId);
+		T sessionObject;
+		synchronized (shard) {
+			sessionObject = shard.get(sessionId, now.currentTimeMillis(), sessionTtlMillis);
+		}
+		return Promise.of(sessionObject);
+	}
+
+	private void scheduleSweep(Eventloop eventloop, Sweep sweep) {
+		eventloop.delayBackground(sweepIntervalMillis, () -> {
+			if (scheduledSweep.get() != sweep) {
+				// the sweep has been taken over by another eventloop
+				return;
+			}
+			if (sweep() != 0) {
+				Sweep next = new Sweep(now.currentTimeMillis() + 2 * sweepIntervalMillis);
+				if (scheduledSweep.compareAndSet(sweep, next)) {
+					scheduleSweep(eventloop, next);
+				}
+				return;
+			}
+			if (!scheduledSweep.compareAndSet(sweep, null)) {
+				return;
+			}
+			// a session could have been saved after the sweep, while the task was still considered scheduled
+			if (getSessions() != 0) {
+				Sweep next = new Sweep(now.currentTimeMillis() + 2 * sweepIntervalMillis);
+				if (scheduledSweep.compareAndSet(null, next)) {
+					scheduleSweep(eventloop, next);
+				}
+			}
+		});
+	}
+
+	private static final class Sweep {
+		/**
+		 * The time by which the sweep should have run, with a margin of one sweep interval
+		 */
+		final long deadline;
+
+		Sweep(long deadline) {
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * Removes expired sessions from all of the shards, locking one shard at a time
+	 *
+	 * @return number of remaining sessions
+	 */
+	int sweep() {
+		int remaining = 0;
+		for (ExpiringSessions<T> shard : shards) {
+			int expired;
+			synchronized (shard) {
+				expired = shard.sweep(now.currentTimeMillis(), sessionTtlMillis);
+				remaining += shard.size();
+			}
+			if (expired != 0) {
+				expiredSessions.add(expired);
+			}
+		}
+		return remaining;
+	}
+
+	// region JMX
+	@JmxAttribute
+	public int getSessions() {
+		int sessions = 0;
+		for (ExpiringSessions<T> shard : shards) {
+			synchronized (shard) {
+				sessions += shard.size();
+			}
+		}
+		return sessions;
+	}
+
+	@JmxAttribute
+	public int getShards() {
+		return shards.length;
+	}
+
+	@JmxAttribute
+	public Duration getSessionTtl() {
+		return Duration.ofMillis(sessionTtlMillis);
+	}
+
+	@JmxAttribute
+	public void setSessionTtl(Duration sessionTtl) {
+		withSessionTtl(sessionTtl);
+	}
+
+	@JmxAttribute
+	public int getMaxSessions() {
+		return maxSessionsPerShard * shards.length;
+	}
+
+	@JmxAttribute
+	public void setMaxSessions(int maxSessions) {
+		withMaxSessions(maxSessions);
+	}
+
+	@JmxAttribute
+	public long getExpiredSessions() {
+		return expiredSessions.sum();
+	}
+
+	@JmxAttribute
+	public long getEvictedSessions() {
+		return evictedSessions.sum();
+	}
+	// endregion
+}
@@ -0,0 +1,83 @@
+package io.datakernel.loader;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.http.FileRegion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+import static io.datakernel.util.Preconditions.checkState;
+
+/**
+ * An opened file of a {@link StaticLoader} or in-memory contents of a resource,
+ * along with its size and last modification time.
+ * <p>
+ * It owns its file channel or buf, which should either be sent or closed.
+ */
+public final class StaticFile {
+	@Nullable
+	private final Executor executor;
+	@Nullable
+	private final FileChannel channel;
+	@Nullable
+	private final ByteBuf buf;
+	private final long size;
+	private final long lastModified;
+
+	private StaticFile(@Nullable Executor executor, @Nullable FileChannel channel, @Nullable ByteBuf buf, long size, long lastModified) {
+		this.executor = executor;
+		this.channel = channel;
+		this.buf = buf;
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Wraps an opened file, the executor is used for blocking reads of the file
+	 * when it cannot be sent to a socket directly
+	 */
+	public static StaticFile of(@NotNull Executor executor, @NotNull FileChannel channel, long size, long lastModified) {
+		return new StaticFile(executor, channel, null, size, lastModified);
+	}
+
+	public static StaticFile ofBuf(@NotNull ByteBuf buf, long lastModified) {
+		return new StaticFile(null, null, buf, buf.readRemaining(), lastModified);
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns in-memory contents, or {@code null} if this is an opened file
+	 */
+	@Nullable
+	public ByteBuf getBuf() {
+		return buf;
+	}
+
+	public FileRegion toFileRegion(long position, long count) {
+		checkState(channel != null, "Contents are not backed by a file");
+		//noinspection ConstantConditions
+		return FileRegion.of(executor, channel, position, count);
+	}
+
+	public void close() {
+		if (buf != null) {
+			buf.recycle();
+			return;
+		}
+		try {
+			//noinspection ConstantConditions
+			channel.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
@@ -2,8 +2,11 @@ package io.datakernel.loader;
 
 import io.datakernel.async.Promise;
 import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.eventloop.Eventloop;
 import io.datakernel.exception.StacklessException;
+import io.datakernel.util.MemSize;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
 import java.util.HashMap;
@@ -22,14 +25,67 @@ public interface StaticLoader {
 
 	Promise<ByteBuf> load(String path);
 
+	/**
+	 * Opens a resource as a file, so that it can be sent without loading it into memory.
+	 * Returns a promise of {@code null} if the resource is not backed by a file.
+	 */
+	default Promise<@Nullable StaticFile> loadFile(String path) {
+		return Promise.of(null);
+	}
+
+	/**
+	 * Returns gzip-encoded contents of a resource, which may be sent as is to clients that accept gzip encoding,
+	 * along with the last modification time of the resource.
+	 * Returns a promise of {@code null} if such contents are not available.
+	 */
+	default Promise<@Nullable StaticFile> loadGzipped(String path) {
+		return Promise.of(null);
+	}
+
 	default StaticLoader filter(Predicate<String> predicate) {
-		return path -> predicate.test(path) ?
-				load(path) :
-				Promise.ofException(NOT_FOUND_EXCEPTION);
+		StaticLoader loader = this;
+		return new StaticLoader() {
+			@Override
+			public Promise<ByteBuf> load(String path) {
+				return predicate.test(path) ?
+						loader.load(path) :
+						Promise.ofException(NOT_FOUND_EXCEPTION);
+			}
+
+			@Override
+			public Promise<@Nullable StaticFile> loadFile(String path) {
+				return predicate.test(path) ?
+						loader.loadFile(path) :
+						Promise.ofException(NOT_FOUND_EXCEPTION);
+			}
+
+			@Override
+			public Promise<@Nullable StaticFile> loadGzipped(String path) {
+				return predicate.test(path) ?
+						loader.loadGzipped(path) :
+						Promise.ofException(NOT_FOUND_EXCEPTION);
+			}
+		};
 	}
 
 	default StaticLoader map(Function<String, String> fn) {
-		return path -> this.load(fn.apply(path));
+		StaticLoader loader = this;
+		return new StaticLoader() {
+			@Override
+			public Promise<ByteBuf> load(String path) {
+				return loader.load(fn.apply(path));
+			}
+
+			@Override
+			public Promise<@Nullable StaticFile> loadFile(String path) {
+				return loader.loadFile(fn.apply(path));
+			}
+
+			@Override
+			public Promise<@Nullable StaticFile> loadGzipped(String path) {
+				return loader.loadGzipped(fn.apply(path));
+			}
+		};
 	}
 
 	default StaticLoader subfolder(String subfolder) {
@@ -57,6 +113,13 @@ public interface StaticLoader {
 		return new StaticLoaderCache(loader, get, put);
 	}
 
+	/**
+	 * @see StaticLoaderLruCache
+	 */
+	static StaticLoaderLruCache lruCacheOf(Eventloop eventloop, StaticLoader loader, MemSize maxSize) {
+		return StaticLoaderLruCache.create(eventloop, loader, maxSize);
+	}
+
 	static StaticLoader ofClassPath(@NotNull Executor executor, String root) {
 		return StaticLoaderClassPath.create(executor, root);
 	}
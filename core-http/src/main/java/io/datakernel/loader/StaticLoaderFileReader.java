@@ -4,11 +4,17 @@ import io.datakernel.async.Promise;
 import io.datakernel.bytebuf.ByteBuf;
 import io.datakernel.bytebuf.ByteBufQueue;
 import io.datakernel.csp.file.ChannelFileReader;
+import io.datakernel.exception.StacklessException;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.concurrent.Executor;
 
+import static java.nio.file.StandardOpenOption.READ;
+
 class StaticLoaderFileReader implements StaticLoader {
 	private final Executor executor;
 	private final Path root;
@@ -32,16 +38,43 @@ class StaticLoaderFileReader implements StaticLoader {
 
 		return Promise.ofBlockingCallable(executor,
 				() -> {
-					if (Files.isRegularFile(file)) {
-						return null;
-					}
-					if (Files.isDirectory(file)) {
-						throw IS_A_DIRECTORY;
-					} else {
-						throw NOT_FOUND_EXCEPTION;
-					}
+					checkRegularFile(file);
+					return null;
 				})
 				.then($ -> ChannelFileReader.open(executor, file))
 				.then(cfr -> cfr.toCollector(ByteBufQueue.collector()));
 	}
+
+	@Override
+	public Promise<StaticFile> loadFile(String path) {
+		Path file = root.resolve(path).normalize();
+
+		if (!file.startsWith(root)) {
+			return Promise.ofException(NOT_FOUND_EXCEPTION);
+		}
+
+		return Promise.ofBlockingCallable(executor,
+				() -> {
+					checkRegularFile(file);
+					FileChannel channel = FileChannel.open(file, READ);
+					try {
+						BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+						return StaticFile.of(executor, channel, attributes.size(), attributes.lastModifiedTime().toMillis());
+					} catch (IOException e) {
+						channel.close();
+						throw e;
+					}
+				});
+	}
+
+	private static void checkRegularFile(Path file) throws StacklessException {
+		if (Files.isRegularFile(file)) {
+			return;
+		}
+		if (Files.isDirectory(file)) {
+			throw IS_A_DIRECTORY;
+		} else {
+			throw NOT_FOUND_EXCEPTION;
+		}
+	}
 }
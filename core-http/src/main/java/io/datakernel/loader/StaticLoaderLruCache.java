@@ -0,0 +1,291 @@
+package io.datakernel.loader;
+
+import io.datakernel.async.Promise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.http.GzipProcessorUtils;
+import io.datakernel.jmx.EventloopJmxMBean;
+import io.datakernel.jmx.JmxAttribute;
+import io.datakernel.jmx.JmxOperation;
+import io.datakernel.util.ApplicationSettings;
+import io.datakernel.util.MemSize;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import static io.datakernel.bytebuf.ByteBuf.wrapForReading;
+import static io.datakernel.util.Preconditions.checkArgument;
+
+/**
+ * A cache of resources loaded by some other {@link StaticLoader}, which is bounded by the total size of cached contents.
+ * Least recently used resources are evicted once the limit is exceeded.
+ * <p>
+ * Cached contents are kept as byte arrays and are wrapped into bufs without copying, so that they are ready to be sent.
+ * Cached resources are returned by {@link #loadFile} along with their last modification time, so that they can be validated.
+ * Optionally, a gzipped copy of each resource is kept along with it and is returned by {@link #loadGzipped},
+ * so that responses to requests which accept gzip encoding are not compressed over and over again.
+ * <p>
+ * Resources which are larger than {@link #withMaxEntrySize max entry size} are not cached,
+ * the ones that are backed by files are sent by the {@link io.datakernel.http.StaticServlet StaticServlet} directly from them.
+ * <p>
+ * This class is not thread-safe and should be used from the thread of its eventloop.
+ */
+public final class StaticLoaderLruCache implements StaticLoader, EventloopJmxMBean {
+	public static final MemSize DEFAULT_MAX_SIZE = ApplicationSettings.getMemSize(StaticLoaderLruCache.class, "maxSize", MemSize.megabytes(64));
+	public static final double DEFAULT_MAX_GZIP_RATIO = ApplicationSettings.getDouble(StaticLoaderLruCache.class, "maxGzipRatio", 0.9);
+
+	/**
+	 * An estimated memory footprint of a cache entry in addition to its contents
+	 */
+	static final int ENTRY_OVERHEAD = 96;
+
+	private final Eventloop eventloop;
+	private final StaticLoader loader;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long maxSize;
+	private int maxEntrySize;
+	private boolean gzip;
+	private double maxGzipRatio = DEFAULT_MAX_GZIP_RATIO;
+
+	private long size;
+
+	// region JMX
+	private long hits;
+	private long misses;
+	private long evictions;
+	// endregion
+
+	private static final class Entry {
+		final byte[] bytes;
+		@Nullable
+		final byte[] gzipped;
+		final long lastModified;
+		final long size;
+
+		Entry(String path, byte[] bytes, @Nullable byte[] gzipped, long lastModified) {
+			this.bytes = bytes;
+			this.gzipped = gzipped;
+			this.lastModified = lastModified;
+			this.size = ENTRY_OVERHEAD + 2L * path.length() + bytes.length + (gzipped != null ? gzipped.length : 0);
+		}
+	}
+
+	private StaticLoaderLruCache(Eventloop eventloop, StaticLoader loader, long maxSize) {
+		this.eventloop = eventloop;
+		this.loader = loader;
+		this.maxSize = maxSize;
+		this.maxEntrySize = (int) Math.min(Integer.MAX_VALUE, maxSize / 16);
+	}
+
+	public static StaticLoaderLruCache create(Eventloop eventloop, StaticLoader loader) {
+		return create(eventloop, loader, DEFAULT_MAX_SIZE);
+	}
+
+	public static StaticLoaderLruCache create(Eventloop eventloop, StaticLoader loader, MemSize maxSize) {
+		checkArgument(maxSize.toLong() > 0, "Max size should be positive");
+		return new StaticLoaderLruCache(eventloop, loader, maxSize.toLong());
+	}
+
+	/**
+	 * Sets max size of a single resource to be cached, {@code 1/16} of cache size by default
+	 */
+	public StaticLoaderLruCache withMaxEntrySize(MemSize maxEntrySize) {
+		checkArgument(maxEntrySize.toLong() > 0, "Max entry size should be positive");
+		this.maxEntrySize = maxEntrySize.toInt();
+		return this;
+	}
+
+	/**
+	 * Enables keeping of gzipped copies of cached resources.
+	 * A copy is kept only if its size does not exceed given ratio of the size of a resource,
+	 * so that resources which are compressed already do not waste memory.
+	 */
+	public StaticLoaderLruCache withGzip(double maxGzipRatio) {
+		checkArgument(maxGzipRatio > 0 && maxGzipRatio <= 1, "Max gzip ratio should be in (0, 1]");
+		this.gzip = true;
+		this.maxGzipRatio = maxGzipRatio;
+		return this;
+	}
+
+	public StaticLoaderLruCache withGzip() {
+		return withGzip(maxGzipRatio);
+	}
+
+	@Override
+	public Promise<ByteBuf> load(String path) {
+		Entry entry = entries.get(path);
+		if (entry != null) {
+			hits++;
+			return Promise.of(wrapForReading(entry.bytes));
+		}
+		misses++;
+		return loader.load(path)
+				.whenResult(buf -> put(path, buf, eventloop.currentTimeMillis()));
+	}
+
+	/**
+	 * Does not count cache hits, as the servlet looks a resource up once again
+	 * if its gzipped contents are not available
+	 */
+	@Override
+	public Promise<@Nullable StaticFile> loadGzipped(String path) {
+		Entry entry = entries.get(path);
+		if (entry == null || entry.gzipped == null) {
+			return Promise.of(null);
+		}
+		return Promise.of(StaticFile.ofBuf(wrapForReading(entry.gzipped), entry.lastModified));
+	}
+
+	/**
+	 * Returns cached contents of a resource along with its last modification time.
+	 * Files of underlying loader are returned only for resources which are too large to be cached.
+	 * <p>
+	 * Resources which are not backed by files are considered to be modified at the moment they are cached.
+	 */
+	@Override
+	public Promise<@Nullable StaticFile> loadFile(String path) {
+		Entry entry = entries.get(path);
+		if (entry != null) {
+			hits++;
+			return Promise.of(StaticFile.ofBuf(wrapForReading(entry.bytes), entry.lastModified));
+		}
+		misses++;
+		return loader.loadFile(path)
+				.then(file -> {
+					if (file != null && file.getSize() > maxEntrySize) {
+						return Promise.of(file);
+					}
+					long lastModified;
+					if (file != null) {
+						lastModified = file.getLastModified();
+						file.close();
+					} else {
+						lastModified = eventloop.currentTimeMillis();
+					}
+					return loader.load(path)
+							.map(buf -> {
+								Entry loaded = put(path, buf, lastModified);
+								if (loaded == null) {
+									return StaticFile.ofBuf(buf, lastModified);
+								}
+								buf.recycle();
+								return StaticFile.ofBuf(wrapForReading(loaded.bytes), lastModified);
+							});
+				});
+	}
+
+	public void invalidate(String path) {
+		Entry entry = entries.remove(path);
+		if (entry != null) {
+			size -= entry.size;
+		}
+	}
+
+	@Nullable
+	private Entry put(String path, ByteBuf buf, long lastModified) {
+		int length = buf.readRemaining();
+		if (length > maxEntrySize) {
+			return null;
+		}
+		byte[] bytes = buf.getArray();
+		byte[] gzipped = null;
+		if (gzip && length != 0) {
+			ByteBuf gzippedBuf = GzipProcessorUtils.toGzip(wrapForReading(bytes));
+			if (gzippedBuf.readRemaining() <= length * maxGzipRatio) {
+				gzipped = gzippedBuf.getArray();
+			}
+			gzippedBuf.recycle();
+		}
+		Entry entry = new Entry(path, bytes, gzipped, lastModified);
+		Entry previous = entries.put(path, entry);
+		if (previous != null) {
+			size -= previous.size;
+		}
+		size += entry.size;
+		evict();
+		return entry;
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			size -= iterator.next().size;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	// region JMX
+	@NotNull
+	@Override
+	public Eventloop getEventloop() {
+		return eventloop;
+	}
+
+	@JmxAttribute
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	@JmxAttribute
+	public void setMaxSize(long maxSize) {
+		checkArgument(maxSize > 0, "Max size should be positive");
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	@JmxAttribute(description = "estimated number of bytes retained by cached resources")
+	public long getBytesResident() {
+		return size;
+	}
+
+	@JmxAttribute
+	public int getEntries() {
+		return entries.size();
+	}
+
+	@JmxAttribute
+	public long getHits() {
+		return hits;
+	}
+
+	@JmxAttribute
+	public long getMisses() {
+		return misses;
+	}
+
+	@JmxAttribute
+	public double getHitRatio() {
+		long total = hits + misses;
+		return total != 0 ? (double) hits / total : 0.0;
+	}
+
+	@JmxAttribute
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@JmxOperation
+	public void invalidateAll() {
+		entries.clear();
+		size = 0;
+	}
+
+	@JmxOperation
+	public void resetStats() {
+		hits = misses = evictions = 0;
+	}
+	// endregion
+
+	@Override
+	public String toString() {
+		return "StaticLoaderLruCache{" +
+				"entries=" + entries.size() +
+				", size=" + size +
+				", maxSize=" + maxSize +
+				'}';
+	}
+}
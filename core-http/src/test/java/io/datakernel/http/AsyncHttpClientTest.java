@@ -38,6 +38,7 @@ import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static io.datakernel.async.TestUtils.await;
@@ -49,6 +50,7 @@ import static io.datakernel.http.HttpClientConnection.INVALID_RESPONSE;
 import static io.datakernel.test.TestUtils.assertComplete;
 import static io.datakernel.test.TestUtils.getFreePort;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.*;
 
@@ -172,4 +174,128 @@ public final class AsyncHttpClientTest {
 				}));
 		assertSame(READ_TIMEOUT_ERROR, e);
 	}
+
+	@Test
+	public void testMaxConnectionsPerHost() throws IOException {
+		Eventloop eventloop = Eventloop.getCurrentEventloop();
+		int[] active = {0};
+		int[] maxActive = {0};
+		AsyncHttpServer server = AsyncHttpServer.create(eventloop,
+				request -> {
+					maxActive[0] = Math.max(maxActive[0], ++active[0]);
+					return Promises.delay(Duration.ofMillis(10), HttpResponse.ok200().withBody(wrapAscii(request.getPath())))
+							.whenComplete(($, e) -> active[0]--);
+				})
+				.withListenPort(PORT);
+		server.listen();
+
+		JmxInspector inspector = new JmxInspector();
+		AsyncHttpClient client = AsyncHttpClient.create(eventloop)
+				.withKeepAliveTimeout(Duration.ofSeconds(10))
+				.withMaxConnectionsPerHost(2)
+				.withInspector(inspector);
+
+		List<String> bodies = await(Promises.toList(IntStream.range(0, 10)
+				.mapToObj(i -> client.request(HttpRequest.get("http://127.0.0.1:" + PORT + "/" + i))
+						.then(response -> response.loadBody()
+								.map(body -> body.getString(UTF_8)))))
+				.whenComplete(($, e) -> {
+					server.close();
+					client.stop();
+				}));
+
+		assertEquals(IntStream.range(0, 10).mapToObj(i -> "/" + i).collect(Collectors.toList()), bodies);
+		assertEquals(2, maxActive[0]);
+		assertEquals(0, client.getPendingRequestsCount());
+		inspector.getQueueTime().refresh(eventloop.currentTimeMillis());
+		assertEquals(8, inspector.getQueueTime().getCount());
+	}
+
+	@Test
+	public void testMaxPendingRequestsPerHost() throws IOException {
+		Eventloop eventloop = Eventloop.getCurrentEventloop();
+		AsyncHttpServer server = AsyncHttpServer.create(eventloop,
+				request -> Promises.delay(Duration.ofMillis(10), HttpResponse.ok200()))
+				.withListenPort(PORT);
+		server.listen();
+
+		JmxInspector inspector = new JmxInspector();
+		AsyncHttpClient client = AsyncHttpClient.create(eventloop)
+				.withMaxConnectionsPerHost(1)
+				.withMaxPendingRequestsPerHost(2)
+				.withInspector(inspector);
+
+		List<Promise<Integer>> codes = IntStream.range(0, 5)
+				.mapToObj(i -> client.request(HttpRequest.get("http://127.0.0.1:" + PORT))
+						.thenEx((response, e) -> Promise.of(e == null ? response.getCode() : -1)))
+				.collect(Collectors.toList());
+		assertEquals(2, client.getPendingRequestsCount());
+
+		List<Integer> result = await(Promises.toList(codes)
+				.whenComplete(($, e) -> {
+					server.close();
+					client.stop();
+				}));
+
+		assertEquals(asList(200, 200, 200, -1, -1), result);
+		inspector.getTotalRequests().refresh(eventloop.currentTimeMillis());
+		inspector.getQueueOverflows().refresh(eventloop.currentTimeMillis());
+		assertEquals(2, inspector.getQueueOverflows().getTotalCount());
+		assertEquals(0, inspector.getActiveRequests());
+	}
+
+	@Test
+	public void testPendingRequestTimeout() throws IOException {
+		Eventloop eventloop = Eventloop.getCurrentEventloop();
+		AsyncHttpServer server = AsyncHttpServer.create(eventloop,
+				request -> Promises.delay(Duration.ofMillis(100), HttpResponse.ok200()))
+				.withListenPort(PORT);
+		server.listen();
+
+		AsyncHttpClient client = AsyncHttpClient.create(eventloop)
+				.withMaxConnectionsPerHost(1)
+				.withPendingRequestTimeout(Duration.ofMillis(20));
+
+		List<Throwable> errors = await(Promises.toList(IntStream.range(0, 2)
+				.mapToObj(i -> client.request(HttpRequest.get("http://127.0.0.1:" + PORT))
+						.thenEx((response, e) -> Promise.of(e))))
+				.whenComplete(($, e) -> {
+					server.close();
+					client.stop();
+				}));
+
+		assertNull(errors.get(0));
+		assertSame(AsyncHttpClient.PENDING_REQUEST_TIMEOUT_ERROR, errors.get(1));
+		assertEquals(0, client.getPendingRequestsCount());
+	}
+
+	@Test
+	public void testPendingRequestsFailOnStop() throws IOException {
+		Eventloop eventloop = Eventloop.getCurrentEventloop();
+		int[] served = {0};
+		AsyncHttpServer server = AsyncHttpServer.create(eventloop,
+				request -> {
+					served[0]++;
+					return Promises.delay(Duration.ofMillis(10), HttpResponse.ok200());
+				})
+				.withListenPort(PORT);
+		server.listen();
+
+		AsyncHttpClient client = AsyncHttpClient.create(eventloop)
+				.withMaxConnectionsPerHost(1);
+
+		List<Promise<Throwable>> errors = IntStream.range(0, 3)
+				.mapToObj(i -> client.request(HttpRequest.get("http://127.0.0.1:" + PORT))
+						.thenEx((response, e) -> Promise.of(e)))
+				.collect(Collectors.toList());
+		client.stop();
+
+		List<Throwable> result = await(Promises.toList(errors)
+				.whenComplete(($, e) -> server.close()));
+		assertNull(result.get(0));
+		assertSame(AsyncHttpClient.CLIENT_STOPPED, result.get(1));
+		assertSame(AsyncHttpClient.CLIENT_STOPPED, result.get(2));
+		assertEquals(1, served[0]);
+		assertEquals(0, client.getConnectionsCount());
+	}
 }
@@ -318,6 +318,60 @@ public final class AsyncHttpServerTest {
 		thread.join();
 	}
 
+	@Test
+	public void testPipelinedRequestsServedConcurrently() throws Exception {
+		assertEquals(3, doTestPipelinedRequests(AsyncHttpServer.MAX_IN_FLIGHT_REQUESTS));
+	}
+
+	@Test
+	public void testPipelinedRequestsWithMaxInFlightRequests() throws Exception {
+		assertEquals(1, doTestPipelinedRequests(1));
+	}
+
+	/**
+	 * Sends three pipelined GET requests, which are served in reverse order, followed by a POST request,
+	 * and returns the maximum number of requests that were served concurrently
+	 */
+	private int doTestPipelinedRequests(int maxInFlightRequests) throws Exception {
+		Eventloop eventloop = Eventloop.create().withFatalErrorHandler(rethrowOnAnyError()).withCurrentThread();
+		int port = getFreePort();
+		int[] serving = {0};
+		int[] maxServing = {0};
+		AsyncHttpServer server = AsyncHttpServer.create(eventloop,
+				request -> {
+					if (request.getMethod() == HttpMethod.POST) {
+						assertEquals(0, serving[0]);
+					}
+					maxServing[0] = Math.max(maxServing[0], ++serving[0]);
+					String path = request.getPath();
+					return Promises.delay(100 - 30 * path.length(), HttpResponse.ok200().withBody(encodeAscii(path)))
+							.whenComplete(($, e) -> serving[0]--);
+				})
+				.withListenPort(port)
+				.withMaxInFlightRequests(maxInFlightRequests);
+		server.listen();
+		Thread thread = new Thread(eventloop);
+		thread.start();
+
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress("localhost", port));
+			socket.getOutputStream().write(encodeAscii("" +
+					"GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+					"GET /bb HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+					"GET /ccc HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+					"POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4\r\n\r\nbody"));
+
+			readAndAssert(socket.getInputStream(), "HTTP/1.1 200 OK\r\nConnection: keep-alive\r\nContent-Length: 2\r\n\r\n/a");
+			readAndAssert(socket.getInputStream(), "HTTP/1.1 200 OK\r\nConnection: keep-alive\r\nContent-Length: 3\r\n\r\n/bb");
+			readAndAssert(socket.getInputStream(), "HTTP/1.1 200 OK\r\nConnection: keep-alive\r\nContent-Length: 4\r\n\r\n/ccc");
+			readAndAssert(socket.getInputStream(), "HTTP/1.1 200 OK\r\nConnection: keep-alive\r\nContent-Length: 1\r\n\r\n/");
+		}
+
+		server.closeFuture().get();
+		thread.join();
+		return maxServing[0];
+	}
+
 	@Test
 	public void testBigHttpMessage() throws Exception {
 		int port = getFreePort();
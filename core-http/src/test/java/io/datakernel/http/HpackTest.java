@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.http;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufPool;
+import io.datakernel.exception.ParseException;
+import io.datakernel.test.rules.ByteBufRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.datakernel.bytebuf.ByteBufStrings.decodeAscii;
+import static io.datakernel.bytebuf.ByteBufStrings.encodeAscii;
+import static org.junit.Assert.*;
+
+public final class HpackTest {
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	// requests of RFC 7541, Appendix C.4, which are encoded with Huffman coding and share the dynamic table
+	private static final String[][] REQUESTS = {
+			{":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"},
+			{":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com", "cache-control", "no-cache"},
+			{":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com", "custom-key", "custom-value"}
+	};
+	private static final String[] ENCODED_REQUESTS = {
+			"828684418cf1e3c2e5f23a6ba0ab90f4ff",
+			"828684be5886a8eb10649cbf",
+			"828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"
+	};
+
+	@Test
+	public void testEncodesRfcExamples() {
+		Hpack.Encoder encoder = new Hpack.Encoder();
+		for (int i = 0; i < REQUESTS.length; i++) {
+			assertEquals(ENCODED_REQUESTS[i], toHex(encode(encoder, REQUESTS[i])));
+		}
+	}
+
+	@Test
+	public void testDecodesRfcExamples() throws ParseException {
+		Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_HEADER_TABLE_SIZE);
+		for (int i = 0; i < REQUESTS.length; i++) {
+			assertArrayEquals(REQUESTS[i], decode(decoder, fromHex(ENCODED_REQUESTS[i])));
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws ParseException {
+		Hpack.Encoder encoder = new Hpack.Encoder();
+		Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_HEADER_TABLE_SIZE);
+		for (int i = 0; i < 1000; i++) {
+			String[] fields = {
+					":status", i % 2 == 0 ? "200" : "404",
+					"content-type", "text/plain; charset=utf-8",
+					"x-request-id", "request-" + (i % 100),
+					"x-binary", "\u0001\u007f" + i,
+					"set-cookie", "session=" + i
+			};
+			assertArrayEquals(fields, decode(decoder, encode(encoder, fields)));
+		}
+	}
+
+	@Test
+	public void testTableSizeUpdate() throws ParseException {
+		Hpack.Encoder encoder = new Hpack.Encoder();
+		Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_HEADER_TABLE_SIZE);
+		String[] fields = {"x-custom", "value"};
+		assertArrayEquals(fields, decode(decoder, encode(encoder, fields)));
+		encoder.setMaxTableSize(0);
+		assertArrayEquals(fields, decode(decoder, encode(encoder, fields)));
+		assertArrayEquals(fields, decode(decoder, encode(encoder, fields)));
+	}
+
+	@Test
+	public void testInvalidIndex() {
+		Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_HEADER_TABLE_SIZE);
+		try {
+			decode(decoder, fromHex("be"));
+			fail();
+		} catch (ParseException e) {
+			assertSame(Hpack.INVALID_INDEX, e);
+		}
+	}
+
+	private static byte[] encode(Hpack.Encoder encoder, String[] fields) {
+		ByteBuf buf = ByteBufPool.allocate(1024);
+		encoder.beginBlock(buf);
+		for (int i = 0; i < fields.length; i += 2) {
+			encoder.encode(buf, encodeAscii(fields[i]), encodeAscii(fields[i + 1]), fields[i].equals("set-cookie"));
+		}
+		return buf.asArray();
+	}
+
+	private static String[] decode(Hpack.Decoder decoder, byte[] block) throws ParseException {
+		List<String> fields = new ArrayList<>();
+		decoder.decode(ByteBuf.wrapForReading(block), (name, value) -> {
+			fields.add(decodeAscii(name));
+			fields.add(decodeAscii(value));
+		});
+		return fields.toArray(new String[0]);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xFF));
+		}
+		return sb.toString();
+	}
+
+	private static byte[] fromHex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+}
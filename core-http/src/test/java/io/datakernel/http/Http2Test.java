@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufPool;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.csp.ChannelSupplier;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.test.rules.ByteBufRule;
+import io.datakernel.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static io.datakernel.async.TestUtils.await;
+import static io.datakernel.test.TestUtils.getFreePort;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public final class Http2Test {
+	private static final int PORT = getFreePort();
+	private static final String URL = "http://127.0.0.1:" + PORT;
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	private static AsyncHttpServer startServer(boolean http2) throws IOException {
+		AsyncHttpServer server = AsyncHttpServer.create(Eventloop.getCurrentEventloop(),
+				request -> {
+					String path = request.getPath();
+					if (path.equals("/stream")) {
+						int chunks = Integer.parseInt(request.getQueryParameter("chunks"));
+						return Promise.of(HttpResponse.ok200()
+								.withBodyStream(ChannelSupplier.ofStream(IntStream.range(0, chunks).mapToObj(Http2Test::chunk))));
+					}
+					if (path.equals("/echo")) {
+						return request.loadBody()
+								.map(body -> HttpResponse.ok200().withBody(encode(request.getMethod() + " " + body.readRemaining())));
+					}
+					if (path.equals("/delay")) {
+						return Promises.delay(Duration.ofMillis(10), HttpResponse.ok200().withBody(encode(request.getQueryParameter("id"))));
+					}
+					return Promise.of(HttpResponse.ok200()
+							.withHeader(HttpHeaders.of("X-Path"), path)
+							.withBody(encode("Hello, " + request.getHeader(HttpHeaders.HOST))));
+				})
+				.withHttp2(http2)
+				.withListenPort(PORT);
+		server.listen();
+		return server;
+	}
+
+	@Test
+	public void testPriorKnowledge() throws IOException {
+		AsyncHttpServer server = startServer(true);
+		AsyncHttpClient client = AsyncHttpClient.create(Eventloop.getCurrentEventloop())
+				.withKeepAliveTimeout(Duration.ofSeconds(10))
+				.withHttp2PriorKnowledge();
+
+		String body = await(client.request(HttpRequest.get(URL + "/hello"))
+				.then(response -> {
+					assertEquals(200, response.getCode());
+					assertEquals("/hello", response.getHeader(HttpHeaders.of("X-Path")));
+					assertEquals(1, client.getConnectionsHttp2Count());
+					assertEquals(1, server.getConnectionsHttp2Count());
+					return response.loadBody();
+				})
+				.map(buf -> buf.getString(UTF_8))
+				.whenComplete(($, e) -> close(server, client)));
+		assertEquals("Hello, 127.0.0.1:" + PORT, body);
+	}
+
+	@Test
+	public void testUpgrade() throws IOException {
+		AsyncHttpServer server = startServer(true);
+		AsyncHttpClient client = AsyncHttpClient.create(Eventloop.getCurrentEventloop())
+				.withKeepAliveTimeout(Duration.ofSeconds(10))
+				.withHttp2Upgrade();
+
+		List<String> bodies = await(client.request(HttpRequest.get(URL + "/first"))
+				.then(response -> response.loadBody().map(buf -> buf.getString(UTF_8)))
+				.then(first -> {
+					assertEquals(1, client.getConnectionsHttp2Count());
+					return client.request(HttpRequest.post(URL + "/echo").withBody(encode("post body")))
+							.then(response -> response.loadBody().map(buf -> buf.getString(UTF_8)))
+							.map(second -> {
+								assertEquals(1, client.getConnectionsCount());
+								List<String> list = new ArrayList<>();
+								list.add(first);
+								list.add(second);
+								return list;
+							});
+				})
+				.whenComplete(($, e) -> close(server, client)));
+		assertEquals("Hello, 127.0.0.1:" + PORT, bodies.get(0));
+		assertEquals("POST 9", bodies.get(1));
+	}
+
+	@Test
+	public void testUpgradeRejected() throws IOException {
+		AsyncHttpServer server = startServer(false);
+		AsyncHttpClient client = AsyncHttpClient.create(Eventloop.getCurrentEventloop())
+				.withKeepAliveTimeout(Duration.ofSeconds(10))
+				.withHttp2Upgrade();
+
+		String body = await(client.request(HttpRequest.get(URL + "/first"))
+				.then(response -> response.loadBody())
+				.then(buf -> client.request(HttpRequest.get(URL + "/second")))
+				.then(response -> {
+					assertEquals(0, client.getConnectionsHttp2Count());
+					return response.loadBody();
+				})
+				.map(buf -> buf.getString(UTF_8))
+				.whenComplete(($, e) -> close(server, client)));
+		assertEquals("Hello, 127.0.0.1:" + PORT, body);
+	}
+
+	@Test
+	public void testHttp1ClientOfHttp2Server() throws IOException {
+		AsyncHttpServer server = startServer(true);
+		AsyncHttpClient client = AsyncHttpClient.create(Eventloop.getCurrentEventloop());
+
+		String body = await(client.request(HttpRequest.get(URL + "/hello"))
+				.then(response -> response.loadBody())
+				.map(buf -> buf.getString(UTF_8))
+				.whenComplete(($, e) -> close(server, client)));
+		assertEquals("Hello, 127.0.0.1:" + PORT, body);
+	}
+
+	@Test
+	public void testMultiplexing() throws IOException {
+		AsyncHttpServer server = startServer(true);
+		AsyncHttpClient client = AsyncHttpClient.create(Eventloop.getCurrentEventloop())
+				.withKeepAliveTimeout(Duration.ofSeconds(10))
+				.withHttp2PriorKnowledge();
+
+		int requests = 500;
+		List<Promise<String>> responses = new ArrayList<>();
+		for (int i = 0; i < requests; i++) {
+			responses.add(client.request(HttpRequest.get(URL + "/delay?id=" + i))
+					.then(response -> response.loadBody())
+					.map(buf -> buf.getString(UTF_8)));
+		}
+		List<String> bodies = await(Promises.toList(responses)
+				.whenComplete(($, e) -> {
+					assertEquals(1, server.getConnectionsCount());
+					close(server, client);
+				}));
+		for (int i = 0; i < requests; i++) {
+			assertEquals(Integer.toString(i), bodies.get(i));
+		}
+	}
+
+	@Test
+	public void testFlowControlOfLargeBodies() throws IOException {
+		AsyncHttpServer server = startServer(true);
+		AsyncHttpClient client = AsyncHttpClient.create(Eventloop.getCurrentEventloop())
+				.withKeepAliveTimeout(Duration.ofSeconds(10))
+				.withHttp2PriorKnowledge();
+
+		// bodies exceed both the initial windows of streams and the window of the connection
+		int chunks = 160;
+		List<Promise<ByteBuf>> responses = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			responses.add(client.request(HttpRequest.get(URL + "/stream?chunks=" + chunks))
+					.then(response -> response.getBodyStream().toCollector(ByteBufQueue.collector())));
+		}
+		Promise<String> echo = client.request(HttpRequest.post(URL + "/echo")
+				.withBodyStream(ChannelSupplier.ofStream(IntStream.range(0, chunks).mapToObj(Http2Test::chunk))))
+				.then(response -> response.loadBody())
+				.map(buf -> buf.getString(UTF_8));
+		List<ByteBuf> bodies = await(Promises.toList(responses)
+				.then(list -> echo.map($ -> list))
+				.whenComplete(($, e) -> close(server, client)));
+
+		assertEquals("POST " + chunks * CHUNK_SIZE, echo.getResult());
+		byte[] expected = new byte[CHUNK_SIZE];
+		byte[] actual = new byte[CHUNK_SIZE];
+		for (ByteBuf body : bodies) {
+			assertEquals(chunks * CHUNK_SIZE, body.readRemaining());
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				Arrays.fill(expected, (byte) chunk);
+				body.read(actual);
+				assertArrayEquals(expected, actual);
+			}
+			body.recycle();
+		}
+	}
+
+	private static ByteBuf chunk(int i) {
+		ByteBuf buf = ByteBufPool.allocate(CHUNK_SIZE);
+		for (int j = 0; j < CHUNK_SIZE; j++) {
+			buf.writeByte((byte) i);
+		}
+		return buf;
+	}
+
+	private static ByteBuf encode(String string) {
+		return ByteBuf.wrapForReading(string.getBytes(UTF_8));
+	}
+
+	private static void close(AsyncHttpServer server, AsyncHttpClient client) {
+		server.close();
+		client.stop();
+	}
+}
@@ -358,4 +358,80 @@ public final class RoutingServletTest {
 		check(main.serve(HttpRequest.get(TEMPLATE + "/method/yumgn?query=string")), "Success: ", 200);
 		check(main.serve(HttpRequest.get(TEMPLATE + "/method/yumgn/first?query=string")), "Success: first", 200);
 	}
+
+	@Test
+	public void testEncodedParameter() {
+		RoutingServlet main = RoutingServlet.create()
+				.map(GET, "/user/:name/:id", request -> Promise.of(HttpResponse.ofCode(200)
+						.withBody(wrapUtf8(request.getPathParameter("name") + " " + request.getPathParameters().get("id")))));
+
+		check(main.serve(HttpRequest.get(TEMPLATE + "/user/John%20Doe/1?query=a/b")), "John Doe 1", 200);
+	}
+
+	@Test
+	public void testStaticRouteOverParameter() {
+		RoutingServlet main = RoutingServlet.create()
+				.map(GET, "/user/:id", request -> Promise.of(HttpResponse.ofCode(200)
+						.withBody(wrapUtf8("user " + request.getPathParameter("id")))))
+				.map(GET, "/user/me", request -> Promise.of(HttpResponse.ofCode(200)
+						.withBody(wrapUtf8("me " + request.getPathParameters().size()))))
+				.map(GET, "/user/:id/posts/:post", request -> Promise.of(HttpResponse.ofCode(200)
+						.withBody(wrapUtf8(request.getPathParameter("id") + " " + request.getPathParameter("post")))));
+
+		check(main.serve(HttpRequest.get(TEMPLATE + "/user/me")), "me 0", 200);
+		check(main.serve(HttpRequest.get(TEMPLATE + "/user/42")), "user 42", 200);
+		check(main.serve(HttpRequest.get(TEMPLATE + "/user/me/posts/7")), "me 7", 200);
+		check(main.serve(HttpRequest.get(TEMPLATE + "/user/42/posts")), "", 404);
+	}
+
+	@Test
+	public void testMappingAfterServing() {
+		RoutingServlet subtree = RoutingServlet.create();
+		RoutingServlet main = RoutingServlet.create()
+				.map(GET, "/a", request -> Promise.of(HttpResponse.ofCode(200).withBody(wrapUtf8("a"))))
+				.merge("/b", subtree);
+
+		check(main.serve(HttpRequest.get(TEMPLATE + "/a")), "a", 200);
+		check(main.serve(HttpRequest.get(TEMPLATE + "/b/c")), "", 404);
+
+		RoutingServlet mergedSubtree = main.getSubtree("/b");
+		assert mergedSubtree != null;
+		mergedSubtree.map(GET, "/c", request -> Promise.of(HttpResponse.ofCode(200).withBody(wrapUtf8("c"))));
+
+		check(main.serve(HttpRequest.get(TEMPLATE + "/b/c")), "c", 200);
+	}
+
+	@Test
+	public void testMappingIntoSharedSubtree() {
+		RoutingServlet shared = RoutingServlet.create()
+				.map(GET, "/x/a", request -> Promise.of(HttpResponse.ofCode(200).withBody(wrapUtf8("a"))));
+		RoutingServlet first = RoutingServlet.create().merge(shared);
+		RoutingServlet second = RoutingServlet.create().merge("/second", shared);
+
+		check(first.serve(HttpRequest.get(TEMPLATE + "/x/a")), "a", 200);
+		check(second.serve(HttpRequest.get(TEMPLATE + "/second/x/b")), "", 404);
+
+		RoutingServlet sharedSubtree = first.getSubtree("/x");
+		assert sharedSubtree != null;
+		sharedSubtree.map(GET, "/b", request -> Promise.of(HttpResponse.ofCode(200).withBody(wrapUtf8("b"))));
+
+		check(first.serve(HttpRequest.get(TEMPLATE + "/x/b")), "b", 200);
+		check(second.serve(HttpRequest.get(TEMPLATE + "/second/x/b")), "b", 200);
+	}
+
+	@Test
+	public void testManyRoutes() {
+		RoutingServlet main = RoutingServlet.create();
+		for (int i = 0; i < 300; i++) {
+			String route = "/api/v" + i % 3 + "/resource" + i;
+			main.map(GET, route + "/:id", request -> Promise.of(HttpResponse.ofCode(200)
+					.withBody(wrapUtf8(route + " " + request.getPathParameter("id")))));
+		}
+
+		for (int i = 0; i < 300; i++) {
+			String route = "/api/v" + i % 3 + "/resource" + i;
+			check(main.serve(HttpRequest.get(TEMPLATE + route + "/" + i)), route + " " + i, 200);
+		}
+		check(main.serve(HttpRequest.get(TEMPLATE + "/api/v0/resource1/1")), "", 404);
+	}
 }
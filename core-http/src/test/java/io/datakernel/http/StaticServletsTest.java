@@ -17,6 +17,7 @@
 package io.datakernel.http;
 
 import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.eventloop.Eventloop;
 import io.datakernel.loader.StaticLoader;
 import io.datakernel.test.rules.ByteBufRule;
 import io.datakernel.test.rules.EventloopRule;
@@ -31,15 +32,20 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
 
 import static io.datakernel.async.TestUtils.await;
 import static io.datakernel.async.TestUtils.awaitException;
 import static io.datakernel.bytebuf.ByteBufStrings.encodeAscii;
+import static io.datakernel.http.HttpHeaders.*;
 import static io.datakernel.loader.StaticLoader.ofClassPath;
 import static io.datakernel.loader.StaticLoader.ofPath;
+import static io.datakernel.test.TestUtils.getFreePort;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.Executors.newCachedThreadPool;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public final class StaticServletsTest {
 	public static final String EXPECTED_CONTENT = "Test";
@@ -132,4 +138,96 @@ public final class StaticServletsTest {
 
 		assertEquals(404, e.getCode());
 	}
+
+	@Test
+	public void testFileValidators() {
+		StaticServlet staticServlet = StaticServlet.create(ofPath(newCachedThreadPool(), resourcesPath));
+		HttpResponse response = await(staticServlet.serve(HttpRequest.get("http://test.com:8080/index.html")));
+		String etag = response.getHeader(ETAG);
+		String lastModified = response.getHeader(LAST_MODIFIED);
+		assertNotNull(etag);
+		assertNotNull(lastModified);
+		assertEquals("bytes", response.getHeader(ACCEPT_RANGES));
+		await(response.loadBody()).recycle();
+
+		response = await(staticServlet.serve(HttpRequest.get("http://test.com:8080/index.html")
+				.withHeader(IF_NONE_MATCH, "\"other\", " + etag)));
+		assertEquals(304, response.getCode());
+		assertEquals(etag, response.getHeader(ETAG));
+
+		response = await(staticServlet.serve(HttpRequest.get("http://test.com:8080/index.html")
+				.withHeader(IF_MODIFIED_SINCE, lastModified)));
+		assertEquals(304, response.getCode());
+
+		response = await(staticServlet.serve(HttpRequest.get("http://test.com:8080/index.html")
+				.withHeader(IF_NONE_MATCH, "\"other\"")
+				.withHeader(IF_MODIFIED_SINCE, lastModified)));
+		assertEquals(200, response.getCode());
+		await(response.loadBody());
+		assertEquals(EXPECTED_CONTENT, response.getBody().asString(UTF_8));
+	}
+
+	@Test
+	public void testRanges() {
+		StaticServlet fileServlet = StaticServlet.create(ofPath(newCachedThreadPool(), resourcesPath));
+		StaticServlet classPathServlet = StaticServlet.create(ofClassPath(newCachedThreadPool(), "/"));
+		for (HttpRequest request : asList(
+				HttpRequest.get("http://test.com:8080/index.html").withHeader(RANGE, "bytes=1-2"),
+				HttpRequest.get("http://test.com:8080/testFile.txt").withHeader(RANGE, "bytes=1-2"))) {
+			StaticServlet servlet = request.getPath().equals("/index.html") ? fileServlet : classPathServlet;
+			HttpResponse response = await(servlet.serve(request));
+			assertEquals(206, response.getCode());
+			assertEquals("bytes 1-2/4", response.getHeader(CONTENT_RANGE));
+			await(response.loadBody());
+			assertEquals("es", response.getBody().asString(UTF_8));
+		}
+
+		HttpResponse response = await(fileServlet.serve(HttpRequest.get("http://test.com:8080/index.html")
+				.withHeader(RANGE, "bytes=-3")));
+		assertEquals(206, response.getCode());
+		await(response.loadBody());
+		assertEquals("est", response.getBody().asString(UTF_8));
+
+		response = await(fileServlet.serve(HttpRequest.get("http://test.com:8080/index.html")
+				.withHeader(RANGE, "bytes=10-")));
+		assertEquals(416, response.getCode());
+		assertEquals("bytes */4", response.getHeader(CONTENT_RANGE));
+
+		response = await(fileServlet.serve(HttpRequest.get("http://test.com:8080/index.html")
+				.withHeader(RANGE, "bytes=0-0,2-3")));
+		assertEquals(200, response.getCode());
+		await(response.loadBody());
+		assertEquals(EXPECTED_CONTENT, response.getBody().asString(UTF_8));
+
+		response = await(fileServlet.serve(HttpRequest.get("http://test.com:8080/index.html")
+				.withHeader(RANGE, "bytes=1-2")
+				.withHeader(IF_RANGE, "\"outdated\"")));
+		assertEquals(200, response.getCode());
+		await(response.loadBody()).recycle();
+	}
+
+	@Test
+	public void testServeLargeFile() throws IOException {
+		byte[] bytes = new byte[5 * 1024 * 1024 + 17];
+		new Random(0).nextBytes(bytes);
+		Files.write(resourcesPath.resolve("large.bin"), bytes);
+
+		int port = getFreePort();
+		AsyncHttpServer server = AsyncHttpServer.create(Eventloop.getCurrentEventloop(),
+				StaticServlet.create(ofPath(newCachedThreadPool(), resourcesPath)))
+				.withListenPort(port);
+		server.listen();
+		AsyncHttpClient client = AsyncHttpClient.create(Eventloop.getCurrentEventloop());
+		String url = "http://127.0.0.1:" + port + "/large.bin";
+
+		byte[][] bodies = await(client.request(HttpRequest.get(url))
+				.then(response -> response.loadBody())
+				.map(ByteBuf::getArray)
+				.then(body -> client.request(HttpRequest.get(url).withHeader(RANGE, "bytes=1000000-"))
+						.then(response -> response.loadBody())
+						.map(range -> new byte[][]{body, range.getArray()}))
+				.whenComplete(($, e) -> server.close()));
+		assertArrayEquals(bytes, bodies[0]);
+		assertArrayEquals(Arrays.copyOfRange(bytes, 1000000, bytes.length), bodies[1]);
+	}
 }
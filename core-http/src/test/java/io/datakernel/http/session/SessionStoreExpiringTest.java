@@ -0,0 +1,180 @@
+package io.datakernel.http.session;
+
+import io.datakernel.async.Promises;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.test.rules.EventloopRule;
+import io.datakernel.time.SettableCurrentTimeProvider;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static io.datakernel.async.TestUtils.await;
+import static org.junit.Assert.*;
+
+public class SessionStoreExpiringTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	private final SettableCurrentTimeProvider time = SettableCurrentTimeProvider.create();
+
+	@Test
+	public void testExpiresIdleSessions() {
+		SessionStoreExpiring<String> store = SessionStoreExpiring.<String>create(Eventloop.getCurrentEventloop())
+				.withSessionTtl(Duration.ofSeconds(10));
+		store.now = time;
+
+		time.setTime(1000);
+		await(store.save("a", "session a"));
+		await(store.save("b", "session b"));
+
+		time.setTime(8000);
+		assertEquals("session a", await(store.get("a")));
+
+		time.setTime(12000);
+		// "b" has not been accessed for 11 seconds, while "a" has been touched by the read
+		assertNull(await(store.get("b")));
+		assertEquals("session a", await(store.get("a")));
+		assertEquals(1, store.getSessions());
+
+		time.setTime(30000);
+		store.sweep();
+		assertEquals(0, store.getSessions());
+		store.getExpiredSessions().refresh(System.currentTimeMillis());
+		assertEquals(1, store.getExpiredSessions().getTotalCount());
+		assertNull(await(store.get("a")));
+	}
+
+	@Test
+	public void testSweepsOnlyExpiredSessions() {
+		SessionStoreExpiring<String> store = SessionStoreExpiring.<String>create(Eventloop.getCurrentEventloop())
+				.withSessionTtl(Duration.ofSeconds(10));
+		store.now = time;
+
+		for (int i = 0; i < 10; i++) {
+			time.setTime(i * 1000);
+			await(store.save("session" + i, "value" + i));
+		}
+		time.setTime(15000);
+		store.sweep();
+
+		assertEquals(4, store.getSessions());
+		assertNull(await(store.get("session5")));
+		assertEquals("value6", await(store.get("session6")));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyAccessedSessions() {
+		SessionStoreExpiring<String> store = SessionStoreExpiring.<String>create(Eventloop.getCurrentEventloop())
+				.withMaxSessions(2);
+		store.now = time;
+
+		await(store.save("a", "session a"));
+		await(store.save("b", "session b"));
+		await(store.get("a"));
+		await(store.save("c", "session c"));
+
+		assertEquals(2, store.getSessions());
+		store.getEvictedSessions().refresh(System.currentTimeMillis());
+		assertEquals(1, store.getEvictedSessions().getTotalCount());
+		assertNull(await(store.get("b")));
+		assertEquals("session a", await(store.get("a")));
+		assertEquals("session c", await(store.get("c")));
+	}
+
+	@Test
+	public void testBackgroundSweep() {
+		SessionStoreExpiring<String> store = SessionStoreExpiring.<String>create(Eventloop.getCurrentEventloop())
+				.withSessionTtl(Duration.ofMillis(10))
+				.withSweepInterval(Duration.ofMillis(20));
+
+		await(store.save("a", "session a"));
+		// background tasks do not keep the eventloop running, so a regular task waits for the sweep
+		await(store.get("a").then($ -> Promises.delay(Duration.ofMillis(100))));
+		assertEquals(0, store.getSessions());
+	}
+
+	@Test
+	public void testShardedStore() throws Exception {
+		SessionStoreSharded<String> store = SessionStoreSharded.<String>create(3)
+				.withSessionTtl(Duration.ofSeconds(10))
+				.withMaxSessions(1000);
+		store.now = time;
+		assertEquals(4, store.getShards());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int thread = t;
+			futures.add(executor.submit(() -> {
+				Eventloop eventloop = Eventloop.create().withCurrentThread();
+				for (int i = 0; i < 100; i++) {
+					String id = thread + ":" + i;
+					store.save(id, "value " + id);
+					assertEquals("value " + id, store.get(id).getResult());
+				}
+				eventloop.run();
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertEquals(400, store.getSessions());
+
+		time.setTime(20000);
+		assertNull(await(store.get("0:0")));
+		assertEquals(0, store.sweep());
+		assertEquals(0, store.getSessions());
+		assertEquals(399, store.getExpiredSessions());
+	}
+
+	@Test
+	public void testShardedStoreEvictsPerShard() {
+		SessionStoreSharded<String> store = SessionStoreSharded.<String>create(2)
+				.withMaxSessions(10);
+		store.now = time;
+
+		for (int i = 0; i < 100; i++) {
+			await(store.save("session" + i, "value" + i));
+		}
+		assertEquals(10, store.getSessions());
+		assertEquals(90, store.getEvictedSessions());
+		assertEquals("value99", await(store.get("session99")));
+	}
+
+	@Test
+	public void testShardedSweepIsTakenOverAfterEventloopFinishes() throws Exception {
+		SessionStoreSharded<String> store = SessionStoreSharded.<String>create(2)
+				.withSessionTtl(Duration.ofSeconds(10))
+				.withSweepInterval(Duration.ofMillis(10));
+		store.now = time;
+
+		// the eventloop finishes at once, as the sweep is a background task
+		runInNewEventloop(() -> store.save("first", "value"));
+
+		time.setTime(20000);
+		runInNewEventloop(() -> {
+			store.save("second", "value");
+			// keeps the eventloop alive for a few sweeps
+			Eventloop.getCurrentEventloop().delay(100, () -> {});
+		});
+		assertEquals(1, store.getSessions());
+		assertEquals(1, store.getExpiredSessions());
+	}
+
+	private static void runInNewEventloop(Runnable runnable) throws InterruptedException {
+		Thread thread = new Thread(() -> {
+			Eventloop eventloop = Eventloop.create().withCurrentThread();
+			runnable.run();
+			eventloop.run();
+		});
+		thread.start();
+		thread.join();
+	}
+}
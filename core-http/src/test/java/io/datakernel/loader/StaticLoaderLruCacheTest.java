@@ -0,0 +1,235 @@
+package io.datakernel.loader;
+
+import io.datakernel.async.Promise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.http.GzipProcessorUtils;
+import io.datakernel.http.HttpRequest;
+import io.datakernel.http.HttpResponse;
+import io.datakernel.http.StaticServlet;
+import io.datakernel.test.rules.ByteBufRule;
+import io.datakernel.test.rules.EventloopRule;
+import io.datakernel.util.MemSize;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.datakernel.async.TestUtils.await;
+import static io.datakernel.bytebuf.ByteBuf.wrapForReading;
+import static io.datakernel.http.HttpHeaders.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.junit.Assert.*;
+
+public class StaticLoaderLruCacheTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	private final List<String> loaded = new ArrayList<>();
+	private final StaticLoader loader = path -> {
+		loaded.add(path);
+		return Promise.of(wrapForReading(content(path).getBytes(UTF_8)));
+	};
+
+	@Test
+	public void testHitsAndMisses() {
+		StaticLoaderLruCache cache = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(), loader, MemSize.kilobytes(64));
+
+		assertEquals(content("a"), await(cache.load("a")).asString(UTF_8));
+		assertEquals(content("a"), await(cache.load("a")).asString(UTF_8));
+		assertEquals(content("b"), await(cache.load("b")).asString(UTF_8));
+
+		assertEquals(2, loaded.size());
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1.0 / 3, cache.getHitRatio(), 1e-9);
+		assertEquals(2, cache.getEntries());
+		assertTrue(cache.getBytesResident() > 2 * content("a").length());
+
+		cache.invalidate("a");
+		await(cache.load("a")).recycle();
+		assertEquals(3, loaded.size());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.getEntries());
+		assertEquals(0, cache.getBytesResident());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		long entrySize = StaticLoaderLruCache.ENTRY_OVERHEAD + 2 + content("a").length();
+		StaticLoaderLruCache cache = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(), loader, MemSize.of(3 * entrySize))
+				.withMaxEntrySize(MemSize.kilobytes(1));
+
+		await(cache.load("a")).recycle();
+		await(cache.load("b")).recycle();
+		await(cache.load("c")).recycle();
+		await(cache.load("a")).recycle();
+		await(cache.load("d")).recycle();
+
+		assertEquals(3, cache.getEntries());
+		assertEquals(1, cache.getEvictions());
+		assertTrue(cache.getBytesResident() <= 3 * entrySize);
+
+		loaded.clear();
+		await(cache.load("a")).recycle();
+		await(cache.load("b")).recycle();
+		assertEquals(1, loaded.size());
+		assertEquals("b", loaded.get(0));
+
+		cache.setMaxSize(entrySize);
+		assertEquals(1, cache.getEntries());
+	}
+
+	@Test
+	public void testDoesNotCacheLargeEntries() {
+		StaticLoaderLruCache cache = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(), loader, MemSize.kilobytes(64))
+				.withMaxEntrySize(MemSize.of(4));
+
+		await(cache.load("a")).recycle();
+		await(cache.load("a")).recycle();
+
+		assertEquals(2, loaded.size());
+		assertEquals(0, cache.getEntries());
+	}
+
+	@Test
+	public void testGzippedVariant() throws Exception {
+		StaticLoaderLruCache cache = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(), loader, MemSize.kilobytes(64))
+				.withGzip();
+
+		assertNull(await(cache.loadGzipped("a")));
+		await(cache.load("a")).recycle();
+
+		StaticFile gzipped = await(cache.loadGzipped("a"));
+		assertNotNull(gzipped);
+		assertNotNull(gzipped.getBuf());
+		assertEquals(content("a"), GzipProcessorUtils.fromGzip(gzipped.getBuf(), 1 << 20).asString(UTF_8));
+		assertEquals(0, cache.getHits());
+
+		StaticLoaderLruCache plain = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(), loader, MemSize.kilobytes(64));
+		await(plain.load("a")).recycle();
+		assertNull(await(plain.loadGzipped("a")));
+	}
+
+	@Test
+	public void testServesGzippedVariant() throws Exception {
+		StaticLoaderLruCache cache = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(), loader, MemSize.kilobytes(64))
+				.withGzip();
+		StaticServlet servlet = StaticServlet.create(cache);
+
+		HttpResponse response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(ACCEPT_ENCODING, "gzip, deflate")));
+		assertNull(response.getHeader(CONTENT_ENCODING));
+		await(response.loadBody()).recycle();
+
+		response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(ACCEPT_ENCODING, "gzip, deflate")));
+		assertEquals("gzip", response.getHeader(CONTENT_ENCODING));
+		assertEquals("Accept-Encoding", response.getHeader(VARY));
+		ByteBuf body = await(response.loadBody());
+		assertEquals(content("index.html"), GzipProcessorUtils.fromGzip(body, 1 << 20).asString(UTF_8));
+
+		response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(ACCEPT_ENCODING, "gzip;q=0, deflate")));
+		assertNull(response.getHeader(CONTENT_ENCODING));
+		assertEquals(content("index.html"), await(response.loadBody()).asString(UTF_8));
+		assertEquals(1, loaded.size());
+	}
+
+	@Test
+	public void testLargeFilesAreNotCached() throws Exception {
+		Path dir = tmpFolder.newFolder().toPath();
+		Files.write(dir.resolve("small.txt"), new byte[100]);
+		Files.write(dir.resolve("large.txt"), new byte[10_000]);
+		StaticLoaderLruCache cache = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(),
+				StaticLoader.ofPath(newCachedThreadPool(), dir), MemSize.kilobytes(64))
+				.withMaxEntrySize(MemSize.kilobytes(1));
+
+		long lastModified = Files.getLastModifiedTime(dir.resolve("small.txt")).toMillis();
+		StaticFile small = await(cache.loadFile("small.txt"));
+		assertNotNull(small.getBuf());
+		assertEquals(100, small.getSize());
+		assertEquals(lastModified, small.getLastModified());
+		small.close();
+
+		small = await(cache.loadFile("small.txt"));
+		assertNotNull(small.getBuf());
+		assertEquals(lastModified, small.getLastModified());
+		small.close();
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		StaticFile file = await(cache.loadFile("large.txt"));
+		assertNotNull(file);
+		assertEquals(10_000, file.getSize());
+		file.close();
+		assertEquals(1, cache.getEntries());
+	}
+
+	@Test
+	public void testValidatesCachedResources() throws Exception {
+		StaticLoaderLruCache cache = StaticLoaderLruCache.create(Eventloop.getCurrentEventloop(), loader, MemSize.kilobytes(64))
+				.withGzip();
+		StaticServlet servlet = StaticServlet.create(cache);
+
+		HttpResponse response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")));
+		String etag = response.getHeader(ETAG);
+		assertNotNull(etag);
+		assertNotNull(response.getHeader(LAST_MODIFIED));
+		await(response.loadBody()).recycle();
+
+		response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(IF_NONE_MATCH, etag)));
+		assertEquals(304, response.getCode());
+
+		response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(ACCEPT_ENCODING, "gzip")));
+		assertEquals("gzip", response.getHeader(CONTENT_ENCODING));
+		String gzipEtag = response.getHeader(ETAG);
+		assertNotNull(gzipEtag);
+		assertNotEquals(etag, gzipEtag);
+		await(response.loadBody()).recycle();
+
+		response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(ACCEPT_ENCODING, "gzip")
+				.withHeader(IF_NONE_MATCH, gzipEtag)));
+		assertEquals(304, response.getCode());
+		assertEquals("gzip", response.getHeader(CONTENT_ENCODING));
+
+		response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(ACCEPT_ENCODING, "gzip")
+				.withHeader(RANGE, "bytes=0-1")));
+		assertEquals(206, response.getCode());
+		ByteBuf body = await(response.loadBody());
+		assertEquals(2, body.readRemaining());
+		assertEquals((byte) 0x1f, body.at(body.head()));
+		body.recycle();
+
+		response = await(servlet.serve(HttpRequest.get("http://test.com/index.html")
+				.withHeader(RANGE, "bytes=0-6")));
+		assertEquals(206, response.getCode());
+		assertEquals("content", await(response.loadBody()).asString(UTF_8));
+		assertEquals(1, loaded.size());
+	}
+
+	private static String content(String path) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append("content of ").append(path).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -20,6 +20,7 @@ import io.datakernel.async.Promise;
 import io.datakernel.async.SettablePromise;
 import io.datakernel.bytebuf.ByteBuf;
 import io.datakernel.bytebuf.ByteBufPool;
+import io.datakernel.bytebuf.ByteBufQueue;
 import io.datakernel.exception.AsyncTimeoutException;
 import io.datakernel.inspector.AbstractInspector;
 import io.datakernel.inspector.BaseInspector;
@@ -35,19 +36,29 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.datakernel.eventloop.Eventloop.getCurrentEventloop;
+import static io.datakernel.util.MemSize.bytes;
 import static io.datakernel.util.MemSize.kilobytes;
+import static io.datakernel.util.MemSize.megabytes;
 import static io.datakernel.util.Preconditions.checkState;
 import static io.datakernel.util.Utils.nullify;
 
 @SuppressWarnings("WeakerAccess")
 public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEventHandler {
 	public static final int DEFAULT_READ_BUFFER_SIZE = ApplicationSettings.getMemSize(AsyncTcpSocketImpl.class, "readBufferSize", kilobytes(16)).toInt();
+	public static final boolean DEFAULT_ADAPTIVE_READ_BUFFERS = ApplicationSettings.getBoolean(AsyncTcpSocketImpl.class, "adaptiveReadBuffers", false);
+	public static final int DEFAULT_MIN_READ_BUFFER_SIZE = ApplicationSettings.getMemSize(AsyncTcpSocketImpl.class, "minReadBufferSize", bytes(512)).toInt();
+	public static final int DEFAULT_MAX_READ_BUFFER_SIZE = ApplicationSettings.getMemSize(AsyncTcpSocketImpl.class, "maxReadBufferSize", kilobytes(256)).toInt();
+	public static final boolean DEFAULT_DIRECT_READ_BUFFERS = ApplicationSettings.getBoolean(AsyncTcpSocketImpl.class, "directReadBuffers", false);
+	public static final int DEFAULT_MAX_WRITE_BUFS = ApplicationSettings.getInt(AsyncTcpSocketImpl.class, "maxWriteBufs", 64);
+	public static final int DEFAULT_MAX_WRITE_SIZE = ApplicationSettings.getMemSize(AsyncTcpSocketImpl.class, "maxWriteSize", megabytes(1)).toInt();
 
 	public static final AsyncTimeoutException TIMEOUT_EXCEPTION = new AsyncTimeoutException(AsyncTcpSocketImpl.class, "timed out");
 	public static final int NO_TIMEOUT = 0;
@@ -59,10 +70,14 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 	@Nullable
 	private ByteBuf readBuf;
 	private boolean readEndOfStream;
-	@Nullable
-	private ByteBuf writeBuf;
+	private final ByteBufQueue writeQueue = new ByteBufQueue();
 	private boolean writeEndOfStream;
 
+	@Nullable
+	private FileChannel transferFile;
+	private long transferPosition;
+	private long transferRemaining;
+
 	@Nullable
 	private SettablePromise<ByteBuf> read;
 	@Nullable
@@ -74,7 +89,16 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 	private int readTimeout = NO_TIMEOUT;
 	private int writeTimeout = NO_TIMEOUT;
 	private int readBufferSize = DEFAULT_READ_BUFFER_SIZE;
+	private boolean adaptiveReadBuffers = DEFAULT_ADAPTIVE_READ_BUFFERS;
+	private int minReadBufferSize = DEFAULT_MIN_READ_BUFFER_SIZE;
+	private int maxReadBufferSize = DEFAULT_MAX_READ_BUFFER_SIZE;
+	private boolean shrinkReadBuffer;
+	private boolean directReadBuffers = DEFAULT_DIRECT_READ_BUFFERS;
+	private int maxWriteBufs = DEFAULT_MAX_WRITE_BUFS;
+	private int maxWriteSize = DEFAULT_MAX_WRITE_SIZE;
 
+	@Nullable
+	private ByteBuffer[] writeBuffers;
 	@Nullable
 	private ScheduledRunnable scheduledReadTimeout;
 	@Nullable
@@ -94,7 +118,14 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 
 		void onWriteTimeout();
 
-		void onWrite(ByteBuf buf, int bytes);
+		/**
+		 * Called after each write to a socket channel
+		 *
+		 * @param bufs      number of buffers passed to a single (gathering) write
+		 * @param requested number of bytes in those buffers
+		 * @param bytes     number of bytes actually written
+		 */
+		void onWrite(int bufs, int requested, int bytes);
 
 		void onWriteError(IOException e);
 	}
@@ -103,10 +134,12 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 		public static final Duration SMOOTHING_WINDOW = Duration.ofMinutes(1);
 
 		private final ValueStats reads = ValueStats.create(SMOOTHING_WINDOW).withUnit("bytes").withRate();
+		private final ValueStats readBufferSizes = ValueStats.create(SMOOTHING_WINDOW).withUnit("bytes");
 		private final EventStats readEndOfStreams = EventStats.create(SMOOTHING_WINDOW);
 		private final EventStats readErrors = EventStats.create(SMOOTHING_WINDOW);
 		private final EventStats readTimeouts = EventStats.create(SMOOTHING_WINDOW);
 		private final ValueStats writes = ValueStats.create(SMOOTHING_WINDOW).withUnit("bytes").withRate();
+		private final ValueStats writeBufs = ValueStats.create(SMOOTHING_WINDOW).withUnit("bufs");
 		private final EventStats writeErrors = EventStats.create(SMOOTHING_WINDOW);
 		private final EventStats writeTimeouts = EventStats.create(SMOOTHING_WINDOW);
 		private final EventStats writeOverloaded = EventStats.create(SMOOTHING_WINDOW);
@@ -119,6 +152,7 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 		@Override
 		public void onRead(ByteBuf buf) {
 			reads.recordValue(buf.readRemaining());
+			readBufferSizes.recordValue(buf.limit());
 		}
 
 		@Override
@@ -137,9 +171,10 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 		}
 
 		@Override
-		public void onWrite(ByteBuf buf, int bytes) {
+		public void onWrite(int bufs, int requested, int bytes) {
 			writes.recordValue(bytes);
-			if (buf.readRemaining() != bytes)
+			writeBufs.recordValue(bufs);
+			if (requested != bytes)
 				writeOverloaded.recordEvent();
 		}
 
@@ -158,6 +193,11 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 			return reads;
 		}
 
+		@JmxAttribute
+		public ValueStats getReadBufferSizes() {
+			return readBufferSizes;
+		}
+
 		@JmxAttribute
 		public EventStats getReadEndOfStreams() {
 			return readEndOfStreams;
@@ -178,6 +218,11 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 			return writes;
 		}
 
+		@JmxAttribute
+		public ValueStats getWriteBufs() {
+			return writeBufs;
+		}
+
 		@JmxAttribute
 		public EventStats getWriteErrors() {
 			return writeErrors;
@@ -205,6 +250,24 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 		if (socketSettings.hasReadBufferSize()) {
 			asyncTcpSocket.readBufferSize = socketSettings.getImplReadBufferSizeBytes();
 		}
+		if (socketSettings.hasImplAdaptiveReadBuffers()) {
+			asyncTcpSocket.adaptiveReadBuffers = socketSettings.getImplAdaptiveReadBuffers();
+		}
+		if (socketSettings.hasImplMinReadBufferSize()) {
+			asyncTcpSocket.minReadBufferSize = socketSettings.getImplMinReadBufferSizeBytes();
+		}
+		if (socketSettings.hasImplMaxReadBufferSize()) {
+			asyncTcpSocket.maxReadBufferSize = socketSettings.getImplMaxReadBufferSizeBytes();
+		}
+		if (socketSettings.hasImplDirectReadBuffers()) {
+			asyncTcpSocket.directReadBuffers = socketSettings.getImplDirectReadBuffers();
+		}
+		if (socketSettings.hasImplMaxWriteBufs()) {
+			asyncTcpSocket.maxWriteBufs = socketSettings.getImplMaxWriteBufs();
+		}
+		if (socketSettings.hasImplMaxWriteSize()) {
+			asyncTcpSocket.maxWriteSize = socketSettings.getImplMaxWriteSizeBytes();
+		}
 		return asyncTcpSocket;
 	}
 
@@ -271,7 +334,7 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 
 	private void updateInterests() {
 		if (ops < 0 || channel == null) return;
-		byte newOps = (byte) (((readBuf == null && !readEndOfStream) ? SelectionKey.OP_READ : 0) | (writeBuf == null || writeEndOfStream ? 0 : SelectionKey.OP_WRITE));
+		byte newOps = (byte) (((readBuf == null && !readEndOfStream) ? SelectionKey.OP_READ : 0) | (writeQueue.isEmpty() && transferFile == null ? 0 : SelectionKey.OP_WRITE));
 		if (key == null) {
 			ops = newOps;
 			try {
@@ -327,8 +390,9 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 	}
 
 	private void doRead() throws IOException {
-		ByteBuf buf = ByteBufPool.allocate(readBufferSize);
+		ByteBuf buf = directReadBuffers ? ByteBufPool.allocateDirect(readBufferSize) : ByteBufPool.allocate(readBufferSize);
 		ByteBuffer buffer = buf.toWriteByteBuffer();
+		int capacity = buffer.remaining();
 
 		int numRead;
 		try {
@@ -352,7 +416,7 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 			buf.recycle();
 			if (inspector != null) inspector.onReadEndOfStream();
 			readEndOfStream = true;
-			if (writeEndOfStream && writeBuf == null) {
+			if (writeEndOfStream && writeQueue.isEmpty()) {
 				doClose();
 			}
 			return;
@@ -360,15 +424,37 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 
 		if (inspector != null) inspector.onRead(buf);
 
+		if (adaptiveReadBuffers) {
+			adaptReadBufferSize(numRead, capacity);
+		}
+
 		if (readBuf == null) {
 			readBuf = buf;
 		} else {
 			readBuf = ByteBufPool.ensureWriteRemaining(readBuf, buf.readRemaining());
-			readBuf.put(buf.array(), buf.head(), buf.readRemaining());
+			readBuf.put(buf);
 			buf.recycle();
 		}
 	}
 
+	/**
+	 * Doubles read buffer size once a read fills up the whole buffer,
+	 * and halves it after two consecutive reads which would have fit into a half of it
+	 */
+	private void adaptReadBufferSize(int numRead, int capacity) {
+		if (numRead == capacity) {
+			readBufferSize = Math.max(Math.min(capacity << 1, maxReadBufferSize), minReadBufferSize);
+			shrinkReadBuffer = false;
+		} else if (numRead <= capacity >>> 1) {
+			if (shrinkReadBuffer) {
+				readBufferSize = Math.min(Math.max(capacity >>> 1, minReadBufferSize), maxReadBufferSize);
+			}
+			shrinkReadBuffer = !shrinkReadBuffer;
+		} else {
+			shrinkReadBuffer = false;
+		}
+	}
+
 	// write cycle
 	@NotNull
 	@Override
@@ -380,17 +466,10 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 			return Promise.ofException(CLOSE_EXCEPTION);
 		}
 		writeEndOfStream |= buf == null;
-		if (write != null) return write;
-
-		if (writeBuf == null) {
-			writeBuf = buf;
-		} else {
-			if (buf != null) {
-				writeBuf = ByteBufPool.ensureWriteRemaining(this.writeBuf, buf.readRemaining());
-				writeBuf.put(buf.array(), buf.head(), buf.readRemaining());
-				buf.recycle();
-			}
+		if (buf != null) {
+			writeQueue.add(buf);
 		}
+		if (write != null) return write;
 
 		try {
 			doWrite();
@@ -399,7 +478,7 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 			return Promise.ofException(e);
 		}
 
-		if (this.writeBuf == null) {
+		if (writeQueue.isEmpty() && transferFile == null) {
 			return Promise.complete();
 		}
 		write = new SettablePromise<>();
@@ -420,7 +499,7 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 			close(e);
 			return;
 		}
-		if (writeBuf == null) {
+		if (writeQueue.isEmpty() && transferFile == null) {
 			SettablePromise<Void> write = this.write;
 			this.write = null;
 			write.set(null);
@@ -429,27 +508,65 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 		updateInterests();
 	}
 
-	private void doWrite() throws IOException {
-		if (writeBuf != null) {
-			ByteBuf buf = this.writeBuf;
-			ByteBuffer buffer = buf.toReadByteBuffer();
-
-			try {
-				channel.write(buffer);
-			} catch (IOException e) {
-				if (inspector != null) inspector.onWriteError(e);
-				throw e;
-			}
+	/**
+	 * Writes a region of a file to this socket with {@link FileChannel#transferTo}, so that the OS
+	 * may send it directly from the file, without copying its contents to the user space.
+	 * The region is sent in chunks of at most {@code maxWriteSize} bytes per transfer.
+	 * <p>
+	 * The region is written after all previously written bufs, no other writes should be made
+	 * until the returned promise is complete. The file channel is not closed by this socket.
+	 */
+	@NotNull
+	public Promise<Void> writeFile(@NotNull FileChannel file, long position, long count) {
+		assert eventloop.inEventloopThread();
+		checkState(!writeEndOfStream, "End of stream has already been sent");
+		checkState(transferFile == null, "File is already being written");
+		if (channel == null) {
+			return Promise.ofException(CLOSE_EXCEPTION);
+		}
+		if (write != null) {
+			return write.then($ -> writeFile(file, position, count));
+		}
+		if (count == 0) {
+			return Promise.complete();
+		}
+		transferFile = file;
+		transferPosition = position;
+		transferRemaining = count;
 
-			if (inspector != null) inspector.onWrite(buf, buffer.position() - buf.head());
+		try {
+			doWrite();
+		} catch (IOException e) {
+			close(e);
+			return Promise.ofException(e);
+		}
 
-			buf.ofReadByteBuffer(buffer);
+		if (writeQueue.isEmpty() && transferFile == null) {
+			return Promise.complete();
+		}
+		write = new SettablePromise<>();
+		if (writeTimeout != NO_TIMEOUT) {
+			scheduleWriteTimeout();
+		}
+		updateInterests();
+		return write;
+	}
 
-			if (buf.canRead()) {
+	private void doWrite() throws IOException {
+		if (transferFile != null) {
+			doTransfer();
+			if (transferFile != null) {
 				return;
+			}
+		}
+		if (!writeQueue.isEmpty()) {
+			if (writeQueue.remainingBufs() == 1 || maxWriteBufs == 1) {
+				doWriteSingle();
 			} else {
-				buf.recycle();
-				writeBuf = null;
+				doWriteGathering();
+			}
+			if (!writeQueue.isEmpty()) {
+				return;
 			}
 		}
 
@@ -464,13 +581,96 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 		}
 	}
 
+	private void doTransfer() throws IOException {
+		assert transferFile != null;
+		long requested = Math.min(transferRemaining, maxWriteSize);
+		long transferred;
+		try {
+			transferred = transferFile.transferTo(transferPosition, requested, channel);
+			if (transferred == 0 && transferPosition >= transferFile.size()) {
+				throw new IOException("File has been truncated while being transferred");
+			}
+		} catch (IOException e) {
+			if (inspector != null) inspector.onWriteError(e);
+			throw e;
+		}
+
+		if (inspector != null) inspector.onWrite(1, (int) requested, (int) transferred);
+
+		transferPosition += transferred;
+		transferRemaining -= transferred;
+		if (transferRemaining == 0) {
+			transferFile = null;
+		}
+	}
+
+	private void doWriteSingle() throws IOException {
+		ByteBuf buf = writeQueue.peekBuf();
+		assert buf != null;
+		ByteBuffer buffer = buf.toReadByteBuffer();
+
+		try {
+			channel.write(buffer);
+		} catch (IOException e) {
+			if (inspector != null) inspector.onWriteError(e);
+			throw e;
+		}
+
+		if (inspector != null) inspector.onWrite(1, buf.readRemaining(), buffer.position() - buf.head());
+
+		buf.ofReadByteBuffer(buffer);
+
+		if (!buf.canRead()) {
+			writeQueue.take().recycle();
+		}
+	}
+
+	private void doWriteGathering() throws IOException {
+		int count = Math.min(writeQueue.remainingBufs(), maxWriteBufs);
+		if (writeBuffers == null || writeBuffers.length < count) {
+			writeBuffers = new ByteBuffer[count];
+		}
+		int requested = 0;
+		int n = 0;
+		while (n < count && (n == 0 || requested < maxWriteSize)) {
+			ByteBuffer buffer = writeQueue.peekBuf(n).toReadByteBuffer();
+			writeBuffers[n++] = buffer;
+			requested += buffer.remaining();
+		}
+
+		long written;
+		try {
+			written = channel.write(writeBuffers, 0, n);
+		} catch (IOException e) {
+			Arrays.fill(writeBuffers, 0, n, null);
+			if (inspector != null) inspector.onWriteError(e);
+			throw e;
+		}
+
+		if (inspector != null) inspector.onWrite(n, requested, (int) written);
+
+		for (int i = 0; i < n; i++) {
+			ByteBuffer buffer = writeBuffers[i];
+			writeBuffers[i] = null;
+			ByteBuf buf = writeQueue.peekBuf();
+			assert buf != null;
+			buf.ofReadByteBuffer(buffer);
+			if (buf.canRead()) {
+				Arrays.fill(writeBuffers, i + 1, n, null);
+				break;
+			}
+			writeQueue.take().recycle();
+		}
+	}
+
 	@Override
 	public void close(@NotNull Throwable e) {
 		assert eventloop.inEventloopThread();
 		if (channel == null) return;
 		doClose();
 		readBuf = nullify(readBuf, ByteBuf::recycle);
-		writeBuf = nullify(writeBuf, ByteBuf::recycle);
+		writeQueue.recycle();
+		transferFile = null;
 		scheduledReadTimeout = nullify(scheduledReadTimeout, ScheduledRunnable::cancel);
 		scheduledWriteTimeout = nullify(scheduledWriteTimeout, ScheduledRunnable::cancel);
 		read = nullify(read, SettablePromise::setException, e);
@@ -496,9 +696,10 @@ public final class AsyncTcpSocketImpl implements AsyncTcpSocket, NioChannelEvent
 		return "AsyncTcpSocketImpl{" +
 				"channel=" + (channel != null ? channel : "") +
 				", readBuf=" + readBuf +
-				", writeBuf=" + writeBuf +
+				", writeQueue=" + writeQueue +
 				", readEndOfStream=" + readEndOfStream +
 				", writeEndOfStream=" + writeEndOfStream +
+				", transferRemaining=" + transferRemaining +
 				", read=" + read +
 				", write=" + write +
 				", ops=" + ops +
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015-2019 SoftIndex LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.datakernel.eventloop;
+
+import io.datakernel.async.AsyncPredicate;
+import io.datakernel.async.Promise;
+import io.datakernel.async.Promises;
+import io.datakernel.async.SettablePromise;
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.bytebuf.ByteBufQueue;
+import io.datakernel.net.SocketSettings;
+import io.datakernel.test.rules.ByteBufRule;
+import io.datakernel.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static io.datakernel.async.TestUtils.await;
+import static io.datakernel.util.MemSize.kilobytes;
+import static java.util.Arrays.copyOfRange;
+import static org.junit.Assert.*;
+
+public final class AsyncTcpSocketImplTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	private static final int BUFS = 100;
+	private static final int BUF_SIZE = 10_000;
+
+	@Test
+	public void testGatheringWrites() throws IOException {
+		InetSocketAddress address = new InetSocketAddress("localhost", 5589);
+		byte[] expected = new byte[BUFS * BUF_SIZE];
+		new Random(0).nextBytes(expected);
+
+		SettablePromise<ByteBuf> received = new SettablePromise<>();
+		ByteBufQueue queue = new ByteBufQueue();
+		SimpleServer.create(socket ->
+				Promises.repeat(() ->
+						socket.read()
+								.whenResult(buf -> {
+									if (buf == null) {
+										socket.close();
+										received.set(queue.takeRemaining());
+										return;
+									}
+									queue.add(buf);
+								})
+								.toVoid()))
+				.withListenAddress(address)
+				.withAcceptOnce()
+				.listen();
+
+		int[] maxBufs = new int[1];
+		AsyncTcpSocketImpl.Inspector inspector = new AsyncTcpSocketImpl.JmxInspector() {
+			@Override
+			public void onWrite(int bufs, int requested, int bytes) {
+				super.onWrite(bufs, requested, bytes);
+				maxBufs[0] = Math.max(maxBufs[0], bufs);
+			}
+		};
+
+		SocketSettings settings = SocketSettings.create()
+				.withSendBufferSize(kilobytes(64))
+				.withImplMaxWriteBufs(16);
+
+		ByteBuf result = await(AsyncTcpSocketImpl.connect(address, 0, settings)
+				.then(socket -> {
+					socket.withInspector(inspector);
+					List<Promise<Void>> writes = new ArrayList<>();
+					for (int i = 0; i < BUFS; i++) {
+						writes.add(socket.write(ByteBuf.wrapForReading(copyOfRange(expected, i * BUF_SIZE, (i + 1) * BUF_SIZE))));
+					}
+					writes.add(socket.write(null));
+					return Promises.all(writes);
+				})
+				.then($ -> received));
+
+		assertArrayEquals(expected, result.asArray());
+		assertTrue(maxBufs[0] > 1);
+		assertTrue(maxBufs[0] <= 16);
+	}
+
+	@Test
+	public void testAdaptiveReadBuffers() throws IOException {
+		InetSocketAddress address = new InetSocketAddress("localhost", 5590);
+		int bigSize = BUFS * BUF_SIZE;
+		int pings = 20;
+
+		SimpleServer.create(socket ->
+				socket.write(ByteBuf.wrapForReading(new byte[bigSize]))
+						.then($ -> Promises.repeat(() ->
+								socket.read()
+										.then(buf -> {
+											if (buf == null) {
+												socket.close();
+												return Promise.complete();
+											}
+											return socket.write(buf);
+										}))))
+				.withListenAddress(address)
+				.withAcceptOnce()
+				.listen();
+
+		List<Integer> readBufferSizes = new ArrayList<>();
+		AsyncTcpSocketImpl.Inspector inspector = new AsyncTcpSocketImpl.JmxInspector() {
+			@Override
+			public void onRead(ByteBuf buf) {
+				super.onRead(buf);
+				readBufferSizes.add(buf.limit());
+			}
+		};
+
+		SocketSettings settings = SocketSettings.create()
+				.withImplReadBufferSize(kilobytes(1))
+				.withImplAdaptiveReadBuffers(true)
+				.withImplMinReadBufferSize(kilobytes(1))
+				.withImplMaxReadBufferSize(kilobytes(64));
+
+		await(AsyncTcpSocketImpl.connect(address, 0, settings)
+				.then(socket -> {
+					socket.withInspector(inspector);
+					return readAtLeast(socket, bigSize)
+							.then($ -> Promises.loop(0, AsyncPredicate.of(i -> i < pings),
+									i -> socket.write(ByteBuf.wrapForReading(new byte[]{1, 2, 3, 4}))
+											.then($2 -> readAtLeast(socket, 4))
+											.map($2 -> i + 1)))
+							.whenComplete(($, e) -> socket.close());
+				}));
+
+		assertEquals(1024, (int) readBufferSizes.get(0));
+		assertEquals(65536, (int) readBufferSizes.stream().max(Integer::compare).get());
+		assertEquals(1024, (int) readBufferSizes.get(readBufferSizes.size() - 1));
+	}
+
+	private static Promise<Integer> readAtLeast(AsyncTcpSocket socket, int size) {
+		return Promises.until(0,
+				n -> socket.read()
+						.map(buf -> {
+							assertNotNull(buf);
+							int result = n + buf.readRemaining();
+							buf.recycle();
+							return result;
+						}),
+				AsyncPredicate.of(n -> n >= size));
+	}
+}
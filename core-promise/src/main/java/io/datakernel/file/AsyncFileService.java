@@ -2,10 +2,36 @@ package io.datakernel.file;
 
 import io.datakernel.async.Promise;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 public interface AsyncFileService {
 	Promise<Integer> read(FileChannel channel, long position, byte[] array, int offset, int size);
 
 	Promise<Integer> write(FileChannel channel, long position, byte[] array, int offset, int size);
+
+	/**
+	 * Reads bytes to remaining space of a given buffer, which may be direct.
+	 * Position of the buffer is not changed.
+	 */
+	Promise<Integer> read(FileChannel channel, long position, ByteBuffer buffer);
+
+	/**
+	 * Writes remaining bytes of a given buffer, which may be direct.
+	 * Position of the buffer is not changed.
+	 */
+	Promise<Integer> write(FileChannel channel, long position, ByteBuffer buffer);
+
+	/**
+	 * Maps a read-only region of a file into memory, the region is truncated at the end of the file.
+	 * The mapping is released once the returned buffer is garbage collected.
+	 */
+	Promise<ByteBuffer> map(FileChannel channel, long position, int size);
+
+	/**
+	 * Forces all writes made to the file so far to the storage device.
+	 *
+	 * @see FileChannel#force(boolean)
+	 */
+	Promise<Void> force(FileChannel channel, boolean metaData);
 }
@@ -20,13 +20,23 @@ public final class ExecutorAsyncFileService implements AsyncFileService {
 
 	@Override
 	public Promise<Integer> read(FileChannel channel, long position, byte[] array, int offset, int size) {
+		return read(channel, position, ByteBuffer.wrap(array, offset, size));
+	}
+
+	@Override
+	public Promise<Integer> write(FileChannel channel, long position, byte[] array, int offset, int size) {
+		return write(channel, position, ByteBuffer.wrap(array, offset, size));
+	}
+
+	@Override
+	public Promise<Integer> read(FileChannel channel, long position, ByteBuffer buffer) {
 		return ofBlockingCallable(executor, () -> {
-			ByteBuffer buffer = ByteBuffer.wrap(array, offset, size);
+			ByteBuffer buf = buffer.duplicate();
 			long pos = position;
 
 			do {
 				try {
-					int readBytes = channel.read(buffer, pos);
+					int readBytes = channel.read(buf, pos);
 					if (readBytes == -1) {
 						break;
 					}
@@ -34,25 +44,51 @@ public final class ExecutorAsyncFileService implements AsyncFileService {
 				} catch (IOException e) {
 					throw new UncheckedException(e);
 				}
-			} while (buffer.position() < buffer.limit());
+			} while (buf.position() < buf.limit());
 			return Math.toIntExact(pos - position);
 		});
 	}
 
 	@Override
-	public Promise<Integer> write(FileChannel channel, long position, byte[] array, int offset, int size) {
+	public Promise<ByteBuffer> map(FileChannel channel, long position, int size) {
+		return ofBlockingCallable(executor, () -> {
+			try {
+				long mapped = Math.min(size, channel.size() - position);
+				return mapped > 0 ?
+						channel.map(FileChannel.MapMode.READ_ONLY, position, mapped) :
+						ByteBuffer.allocateDirect(0);
+			} catch (IOException e) {
+				throw new UncheckedException(e);
+			}
+		});
+	}
+
+	@Override
+	public Promise<Integer> write(FileChannel channel, long position, ByteBuffer buffer) {
 		return ofBlockingCallable(executor, () -> {
-			ByteBuffer buffer = ByteBuffer.wrap(array, offset, size);
+			ByteBuffer buf = buffer.duplicate();
 			long pos = position;
 
 			try {
 				do {
-					pos += channel.write(buffer, pos);
-				} while (buffer.position() < buffer.limit());
+					pos += channel.write(buf, pos);
+				} while (buf.position() < buf.limit());
 			} catch (IOException e) {
 				throw new UncheckedException(e);
 			}
 			return Math.toIntExact(pos - position);
 		});
 	}
+
+	@Override
+	public Promise<Void> force(FileChannel channel, boolean metaData) {
+		return ofBlockingCallable(executor, () -> {
+			try {
+				channel.force(metaData);
+			} catch (IOException e) {
+				throw new UncheckedException(e);
+			}
+			return null;
+		});
+	}
 }
@@ -0,0 +1,71 @@
+package io.datakernel.bytebuf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares shared {@link ByteBufPool} slabs with thread-local magazines in front of them.
+ * <p>
+ * As pool settings are read once per JVM, each configuration is run in its own fork
+ * with {@code ByteBufPool.magazineSize} system property set accordingly.
+ */
+@State(Scope.Thread)
+public class ByteBufPoolBenchmark {
+	private static final int[] MAGAZINE_SIZES = {0, 64};
+	private static final int[] THREADS = {1, 4, 16};
+
+	@Param({"8192", "65536"})
+	int size;
+
+	@Param({"1", "16"})
+	int inFlight;
+
+	private ByteBuf[] bufs;
+
+	@Setup
+	public void setUp() {
+		bufs = new ByteBuf[inFlight];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(16)
+	public void allocateRecycle(Blackhole blackhole) {
+		for (int i = 0; i < 16; i += inFlight) {
+			for (int j = 0; j < inFlight; j++) {
+				bufs[j] = ByteBufPool.allocate(size);
+			}
+			for (int j = 0; j < inFlight; j++) {
+				blackhole.consume(bufs[j].writeRemaining());
+				bufs[j].recycle();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int magazineSize : MAGAZINE_SIZES) {
+			for (int threads : THREADS) {
+				Options opt = new OptionsBuilder()
+						.include(ByteBufPoolBenchmark.class.getSimpleName())
+						.jvmArgsAppend("-DByteBufPool.magazineSize=" + magazineSize)
+						.threads(threads)
+						.forks(2)
+						.warmupIterations(3)
+						.warmupTime(TimeValue.seconds(1L))
+						.measurementIterations(5)
+						.measurementTime(TimeValue.seconds(2L))
+						.mode(Mode.AverageTime)
+						.timeUnit(TimeUnit.NANOSECONDS)
+						.build();
+
+				new Runner(opt).run();
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package io.datakernel.codec;
+
+import io.datakernel.bytebuf.ByteBuf;
+import io.datakernel.codec.json.JsonUtils;
+import io.datakernel.exception.ParseException;
+import io.datakernel.util.Tuple4;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.datakernel.bytebuf.ByteBufStrings.wrapUtf8;
+import static io.datakernel.codec.StructuredCodecs.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares JSON encoding and decoding through Gson with the native {@link ByteBuf} codec,
+ * both ending up with UTF-8 bytes in a {@link ByteBuf}, as HTTP bodies do.
+ * <p>
+ * Records resemble rows of a cube query result: a few dimensions and measures.
+ */
+@State(Scope.Thread)
+public class JsonCodecBenchmark {
+	private static final StructuredCodec<List<Tuple4<String, Long, Double, List<Integer>>>> CODEC = object(Tuple4::new,
+			"campaign", Tuple4::getValue1, STRING_CODEC,
+			"impressions", Tuple4::getValue2, LONG_CODEC,
+			"ctr", Tuple4::getValue3, DOUBLE_CODEC,
+			"sites", Tuple4::getValue4, INT_CODEC.ofList())
+			.ofList();
+
+	@Param({"10", "1000"})
+	int records;
+
+	private List<Tuple4<String, Long, Double, List<Integer>>> value;
+	private byte[] json;
+
+	@Setup
+	public void setUp() {
+		value = new ArrayList<>();
+		for (int i = 0; i < records; i++) {
+			List<Integer> sites = new ArrayList<>();
+			for (int j = 0; j < i % 8; j++) {
+				sites.add(j * 1000 + i);
+			}
+			value.add(new Tuple4<>("campaign \"" + i + "\" \u2013 summer sale", i * 12345L, i / 7.0, sites));
+		}
+		json = JsonUtils.toJson(CODEC, value).getBytes(UTF_8);
+	}
+
+	@Benchmark
+	public int encodeGson() {
+		ByteBuf buf = wrapUtf8(JsonUtils.toJson(CODEC, value));
+		int size = buf.readRemaining();
+		buf.recycle();
+		return size;
+	}
+
+	@Benchmark
+	public int encodeByteBuf() {
+		ByteBuf buf = JsonUtils.toJsonBuf(CODEC, value);
+		int size = buf.readRemaining();
+		buf.recycle();
+		return size;
+	}
+
+	@Benchmark
+	public Object decodeGson() throws ParseException {
+		return JsonUtils.fromJson(CODEC, ByteBuf.wrapForReading(json).getString(UTF_8));
+	}
+
+	@Benchmark
+	public Object decodeByteBuf() throws ParseException {
+		return JsonUtils.fromJson(CODEC, ByteBuf.wrapForReading(json));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(JsonCodecBenchmark.class.getSimpleName())
+				.forks(2)
+				.warmupIterations(3)
+				.warmupTime(TimeValue.seconds(1L))
+				.measurementIterations(5)
+				.measurementTime(TimeValue.seconds(2L))
+				.mode(Mode.AverageTime)
+				.timeUnit(TimeUnit.MICROSECONDS)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,100 @@
+package io.datakernel.eventloop;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures throughput of handing off tasks from producer threads to a running {@link Eventloop},
+ * either with a separate {@link Eventloop#execute} call per task, or with a single
+ * {@link Eventloop#executeAll} call per batch.
+ * <p>
+ * Each producer thread hands off a batch of tasks and waits until all of them are executed.
+ */
+public class EventloopExecuteBenchmark {
+	private static final int BATCH = 64;
+	private static final int[] THREADS = {1, 4, 16};
+
+	@State(Scope.Benchmark)
+	public static class EventloopState {
+		Eventloop eventloop;
+		Thread eventloopThread;
+
+		@Setup
+		public void setUp() {
+			eventloop = Eventloop.create().withInspector(EventloopStats.create());
+			eventloop.keepAlive(true);
+			eventloopThread = new Thread(eventloop);
+			eventloopThread.start();
+		}
+
+		@TearDown
+		public void tearDown() throws InterruptedException {
+			eventloop.execute(() -> eventloop.keepAlive(false));
+			eventloopThread.join();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ProducerState {
+		final AtomicInteger pending = new AtomicInteger();
+		final List<Runnable> tasks = new ArrayList<>();
+
+		@Setup
+		public void setUp() {
+			for (int i = 0; i < BATCH; i++) {
+				tasks.add(pending::decrementAndGet);
+			}
+		}
+
+		void await() {
+			while (pending.get() != 0) {
+				Thread.yield();
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void execute(EventloopState state, ProducerState producer) {
+		producer.pending.set(BATCH);
+		for (Runnable task : producer.tasks) {
+			state.eventloop.execute(task);
+		}
+		producer.await();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void executeAll(EventloopState state, ProducerState producer) {
+		producer.pending.set(BATCH);
+		state.eventloop.executeAll(producer.tasks);
+		producer.await();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : THREADS) {
+			Options opt = new OptionsBuilder()
+					.include(EventloopExecuteBenchmark.class.getSimpleName())
+					.threads(threads)
+					.forks(2)
+					.warmupIterations(3)
+					.warmupTime(TimeValue.seconds(1L))
+					.measurementIterations(5)
+					.measurementTime(TimeValue.seconds(2L))
+					.mode(Mode.Throughput)
+					.timeUnit(TimeUnit.MICROSECONDS)
+					.build();
+
+			new Runner(opt).run();
+		}
+	}
+}
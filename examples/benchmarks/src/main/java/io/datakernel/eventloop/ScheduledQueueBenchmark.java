@@ -0,0 +1,87 @@
+package io.datakernel.eventloop;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a priority queue and a timing wheel of scheduled tasks under connection churn:
+ * each of {@code connections} sockets holds a read timeout, which is cancelled and
+ * rescheduled on every read, and the clock moves forward by 1 ms every {@code opsPerMillis} reads.
+ */
+@State(Scope.Thread)
+public class ScheduledQueueBenchmark {
+	private static final Runnable NOP = () -> {};
+
+	@Param({"heap", "wheel"})
+	String queueType;
+
+	@Param({"10000", "200000"})
+	int connections;
+
+	@Param({"30000"})
+	int timeoutMillis;
+
+	@Param({"100"})
+	int opsPerMillis;
+
+	private ScheduledQueue queue;
+	private ScheduledRunnable[] timeouts;
+	private long now;
+	private int ops;
+
+	@Setup
+	public void setUp() {
+		now = 1_500_000_000_000L;
+		queue = queueType.equals("wheel") ? new ScheduledTimingWheel(1, now) : new ScheduledPriorityQueue();
+		timeouts = new ScheduledRunnable[connections];
+		for (int i = 0; i < connections; i++) {
+			timeouts[i] = schedule();
+		}
+	}
+
+	@Benchmark
+	public void churn(Blackhole blackhole) {
+		int connection = ThreadLocalRandom.current().nextInt(connections);
+		timeouts[connection].cancel();
+		timeouts[connection] = schedule();
+
+		if (++ops == opsPerMillis) {
+			ops = 0;
+			now++;
+			ScheduledRunnable expired;
+			while ((expired = queue.poll(now)) != null) {
+				blackhole.consume(expired);
+			}
+		}
+	}
+
+	private ScheduledRunnable schedule() {
+		long jitter = ThreadLocalRandom.current().nextInt(timeoutMillis / 10);
+		ScheduledRunnable task = ScheduledRunnable.create(now + timeoutMillis + jitter, NOP);
+		queue.add(task);
+		return task;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(ScheduledQueueBenchmark.class.getSimpleName())
+				.forks(2)
+				.warmupIterations(3)
+				.warmupTime(TimeValue.seconds(1L))
+				.measurementIterations(5)
+				.measurementTime(TimeValue.seconds(2L))
+				.mode(Mode.AverageTime)
+				.timeUnit(TimeUnit.NANOSECONDS)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,104 @@
+package io.datakernel.http;
+
+import io.datakernel.async.Promise;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.datakernel.http.HttpMethod.*;
+
+/**
+ * Measures routing of requests by a {@link RoutingServlet} with a route table of an API gateway,
+ * which has a few hundred routes with static segments, path parameters and wildcards.
+ * <p>
+ * Requests are created during the benchmark, since routing changes their state,
+ * so {@link #parse} measures the cost of creating a request alone.
+ */
+@State(Scope.Benchmark)
+public class RoutingServletBenchmark {
+	private static final String[] VERSIONS = {"v1", "v2", "v3"};
+	private static final String[] RESOURCES = {
+			"users", "orders", "products", "carts", "payments", "invoices", "shipments", "reviews",
+			"categories", "inventory", "coupons", "addresses", "sessions", "tokens", "notifications",
+			"messages", "reports", "exports", "imports", "webhooks"};
+	private static final Promise<HttpResponse> RESPONSE = Promise.of(HttpResponse.ok200());
+	private static final int URLS = 1024;
+
+	private RoutingServlet servlet;
+	private String[] urls;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		AsyncServlet endpoint = request -> RESPONSE;
+		servlet = RoutingServlet.create()
+				.map(GET, "/", endpoint)
+				.map(GET, "/health", endpoint)
+				.map(GET, "/static/*", endpoint);
+		for (String version : VERSIONS) {
+			for (String resource : RESOURCES) {
+				String prefix = "/api/" + version + "/" + resource;
+				servlet.map(GET, prefix, endpoint)
+						.map(POST, prefix, endpoint)
+						.map(GET, prefix + "/search", endpoint)
+						.map(GET, prefix + "/:id", endpoint)
+						.map(PUT, prefix + "/:id", endpoint)
+						.map(DELETE, prefix + "/:id", endpoint)
+						.map(GET, prefix + "/:id/history", endpoint)
+						.map(GET, prefix + "/:id/items/:item", endpoint)
+						.map(prefix + "/:id/files/*", endpoint);
+			}
+		}
+
+		List<String> urls = new ArrayList<>();
+		for (int i = 0; urls.size() < URLS; i++) {
+			String prefix = "http://example.com/api/" + VERSIONS[i % VERSIONS.length] + "/" + RESOURCES[i % RESOURCES.length];
+			urls.add(prefix + "/" + i);
+			urls.add(prefix + "/search?q=item" + i);
+			urls.add(prefix + "/" + i + "/history");
+			urls.add(prefix + "/" + i + "/items/" + (i * 31));
+			urls.add(prefix + "/" + i + "/files/a/b/c.txt");
+			urls.add("http://example.com/static/css/app" + i + ".css");
+			urls.add("http://example.com/api/v1/unknown/" + i);
+			urls.add("http://example.com/health");
+		}
+		this.urls = urls.toArray(new String[0]);
+	}
+
+	private String nextUrl() {
+		return urls[index++ & (URLS - 1)];
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole) {
+		blackhole.consume(HttpRequest.get(nextUrl()));
+	}
+
+	@Benchmark
+	public void route(Blackhole blackhole) {
+		blackhole.consume(servlet.serve(HttpRequest.get(nextUrl())));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(RoutingServletBenchmark.class.getSimpleName())
+				.forks(2)
+				.warmupIterations(3)
+				.warmupTime(TimeValue.seconds(1L))
+				.measurementIterations(5)
+				.measurementTime(TimeValue.seconds(2L))
+				.mode(Mode.AverageTime)
+				.timeUnit(TimeUnit.NANOSECONDS)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
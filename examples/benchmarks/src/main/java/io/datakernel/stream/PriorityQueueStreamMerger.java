@@ -0,0 +1,173 @@
+package io.datakernel.stream;
+
+import io.datakernel.async.Promise;
+import io.datakernel.stream.processor.AbstractStreamReducer;
+import io.datakernel.stream.processor.StreamMerger;
+import io.datakernel.stream.processor.StreamReducers;
+import io.datakernel.stream.processor.StreamReducers.Reducer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A {@link StreamMerger} whose inputs are ordered by a {@link PriorityQueue}, the way {@link AbstractStreamReducer} used to order them.
+ * <p>
+ * It is kept for {@link StreamMergerBenchmark} only, apart from the ordering of inputs it is the same as {@link AbstractStreamReducer}.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+final class PriorityQueueStreamMerger<K, T> implements StreamInputs, StreamOutput<T> {
+	private final List<Input> inputs = new ArrayList<>();
+	private final Output output;
+
+	private final Function<T, K> keyFunction;
+	private final Reducer<K, T, T, Void> reducer = StreamReducers.mergeSortReducer();
+	private final int bufferSize = AbstractStreamReducer.DEFAULT_BUFFER_SIZE;
+
+	@Nullable
+	private Input lastInput;
+	@Nullable
+	private K key = null;
+	@Nullable
+	private Void accumulator;
+
+	private final PriorityQueue<Input> priorityQueue;
+	private int streamsAwaiting;
+	private int streamsOpen;
+
+	PriorityQueueStreamMerger(Function<T, K> keyFunction, Comparator<K> keyComparator) {
+		this.output = new Output();
+		this.keyFunction = keyFunction;
+		this.priorityQueue = new PriorityQueue<>(1, (o1, o2) -> {
+			int compare = keyComparator.compare(o1.headKey, o2.headKey);
+			if (compare != 0)
+				return compare;
+			return o1.index - o2.index;
+		});
+	}
+
+	StreamConsumer<T> newInput() {
+		Input input = new Input(inputs.size());
+		inputs.add(input);
+		streamsAwaiting++;
+		streamsOpen++;
+		return input;
+	}
+
+	@Override
+	public List<? extends StreamConsumer<?>> getInputs() {
+		return inputs;
+	}
+
+	@Override
+	public StreamSupplier<T> getOutput() {
+		return output;
+	}
+
+	private final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		private T headItem;
+		private K headKey;
+		private final int index;
+		private final ArrayDeque<T> deque = new ArrayDeque<>();
+
+		private Input(int index) {
+			this.index = index;
+		}
+
+		@Override
+		protected void onStarted() {
+			getSupplier().resume(this);
+		}
+
+		@Override
+		public void accept(T item) {
+			if (headItem == null) {
+				headItem = item;
+				headKey = keyFunction.apply(headItem);
+				priorityQueue.offer(this);
+				streamsAwaiting--;
+			} else {
+				deque.offer(item);
+				if (deque.size() == bufferSize) {
+					getSupplier().suspend();
+					produce();
+				}
+			}
+		}
+
+		@Override
+		protected Promise<Void> onEndOfStream() {
+			streamsOpen--;
+			if (headItem == null) {
+				streamsAwaiting--;
+			}
+			produce();
+			assert output.getConsumer() != null;
+			return output.getConsumer().getAcknowledgement();
+		}
+
+		@Override
+		protected void onError(Throwable e) {
+			output.close(e);
+		}
+	}
+
+	private final class Output extends AbstractStreamSupplier<T> {
+		@Override
+		protected void onError(Throwable e) {
+			inputs.forEach(input -> input.close(e));
+		}
+
+		@Override
+		protected void produce(AsyncProduceController async) {
+			PriorityQueueStreamMerger.this.produce();
+		}
+	}
+
+	private void produce() {
+		StreamDataAcceptor<T> dataAcceptor = output.getCurrentDataAcceptor();
+		if (dataAcceptor == null)
+			return;
+		while (streamsAwaiting == 0) {
+			Input input = priorityQueue.poll();
+			if (input == null)
+				break;
+			if (key != null && input.headKey.equals(key)) {
+				accumulator = reducer.onNextItem(dataAcceptor, key, input.headItem, accumulator);
+			} else {
+				if (lastInput != null) {
+					reducer.onComplete(dataAcceptor, key, accumulator);
+				}
+				key = input.headKey;
+				accumulator = reducer.onFirstItem(dataAcceptor, key, input.headItem);
+			}
+			input.headItem = input.deque.poll();
+			lastInput = input;
+			if (input.headItem != null) {
+				input.headKey = keyFunction.apply(input.headItem);
+				priorityQueue.offer(input);
+			} else {
+				if (!input.getEndOfStream().isResult()) {
+					streamsAwaiting++;
+					break;
+				}
+			}
+		}
+
+		for (Input input : inputs) {
+			if (input.deque.size() <= bufferSize / 2) {
+				input.getSupplier().resume(input);
+			}
+		}
+
+		if (streamsOpen == 0 && priorityQueue.isEmpty()) {
+			if (lastInput != null) {
+				reducer.onComplete(dataAcceptor, key, accumulator);
+				lastInput = null;
+				key = null;
+				accumulator = null;
+			}
+			output.sendEndOfStream();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package io.datakernel.stream;
+
+import io.datakernel.aggregation.PrimaryKey;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.stream.processor.StreamMerger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static io.datakernel.eventloop.FatalErrorHandlers.rethrowOnAnyError;
+
+/**
+ * Measures k-way merging of sorted streams of {@link PrimaryKey}s, as done by aggregation queries and consolidations.
+ * <p>
+ * {@code streamMerger} merges through {@link StreamMerger}, which orders its inputs with a tree of losers,
+ * while {@code priorityQueueMerger} runs the same pipeline through {@link PriorityQueueStreamMerger},
+ * which orders them with a {@link java.util.PriorityQueue}, the way the reducer used to.
+ */
+@State(Scope.Thread)
+public class StreamMergerBenchmark {
+	private static final int ITEMS = 1_000_000;
+
+	@Param({"2", "16", "256", "1024"})
+	int inputs;
+
+	private List<List<PrimaryKey>> lists;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(0);
+		lists = new ArrayList<>();
+		for (int i = 0; i < inputs; i++) {
+			List<PrimaryKey> list = new ArrayList<>();
+			for (int j = 0; j < ITEMS / inputs; j++) {
+				// date, advertiser, campaign
+				list.add(PrimaryKey.ofArray(16000 + random.nextInt(30), random.nextInt(100), random.nextInt(10_000)));
+			}
+			list.sort(Comparator.naturalOrder());
+			lists.add(list);
+		}
+	}
+
+	@Benchmark
+	public int streamMerger() {
+		Eventloop eventloop = Eventloop.create().withCurrentThread().withFatalErrorHandler(rethrowOnAnyError());
+		StreamMerger<PrimaryKey, PrimaryKey> merger = StreamMerger.create(Function.identity(), PrimaryKey::compareTo, false);
+		return merge(eventloop, merger.getOutput(), merger::newInput);
+	}
+
+	@Benchmark
+	public int priorityQueueMerger() {
+		Eventloop eventloop = Eventloop.create().withCurrentThread().withFatalErrorHandler(rethrowOnAnyError());
+		PriorityQueueStreamMerger<PrimaryKey, PrimaryKey> merger = new PriorityQueueStreamMerger<>(Function.identity(), PrimaryKey::compareTo);
+		return merge(eventloop, merger.getOutput(), merger::newInput);
+	}
+
+	private int merge(Eventloop eventloop, StreamSupplier<PrimaryKey> output, Supplier<StreamConsumer<PrimaryKey>> newInput) {
+		for (List<PrimaryKey> list : lists) {
+			StreamSupplier.ofIterable(list).streamTo(newInput.get());
+		}
+		StreamConsumerToList<PrimaryKey> consumer = StreamConsumerToList.create();
+		output.streamTo(consumer);
+		eventloop.run();
+		return consumer.getList().size();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(StreamMergerBenchmark.class.getSimpleName())
+				.forks(2)
+				.warmupIterations(3)
+				.warmupTime(TimeValue.seconds(1L))
+				.measurementIterations(5)
+				.measurementTime(TimeValue.seconds(2L))
+				.mode(Mode.AverageTime)
+				.timeUnit(TimeUnit.MILLISECONDS)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
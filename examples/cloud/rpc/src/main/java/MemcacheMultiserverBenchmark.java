@@ -0,0 +1,215 @@
+import io.datakernel.async.Promise;
+import io.datakernel.async.SettablePromise;
+import io.datakernel.config.Config;
+import io.datakernel.config.ConfigModule;
+import io.datakernel.di.annotation.Inject;
+import io.datakernel.di.annotation.Provides;
+import io.datakernel.di.core.Key;
+import io.datakernel.di.module.Module;
+import io.datakernel.eventloop.Eventloop;
+import io.datakernel.eventloop.PrimaryServer;
+import io.datakernel.launcher.Launcher;
+import io.datakernel.launcher.OnStart;
+import io.datakernel.memcache.client.RawMemcacheClient;
+import io.datakernel.memcache.protocol.MemcacheRpcMessage;
+import io.datakernel.memcache.protocol.MemcacheRpcMessage.Slice;
+import io.datakernel.memcache.protocol.SerializerGenSlice;
+import io.datakernel.memcache.server.MemcacheMultiserverModule;
+import io.datakernel.rpc.client.RpcClient;
+import io.datakernel.serializer.SerializerBuilder;
+import io.datakernel.serializer.asm.SerializerGenBuilderConst;
+import io.datakernel.service.ServiceGraphModule;
+import io.datakernel.util.MemSize;
+import io.datakernel.worker.WorkerPoolModule;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static io.datakernel.config.ConfigConverters.ofInteger;
+import static io.datakernel.di.module.Modules.combine;
+import static io.datakernel.rpc.client.sender.RpcStrategies.server;
+import static java.lang.Math.min;
+
+/**
+ * Measures throughput of a multi-core memcache server with 1, 4 and 16 worker eventloops,
+ * which is loaded by several clients, each running in its own eventloop.
+ * Number of workers may be fixed with {@code -Dconfig.memcache.workers}.
+ */
+public class MemcacheMultiserverBenchmark extends Launcher {
+	private static final int[] WORKERS = {1, 4, 16};
+	private static final int PORT = 8080;
+
+	private final static int TOTAL_REQUESTS = 10_000_000;
+	private final static int WARMUP_ROUNDS = 2;
+	private final static int BENCHMARK_ROUNDS = 5;
+	private final static int ACTIVE_REQUESTS = 2000;
+	private final static int CLIENTS = 16;
+	private final static int KEYS = 100_000;
+
+	private final static int NUMBER_BUFFERS = 4;
+	private final static MemSize BUFFER_CAPACITY = MemSize.megabytes(16);
+	public static final byte[] BYTES = "Hello world".getBytes();
+
+	private final int workers;
+
+	private int totalRequests;
+	private int warmupRounds;
+	private int benchmarkRounds;
+	private int activeRequests;
+	private int clientsCount;
+
+	private final List<Eventloop> clientEventloops = new ArrayList<>();
+	private final List<RpcClient> rpcClients = new ArrayList<>();
+	private final List<RawMemcacheClient> clients = new ArrayList<>();
+
+	@Inject
+	PrimaryServer primaryServer;
+
+	@Inject
+	Config config;
+
+	public MemcacheMultiserverBenchmark(int workers) {
+		this.workers = workers;
+	}
+
+	@Provides
+	Config config() {
+		return Config.create()
+				.with("memcache.workers", Integer.toString(workers))
+				.with("memcache.buffers", Integer.toString(NUMBER_BUFFERS))
+				.with("memcache.bufferCapacity", BUFFER_CAPACITY.format())
+				.with("server.listenAddresses", "localhost:" + PORT)
+				.overrideWith(Config.ofProperties(System.getProperties()).getChild("config"));
+	}
+
+	@Override
+	protected Module getModule() {
+		return combine(
+				ServiceGraphModule.create(),
+				WorkerPoolModule.create(),
+				ConfigModule.create()
+						.printEffectiveConfig()
+						.rebindImport(new Key<CompletionStage<Void>>() {}, new Key<CompletionStage<Void>>(OnStart.class) {}),
+				MemcacheMultiserverModule.create()
+		);
+	}
+
+	@Override
+	protected void onStart() throws Exception {
+		this.totalRequests = config.get(ofInteger(), "benchmark.totalRequests", TOTAL_REQUESTS);
+		this.warmupRounds = config.get(ofInteger(), "benchmark.warmupRounds", WARMUP_ROUNDS);
+		this.benchmarkRounds = config.get(ofInteger(), "benchmark.benchmarkRounds", BENCHMARK_ROUNDS);
+		this.activeRequests = config.get(ofInteger(), "benchmark.activeRequests", ACTIVE_REQUESTS);
+		this.clientsCount = config.get(ofInteger(), "benchmark.clients", CLIENTS);
+
+		for (int i = 0; i < clientsCount; i++) {
+			Eventloop eventloop = Eventloop.create();
+			RpcClient rpcClient = RpcClient.create(eventloop)
+					.withStrategy(server(new InetSocketAddress("localhost", PORT)))
+					.withMessageTypes(MemcacheRpcMessage.MESSAGE_TYPES)
+					.withSerializerBuilder(SerializerBuilder.create(ClassLoader.getSystemClassLoader())
+							.withSerializer(Slice.class, new SerializerGenBuilderConst(new SerializerGenSlice())));
+			eventloop.keepAlive(true);
+			new Thread(eventloop, "client-" + i).start();
+			eventloop.submit(rpcClient::start).get();
+			clientEventloops.add(eventloop);
+			rpcClients.add(rpcClient);
+			clients.add(RawMemcacheClient.create(rpcClient));
+		}
+	}
+
+	@Override
+	protected void run() throws Exception {
+		benchmark(client -> client.put(key(), new Slice(BYTES)), "Put");
+		benchmark(client -> client.get(key()), "Get");
+	}
+
+	@Override
+	protected void onStop() throws Exception {
+		for (int i = 0; i < clientsCount; i++) {
+			Eventloop eventloop = clientEventloops.get(i);
+			eventloop.submit(rpcClients.get(i)::stop).get();
+			eventloop.execute(() -> eventloop.keepAlive(false));
+		}
+	}
+
+	private void benchmark(Function<RawMemcacheClient, Promise<?>> request, String nameBenchmark) throws Exception {
+		System.out.println("Warming up " + nameBenchmark + " with " + workers + " workers ...");
+		for (int i = 0; i < warmupRounds; i++) {
+			round(request);
+		}
+
+		long timeAllRounds = 0;
+		for (int i = 0; i < benchmarkRounds; i++) {
+			long roundTime = round(request);
+			timeAllRounds += roundTime;
+			System.out.println("Round: " + (i + 1) + "; Round time: " + roundTime + "ms; RPS : " + totalRequests * 1000L / roundTime);
+		}
+
+		double avgTime = (double) timeAllRounds / benchmarkRounds;
+		System.out.println(nameBenchmark + ", workers: " + workers + "; Average time: " + avgTime + "ms; " +
+				"Requests per second: " + (long) (totalRequests / avgTime * 1000));
+	}
+
+	private long round(Function<RawMemcacheClient, Promise<?>> request) throws Exception {
+		long start = System.currentTimeMillis();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < clientsCount; i++) {
+			RawMemcacheClient client = clients.get(i);
+			int requests = totalRequests / clientsCount;
+			futures.add(clientEventloops.get(i).submit(() -> clientRound(client, request, requests)));
+		}
+		for (CompletableFuture<Void> future : futures) {
+			future.get();
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private Promise<Void> clientRound(RawMemcacheClient client, Function<RawMemcacheClient, Promise<?>> request, int requests) {
+		SettablePromise<Void> result = new SettablePromise<>();
+		new Object() {
+			int sent;
+			int completed;
+
+			void send() {
+				sent++;
+				request.apply(client).whenComplete(($, e) -> {
+					if (e != null) {
+						result.trySetException(e);
+						return;
+					}
+					if (++completed == requests) {
+						result.set(null);
+					} else if (sent < requests) {
+						send();
+					}
+				});
+			}
+
+			void start() {
+				for (int i = 0; i < min(activeRequests, requests); i++) {
+					send();
+				}
+			}
+		}.start();
+		return result;
+	}
+
+	private static byte[] key() {
+		int key = ThreadLocalRandom.current().nextInt(KEYS);
+		return new byte[]{(byte) (key >>> 24), (byte) (key >>> 16), (byte) (key >>> 8), (byte) key};
+	}
+
+	public static void main(String[] args) throws Exception {
+		String workers = System.getProperty("config.memcache.workers");
+		for (int n : workers != null ? new int[]{Integer.parseInt(workers)} : WORKERS) {
+			Launcher benchmark = new MemcacheMultiserverBenchmark(n);
+			benchmark.launch(args);
+		}
+	}
+}
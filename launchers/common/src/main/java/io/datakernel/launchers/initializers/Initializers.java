@@ -48,7 +48,9 @@ public class Initializers {
 		return eventloop -> eventloop
 				.withFatalErrorHandler(config.get(ofFatalErrorHandler(), "fatalErrorHandler", eventloop.getFatalErrorHandler()))
 				.withIdleInterval(config.get(ofDuration(), "idleInterval", eventloop.getIdleInterval()))
-				.withThreadPriority(config.get(ofInteger(), "threadPriority", eventloop.getThreadPriority()));
+				.withThreadPriority(config.get(ofInteger(), "threadPriority", eventloop.getThreadPriority()))
+				.withTimingWheelTick(config.get(ofDuration(), "timingWheelTick", eventloop.getTimingWheelTick()))
+				.withTimingWheel(config.get(ofBoolean(), "timingWheel", eventloop.isTimingWheel()));
 	}
 
 	public static Initializer<EventloopTaskScheduler> ofEventloopTaskScheduler(Config config) {